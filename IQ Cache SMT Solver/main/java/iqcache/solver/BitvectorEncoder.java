@@ -0,0 +1,162 @@
+package iqcache.solver;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+
+/**
+ * Encodes strings as the numerals of bitvector literals, see
+ * {@link Solver#toBinaryBitVector(String, Charset)} and
+ * {@link Solver#toDecimalBitVector(String, Charset)}.
+ *
+ * Every byte of the encoded string contributes its precomputed digits: a
+ * byte below 0x80 is padded to {@link Solver#BITS_PER_CHARACTER} bits, a
+ * byte of a multi-byte character keeps its 8 bits. The bit string is
+ * therefore byte aligned, so its decimal value is read directly from the
+ * bytes instead of bit by bit. The most recently encoded literals of the
+ * default {@link Solver#CHARSET} are cached.
+ *
+ * @author dinh
+ */
+final class BitvectorEncoder {
+
+	/**
+	 * The number of cached literals per numeral base.
+	 */
+	private static final int CACHE_SIZE = 128;
+
+	/**
+	 * The binary digits of every byte, indexed by the unsigned byte value.
+	 */
+	private static final char[][] BINARY_DIGITS = new char[256][];
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			int length = b < 0x80 ? Solver.BITS_PER_CHARACTER
+					: Solver.BITS_PER_CHARACTER / 2;
+			char[] digits = new char[length];
+			for (int i = 0; i < length; i++) {
+				digits[length - 1 - i] = (b & (1 << i)) == 0 ? '0' : '1';
+			}
+			BINARY_DIGITS[b] = digits;
+		}
+	}
+
+	private static final Map<String, String> binaryCache = new LiteralCache();
+	private static final Map<String, String> decimalCache = new LiteralCache();
+
+	private BitvectorEncoder() {
+	}
+
+	/**
+	 * Encodes a string as a binary numeral.
+	 *
+	 * @param s
+	 *            the string
+	 * @param charset
+	 *            the charset of the bytes of the string
+	 * @return The binary numeral.
+	 */
+	static String toBinary(String s, Charset charset) {
+		Preconditions.checkNotNull(s);
+		Preconditions.checkNotNull(charset);
+		boolean cacheable = charset.equals(Solver.CHARSET);
+		if (cacheable) {
+			synchronized (binaryCache) {
+				String cached = binaryCache.get(s);
+				if (cached != null) {
+					return cached;
+				}
+			}
+		}
+
+		byte[] bytes = s.getBytes(charset);
+		int length = 0;
+		for (byte b : bytes) {
+			length += BINARY_DIGITS[b & 0xFF].length;
+		}
+		char[] numeral = new char[length];
+		int position = 0;
+		for (byte b : bytes) {
+			char[] digits = BINARY_DIGITS[b & 0xFF];
+			System.arraycopy(digits, 0, numeral, position, digits.length);
+			position += digits.length;
+		}
+		String binary = new String(numeral);
+
+		if (cacheable) {
+			synchronized (binaryCache) {
+				binaryCache.put(s, binary);
+			}
+		}
+		return binary;
+	}
+
+	/**
+	 * Encodes a string as a decimal numeral of the same value as
+	 * {@link #toBinary(String, Charset)}.
+	 *
+	 * @param s
+	 *            the string
+	 * @param charset
+	 *            the charset of the bytes of the string
+	 * @return The decimal numeral.
+	 */
+	static String toDecimal(String s, Charset charset) {
+		Preconditions.checkNotNull(s);
+		Preconditions.checkNotNull(charset);
+		boolean cacheable = charset.equals(Solver.CHARSET);
+		if (cacheable) {
+			synchronized (decimalCache) {
+				String cached = decimalCache.get(s);
+				if (cached != null) {
+					return cached;
+				}
+			}
+		}
+
+		byte[] bytes = s.getBytes(charset);
+		int length = 0;
+		for (byte b : bytes) {
+			length += b < 0 ? 1 : 2;
+		}
+		// a padded byte is preceded by a zero byte
+		byte[] magnitude = new byte[length];
+		int position = 0;
+		for (byte b : bytes) {
+			if (b >= 0) {
+				position++;
+			}
+			magnitude[position++] = b;
+		}
+		String decimal = new BigInteger(1, magnitude).toString();
+
+		if (cacheable) {
+			synchronized (decimalCache) {
+				decimalCache.put(s, decimal);
+			}
+		}
+		return decimal;
+	}
+
+	/**
+	 * A LRU cache of encoded literals.
+	 */
+	private static final class LiteralCache extends
+			LinkedHashMap<String, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		LiteralCache() {
+			super(2 * CACHE_SIZE, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	}
+}
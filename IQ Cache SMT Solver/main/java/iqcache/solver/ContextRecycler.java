@@ -0,0 +1,176 @@
+package iqcache.solver;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import iqcache.common.Preconditions;
+
+/**
+ * Creates and tears down the native contexts of a resetting solver off the
+ * checking thread. A spare context is warmed in the background before it is
+ * needed, and a retired context is torn down in the background, so a swap
+ * waits for neither. All recyclers share a pool of daemon threads.
+ *
+ * A recycler is used by the thread of its solver only.
+ *
+ * @author dinh
+ *
+ * @param <C>
+ *            the type of a context
+ */
+public final class ContextRecycler<C> {
+
+	/**
+	 * Tears down a context that was never used, e.g. the spare of a closed
+	 * solver or a spare whose taker was interrupted.
+	 *
+	 * @param <C>
+	 *            the type of a context
+	 */
+	public interface Disposer<C> {
+
+		/**
+		 * Releases a context.
+		 *
+		 * @param context
+		 *            the context
+		 */
+		void dispose(C context);
+	}
+
+	private static final ExecutorService WORKERS = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "solver-recycler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final Callable<C> factory;
+	private final Disposer<C> disposer;
+
+	private Future<C> spare = null;
+
+	/**
+	 * Constructor of a recycler.
+	 *
+	 * @param factory
+	 *            creates a context; may run on any thread
+	 * @param disposer
+	 *            releases a spare context that is never used; may run on any
+	 *            thread
+	 */
+	public ContextRecycler(Callable<C> factory, Disposer<C> disposer) {
+		Preconditions.checkNotNull(factory);
+		Preconditions.checkNotNull(disposer);
+		this.factory = factory;
+		this.disposer = disposer;
+	}
+
+	/**
+	 * Starts warming a spare context unless there is one.
+	 */
+	public void warm() {
+		if (spare == null) {
+			spare = WORKERS.submit(factory);
+		}
+	}
+
+	/**
+	 * Determine if a spare context is warming or ready.
+	 *
+	 * @return <code>true</code> iff {@link #warm()} was called since the last
+	 *         {@link #take()}.
+	 */
+	public boolean hasSpare() {
+		return spare != null;
+	}
+
+	/**
+	 * Returns the spare context, or creates one on the calling thread if
+	 * there is none or warming it failed. If the calling thread is
+	 * interrupted while the spare is warming, the spare is torn down in the
+	 * background once it is warm.
+	 *
+	 * @return A fresh context.
+	 * @throws SolverException
+	 *             if the context cannot be created
+	 */
+	public C take() throws SolverException {
+		Future<C> warming = spare;
+		spare = null;
+		if (warming != null) {
+			try {
+				return warming.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				discard(warming);
+				throw new SolverException("Interrupted while warming context.",
+						e);
+			} catch (ExecutionException e) {
+				// try again on this thread
+			}
+		}
+
+		try {
+			return factory.call();
+		} catch (SolverException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SolverException("Cannot create context.", e);
+		}
+	}
+
+	/**
+	 * Tears down a retired context in the background.
+	 *
+	 * @param teardown
+	 *            releases the context and everything created in it
+	 */
+	public void retire(Runnable teardown) {
+		Preconditions.checkNotNull(teardown);
+		WORKERS.execute(teardown);
+	}
+
+	/**
+	 * Tears down the spare context in the background, once it is warm, e.g.
+	 * when the solver is closed. Warming is not cancelled, because a
+	 * cancelled factory may still have created a native context.
+	 */
+	public void discardSpare() {
+		Future<C> warming = spare;
+		spare = null;
+		if (warming != null) {
+			discard(warming);
+		}
+	}
+
+	/**
+	 * Tears down the context of a warming future in the background once it
+	 * is warm.
+	 */
+	private void discard(final Future<C> warming) {
+		WORKERS.execute(new Runnable() {
+			@Override
+			public void run() {
+				C context;
+				try {
+					context = warming.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (ExecutionException e) {
+					// no context was created
+					return;
+				}
+				disposer.dispose(context);
+			}
+		});
+	}
+}
@@ -0,0 +1,118 @@
+package iqcache.solver;
+
+import iqcache.common.Preconditions;
+import iqcache.solver.rewrite.Formula;
+
+/**
+ * The SMT-LIB logic of a formula, used to pick a solver configuration that
+ * is specialised to it.
+ *
+ * Every integer and real atom of the {@link SMTExpressionConverter} is a
+ * difference constraint <code>x op y + c</code>, so a formula that only
+ * compares integers is in QF_IDL and one that only compares reals in
+ * QF_RDL; the general linear logics are never the smallest ones. Varchar
+ * comparisons are bitvector constraints, or integer difference constraints
+ * with the dictionary encoding. Boolean columns fit every logic.
+ *
+ * @author dinh
+ */
+public enum Logic {
+
+	/**
+	 * only boolean columns
+	 */
+	PROPOSITIONAL("QF_UF"),
+
+	/**
+	 * integer difference logic
+	 */
+	QF_IDL("QF_IDL"),
+
+	/**
+	 * real difference logic
+	 */
+	QF_RDL("QF_RDL"),
+
+	/**
+	 * fixed-size bitvectors
+	 */
+	QF_BV("QF_BV"),
+
+	/**
+	 * a combination of theories; the default configuration
+	 */
+	GENERAL(null);
+
+	private final String name;
+
+	private Logic(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the SMT-LIB name of the logic.
+	 *
+	 * @return The name or <code>null</code> for {@link #GENERAL}.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Determines the smallest logic of a formula.
+	 *
+	 * @param formula
+	 *            the formula
+	 * @param dictionaryEncoding
+	 *            <code>true</code> if varchar comparisons are encoded with
+	 *            a {@link VarcharDictionary}
+	 * @return The logic.
+	 */
+	public static Logic of(Formula formula, boolean dictionaryEncoding) {
+		Preconditions.checkNotNull(formula);
+		boolean varchar = formula.contains(Formula.VARCHAR_EQUAL)
+				|| formula.contains(Formula.VARCHAR_NOT_EQUAL)
+				|| formula.contains(Formula.VARCHAR_LESS)
+				|| formula.contains(Formula.VARCHAR_LESS_OR_EQUAL);
+		boolean integer = formula.contains(Formula.INTEGER_EQUAL)
+				|| formula.contains(Formula.INTEGER_NOT_EQUAL)
+				|| formula.contains(Formula.INTEGER_LESS_OR_EQUAL)
+				|| varchar && dictionaryEncoding;
+		boolean real = formula.contains(Formula.REAL_EQUAL)
+				|| formula.contains(Formula.REAL_NOT_EQUAL)
+				|| formula.contains(Formula.REAL_LESS)
+				|| formula.contains(Formula.REAL_LESS_OR_EQUAL);
+		boolean bitvector = varchar && !dictionaryEncoding;
+
+		int theories = (integer ? 1 : 0) + (real ? 1 : 0)
+				+ (bitvector ? 1 : 0);
+		if (theories == 0) {
+			return PROPOSITIONAL;
+		} else if (theories > 1) {
+			return GENERAL;
+		} else if (integer) {
+			return QF_IDL;
+		} else if (real) {
+			return QF_RDL;
+		} else {
+			return QF_BV;
+		}
+	}
+
+	/**
+	 * Determines the smallest logic of the conjunction of two formulas.
+	 *
+	 * @param other
+	 *            the logic of the other formula
+	 * @return The logic that contains both.
+	 */
+	public Logic join(Logic other) {
+		Preconditions.checkNotNull(other);
+		if (this == other || other == PROPOSITIONAL) {
+			return this;
+		} else if (this == PROPOSITIONAL) {
+			return other;
+		}
+		return GENERAL;
+	}
+}
@@ -0,0 +1,206 @@
+package iqcache.solver;
+
+import iqcache.common.Preconditions;
+
+/**
+ * Decides when a resetting solver recycles the native memory of its
+ * context/environment. Resetting only drops the assertions: the terms
+ * created so far and the internal caches of the solver stay alive as long as
+ * the context, so a long run grows the native heap without bound.
+ *
+ * The policy accounts the terms created in the current context and the
+ * native memory they occupy. Neither solver reports the memory of a single
+ * context, so it is estimated with {@link #BYTES_PER_TERM} unless the solver
+ * records a measured value. Once the terms created since the last collection
+ * reach the collect threshold, the solver collects garbage in place; once
+ * the terms or the memory reach the maximum, it swaps the context for a
+ * fresh one. A replacement should be warmed as soon as half the maximum is
+ * reached, so the swap does not wait for it.
+ *
+ * A threshold of {@link Long#MAX_VALUE} disables the action.
+ *
+ * @author dinh
+ */
+public final class RecyclingPolicy {
+
+	/**
+	 * What to do with the context before the next check.
+	 */
+	public enum Action {
+		/**
+		 * keep the context
+		 */
+		NONE,
+
+		/**
+		 * collect the garbage of the context
+		 */
+		COLLECT,
+
+		/**
+		 * replace the context
+		 */
+		RECYCLE
+	}
+
+	/**
+	 * The default number of terms created between two collections.
+	 */
+	public static final long DEFAULT_COLLECT_TERMS = 100000;
+
+	/**
+	 * The default number of terms created in a context.
+	 */
+	public static final long DEFAULT_MAX_TERMS = 1000000;
+
+	/**
+	 * The default native memory of a context.
+	 */
+	public static final long DEFAULT_MAX_NATIVE_BYTES = 256L << 20;
+
+	/**
+	 * The estimated native memory of a term including the solver's data
+	 * structures about it.
+	 */
+	public static final long BYTES_PER_TERM = 128;
+
+	private final long collectTerms;
+	private final long maxTerms;
+	private final long maxNativeBytes;
+
+	private long terms = 0;
+	private long termsSinceCollection = 0;
+	private long measuredNativeBytes = -1;
+
+	private long collections = 0;
+	private long recycles = 0;
+
+	/**
+	 * Constructor of a policy with the default thresholds.
+	 */
+	public RecyclingPolicy() {
+		this(DEFAULT_COLLECT_TERMS, DEFAULT_MAX_TERMS, DEFAULT_MAX_NATIVE_BYTES);
+	}
+
+	/**
+	 * Constructor of a policy.
+	 *
+	 * @param collectTerms
+	 *            the number of terms created between two collections
+	 * @param maxTerms
+	 *            the number of terms created in a context
+	 * @param maxNativeBytes
+	 *            the native memory of a context
+	 */
+	public RecyclingPolicy(long collectTerms, long maxTerms,
+			long maxNativeBytes) {
+		Preconditions.checkArgument(collectTerms > 0, "collectTerms <= 0");
+		Preconditions.checkArgument(maxTerms > 0, "maxTerms <= 0");
+		Preconditions.checkArgument(maxNativeBytes > 0, "maxNativeBytes <= 0");
+		this.collectTerms = collectTerms;
+		this.maxTerms = maxTerms;
+		this.maxNativeBytes = maxNativeBytes;
+	}
+
+	/**
+	 * Accounts terms created in the current context.
+	 *
+	 * @param n
+	 *            the number of terms
+	 */
+	public void recordTerms(long n) {
+		Preconditions.checkArgument(n >= 0, "n < 0");
+		terms += n;
+		termsSinceCollection += n;
+	}
+
+	/**
+	 * Records the measured native memory of the current context; it replaces
+	 * the estimate until the context is recycled.
+	 *
+	 * @param bytes
+	 *            the native memory
+	 */
+	public void recordNativeBytes(long bytes) {
+		Preconditions.checkArgument(bytes >= 0, "bytes < 0");
+		measuredNativeBytes = bytes;
+	}
+
+	/**
+	 * Decides what to do with the context before the next check.
+	 *
+	 * @return The action.
+	 */
+	public Action next() {
+		if (terms >= maxTerms || getNativeBytes() >= maxNativeBytes) {
+			return Action.RECYCLE;
+		} else if (termsSinceCollection >= collectTerms) {
+			return Action.COLLECT;
+		}
+		return Action.NONE;
+	}
+
+	/**
+	 * Determine if a replacement of the context should be warmed.
+	 *
+	 * @return <code>true</code> iff half of a maximum is reached.
+	 */
+	public boolean shouldWarm() {
+		return terms >= maxTerms / 2 || getNativeBytes() >= maxNativeBytes / 2;
+	}
+
+	/**
+	 * Notes that the garbage of the context was collected.
+	 */
+	public void collected() {
+		termsSinceCollection = 0;
+		collections++;
+	}
+
+	/**
+	 * Notes that the context was replaced by a fresh one.
+	 */
+	public void recycled() {
+		terms = 0;
+		termsSinceCollection = 0;
+		measuredNativeBytes = -1;
+		recycles++;
+	}
+
+	/**
+	 * Returns the number of terms created in the current context.
+	 *
+	 * @return The number of terms.
+	 */
+	public long getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Returns the native memory of the current context.
+	 *
+	 * @return The measured memory or, if there is none, the estimate.
+	 */
+	public long getNativeBytes() {
+		return measuredNativeBytes >= 0 ? measuredNativeBytes : terms
+				* BYTES_PER_TERM;
+	}
+
+	/**
+	 * Returns the number of collections.
+	 *
+	 * @return The number of collections.
+	 */
+	public long getCollections() {
+		return collections;
+	}
+
+	/**
+	 * Returns the number of replaced contexts.
+	 *
+	 * @return The number of recycles.
+	 */
+	public long getRecycles() {
+		return recycles;
+	}
+}
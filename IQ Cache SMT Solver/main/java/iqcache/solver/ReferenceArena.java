@@ -0,0 +1,117 @@
+package iqcache.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import iqcache.common.Preconditions;
+
+/**
+ * Collects the native references created while a formula is converted and
+ * checked, and releases them in one batch when the check has completed or
+ * the context is recycled. Releasing the operands of a term as soon as they
+ * are combined costs a native call per node and depends on the order in
+ * which terms are combined; an arena releases every reference exactly once,
+ * after the last term that uses it.
+ *
+ * An arena is used by the thread of its solver only.
+ *
+ * @author dinh
+ *
+ * @param <T>
+ *            the type of a native reference
+ */
+public final class ReferenceArena<T> {
+
+	/**
+	 * Releases a batch of native references.
+	 *
+	 * @param <T>
+	 *            the type of a native reference
+	 */
+	public interface Releaser<T> {
+
+		/**
+		 * Releases native references; a failure to release one reference
+		 * must not keep the others alive.
+		 *
+		 * @param references
+		 *            the references, each released once
+		 */
+		void release(List<T> references);
+	}
+
+	private final Releaser<T> releaser;
+
+	private final List<T> references = new ArrayList<T>();
+
+	private long released = 0;
+	private int largestBatch = 0;
+
+	/**
+	 * Constructor of an arena.
+	 *
+	 * @param releaser
+	 *            releases the collected references
+	 */
+	public ReferenceArena(Releaser<T> releaser) {
+		Preconditions.checkNotNull(releaser);
+		this.releaser = releaser;
+	}
+
+	/**
+	 * Holds a reference until the next {@link #release()}.
+	 *
+	 * @param reference
+	 *            a native reference that is released by nobody else
+	 * @return The given reference.
+	 */
+	public T add(T reference) {
+		Preconditions.checkNotNull(reference);
+		references.add(reference);
+		return reference;
+	}
+
+	/**
+	 * Releases all held references in one batch.
+	 */
+	public void release() {
+		if (references.isEmpty()) {
+			return;
+		}
+		int n = references.size();
+		try {
+			releaser.release(references);
+		} finally {
+			references.clear();
+			released += n;
+			largestBatch = Math.max(largestBatch, n);
+		}
+	}
+
+	/**
+	 * Returns the number of references held by the arena.
+	 *
+	 * @return The number of references added since the last release.
+	 */
+	public int size() {
+		return references.size();
+	}
+
+	/**
+	 * Returns the number of references released by the arena.
+	 *
+	 * @return The number of released references.
+	 */
+	public long getReleased() {
+		return released;
+	}
+
+	/**
+	 * Returns the largest number of references released in one batch.
+	 *
+	 * @return The size of the largest batch.
+	 */
+	public int getLargestBatch() {
+		return largestBatch;
+	}
+}
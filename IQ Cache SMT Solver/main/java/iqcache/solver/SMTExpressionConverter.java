@@ -1,6 +1,10 @@
 package iqcache.solver;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
 
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
@@ -28,6 +32,8 @@ import iqcache.query.column.ColumnType;
 import iqcache.query.column.VarcharType;
 import iqcache.solver.SolverAPI;
 import iqcache.solver.mathsat.MathSatAPI;
+import iqcache.solver.rewrite.ExpressionInterner;
+import iqcache.solver.rewrite.Formula;
 import iqcache.solver.mathsat.MathSatSolver;
 import iqcache.solver.variable.BitvectorVariable;
 import iqcache.solver.variable.IntVariable;
@@ -44,8 +50,46 @@ import iqcache.solver.z3.Z3Solver;
 public class SMTExpressionConverter implements
 		ExpressionVisitor<SMTLibExpression, SolverException> {
 
+	private static final int EQUAL = 0;
+	private static final int NOT_EQUAL = 1;
+	private static final int LESS = 2;
+	private static final int LESS_OR_EQUAL = 3;
+
 	private SolverAPI solverAPI;
 
+	/**
+	 * <code>true</code> iff {@link #convert(Expression)} encodes varchar
+	 * comparisons with a {@link VarcharDictionary}.
+	 */
+	private boolean dictionaryEncoding = false;
+
+	/**
+	 * The dictionary of the formula being converted or <code>null</code> if
+	 * varchar comparisons are encoded as bitvectors.
+	 */
+	private VarcharDictionary dictionary;
+
+	/**
+	 * The DAG of the formulas converted by {@link #convert(Expression)}.
+	 */
+	private final ExpressionInterner interner = new ExpressionInterner();
+
+	/**
+	 * The conversions of the subexpressions that occur more than once in
+	 * the DAG, by their canonical instance.
+	 */
+	private final Map<Expression, SMTLibExpression> shared = new IdentityHashMap<Expression, SMTLibExpression>();
+
+	/**
+	 * Writes the formulas submitted as one SMT-LIB 2 script.
+	 */
+	private final SMTLib2Emitter emitter = new SMTLib2Emitter();
+
+	/**
+	 * The number of nodes from which a formula is submitted as a script.
+	 */
+	private int bulkThreshold = SMTLib2Emitter.DEFAULT_THRESHOLD;
+
 	/**
 	 * This method creates an ExpressionVisitor for an instance of a MathSAT
 	 * solver.
@@ -61,6 +105,24 @@ public class SMTExpressionConverter implements
 		this.solverAPI = new MathSatAPI(env);
 	}
 
+	/**
+	 * This method creates an ExpressionVisitor for an instance of a MathSAT
+	 * solver that reuses the variables and constants of earlier conversions.
+	 * 
+	 * @param solver
+	 *            the running instance of a MathSAT solver
+	 * @param env
+	 *            the environment for the MathSAT solver
+	 * @param terms
+	 *            the cache of the terms created in the environment
+	 */
+	public SMTExpressionConverter(Solver solver, long env,
+			TermCache<Long> terms) {
+		Preconditions.checkNotNull(solver);
+		Preconditions.checkArgument(solver instanceof MathSatSolver);
+		this.solverAPI = new MathSatAPI(env, terms);
+	}
+
 	/**
 	 * This method creates an ExpressionVisitor for an instance of a MathSAT
 	 * solver.
@@ -76,6 +138,456 @@ public class SMTExpressionConverter implements
 		this.solverAPI = new Z3API(ctx);
 	}
 
+	/**
+	 * This method creates an ExpressionVisitor for an instance of a Z3 solver
+	 * that reuses the variables and constants of earlier conversions.
+	 * 
+	 * @param solver
+	 *            the running instance of a Z3 solver
+	 * @param ctx
+	 *            the context for the Z3 solver
+	 * @param terms
+	 *            the cache of the terms created in the context
+	 */
+	public SMTExpressionConverter(Solver solver, Context ctx,
+			TermCache<Expr> terms) {
+		Preconditions.checkNotNull(solver);
+		Preconditions.checkArgument(solver instanceof Z3Solver);
+		this.solverAPI = new Z3API(ctx, terms);
+	}
+
+	/**
+	 * This method creates an ExpressionVisitor for an instance of a Z3 solver
+	 * that reuses the variables and constants of earlier conversions and
+	 * collects the references to intermediate terms in an arena.
+	 * 
+	 * @param solver
+	 *            the running instance of a Z3 solver
+	 * @param ctx
+	 *            the context for the Z3 solver
+	 * @param terms
+	 *            the cache of the terms created in the context
+	 * @param arena
+	 *            the arena of the running check
+	 */
+	public SMTExpressionConverter(Solver solver, Context ctx,
+			TermCache<Expr> terms, ReferenceArena<Expr> arena) {
+		Preconditions.checkNotNull(solver);
+		Preconditions.checkArgument(solver instanceof Z3Solver);
+		this.solverAPI = new Z3API(ctx, terms, arena);
+	}
+
+	/**
+	 * Selects the encoding of varchar comparisons used by
+	 * {@link #convert(Expression)}: bitvectors of
+	 * {@link VarcharType#getLength()} * {@link Solver#BITS_PER_CHARACTER} bits
+	 * (the default) or the integer ranks of a {@link VarcharDictionary} of the
+	 * formula.
+	 * 
+	 * @param dictionaryEncoding
+	 *            <code>true</code> for the dictionary encoding
+	 */
+	public void setDictionaryEncoding(boolean dictionaryEncoding) {
+		this.dictionaryEncoding = dictionaryEncoding;
+	}
+
+	/**
+	 * Sets the number of nodes from which {@link #convert(Formula)} writes a
+	 * formula as one SMT-LIB 2 script with a {@link SMTLib2Emitter} and lets
+	 * the solver parse it in a single call, instead of creating its terms
+	 * one by one. Formulas with the dictionary encoding are always created
+	 * term by term.
+	 * 
+	 * @param bulkThreshold
+	 *            the number of nodes, {@link Integer#MAX_VALUE} to disable
+	 *            the scripts
+	 */
+	public void setBulkThreshold(int bulkThreshold) {
+		Preconditions.checkArgument(bulkThreshold >= 0);
+		this.bulkThreshold = bulkThreshold;
+	}
+
+	/**
+	 * Converts a whole formula. With the dictionary encoding the ranks of the
+	 * varchar columns are bounded by the dictionary of the formula, so the
+	 * result must not be combined with the conversion of another formula
+	 * that compares the same varchar columns.
+	 * 
+	 * The formula is hash-consed with an {@link ExpressionInterner} and
+	 * lowered as a {@link Formula}; a subexpression that occurs several
+	 * times, in this formula or in a formula converted before by this
+	 * converter, is converted only once.
+	 * 
+	 * @param expression
+	 *            the formula
+	 * @return The converted formula.
+	 * @throws SolverException
+	 *             iff the formula cannot be converted
+	 */
+	public SMTLibExpression convert(Expression expression)
+			throws SolverException {
+		Preconditions.checkNotNull(expression);
+		if (dictionaryEncoding) {
+			// the ranks of one formula do not fit another
+			interner.clear();
+		}
+		return convert(Formula.of(interner.intern(expression)));
+	}
+
+	/**
+	 * Lowers a formula to the solver of this converter. The nodes are
+	 * converted in index order, so the operands of a node are converted
+	 * before the node; a node that is used more than once is converted once
+	 * and retained.
+	 * 
+	 * A formula of at least {@link #setBulkThreshold(int)} nodes is written
+	 * as one SMT-LIB 2 script and parsed by the solver instead.
+	 * 
+	 * @param formula
+	 *            the formula
+	 * @return The converted root of the formula.
+	 * @throws SolverException
+	 *             iff the formula cannot be converted
+	 */
+	public SMTLibExpression convert(Formula formula) throws SolverException {
+		Preconditions.checkNotNull(formula);
+		if (!dictionaryEncoding) {
+			if (formula.size() >= bulkThreshold) {
+				String script = emitter.emit(formula);
+				if (script != null) {
+					return solverAPI.parseSMTLib2(script);
+				}
+			}
+			return lower(formula);
+		}
+
+		shared.clear();
+		dictionary = VarcharDictionary.of(formula);
+		try {
+			SMTLibExpression root = lower(formula);
+			if (dictionary.getColumns().isEmpty()) {
+				return root;
+			}
+
+			SMTLibExpression[] conjuncts = new SMTLibExpression[1 + 2 * dictionary
+					.getColumns().size()];
+			conjuncts[0] = root;
+			int i = 1;
+			for (Column col : dictionary.getColumns()) {
+				conjuncts[i++] = solverAPI.createLE(
+						solverAPI.createIntNum(null, dictionary.getLowestRank()),
+						solverAPI.createRankVariable(col));
+				conjuncts[i++] = solverAPI.createLE(
+						solverAPI.createRankVariable(col),
+						solverAPI.createIntNum(null, dictionary.getHighestRank()));
+			}
+			return solverAPI.createAND(conjuncts);
+		} finally {
+			dictionary = null;
+		}
+	}
+
+	/**
+	 * Converts all nodes of a formula and returns the term of the root.
+	 */
+	private SMTLibExpression lower(Formula formula) throws SolverException {
+		SMTLibExpression[] terms = new SMTLibExpression[formula.size()];
+		for (int node = 0; node < terms.length; node++) {
+			Expression source = formula.getSource(node);
+			// uses across the formulas of this converter, if it interned
+			// the source
+			int uses = interner.isInterned(source) ? interner
+					.getUses(source) : formula.getUses(node);
+			if (uses < 2) {
+				terms[node] = lowerNode(formula, node, terms);
+				continue;
+			}
+			SMTLibExpression converted = shared.get(source);
+			if (converted == null) {
+				converted = lowerNode(formula, node, terms);
+				solverAPI.retain(converted);
+				shared.put(source, converted);
+			}
+			terms[node] = converted;
+		}
+		return terms[formula.getRoot()];
+	}
+
+	/**
+	 * Converts one node of a formula whose operands are already converted.
+	 */
+	private SMTLibExpression lowerNode(Formula formula, int node,
+			SMTLibExpression[] terms) throws SolverException {
+		int op = formula.getOp(node);
+		switch (op) {
+		case Formula.TRUE:
+			return solverAPI.createBooleanValue(true);
+		case Formula.FALSE:
+			return solverAPI.createBooleanValue(false);
+		case Formula.AND:
+		case Formula.OR:
+		case Formula.NOT:
+			SMTLibExpression[] expr = new SMTLibExpression[formula
+					.getOperandCount(node)];
+			for (int i = 0; i < expr.length; i++) {
+				expr[i] = terms[formula.getOperand(node, i)];
+			}
+			return op == Formula.AND ? solverAPI.createAND(expr)
+					: op == Formula.OR ? solverAPI.createOR(expr) : solverAPI
+							.createNOT(expr);
+		case Formula.BOOLEAN:
+			return solverAPI.createBoolVariable(column(formula,
+					formula.getLeft(node)));
+		case Formula.NEGATED_BOOLEAN:
+			return solverAPI.createNOT(solverAPI.createBoolVariable(column(
+					formula, formula.getLeft(node))));
+		default:
+			break;
+		}
+
+		Column left = column(formula, formula.getLeft(node));
+		Column right = column(formula, formula.getRight(node));
+		double constant = formula.getConstant(node);
+		switch (op) {
+		case Formula.INTEGER_EQUAL:
+			return lowerInteger(EQUAL, left, right, (int) constant);
+		case Formula.INTEGER_NOT_EQUAL:
+			return lowerInteger(NOT_EQUAL, left, right, (int) constant);
+		case Formula.INTEGER_LESS_OR_EQUAL:
+			return lowerInteger(LESS_OR_EQUAL, left, right, (int) constant);
+		case Formula.REAL_EQUAL:
+			return lowerReal(EQUAL, left, right, constant);
+		case Formula.REAL_NOT_EQUAL:
+			return lowerReal(NOT_EQUAL, left, right, constant);
+		case Formula.REAL_LESS:
+			return lowerReal(LESS, left, right, constant);
+		case Formula.REAL_LESS_OR_EQUAL:
+			return lowerReal(LESS_OR_EQUAL, left, right, constant);
+		default:
+			break;
+		}
+
+		int literal = formula.getLiteral(node);
+		String varchar = literal == Formula.NONE ? null : formula
+				.getLiteralValue(literal);
+		String leftVarchar = left == null ? varchar : null;
+		String rightVarchar = right == null ? varchar : null;
+		switch (op) {
+		case Formula.VARCHAR_EQUAL:
+			return lowerVarchar(EQUAL, left, leftVarchar, right, rightVarchar);
+		case Formula.VARCHAR_NOT_EQUAL:
+			return lowerVarchar(NOT_EQUAL, left, leftVarchar, right,
+					rightVarchar);
+		case Formula.VARCHAR_LESS:
+			return lowerVarchar(LESS, left, leftVarchar, right, rightVarchar);
+		case Formula.VARCHAR_LESS_OR_EQUAL:
+			return lowerVarchar(LESS_OR_EQUAL, left, leftVarchar, right,
+					rightVarchar);
+		default:
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static Column column(Formula formula, int column) {
+		return column == Formula.NONE ? null : formula.getColumn(column);
+	}
+
+	/**
+	 * Lowers an integer atom: <code>left op c</code>, <code>c op right</code>
+	 * or <code>left op right + c</code>.
+	 */
+	private SMTLibExpression lowerInteger(int comparison, Column left,
+			Column right, int constant) {
+		if (left == null && right == null) {
+			// left == null, right == null
+			// so: left = right + c == true
+			return solverAPI.createBooleanValue(true);
+		}
+		if (right == null) {
+			return compare(comparison, solverAPI.createIntVariable(left),
+					solverAPI.createIntNum(null, constant));
+		}
+		if (left == null) {
+			return compare(comparison, solverAPI.createIntNum(null, constant),
+					solverAPI.createIntVariable(right));
+		}
+
+		IntVariable leftVariable = solverAPI.createIntVariable(left);
+		IntVariable rightVariable = solverAPI.createIntVariable(right);
+		if (constant == 0) {
+			return compare(comparison, leftVariable, rightVariable);
+		}
+		IntVariable c = solverAPI.createIntNum(right, constant);
+		switch (comparison) {
+		case EQUAL:
+			return solverAPI.createEqualc(leftVariable, rightVariable, c);
+		case NOT_EQUAL:
+			return solverAPI.createNotEqualc(leftVariable, rightVariable, c);
+		default:
+			return solverAPI.createLEc(leftVariable, rightVariable, c);
+		}
+	}
+
+	/**
+	 * Lowers a real atom: <code>left op c</code>, <code>c op right</code> or
+	 * <code>left op right + c</code>.
+	 */
+	private SMTLibExpression lowerReal(int comparison, Column left,
+			Column right, double constant) {
+		if (left == null && right == null) {
+			// left == null, right == null
+			// so: left = right + c == true
+			return solverAPI.createBooleanValue(true);
+		}
+		if (right == null) {
+			return compare(comparison, solverAPI.createRealVariable(left),
+					solverAPI.createRealNum(null, constant));
+		}
+		if (left == null) {
+			return compare(comparison,
+					solverAPI.createRealNum(null, constant),
+					solverAPI.createRealVariable(right));
+		}
+
+		RealVariable leftVariable = solverAPI.createRealVariable(left);
+		RealVariable rightVariable = solverAPI.createRealVariable(right);
+		if (constant == 0) {
+			return compare(comparison, leftVariable, rightVariable);
+		}
+		RealVariable c = solverAPI.createRealNum(right, constant);
+		switch (comparison) {
+		case EQUAL:
+			return solverAPI.createEqualc(leftVariable, rightVariable, c);
+		case NOT_EQUAL:
+			return solverAPI.createNotEqualc(leftVariable, rightVariable, c);
+		case LESS:
+			return solverAPI.createLTc(leftVariable, rightVariable, c);
+		default:
+			return solverAPI.createLEc(leftVariable, rightVariable, c);
+		}
+	}
+
+	/**
+	 * Lowers a varchar atom: a column is compared with a literal or another
+	 * column, as bitvectors or as dictionary ranks.
+	 */
+	private SMTLibExpression lowerVarchar(int comparison, Column left,
+			String leftVarchar, Column right, String rightVarchar) {
+		if (dictionary != null) {
+			return lowerRanks(comparison, left, leftVarchar, right,
+					rightVarchar);
+		}
+		if (left == null && right == null) {
+			// left == null, right == null -> true
+			return solverAPI.createBooleanValue(true);
+		}
+
+		BitvectorVariable leftVariable = left == null ? createBitvectorString(leftVarchar)
+				: solverAPI.createBitvectorVariable(left,
+						getVarcharLength(left));
+		BitvectorVariable rightVariable = right == null ? createBitvectorString(rightVarchar)
+				: solverAPI.createBitvectorVariable(right,
+						getVarcharLength(right));
+		return compare(comparison, leftVariable, rightVariable);
+	}
+
+	/**
+	 * Encodes a varchar literal as a bitvector constant of
+	 * {@link Solver#BITS_PER_CHARACTER} bits per character.
+	 */
+	private BitvectorVariable createBitvectorString(String varchar) {
+		String bitVector;
+		if (solverAPI instanceof MathSatAPI) {
+			bitVector = Solver.toBinaryBitVector(varchar, Solver.CHARSET);
+		} else {
+			bitVector = Solver.toDecimalBitVector(varchar, Solver.CHARSET);
+		}
+		return solverAPI.createBitvectorString(null, bitVector,
+				varchar.length() * Solver.BITS_PER_CHARACTER);
+	}
+
+	/**
+	 * Encodes a varchar comparison as a comparison of dictionary ranks.
+	 */
+	private SMTLibExpression lowerRanks(int comparison, Column left,
+			String leftVarchar, Column right, String rightVarchar) {
+		if (left == null && right == null) {
+			// left == null, right == null -> true
+			return solverAPI.createBooleanValue(true);
+		}
+
+		if (left != null && right != null) {
+			IntVariable leftVariable = solverAPI.createRankVariable(left);
+			IntVariable rightVariable = solverAPI.createRankVariable(right);
+			if (comparison == LESS) {
+				// left < right <=> left <= right - 1
+				return solverAPI.createLEc(leftVariable, rightVariable,
+						solverAPI.createIntNum(null, -1));
+			}
+			return compare(comparison, leftVariable, rightVariable);
+		}
+
+		IntVariable leftVariable;
+		IntVariable rightVariable;
+		if (left != null) {
+			int rank = dictionary.getRank(rightVarchar);
+			leftVariable = solverAPI.createRankVariable(left);
+			rightVariable = solverAPI.createIntNum(null,
+					comparison == LESS ? rank - 1 : rank);
+		} else {
+			int rank = dictionary.getRank(leftVarchar);
+			leftVariable = solverAPI.createIntNum(null,
+					comparison == LESS ? rank + 1 : rank);
+			rightVariable = solverAPI.createRankVariable(right);
+		}
+		// a strict comparison of ranks is non-strict with the shifted rank
+		return compare(comparison == LESS ? LESS_OR_EQUAL : comparison,
+				leftVariable, rightVariable);
+	}
+
+	/**
+	 * Compares two integer terms; integer atoms are never strict.
+	 */
+	private SMTLibExpression compare(int comparison, IntVariable left,
+			IntVariable right) {
+		switch (comparison) {
+		case EQUAL:
+			return solverAPI.createEqual(left, right);
+		case NOT_EQUAL:
+			return solverAPI.createNotEqual(left, right);
+		default:
+			return solverAPI.createLE(left, right);
+		}
+	}
+
+	private SMTLibExpression compare(int comparison, RealVariable left,
+			RealVariable right) {
+		switch (comparison) {
+		case EQUAL:
+			return solverAPI.createEqual(left, right);
+		case NOT_EQUAL:
+			return solverAPI.createNotEqual(left, right);
+		case LESS:
+			return solverAPI.createLT(left, right);
+		default:
+			return solverAPI.createLE(left, right);
+		}
+	}
+
+	private SMTLibExpression compare(int comparison, BitvectorVariable left,
+			BitvectorVariable right) {
+		switch (comparison) {
+		case EQUAL:
+			return solverAPI.createEqual(left, right);
+		case NOT_EQUAL:
+			return solverAPI.createNotEqual(left, right);
+		case LESS:
+			return solverAPI.createLT(left, right);
+		default:
+			return solverAPI.createLE(left, right);
+		}
+	}
+
 	/**
 	 * Determine the length of a given Varchar-Column * BITS_PER_CHARACTER.
 	 * 
@@ -111,37 +623,17 @@ public class SMTExpressionConverter implements
 
 	@Override
 	public SMTLibExpression visit(And and) throws SolverException {
-		int arraySize = and.getNumberOfSubexpressions();
-		SMTLibExpression[] expr = new SMTLibExpression[arraySize];
-
-		for (int i = 0; i < arraySize; i++) {
-			SMTLibExpression temp = and.getSubexpressionAt(i).accept(this);
-			expr[i] = temp;
-		}
-		return solverAPI.createAND(expr);
+		return lower(Formula.of(and));
 	}
 
 	@Override
 	public SMTLibExpression visit(Or or) throws SolverException {
-		int arraySize = or.getNumberOfSubexpressions();
-		SMTLibExpression[] expr = new SMTLibExpression[arraySize];
-
-		for (int i = 0; i < arraySize; i++) {
-			expr[i] = or.getSubexpressionAt(i).accept(this);
-		}
-		return solverAPI.createOR(expr);
-
+		return lower(Formula.of(or));
 	}
 
 	@Override
 	public SMTLibExpression visit(Not not) throws SolverException {
-		int arraySize = not.getNumberOfSubexpressions();
-		SMTLibExpression[] expr = new SMTLibExpression[arraySize];
-
-		for (int i = 0; i < arraySize; i++) {
-			expr[i] = not.getSubexpressionAt(i).accept(this);
-		}
-		return solverAPI.createNOT(expr);
+		return lower(Formula.of(not));
 	}
 
 	@Override
@@ -163,565 +655,78 @@ public class SMTExpressionConverter implements
 	@Override
 	public SMTLibExpression visit(EqualDoubleComparison exp)
 			throws SolverException {
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-			RealVariable leftVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-
-			double constant = exp.getConstant();
-			RealVariable c = solverAPI.createRealNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createEqual(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI.createEqualc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerReal(EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(EqualIntegerComparison exp)
 			throws SolverException {
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-			IntVariable leftVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-
-			int constant = exp.getConstant();
-			IntVariable c = solverAPI.createIntNum(null, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createEqual(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI.createEqualc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerInteger(EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(EqualVarcharComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			String rightBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				rightBitVector = Solver.toBinaryBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			} else {
-				rightBitVector = Solver.toDecimalBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			}
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI.createBitvectorString(
-					null, rightBitVector, exp.getRightVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-
-			String leftBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				leftBitVector = Solver.toBinaryBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			} else {
-				leftBitVector = Solver.toDecimalBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			}
-
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			BitvectorVariable leftVariable = solverAPI.createBitvectorString(
-					null, leftBitVector, exp.getLeftVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			return solverAPI.createEqual(leftVariable, rightVariable);
-
-		} else {
-			// left == null, right == null -> true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerVarchar(EQUAL, exp.getLeft(), exp.getLeftVarchar(),
+				exp.getRight(), exp.getRightVarchar());
 	}
 
 	@Override
 	public SMTLibExpression visit(LessDoubleComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createLT(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-			RealVariable leftVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createLT(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-			double constant = exp.getConstant();
-			RealVariable c = solverAPI.createRealNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createLT(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI.createLTc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerReal(LESS, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(LessVarcharComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			String rightBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				rightBitVector = Solver.toBinaryBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			} else {
-				rightBitVector = Solver.toDecimalBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			}
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-
-			BitvectorVariable rightVariable = solverAPI.createBitvectorString(
-					null, rightBitVector, exp.getRightVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-
-			return solverAPI.createLT(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			String leftBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				leftBitVector = Solver.toBinaryBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			} else {
-				leftBitVector = Solver.toDecimalBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			}
-
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorString(
-					null, leftBitVector, exp.getLeftVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createLT(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			return solverAPI.createLT(leftVariable, rightVariable);
-
-		} else {
-			// left == null, right == null -> true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerVarchar(LESS, exp.getLeft(), exp.getLeftVarchar(),
+				exp.getRight(), exp.getRightVarchar());
 	}
 
 	@Override
 	public SMTLibExpression visit(LessOrEqualDoubleComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-			RealVariable leftVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-
-			double constant = exp.getConstant();
-			RealVariable c = solverAPI.createRealNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createLE(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI.createLEc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerReal(LESS_OR_EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(LessOrEqualIntegerComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-			IntVariable leftVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-
-			int constant = exp.getConstant();
-			IntVariable c = solverAPI.createIntNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createLE(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI.createLEc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerInteger(LESS_OR_EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(LessOrEqualVarcharComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			String rightBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				rightBitVector = Solver.toBinaryBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			} else {
-				rightBitVector = Solver.toDecimalBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			}
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI.createBitvectorString(
-					null, rightBitVector, exp.getRightVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			String leftBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				leftBitVector = Solver.toBinaryBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			} else {
-				leftBitVector = Solver.toDecimalBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			}
-
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			BitvectorVariable leftVariable = solverAPI.createBitvectorString(
-					null, leftBitVector, exp.getLeftVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-
-			return solverAPI.createLE(leftVariable, rightVariable);
-
-		} else {
-			// left == null, right == null -> true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerVarchar(LESS_OR_EQUAL, exp.getLeft(),
+				exp.getLeftVarchar(), exp.getRight(), exp.getRightVarchar());
 	}
 
 	@Override
 	public SMTLibExpression visit(NotEqualDoubleComparison exp)
 			throws SolverException {
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-			RealVariable leftVariable = solverAPI.createRealNum(null,
-					exp.getConstant());
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			RealVariable leftVariable = solverAPI
-					.createRealVariable(leftColumn);
-			RealVariable rightVariable = solverAPI
-					.createRealVariable(rightColumn);
-
-			double constant = exp.getConstant();
-			RealVariable c = solverAPI.createRealNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createNotEqual(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI
-						.createNotEqualc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerReal(NOT_EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(NotEqualIntegerComparison exp)
 			throws SolverException {
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-			IntVariable leftVariable = solverAPI.createIntNum(null,
-					exp.getConstant());
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			IntVariable leftVariable = solverAPI.createIntVariable(leftColumn);
-			IntVariable rightVariable = solverAPI
-					.createIntVariable(rightColumn);
-
-			int constant = exp.getConstant();
-			IntVariable c = solverAPI.createIntNum(rightColumn, constant);
-			SMTLibExpression expr = null;
-
-			if (constant == 0) {
-				expr = solverAPI.createNotEqual(leftVariable, rightVariable);
-			} else {
-				expr = solverAPI
-						.createNotEqualc(leftVariable, rightVariable, c);
-			}
-			return expr;
-
-		} else {
-			// left == null, right == null
-			// so: left = right + c == true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerInteger(NOT_EQUAL, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
 	}
 
 	@Override
 	public SMTLibExpression visit(NotEqualVarcharComparison exp)
 			throws SolverException {
-
-		if (exp.getRight() == null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			String rightBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				rightBitVector = Solver.toBinaryBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			} else {
-				rightBitVector = Solver.toDecimalBitVector(
-						exp.getRightVarchar(), Solver.CHARSET);
-			}
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI.createBitvectorString(
-					null, rightBitVector, exp.getRightVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() == null) {
-			Column rightColumn = exp.getRight();
-			String leftBitVector = null;
-
-			if (solverAPI instanceof MathSatAPI) {
-				leftBitVector = Solver.toBinaryBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			} else {
-				leftBitVector = Solver.toDecimalBitVector(exp.getLeftVarchar(),
-						Solver.CHARSET);
-			}
-
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			BitvectorVariable leftVariable = solverAPI.createBitvectorString(
-					null, leftBitVector, exp.getLeftVarchar().length()
-							* Solver.BITS_PER_CHARACTER);
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else if (exp.getRight() != null && exp.getLeft() != null) {
-			Column leftColumn = exp.getLeft();
-			Column rightColumn = exp.getRight();
-
-			BitvectorVariable leftVariable = solverAPI.createBitvectorVariable(
-					leftColumn, getVarcharLength(leftColumn));
-			BitvectorVariable rightVariable = solverAPI
-					.createBitvectorVariable(rightColumn,
-							getVarcharLength(rightColumn));
-			return solverAPI.createNotEqual(leftVariable, rightVariable);
-
-		} else {
-			// left == null, right == null -> true
-			return solverAPI.createBooleanValue(true);
-		}
+		return lowerVarchar(NOT_EQUAL, exp.getLeft(), exp.getLeftVarchar(),
+				exp.getRight(), exp.getRightVarchar());
 	}
 
 	@Override
@@ -0,0 +1,385 @@
+package iqcache.solver;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import iqcache.common.Preconditions;
+import iqcache.query.column.Column;
+import iqcache.query.column.VarcharType;
+import iqcache.solver.rewrite.Formula;
+
+/**
+ * Writes a {@link Formula} as one SMT-LIB 2 script: a declaration per column
+ * and a single assertion. A solver parses the script in one call instead of
+ * building the formula term by term, which saves several native calls per
+ * node for large formulas.
+ *
+ * The script has the semantics of the {@link SMTExpressionConverter}:
+ * integer and real atoms compare <code>Int</code> and <code>Real</code>
+ * constants, varchar atoms compare bitvectors of
+ * {@link VarcharType#getLength()} * {@link Solver#BITS_PER_CHARACTER} bits
+ * unsigned, and the shorter operand is extended with zero bits on the right.
+ * A node that is used more than once is bound once by a <code>let</code>.
+ *
+ * The script is written into a char buffer that is reused for every formula,
+ * so an emitter must not be shared between threads.
+ *
+ * @author dinh
+ */
+public final class SMTLib2Emitter {
+
+	/**
+	 * The number of nodes from which the converter submits a formula as a
+	 * script.
+	 */
+	public static final int DEFAULT_THRESHOLD = 1000;
+
+	private static final String BOOL = "Bool";
+	private static final String INT = "Int";
+	private static final String REAL = "Real";
+
+	private static final BigInteger TWO = BigInteger.valueOf(2);
+
+	private char[] buffer = new char[4096];
+	private int length = 0;
+
+	/**
+	 * Writes the script of a formula.
+	 *
+	 * @param formula
+	 *            the formula
+	 * @return The script or <code>null</code> if the formula cannot be
+	 *         written, e.g. because a column name cannot be quoted, a column
+	 *         is compared with values of different sorts or a constant is
+	 *         not finite.
+	 */
+	public String emit(Formula formula) {
+		Preconditions.checkNotNull(formula);
+		String[] sorts = sorts(formula);
+		if (sorts == null) {
+			return null;
+		}
+
+		length = 0;
+		for (int column = 0; column < sorts.length; column++) {
+			append("(declare-fun ");
+			appendColumn(formula, column);
+			append(" () ").append(sorts[column]).append(")\n");
+		}
+
+		append("(assert ");
+		boolean[] bound = new boolean[formula.size()];
+		int lets = 0;
+		for (int node = 0; node < formula.size(); node++) {
+			if (formula.getUses(node) < 2) {
+				continue;
+			}
+			append("(let ((").append("$").append(node).append(' ');
+			appendNode(formula, node, bound);
+			append(")) ");
+			bound[node] = true;
+			lets++;
+		}
+		appendNode(formula, formula.getRoot(), bound);
+		for (int i = 0; i < lets; i++) {
+			append(')');
+		}
+		append(")\n");
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Returns the capacity of the buffer.
+	 *
+	 * @return The number of chars the buffer holds without growing.
+	 */
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Formats a finite double as an SMT-LIB decimal, e.g. <code>1.5</code>
+	 * or <code>-0.25</code>, without an exponent.
+	 *
+	 * @param value
+	 *            the value
+	 * @return The decimal, with at least one digit after the point.
+	 */
+	public static String toDecimal(double value) {
+		Preconditions.checkArgument(!Double.isNaN(value)
+				&& !Double.isInfinite(value), "not finite");
+		String decimal = BigDecimal.valueOf(value).toPlainString();
+		return decimal.indexOf('.') < 0 ? decimal + ".0" : decimal;
+	}
+
+	/**
+	 * Determines the sort of every column, or returns <code>null</code> if
+	 * the formula cannot be written.
+	 */
+	private static String[] sorts(Formula formula) {
+		String[] sorts = new String[formula.getColumnCount()];
+		for (int node = 0; node < formula.size(); node++) {
+			int op = formula.getOp(node);
+			if (!formula.isAtom(node) || op == Formula.TRUE
+					|| op == Formula.FALSE) {
+				continue;
+			}
+			String sort;
+			if (op == Formula.BOOLEAN || op == Formula.NEGATED_BOOLEAN) {
+				sort = BOOL;
+			} else if (op <= Formula.INTEGER_LESS_OR_EQUAL) {
+				sort = INT;
+			} else if (op <= Formula.REAL_LESS_OR_EQUAL) {
+				double constant = formula.getConstant(node);
+				if (Double.isNaN(constant) || Double.isInfinite(constant)) {
+					return null;
+				}
+				sort = REAL;
+			} else {
+				int literal = formula.getLiteral(node);
+				if (literal != Formula.NONE
+						&& formula.getLiteralValue(literal).isEmpty()) {
+					// a bitvector has at least one bit
+					return null;
+				}
+				sort = null;
+			}
+
+			for (int column : new int[] { formula.getLeft(node),
+					formula.getRight(node) }) {
+				if (column == Formula.NONE) {
+					continue;
+				}
+				String name = Solver.getVariableName(formula
+						.getColumn(column));
+				if (name.indexOf('|') >= 0 || name.indexOf('\\') >= 0) {
+					return null;
+				}
+				String columnSort = sort;
+				if (columnSort == null) {
+					int width = getWidth(formula.getColumn(column));
+					if (width <= 0) {
+						return null;
+					}
+					columnSort = "(_ BitVec " + width + ")";
+				}
+				if (sorts[column] == null) {
+					sorts[column] = columnSort;
+				} else if (!sorts[column].equals(columnSort)) {
+					return null;
+				}
+			}
+		}
+		return sorts;
+	}
+
+	private static int getWidth(Column col) {
+		if (!(col.getType() instanceof VarcharType)) {
+			return -1;
+		}
+		return ((VarcharType) col.getType()).getLength()
+				* Solver.BITS_PER_CHARACTER;
+	}
+
+	private void appendNode(Formula formula, int node, boolean[] bound) {
+		if (bound[node]) {
+			append('$').append(node);
+			return;
+		}
+
+		int op = formula.getOp(node);
+		switch (op) {
+		case Formula.TRUE:
+			append("true");
+			return;
+		case Formula.FALSE:
+			append("false");
+			return;
+		case Formula.AND:
+		case Formula.OR:
+			int n = formula.getOperandCount(node);
+			if (n == 0) {
+				append(op == Formula.AND ? "true" : "false");
+			} else if (n == 1) {
+				appendNode(formula, formula.getOperand(node, 0), bound);
+			} else {
+				append(op == Formula.AND ? "(and" : "(or");
+				for (int i = 0; i < n; i++) {
+					append(' ');
+					appendNode(formula, formula.getOperand(node, i), bound);
+				}
+				append(')');
+			}
+			return;
+		case Formula.NOT:
+			append("(not ");
+			appendNode(formula, formula.getOperand(node, 0), bound);
+			append(')');
+			return;
+		case Formula.BOOLEAN:
+			appendColumn(formula, formula.getLeft(node));
+			return;
+		case Formula.NEGATED_BOOLEAN:
+			append("(not ");
+			appendColumn(formula, formula.getLeft(node));
+			append(')');
+			return;
+		default:
+			break;
+		}
+
+		int left = formula.getLeft(node);
+		int right = formula.getRight(node);
+		if (left == Formula.NONE && right == Formula.NONE) {
+			// left == null, right == null -> true
+			append("true");
+		} else if (op >= Formula.VARCHAR_EQUAL) {
+			appendVarchar(formula, node, op, left, right);
+		} else {
+			appendArithmetic(formula, node, op, left, right);
+		}
+	}
+
+	/**
+	 * Writes <code>left op c</code>, <code>c op right</code> or
+	 * <code>left op right + c</code>.
+	 */
+	private void appendArithmetic(Formula formula, int node, int op,
+			int left, int right) {
+		boolean integer = op <= Formula.INTEGER_LESS_OR_EQUAL;
+		boolean negated = op == Formula.INTEGER_NOT_EQUAL
+				|| op == Formula.REAL_NOT_EQUAL;
+		double constant = formula.getConstant(node);
+
+		if (negated) {
+			append("(not ");
+		}
+		append('(').append(operator(op)).append(' ');
+		if (left == Formula.NONE) {
+			appendNumber(constant, integer);
+		} else {
+			appendColumn(formula, left);
+		}
+		append(' ');
+		if (right == Formula.NONE) {
+			appendNumber(constant, integer);
+		} else if (left == Formula.NONE || constant == 0) {
+			appendColumn(formula, right);
+		} else {
+			append("(+ ");
+			appendColumn(formula, right);
+			append(' ');
+			appendNumber(constant, integer);
+			append(')');
+		}
+		append(')');
+		if (negated) {
+			append(')');
+		}
+	}
+
+	/**
+	 * Writes the comparison of two bitvectors; a literal is encoded like
+	 * {@link Solver#toDecimalBitVector(String, java.nio.charset.Charset)}.
+	 */
+	private void appendVarchar(Formula formula, int node, int op, int left,
+			int right) {
+		int literal = formula.getLiteral(node);
+		String varchar = literal == Formula.NONE ? null : formula
+				.getLiteralValue(literal);
+		int leftWidth = left == Formula.NONE ? varchar.length()
+				* Solver.BITS_PER_CHARACTER : getWidth(formula.getColumn(left));
+		int rightWidth = right == Formula.NONE ? varchar.length()
+				* Solver.BITS_PER_CHARACTER : getWidth(formula
+				.getColumn(right));
+		int width = Math.max(leftWidth, rightWidth);
+
+		boolean negated = op == Formula.VARCHAR_NOT_EQUAL;
+		if (negated) {
+			append("(not ");
+		}
+		append('(').append(operator(op)).append(' ');
+		appendBitvector(formula, left, varchar, leftWidth, width);
+		append(' ');
+		appendBitvector(formula, right, varchar, rightWidth, width);
+		append(')');
+		if (negated) {
+			append(')');
+		}
+	}
+
+	private void appendBitvector(Formula formula, int column, String varchar,
+			int width, int extendedWidth) {
+		if (width < extendedWidth) {
+			append("(concat ");
+		}
+		if (column == Formula.NONE) {
+			// the numeral is reduced to the width like a solver does
+			BigInteger value = new BigInteger(Solver.toDecimalBitVector(
+					varchar, Solver.CHARSET)).mod(TWO.pow(width));
+			append("(_ bv").append(value.toString()).append(' ').append(width)
+					.append(')');
+		} else {
+			appendColumn(formula, column);
+		}
+		if (width < extendedWidth) {
+			append(" (_ bv0 ").append(extendedWidth - width).append("))");
+		}
+	}
+
+	private static String operator(int op) {
+		switch (op) {
+		case Formula.REAL_LESS:
+			return "<";
+		case Formula.INTEGER_LESS_OR_EQUAL:
+		case Formula.REAL_LESS_OR_EQUAL:
+			return "<=";
+		case Formula.VARCHAR_LESS:
+			return "bvult";
+		case Formula.VARCHAR_LESS_OR_EQUAL:
+			return "bvule";
+		default:
+			return "=";
+		}
+	}
+
+	private void appendNumber(double value, boolean integer) {
+		String number = integer ? Long.toString((long) value) : toDecimal(value);
+		if (value < 0) {
+			// SMT-LIB numerals are not signed
+			append("(- ").append(number.substring(1)).append(')');
+		} else {
+			append(number);
+		}
+	}
+
+	private void appendColumn(Formula formula, int column) {
+		append('|').append(Solver.getVariableName(formula.getColumn(column)))
+				.append('|');
+	}
+
+	private SMTLib2Emitter append(String s) {
+		ensureCapacity(s.length());
+		s.getChars(0, s.length(), buffer, length);
+		length += s.length();
+		return this;
+	}
+
+	private SMTLib2Emitter append(int i) {
+		return append(Integer.toString(i));
+	}
+
+	private SMTLib2Emitter append(char c) {
+		ensureCapacity(1);
+		buffer[length++] = c;
+		return this;
+	}
+
+	private void ensureCapacity(int n) {
+		if (length + n > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length
+					+ n));
+		}
+	}
+}
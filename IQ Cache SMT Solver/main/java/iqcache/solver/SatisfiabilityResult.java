@@ -0,0 +1,35 @@
+package iqcache.solver;
+
+/**
+ * The result of a satisfiability check that may run out of time.
+ * 
+ * @author dinh
+ */
+public enum SatisfiabilityResult {
+
+	/**
+	 * The expression is satisfiable.
+	 */
+	SATISFIABLE,
+
+	/**
+	 * The expression is unsatisfiable.
+	 */
+	UNSATISFIABLE,
+
+	/**
+	 * The check did not finish before its deadline.
+	 */
+	UNKNOWN;
+
+	/**
+	 * Returns the result of a finished check.
+	 * 
+	 * @param satisfiable
+	 *            the satisfiability of the expression
+	 * @return {@link #SATISFIABLE} or {@link #UNSATISFIABLE}.
+	 */
+	public static SatisfiabilityResult valueOf(boolean satisfiable) {
+		return satisfiable ? SATISFIABLE : UNSATISFIABLE;
+	}
+}
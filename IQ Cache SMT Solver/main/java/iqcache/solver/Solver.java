@@ -1,13 +1,17 @@
 package iqcache.solver;
 
-import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
+import iqcache.expression.node.And;
 import iqcache.query.column.Column;
 import iqcache.satisfiability.SatisfiabilityChecker;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.rewrite.PassManager;
 
 /**
  * Abstract solver.
@@ -30,6 +34,23 @@ public abstract class Solver extends SatisfiabilityChecker {
 	 */
 	protected boolean isOpen;
 
+	/**
+	 * The region formula pinned by {@link #pinRegion(Expression)} or
+	 * <code>null</code> if there is none.
+	 */
+	protected Expression region;
+
+	/**
+	 * <code>true</code> iff varchar comparisons are encoded with a
+	 * {@link VarcharDictionary} instead of bitvectors.
+	 */
+	protected boolean dictionaryEncoding = false;
+
+	/**
+	 * The rewrites applied to every expression before it is converted.
+	 */
+	protected final PassManager passes = PassManager.standard();
+
 	/**
 	 * Constructor of a SMT Solver.
 	 */
@@ -49,6 +70,19 @@ public abstract class Solver extends SatisfiabilityChecker {
 		return col.getTableName().name + "." + col.getName().name;
 	}
 
+	/**
+	 * This method returns the name of the dictionary rank variable of a
+	 * varchar {@link Column}, which differs from the name of its bitvector
+	 * variable.
+	 * 
+	 * @param col
+	 *            {@link Column}, which rank variable should be named
+	 * @return The name of the rank variable.
+	 */
+	public static String getRankVariableName(Column col) {
+		return getVariableName(col) + "#rank";
+	}
+
 	/**
 	 * This method converts a given String into a bitvector representation for
 	 * MathSAT.
@@ -60,30 +94,7 @@ public abstract class Solver extends SatisfiabilityChecker {
 	 * @return The bitvector representation of the given String s.
 	 */
 	public static String toBinaryBitVector(String s, Charset charset) {
-		Preconditions.checkNotNull(s);
-		Preconditions.checkNotNull(charset);
-
-		final StringBuffer sb = new StringBuffer();
-		final String zero = "0";
-
-		final byte[] bytes = s.getBytes(charset);
-		for (final byte b : bytes) {
-			String bitrep = Integer.toBinaryString(b);
-			if (bitrep.length() < BITS_PER_CHARACTER) {
-				// pad the byte
-				final int pad = BITS_PER_CHARACTER - bitrep.length();
-				for (int i = 0; i < pad; i++) {
-					sb.append(zero);
-				}
-			} else if (bitrep.length() > BITS_PER_CHARACTER) {
-				// cut off the bit representation for umlauts at the beginning
-				// (because of the two's complement)
-				bitrep = String.valueOf(bitrep.toCharArray(),
-						BIT_CUT_LENGTH_FOR_UMLAUTS, BITS_PER_CHARACTER / 2);
-			}
-			sb.append(bitrep);
-		}
-		return sb.toString();
+		return BitvectorEncoder.toBinary(s, charset);
 	}
 
 	/**
@@ -97,27 +108,169 @@ public abstract class Solver extends SatisfiabilityChecker {
 	 * @return The bitvector representation of the given String s.
 	 */
 	public static String toDecimalBitVector(String s, Charset charset) {
-		final String zero = "0";
-		String string = toBinaryBitVector(s, charset);
-		BigInteger bInteger = new BigInteger(zero);
-		
-		for (int i = string.length() - 1; i >= 0; i--) {
-			String temp = "" + string.charAt(i);
-			BigInteger tempInt = new BigInteger(temp);
-			
-			// calculate decimal value
-			BigInteger pow = BigInteger.valueOf(2).pow(
-					(string.length() - i) - 1);
-			BigInteger bInt = tempInt.multiply(pow);
-			bInteger = bInteger.add(bInt);
-		}
-		return bInteger.toString();
+		return BitvectorEncoder.toDecimal(s, charset);
 	}
 
 	@Override
 	public abstract boolean isSatisfiable(Expression expression)
 			throws SatisfiabilityException;
 
+	/**
+	 * Determine the satisfiability of several expressions at once.
+	 * 
+	 * This implementation checks the expressions one after the other;
+	 * incremental solvers share one context between them.
+	 * 
+	 * @param expressions
+	 *            the expressions to check
+	 * @return A {@link BitSet} whose bit <code>i</code> is set iff the
+	 *         <code>i</code>-th expression is satisfiable.
+	 * @throws SatisfiabilityException
+	 *             if a check fails.
+	 */
+	public BitSet isSatisfiableBatch(List<Expression> expressions)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expressions);
+		BitSet result = new BitSet(expressions.size());
+		for (int i = 0; i < expressions.size(); i++) {
+			if (isSatisfiable(expressions.get(i))) {
+				result.set(i);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determine if an expression is satisfiable within a time limit. When the
+	 * deadline passes, the running check is stopped via {@link #interrupt()};
+	 * a solver that cannot be interrupted finishes its check late.
+	 * 
+	 * @param expression
+	 *            the expression to check
+	 * @param timeout
+	 *            the maximum time of the check
+	 * @param unit
+	 *            the unit of <code>timeout</code>
+	 * @return {@link SatisfiabilityResult#UNKNOWN} if the deadline passed
+	 *         before the check finished, the result of the check otherwise.
+	 * @throws SatisfiabilityException
+	 *             if the check fails for another reason than the deadline.
+	 */
+	public SatisfiabilityResult isSatisfiable(Expression expression,
+			long timeout, TimeUnit unit) throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		Preconditions.checkNotNull(unit);
+		long timeoutNanos = unit.toNanos(timeout);
+		if (timeoutNanos <= 0) {
+			return SatisfiabilityResult.UNKNOWN;
+		}
+
+		Watchdog watchdog = new Watchdog(this, timeoutNanos);
+		boolean satisfiable;
+		try {
+			satisfiable = isSatisfiable(expression);
+		} catch (SatisfiabilityException e) {
+			if (watchdog.finish()) {
+				return SatisfiabilityResult.UNKNOWN;
+			}
+			throw e;
+		} finally {
+			watchdog.finish();
+		}
+		// a result that arrived in spite of the interrupt is still valid
+		return SatisfiabilityResult.valueOf(satisfiable);
+	}
+
+	/**
+	 * Selects the encoding of varchar comparisons: bitvectors (the default)
+	 * or the integer ranks of an order-preserving {@link VarcharDictionary} of
+	 * each checked formula, which turns string comparisons into small integer
+	 * arithmetic. Regions (see {@link #pinRegion(Expression)}) are always
+	 * encoded with bitvectors, because the region and its candidates would
+	 * need one common dictionary.
+	 * 
+	 * @param dictionaryEncoding
+	 *            <code>true</code> for the dictionary encoding
+	 */
+	public void setDictionaryEncoding(boolean dictionaryEncoding) {
+		this.dictionaryEncoding = dictionaryEncoding;
+	}
+
+	/**
+	 * Pins a region formula, e.g. the predicate of a cached region, against
+	 * which many candidate expressions are checked with
+	 * {@link #isSatisfiableInRegion(Expression)}. A previously pinned region
+	 * is replaced.
+	 * 
+	 * This implementation only remembers the region; incremental solvers
+	 * assert it once and keep its terms between the checks.
+	 * 
+	 * @param region
+	 *            the region formula
+	 * @throws SatisfiabilityException
+	 *             if the region formula cannot be asserted.
+	 */
+	public void pinRegion(Expression region) throws SatisfiabilityException {
+		Preconditions.checkNotNull(region);
+		this.region = region;
+	}
+
+	/**
+	 * Determine if a candidate expression overlaps the pinned region, i.e. if
+	 * the conjunction of the region formula and the candidate is satisfiable.
+	 * 
+	 * This implementation checks the conjunction from scratch.
+	 * 
+	 * @param candidate
+	 *            the candidate expression
+	 * @return <code>true</code> iff the candidate overlaps the region.
+	 * @throws SatisfiabilityException
+	 *             if the check fails.
+	 * @throws IllegalStateException
+	 *             iff no region is pinned
+	 */
+	public boolean isSatisfiableInRegion(Expression candidate)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(candidate);
+		Preconditions.checkState(region != null, "no region pinned");
+		return isSatisfiable(new And(region, candidate));
+	}
+
+	/**
+	 * Releases the pinned region.
+	 * 
+	 * @throws SatisfiabilityException
+	 *             if the region cannot be released.
+	 */
+	public void releaseRegion() throws SatisfiabilityException {
+		this.region = null;
+	}
+
+	/**
+	 * Asks a running check of this solver to stop as soon as possible; the
+	 * interrupted check fails with a {@link SatisfiabilityException}. This
+	 * method may be called from any thread and has no effect if no check is
+	 * running.
+	 * 
+	 * This implementation does nothing.
+	 */
+	public void interrupt() {
+		// not supported
+	}
+
+	/**
+	 * Releases the native context/environment of this solver, e.g. before
+	 * the solver is discarded. A later check opens a new one.
+	 * 
+	 * @throws SolverException
+	 *             if closing the solver fails.
+	 */
+	public void close() throws SolverException {
+		if (isOpen) {
+			closeSolver();
+		}
+	}
+
 	/**
 	 * This method resets the Solver.
 	 * 
@@ -19,6 +19,15 @@ public abstract class SolverAPI {
 	protected SolverAPI() {
 	}
 
+	/**
+	 * Keeps the native term of an expression alive until the context is
+	 * recycled, so that it can be used as the operand of several terms.
+	 * 
+	 * @param expr
+	 *            the expression
+	 */
+	protected abstract void retain(SMTLibExpression expr);
+
 	/**
 	 * This method creates a variable of the type bool.
 	 * 
@@ -37,6 +46,16 @@ public abstract class SolverAPI {
 	 */
 	protected abstract IntVariable createIntVariable(Column col);
 
+	/**
+	 * This method creates the int variable of the dictionary rank of a
+	 * varchar column (see {@link VarcharDictionary}).
+	 * 
+	 * @param col
+	 *            the varchar {@link Column} of the variable
+	 * @return Returns a variable of type int.
+	 */
+	protected abstract IntVariable createRankVariable(Column col);
+
 	/**
 	 * This method creates a variable of the type int.
 	 * 
@@ -403,6 +422,19 @@ public abstract class SolverAPI {
 	 */
 	protected abstract String toSMTLib2(SMTLibExpression expr);
 
+	/**
+	 * This method parses a script in SMTLib 2.0 format with one assertion,
+	 * e.g. written by a {@link SMTLib2Emitter}, in a single call.
+	 * 
+	 * @param script
+	 *            declarations and one assertion
+	 * @return The asserted formula.
+	 * @throws SolverException
+	 *             iff the solver rejects the script
+	 */
+	protected abstract SMTLibExpression parseSMTLib2(String script)
+			throws SolverException;
+
 	/**
 	 * This method extends a bitvector with a zero bitvector (on the right side)
 	 * with a given size.
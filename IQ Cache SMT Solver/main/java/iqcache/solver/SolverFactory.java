@@ -0,0 +1,18 @@
+package iqcache.solver;
+
+/**
+ * Creates instances of a {@link Solver}, e.g. one per worker thread.
+ *
+ * @author dinh
+ */
+public interface SolverFactory {
+
+	/**
+	 * Creates a new solver with its own context/environment.
+	 *
+	 * @return A new solver.
+	 * @throws SolverException
+	 *             if the solver cannot be created.
+	 */
+	Solver createSolver() throws SolverException;
+}
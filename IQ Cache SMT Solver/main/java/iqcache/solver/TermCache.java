@@ -0,0 +1,265 @@
+package iqcache.solver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+
+/**
+ * Caches the native terms of column variables and constants of one solver
+ * context/environment, so that a column or constant that occurs again is not
+ * declared or created again through JNI. The keyed terms stay alive as long
+ * as the context; they are released when the context is recycled. Pinned
+ * terms are released when the check that pinned them has completed.
+ *
+ * Cached terms must not be disposed by their users; see
+ * {@link #isCached(Object)}. Terms that are values, e.g. the <code>long</code>
+ * handles of MathSAT, are compared by equality; terms that are wrappers of a
+ * native reference, e.g. the <code>Expr</code> of Z3, by
+ * identity, see {@link #byIdentity()}.
+ *
+ * @author dinh
+ *
+ * @param <T>
+ *            the type of a native term
+ */
+public final class TermCache<T> {
+
+	public static final int BOOL_VARIABLE = 0;
+	public static final int INT_VARIABLE = 1;
+	public static final int REAL_VARIABLE = 2;
+	public static final int BITVECTOR_VARIABLE = 3;
+	public static final int INT_NUM = 4;
+	public static final int REAL_NUM = 5;
+	public static final int BITVECTOR_STRING = 6;
+	public static final int RANK_VARIABLE = 7;
+
+	private final Map<Key, T> terms = new HashMap<Key, T>();
+	private final Map<T, Boolean> cached;
+	private final Map<T, Boolean> pinned;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructor of a cache of terms that are compared by equality, e.g.
+	 * boxed native handles.
+	 */
+	public TermCache() {
+		this(false);
+	}
+
+	private TermCache(boolean identity) {
+		if (identity) {
+			this.cached = new IdentityHashMap<T, Boolean>();
+			this.pinned = new IdentityHashMap<T, Boolean>();
+		} else {
+			this.cached = new HashMap<T, Boolean>();
+			this.pinned = new HashMap<T, Boolean>();
+		}
+	}
+
+	/**
+	 * Creates a cache of terms that are compared by identity, e.g. wrappers
+	 * whose {@link Object#equals(Object)} calls into the native library.
+	 *
+	 * @param <T>
+	 *            the type of a native term
+	 * @return The cache.
+	 */
+	public static <T> TermCache<T> byIdentity() {
+		return new TermCache<T>(true);
+	}
+
+	/**
+	 * Looks up a term.
+	 *
+	 * @param kind
+	 *            the kind of the term, e.g. {@link #INT_VARIABLE}
+	 * @param id
+	 *            the {@link iqcache.query.column.Column} of a variable, the
+	 *            value of a constant
+	 * @param width
+	 *            the width of a bitvector, 0 otherwise
+	 * @return The cached term or <code>null</code> if there is none.
+	 */
+	public T get(int kind, Object id, int width) {
+		T term = terms.get(new Key(kind, id, width));
+		if (term == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return term;
+	}
+
+	/**
+	 * Caches a term.
+	 *
+	 * @param kind
+	 *            the kind of the term, e.g. {@link #INT_VARIABLE}
+	 * @param id
+	 *            the {@link iqcache.query.column.Column} of a variable, the
+	 *            value of a constant
+	 * @param width
+	 *            the width of a bitvector, 0 otherwise
+	 * @param term
+	 *            the native term
+	 * @return The given term.
+	 */
+	public T put(int kind, Object id, int width, T term) {
+		Preconditions.checkNotNull(term);
+		T previous = terms.put(new Key(kind, id, width), term);
+		if (previous != null) {
+			cached.remove(previous);
+		}
+		cached.put(term, Boolean.TRUE);
+		// a keyed term lives as long as the context
+		pinned.remove(term);
+		return term;
+	}
+
+	/**
+	 * Keeps a term alive without a key, e.g. a subformula that occurs in
+	 * several formulas of a check, until {@link #unpin()}. A term that is
+	 * already cached stays cached.
+	 *
+	 * @param term
+	 *            the native term
+	 * @return The given term.
+	 */
+	public T pin(T term) {
+		Preconditions.checkNotNull(term);
+		if (!cached.containsKey(term)) {
+			cached.put(term, Boolean.TRUE);
+			pinned.put(term, Boolean.TRUE);
+		}
+		return term;
+	}
+
+	/**
+	 * Forgets the pinned terms and returns them, e.g. to release them when
+	 * the check that shared them has completed, so the pinned terms do not
+	 * accumulate until the context is recycled. The keyed terms stay cached.
+	 *
+	 * @return The pinned terms, now owned by the caller.
+	 */
+	public List<T> unpin() {
+		List<T> unpinned = new ArrayList<T>(pinned.keySet());
+		for (T term : unpinned) {
+			cached.remove(term);
+		}
+		pinned.clear();
+		return unpinned;
+	}
+
+	/**
+	 * Determine if a term is owned by this cache.
+	 *
+	 * @param term
+	 *            a native term
+	 * @return <code>true</code> iff the term is cached and must not be
+	 *         disposed by its user.
+	 */
+	public boolean isCached(T term) {
+		return cached.containsKey(term);
+	}
+
+	/**
+	 * Returns all cached terms, e.g. to release them.
+	 *
+	 * @return The cached terms.
+	 */
+	public Collection<T> terms() {
+		return terms.values();
+	}
+
+	/**
+	 * Forgets all terms and returns the ones owned by this cache, keyed and
+	 * pinned, e.g. to release them with their context.
+	 *
+	 * @return The owned terms.
+	 */
+	public List<T> drain() {
+		List<T> owned = new ArrayList<T>(cached.keySet());
+		clear();
+		return owned;
+	}
+
+	/**
+	 * Forgets all terms. Must be called when the context/environment of the
+	 * terms is recycled.
+	 */
+	public void clear() {
+		terms.clear();
+		cached.clear();
+		pinned.clear();
+	}
+
+	/**
+	 * Returns the number of cached terms.
+	 *
+	 * @return The number of terms.
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Returns the number of pinned terms.
+	 *
+	 * @return The number of terms pinned since the last {@link #unpin()}.
+	 */
+	public int getPinned() {
+		return pinned.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a term.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no term.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	private static final class Key {
+		private final int kind;
+		private final Object id;
+		private final int width;
+
+		Key(int kind, Object id, int width) {
+			this.kind = kind;
+			this.id = id;
+			this.width = width;
+		}
+
+		@Override
+		public int hashCode() {
+			return (kind * 31 + width) * 31 + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return kind == other.kind && width == other.width
+					&& id.equals(other.id);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package iqcache.solver;
+
+/**
+ * An {@link UnsupportedExpressionException} signals that a Java-side decision
+ * procedure met an expression it cannot decide exactly, so the check has to be
+ * handed to a native solver.
+ *
+ * @author dinh
+ */
+public class UnsupportedExpressionException extends SolverException {
+
+	private static final long serialVersionUID = 4207311486610928519L;
+
+	/**
+	 * Constructor
+	 *
+	 * @param message
+	 *            error message
+	 */
+	public UnsupportedExpressionException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,307 @@
+package iqcache.solver;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.rewrite.Formula;
+
+/**
+ * An order-preserving dictionary of the varchar literals of one formula. Every
+ * literal is mapped to an integer rank, in the lexicographic order of
+ * {@link String#compareTo(String)}, so that comparisons of varchar columns
+ * become comparisons of small integers.
+ *
+ * Between two neighbouring literals, below the first and above the last one,
+ * the dictionary leaves a gap of one rank per varchar column of the formula,
+ * so that the columns can take distinct, ordered values that are none of the
+ * literals. A gap that contains no string at all, i.e. between a literal and
+ * the same literal followed by <code>'\u0000'</code> or below the empty
+ * string, gets no ranks. The lengths of the varchar columns are not encoded.
+ *
+ * @author dinh
+ */
+public final class VarcharDictionary {
+
+	private final Map<String, Integer> ranks;
+	private final Set<Column> columns;
+	private final int lowestRank;
+	private final int highestRank;
+
+	private VarcharDictionary(Set<String> literals, Set<Column> columns) {
+		this.ranks = new HashMap<String, Integer>();
+		this.columns = Collections.unmodifiableSet(columns);
+
+		int gap = Math.max(1, columns.size());
+		int rank = 0;
+		String previous = null;
+		for (String literal : literals) {
+			if (previous == null) {
+				if (!literal.isEmpty()) {
+					rank += gap;
+				}
+			} else if (literal.equals(previous + '\u0000')) {
+				rank++;
+			} else {
+				rank += gap + 1;
+			}
+			ranks.put(literal, rank);
+			previous = literal;
+		}
+		this.lowestRank = 0;
+		this.highestRank = previous == null ? gap - 1 : rank + gap;
+	}
+
+	/**
+	 * Collects the varchar literals and columns of a formula.
+	 *
+	 * @param expression
+	 *            the formula
+	 * @return The dictionary of the formula.
+	 */
+	public static VarcharDictionary of(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		Collector collector = new Collector();
+		expression.accept(collector);
+		return new VarcharDictionary(collector.literals, collector.columns);
+	}
+
+	/**
+	 * Collects the varchar literals and columns of a formula that is already
+	 * lowered to a {@link Formula}.
+	 *
+	 * @param formula
+	 *            the formula
+	 * @return The dictionary of the formula.
+	 */
+	public static VarcharDictionary of(Formula formula) {
+		Preconditions.checkNotNull(formula);
+		Set<String> literals = new TreeSet<String>();
+		Set<Column> columns = new LinkedHashSet<Column>();
+		for (int node = 0; node < formula.size(); node++) {
+			int op = formula.getOp(node);
+			if (op < Formula.VARCHAR_EQUAL || op > Formula.VARCHAR_LESS_OR_EQUAL) {
+				continue;
+			}
+			if (formula.getLeft(node) != Formula.NONE) {
+				columns.add(formula.getColumn(formula.getLeft(node)));
+			}
+			if (formula.getRight(node) != Formula.NONE) {
+				columns.add(formula.getColumn(formula.getRight(node)));
+			}
+			if (formula.getLiteral(node) != Formula.NONE) {
+				literals.add(formula.getLiteralValue(formula.getLiteral(node)));
+			}
+		}
+		return new VarcharDictionary(literals, columns);
+	}
+
+	/**
+	 * Returns the rank of a literal of the formula.
+	 *
+	 * @param literal
+	 *            a varchar literal of the formula
+	 * @return The rank of the literal.
+	 */
+	public int getRank(String literal) {
+		Integer rank = ranks.get(Preconditions.checkNotNull(literal));
+		Preconditions.checkArgument(rank != null, "unknown literal");
+		return rank;
+	}
+
+	/**
+	 * Returns the varchar columns of the formula.
+	 *
+	 * @return The columns in the order of their first occurrence.
+	 */
+	public Set<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the smallest rank a column may take.
+	 *
+	 * @return The lowest rank.
+	 */
+	public int getLowestRank() {
+		return lowestRank;
+	}
+
+	/**
+	 * Returns the largest rank a column may take.
+	 *
+	 * @return The highest rank.
+	 */
+	public int getHighestRank() {
+		return highestRank;
+	}
+
+	/**
+	 * Returns the number of literals.
+	 *
+	 * @return The number of literals.
+	 */
+	public int size() {
+		return ranks.size();
+	}
+
+	/**
+	 * Walks a formula and collects its varchar literals and columns.
+	 */
+	private static final class Collector implements
+			ExpressionVisitor<Void, RuntimeException> {
+
+		private final Set<String> literals = new TreeSet<String>();
+		private final Set<Column> columns = new LinkedHashSet<Column>();
+
+		private void add(Column left, String leftVarchar, Column right,
+				String rightVarchar) {
+			if (left != null) {
+				columns.add(left);
+			} else if (leftVarchar != null) {
+				literals.add(leftVarchar);
+			}
+			if (right != null) {
+				columns.add(right);
+			} else if (rightVarchar != null) {
+				literals.add(rightVarchar);
+			}
+		}
+
+		private Void visitChildren(NodeExpression node) {
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				node.getSubexpressionAt(i).accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visit(Expression exp) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Void visit(And and) {
+			return visitChildren(and);
+		}
+
+		@Override
+		public Void visit(Or or) {
+			return visitChildren(or);
+		}
+
+		@Override
+		public Void visit(Not not) {
+			return visitChildren(not);
+		}
+
+		@Override
+		public Void visit(BooleanValue booleanValue) {
+			return null;
+		}
+
+		@Override
+		public Void visit(DummyLeaf dummyLeaf) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualDoubleComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualIntegerComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualVarcharComparison exp) {
+			add(exp.getLeft(), exp.getLeftVarchar(), exp.getRight(),
+					exp.getRightVarchar());
+			return null;
+		}
+
+		@Override
+		public Void visit(LessDoubleComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(LessVarcharComparison exp) {
+			add(exp.getLeft(), exp.getLeftVarchar(), exp.getRight(),
+					exp.getRightVarchar());
+			return null;
+		}
+
+		@Override
+		public Void visit(LessOrEqualDoubleComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(LessOrEqualIntegerComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(LessOrEqualVarcharComparison exp) {
+			add(exp.getLeft(), exp.getLeftVarchar(), exp.getRight(),
+					exp.getRightVarchar());
+			return null;
+		}
+
+		@Override
+		public Void visit(NotEqualDoubleComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(NotEqualIntegerComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(NotEqualVarcharComparison exp) {
+			add(exp.getLeft(), exp.getLeftVarchar(), exp.getRight(),
+					exp.getRightVarchar());
+			return null;
+		}
+
+		@Override
+		public Void visit(BooleanLiteral booleanLiteral) {
+			return null;
+		}
+
+		@Override
+		public Void visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package iqcache.solver;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interrupts a {@link Solver} whose check outlives its deadline, and again
+ * every {@link #REPEAT_NANOS} until the check has finished, so an interrupt
+ * that arrives before the solver can act on it, e.g. before the call has
+ * started, is not lost. All watchdogs share one daemon timer thread.
+ * 
+ * @author dinh
+ */
+final class Watchdog implements Runnable {
+
+	private static final ScheduledExecutorService TIMER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "solver-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * The time between two interrupts after the deadline.
+	 */
+	static final long REPEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final Solver solver;
+	private final ScheduledFuture<?> timer;
+
+	/**
+	 * <code>true</code> once the deadline has passed, guarded by
+	 * <code>this</code>.
+	 */
+	private boolean fired = false;
+
+	/**
+	 * <code>true</code> once the check has finished, guarded by
+	 * <code>this</code>.
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Starts a watchdog for the check that is about to run on a solver.
+	 * 
+	 * @param solver
+	 *            the solver to interrupt
+	 * @param timeoutNanos
+	 *            the time until the deadline
+	 */
+	Watchdog(Solver solver, long timeoutNanos) {
+		this.solver = solver;
+		this.timer = TIMER.scheduleWithFixedDelay(this, timeoutNanos,
+				REPEAT_NANOS, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public synchronized void run() {
+		if (!finished) {
+			fired = true;
+			solver.interrupt();
+		}
+	}
+
+	/**
+	 * Stops the watchdog after the check has finished.
+	 * 
+	 * @return <code>true</code> iff the solver was interrupted because of the
+	 *         deadline.
+	 */
+	synchronized boolean finish() {
+		finished = true;
+		timer.cancel(false);
+		return fired;
+	}
+}
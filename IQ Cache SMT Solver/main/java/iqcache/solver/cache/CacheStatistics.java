@@ -0,0 +1,109 @@
+package iqcache.solver.cache;
+
+/**
+ * An immutable snapshot of the statistics of a {@link SatisfiabilityCache}.
+ *
+ * @author dinh
+ */
+public final class CacheStatistics {
+
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long rejections;
+	private final long entries;
+	private final long bytes;
+	private final long maxBytes;
+
+	CacheStatistics(long hits, long misses, long evictions, long rejections,
+			long entries, long bytes, long maxBytes) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.rejections = rejections;
+		this.entries = entries;
+		this.bytes = bytes;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the number of lookups that found a result.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no result.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found a result.
+	 *
+	 * @return The hit rate, 0 if there was no lookup.
+	 */
+	public double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for new ones.
+	 *
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of results that were not admitted because they were
+	 * requested less often than the eviction candidate.
+	 *
+	 * @return The number of rejected results.
+	 */
+	public long getRejections() {
+		return rejections;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return The number of entries.
+	 */
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Returns the estimated memory of the cached results.
+	 *
+	 * @return The estimated size in bytes.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the memory budget of the cache.
+	 *
+	 * @return The maximum estimated size in bytes.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d "
+				+ "rejections=%d entries=%d bytes=%d/%d", hits, misses,
+				getHitRate(), evictions, rejections, entries, bytes, maxBytes);
+	}
+}
@@ -0,0 +1,61 @@
+package iqcache.solver.cache;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+/**
+ * A {@link SatisfiabilityChecker} that remembers the results of another
+ * checker, typically a {@link iqcache.solver.Solver}. Expressions are
+ * identified by their {@link ExpressionFingerprint}, so a repeated predicate
+ * is answered from the cache even if its conjuncts or disjuncts are listed
+ * in a different order.
+ *
+ * @author dinh
+ */
+public class CachingSatisfiabilityChecker extends SatisfiabilityChecker {
+
+	private final SatisfiabilityChecker checker;
+	private final SatisfiabilityCache cache;
+
+	/**
+	 * Constructor of a CachingSatisfiabilityChecker.
+	 *
+	 * @param checker
+	 *            the checker that decides expressions missing in the cache
+	 * @param cache
+	 *            the cache of results, may be shared between checkers
+	 */
+	public CachingSatisfiabilityChecker(SatisfiabilityChecker checker,
+			SatisfiabilityCache cache) {
+		Preconditions.checkNotNull(checker);
+		Preconditions.checkNotNull(cache);
+		this.checker = checker;
+		this.cache = cache;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		Fingerprint fingerprint = ExpressionFingerprint.of(expression);
+
+		Boolean cached = cache.get(fingerprint);
+		if (cached != null) {
+			return cached;
+		}
+		boolean satisfiable = checker.isSatisfiable(expression);
+		cache.put(fingerprint, satisfiable);
+		return satisfiable;
+	}
+
+	/**
+	 * Returns the cache of this checker.
+	 *
+	 * @return The cache.
+	 */
+	public SatisfiabilityCache getCache() {
+		return cache;
+	}
+}
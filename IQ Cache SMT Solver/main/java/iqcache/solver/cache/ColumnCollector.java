@@ -0,0 +1,173 @@
+package iqcache.solver.cache;
+
+import java.util.Collection;
+
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * Collects the variable names (see {@link Solver#getVariableName(Column)})
+ * of all columns an expression mentions. Columns are identified by name,
+ * like the solvers identify their variables.
+ *
+ * @author dinh
+ */
+final class ColumnCollector implements ExpressionVisitor<Void, RuntimeException> {
+
+	private final Collection<String> names;
+
+	private ColumnCollector(Collection<String> names) {
+		this.names = names;
+	}
+
+	/**
+	 * Adds the variable names of the columns of an expression to a
+	 * collection.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @param names
+	 *            the collection to add the names to
+	 */
+	static void collect(Expression expression, Collection<String> names) {
+		expression.accept(new ColumnCollector(names));
+	}
+
+	private Void add(Column left, Column right) {
+		if (left != null) {
+			names.add(Solver.getVariableName(left));
+		}
+		if (right != null) {
+			names.add(Solver.getVariableName(right));
+		}
+		return null;
+	}
+
+	private Void visitChildren(NodeExpression node) {
+		for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+			node.getSubexpressionAt(i).accept(this);
+		}
+		return null;
+	}
+
+	/**
+	 * not implemented
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Void visit(Expression exp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Void visit(And and) {
+		return visitChildren(and);
+	}
+
+	@Override
+	public Void visit(Or or) {
+		return visitChildren(or);
+	}
+
+	@Override
+	public Void visit(Not not) {
+		return visitChildren(not);
+	}
+
+	@Override
+	public Void visit(BooleanValue booleanValue) {
+		return null;
+	}
+
+	@Override
+	public Void visit(DummyLeaf dummyLeaf) {
+		return null;
+	}
+
+	@Override
+	public Void visit(EqualDoubleComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(EqualIntegerComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(EqualVarcharComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(LessDoubleComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(LessVarcharComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(LessOrEqualDoubleComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(LessOrEqualIntegerComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(LessOrEqualVarcharComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(NotEqualDoubleComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(NotEqualIntegerComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(NotEqualVarcharComparison exp) {
+		return add(exp.getLeft(), exp.getRight());
+	}
+
+	@Override
+	public Void visit(BooleanLiteral booleanLiteral) {
+		return add(booleanLiteral.getColumn(), null);
+	}
+
+	@Override
+	public Void visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+		return add(negatedBooleanLiteral.getColumn(), null);
+	}
+}
@@ -0,0 +1,291 @@
+package iqcache.solver.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.node.And;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.concurrent.AsyncSatisfiabilityChecker;
+
+/**
+ * A {@link SatisfiabilityChecker} that splits a conjunction into components
+ * of conjuncts that share no columns. The conjunction is satisfiable iff
+ * every component is, so the components are checked independently and the
+ * first unsatisfiable one decides. The result of every component is cached
+ * under its {@link ExpressionFingerprint}, so a conjunction that shares
+ * most components with an earlier one only checks the components that
+ * changed.
+ *
+ * Nested And nodes are flattened; any other expression is a single
+ * conjunct. Components are checked one after the other, smallest first, or
+ * concurrently if the checker is an {@link AsyncSatisfiabilityChecker}.
+ *
+ * @author dinh
+ */
+public class ComponentSatisfiabilityChecker extends SatisfiabilityChecker {
+
+	private final SatisfiabilityChecker checker;
+	private final AsyncSatisfiabilityChecker asyncChecker;
+	private final SatisfiabilityCache cache;
+
+	private final AtomicLong componentsChecked = new AtomicLong();
+	private final AtomicLong componentsCached = new AtomicLong();
+
+	/**
+	 * Constructor of a ComponentSatisfiabilityChecker that checks the
+	 * components one after the other.
+	 *
+	 * @param checker
+	 *            the checker that decides components missing in the cache
+	 * @param cache
+	 *            the cache of component results, may be shared between
+	 *            checkers
+	 */
+	public ComponentSatisfiabilityChecker(SatisfiabilityChecker checker,
+			SatisfiabilityCache cache) {
+		Preconditions.checkNotNull(checker);
+		Preconditions.checkNotNull(cache);
+		this.checker = checker;
+		this.asyncChecker = null;
+		this.cache = cache;
+	}
+
+	/**
+	 * Constructor of a ComponentSatisfiabilityChecker that checks the
+	 * components concurrently and cancels the remaining checks as soon as a
+	 * component is unsatisfiable.
+	 *
+	 * @param checker
+	 *            the checker that decides components missing in the cache
+	 * @param cache
+	 *            the cache of component results, may be shared between
+	 *            checkers
+	 */
+	public ComponentSatisfiabilityChecker(AsyncSatisfiabilityChecker checker,
+			SatisfiabilityCache cache) {
+		Preconditions.checkNotNull(checker);
+		Preconditions.checkNotNull(cache);
+		this.checker = checker;
+		this.asyncChecker = checker;
+		this.cache = cache;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		List<Expression> conjuncts = new ArrayList<Expression>();
+		collectConjuncts(expression, conjuncts);
+
+		List<Component> unknown = new ArrayList<Component>();
+		for (Component component : decompose(conjuncts)) {
+			Boolean cached = cache.get(component.fingerprint);
+			if (cached == null) {
+				unknown.add(component);
+				continue;
+			}
+			componentsCached.incrementAndGet();
+			if (!cached) {
+				return false;
+			}
+		}
+
+		if (asyncChecker != null && unknown.size() > 1) {
+			return checkConcurrently(unknown);
+		}
+
+		// small components are cheap and may already refute the conjunction
+		Collections.sort(unknown, new Comparator<Component>() {
+			@Override
+			public int compare(Component c1, Component c2) {
+				return Integer.compare(c1.size, c2.size);
+			}
+		});
+		for (Component component : unknown) {
+			componentsChecked.incrementAndGet();
+			boolean satisfiable = checker.isSatisfiable(component.expression);
+			cache.put(component.fingerprint, satisfiable);
+			if (!satisfiable) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the cache of this checker.
+	 *
+	 * @return The cache.
+	 */
+	public SatisfiabilityCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the number of components decided by the checker.
+	 *
+	 * @return The number of checked components.
+	 */
+	public long getComponentsChecked() {
+		return componentsChecked.get();
+	}
+
+	/**
+	 * Returns the number of components answered from the cache.
+	 *
+	 * @return The number of cached components.
+	 */
+	public long getComponentsCached() {
+		return componentsCached.get();
+	}
+
+	private boolean checkConcurrently(List<Component> unknown)
+			throws SatisfiabilityException {
+		final BlockingQueue<Integer> finished = new LinkedBlockingQueue<Integer>();
+		List<CompletableFuture<Boolean>> checks = new ArrayList<CompletableFuture<Boolean>>();
+		for (int i = 0; i < unknown.size(); i++) {
+			final int index = i;
+			CompletableFuture<Boolean> check = asyncChecker
+					.isSatisfiableAsync(unknown.get(i).expression);
+			check.whenComplete(new BiConsumer<Boolean, Throwable>() {
+				@Override
+				public void accept(Boolean satisfiable, Throwable failure) {
+					finished.add(index);
+				}
+			});
+			checks.add(check);
+		}
+
+		try {
+			for (int answers = 0; answers < unknown.size(); answers++) {
+				int index = finished.take();
+				boolean satisfiable;
+				try {
+					satisfiable = checks.get(index).get();
+				} catch (ExecutionException e) {
+					cancel(checks);
+					throw new SatisfiabilityException(
+							"Cannot check component.", e.getCause());
+				}
+				componentsChecked.incrementAndGet();
+				cache.put(unknown.get(index).fingerprint, satisfiable);
+				if (!satisfiable) {
+					cancel(checks);
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel(checks);
+			Thread.currentThread().interrupt();
+			throw new SatisfiabilityException(
+					"Interrupted while checking components.", e);
+		}
+		return true;
+	}
+
+	private static void cancel(List<CompletableFuture<Boolean>> checks) {
+		for (CompletableFuture<Boolean> check : checks) {
+			check.cancel(true);
+		}
+	}
+
+	/**
+	 * Partitions the conjuncts by shared columns with a union-find over the
+	 * conjunct indices. A conjunct without columns is a component of its
+	 * own.
+	 */
+	private static List<Component> decompose(List<Expression> conjuncts) {
+		int n = conjuncts.size();
+		int[] parent = new int[n];
+		Map<String, Integer> owners = new HashMap<String, Integer>();
+		List<String> columns = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+			columns.clear();
+			ColumnCollector.collect(conjuncts.get(i), columns);
+			for (String column : columns) {
+				Integer owner = owners.get(column);
+				if (owner == null) {
+					owners.put(column, i);
+				} else {
+					union(parent, owner, i);
+				}
+			}
+		}
+
+		Map<Integer, List<Expression>> groups = new LinkedHashMap<Integer, List<Expression>>();
+		for (int i = 0; i < n; i++) {
+			int root = find(parent, i);
+			List<Expression> group = groups.get(root);
+			if (group == null) {
+				group = new ArrayList<Expression>();
+				groups.put(root, group);
+			}
+			group.add(conjuncts.get(i));
+		}
+
+		List<Component> components = new ArrayList<Component>(groups.size());
+		for (List<Expression> group : groups.values()) {
+			components.add(new Component(group));
+		}
+		return components;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			// path halving
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] parent, int i, int j) {
+		int rootI = find(parent, i);
+		int rootJ = find(parent, j);
+		if (rootI != rootJ) {
+			// keep the smaller index as root, so components keep their order
+			parent[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+		}
+	}
+
+	private static void collectConjuncts(Expression expression,
+			List<Expression> conjuncts) {
+		if (expression instanceof And) {
+			And and = (And) expression;
+			for (int i = 0; i < and.getNumberOfSubexpressions(); i++) {
+				collectConjuncts(and.getSubexpressionAt(i), conjuncts);
+			}
+		} else {
+			conjuncts.add(expression);
+		}
+	}
+
+	private static final class Component {
+		private final Expression expression;
+		private final Fingerprint fingerprint;
+		private final int size;
+
+		Component(List<Expression> conjuncts) {
+			this.expression = conjuncts.size() == 1 ? conjuncts.get(0)
+					: new And(conjuncts.toArray(new Expression[conjuncts
+							.size()]));
+			this.fingerprint = ExpressionFingerprint.of(expression);
+			this.size = conjuncts.size();
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package iqcache.solver.cache;
+
+import java.util.Arrays;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * Computes a canonical 128-bit {@link Fingerprint} of an {@link Expression}.
+ * The fingerprint does not depend on the order of the subexpressions of And
+ * and Or nodes, on the side a symmetric atom mentions its column or on the
+ * sign of a zero constant, so equivalent spellings of the same predicate map
+ * to the same fingerprint.
+ *
+ * @author dinh
+ */
+public final class ExpressionFingerprint implements
+		ExpressionVisitor<Fingerprint, RuntimeException> {
+
+	private static final long TAG_AND = 1;
+	private static final long TAG_OR = 2;
+	private static final long TAG_NOT = 3;
+	private static final long TAG_BOOLEAN_VALUE = 4;
+	private static final long TAG_BOOLEAN_LITERAL = 5;
+	private static final long TAG_NEGATED_BOOLEAN_LITERAL = 6;
+	private static final long TAG_EQUAL_DOUBLE = 7;
+	private static final long TAG_NOT_EQUAL_DOUBLE = 8;
+	private static final long TAG_LESS_DOUBLE = 9;
+	private static final long TAG_LESS_OR_EQUAL_DOUBLE = 10;
+	private static final long TAG_EQUAL_INTEGER = 11;
+	private static final long TAG_NOT_EQUAL_INTEGER = 12;
+	private static final long TAG_LESS_OR_EQUAL_INTEGER = 13;
+	private static final long TAG_EQUAL_VARCHAR = 14;
+	private static final long TAG_NOT_EQUAL_VARCHAR = 15;
+	private static final long TAG_LESS_VARCHAR = 16;
+	private static final long TAG_LESS_OR_EQUAL_VARCHAR = 17;
+	private static final long TAG_DUMMY = 18;
+
+	/**
+	 * Marks the position of a missing column (the constant side).
+	 */
+	private static final long NO_COLUMN = 0x5bd1e9955bd1e995L;
+
+	private static final long LITERAL_SALT = 0x7f4a7c159e3779b9L;
+
+	private static final ExpressionFingerprint INSTANCE = new ExpressionFingerprint();
+
+	private ExpressionFingerprint() {
+	}
+
+	/**
+	 * Computes the fingerprint of an expression.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return The canonical fingerprint of the expression.
+	 */
+	public static Fingerprint of(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		return expression.accept(INSTANCE);
+	}
+
+	/**
+	 * not implemented
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Fingerprint visit(Expression exp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Fingerprint visit(And and) {
+		return visitCommutative(TAG_AND, and);
+	}
+
+	@Override
+	public Fingerprint visit(Or or) {
+		return visitCommutative(TAG_OR, or);
+	}
+
+	@Override
+	public Fingerprint visit(Not not) {
+		Fingerprint sub = not.getSubexpressionAt(0).accept(this);
+		return new Hasher(TAG_NOT).add(sub).finish();
+	}
+
+	@Override
+	public Fingerprint visit(BooleanValue booleanValue) {
+		return new Hasher(TAG_BOOLEAN_VALUE).add(booleanValue.getValue() ? 1 : 0)
+				.finish();
+	}
+
+	@Override
+	public Fingerprint visit(DummyLeaf dummyLeaf) {
+		return new Hasher(TAG_DUMMY).add(System.identityHashCode(dummyLeaf))
+				.finish();
+	}
+
+	@Override
+	public Fingerprint visit(EqualDoubleComparison exp) {
+		return symmetric(TAG_EQUAL_DOUBLE, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(EqualIntegerComparison exp) {
+		return symmetric(TAG_EQUAL_INTEGER, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(EqualVarcharComparison exp) {
+		return symmetric(TAG_EQUAL_VARCHAR, exp.getLeft(), exp.getRight(),
+				exp.getLeftVarchar(), exp.getRightVarchar());
+	}
+
+	@Override
+	public Fingerprint visit(LessDoubleComparison exp) {
+		return ordered(TAG_LESS_DOUBLE, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(LessVarcharComparison exp) {
+		return ordered(TAG_LESS_VARCHAR, exp.getLeft(), exp.getRight(),
+				exp.getLeftVarchar(), exp.getRightVarchar());
+	}
+
+	@Override
+	public Fingerprint visit(LessOrEqualDoubleComparison exp) {
+		return ordered(TAG_LESS_OR_EQUAL_DOUBLE, exp.getLeft(),
+				exp.getRight(), exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(LessOrEqualIntegerComparison exp) {
+		return ordered(TAG_LESS_OR_EQUAL_INTEGER, exp.getLeft(),
+				exp.getRight(), exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(LessOrEqualVarcharComparison exp) {
+		return ordered(TAG_LESS_OR_EQUAL_VARCHAR, exp.getLeft(),
+				exp.getRight(), exp.getLeftVarchar(), exp.getRightVarchar());
+	}
+
+	@Override
+	public Fingerprint visit(NotEqualDoubleComparison exp) {
+		return symmetric(TAG_NOT_EQUAL_DOUBLE, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(NotEqualIntegerComparison exp) {
+		return symmetric(TAG_NOT_EQUAL_INTEGER, exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Fingerprint visit(NotEqualVarcharComparison exp) {
+		return symmetric(TAG_NOT_EQUAL_VARCHAR, exp.getLeft(), exp.getRight(),
+				exp.getLeftVarchar(), exp.getRightVarchar());
+	}
+
+	@Override
+	public Fingerprint visit(BooleanLiteral booleanLiteral) {
+		return new Hasher(TAG_BOOLEAN_LITERAL).add(
+				hash(booleanLiteral.getColumn())).finish();
+	}
+
+	@Override
+	public Fingerprint visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+		return new Hasher(TAG_NEGATED_BOOLEAN_LITERAL).add(
+				hash(negatedBooleanLiteral.getColumn())).finish();
+	}
+
+	private Fingerprint visitCommutative(long tag, NodeExpression node) {
+		int n = node.getNumberOfSubexpressions();
+		Fingerprint[] subs = new Fingerprint[n];
+		for (int i = 0; i < n; i++) {
+			subs[i] = node.getSubexpressionAt(i).accept(this);
+		}
+		// sorting makes the fingerprint independent of the operand order
+		Arrays.sort(subs);
+
+		Hasher hasher = new Hasher(tag).add(n);
+		for (Fingerprint sub : subs) {
+			hasher.add(sub);
+		}
+		return hasher.finish();
+	}
+
+	/**
+	 * Fingerprint of left - right = c (or !=), which is the same atom as
+	 * right - left = -c.
+	 */
+	private Fingerprint symmetric(long tag, Column left, Column right,
+			double c) {
+		long l = hash(left);
+		long r = hash(right);
+		if (left == null || right == null) {
+			// col = c and c = col are the same atom
+			return new Hasher(tag).add(left == null ? r : l).add(NO_COLUMN)
+					.add(normalise(c)).finish();
+		}
+		if (l > r) {
+			return new Hasher(tag).add(r).add(l).add(normalise(-c)).finish();
+		}
+		return new Hasher(tag).add(l).add(r).add(normalise(c)).finish();
+	}
+
+	private Fingerprint symmetric(long tag, Column left, Column right,
+			String leftVarchar, String rightVarchar) {
+		long l = left == null ? hashLiteral(leftVarchar) : hash(left);
+		long r = right == null ? hashLiteral(rightVarchar) : hash(right);
+		if (l > r) {
+			return new Hasher(tag).add(r).add(l).finish();
+		}
+		return new Hasher(tag).add(l).add(r).finish();
+	}
+
+	private Fingerprint ordered(long tag, Column left, Column right, double c) {
+		return new Hasher(tag).add(hash(left)).add(hash(right))
+				.add(normalise(c)).finish();
+	}
+
+	private Fingerprint ordered(long tag, Column left, Column right,
+			String leftVarchar, String rightVarchar) {
+		long l = left == null ? hashLiteral(leftVarchar) : hash(left);
+		long r = right == null ? hashLiteral(rightVarchar) : hash(right);
+		return new Hasher(tag).add(l).add(r).finish();
+	}
+
+	/**
+	 * Normalises a constant: -0.0 and 0.0 hash alike.
+	 */
+	private static long normalise(double c) {
+		if (c == 0) {
+			return 0;
+		}
+		return Double.doubleToLongBits(c);
+	}
+
+	private static long hash(Column col) {
+		if (col == null) {
+			return NO_COLUMN;
+		}
+		return hash(Solver.getVariableName(col));
+	}
+
+	/**
+	 * Hash of a varchar literal, salted so that a literal never hashes like a
+	 * column of the same name.
+	 */
+	private static long hashLiteral(String s) {
+		return hash(s) ^ LITERAL_SALT;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of a string.
+	 */
+	private static long hash(String s) {
+		if (s == null) {
+			return NO_COLUMN;
+		}
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Feeds a sequence of 64-bit values into two independently seeded lanes.
+	 */
+	private static final class Hasher {
+
+		private long h1 = 0x243f6a8885a308d3L;
+		private long h2 = 0x13198a2e03707344L;
+
+		Hasher(long tag) {
+			add(tag);
+		}
+
+		Hasher add(long v) {
+			h1 = mix(h1 + v * 0x9e3779b97f4a7c15L);
+			h2 = mix(h2 ^ (v * 0xc2b2ae3d27d4eb4fL + 0x165667b19e3779f9L));
+			return this;
+		}
+
+		Hasher add(Fingerprint fp) {
+			return add(fp.getHigh()).add(fp.getLow());
+		}
+
+		Fingerprint finish() {
+			return new Fingerprint(h1, h2);
+		}
+
+		/**
+		 * SplitMix64 finaliser.
+		 */
+		private static long mix(long z) {
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package iqcache.solver.cache;
+
+/**
+ * An immutable 128-bit fingerprint of an expression.
+ *
+ * @author dinh
+ */
+public final class Fingerprint implements Comparable<Fingerprint> {
+
+	private final long high;
+	private final long low;
+
+	/**
+	 * Constructor of a Fingerprint.
+	 *
+	 * @param high
+	 *            the upper 64 bits
+	 * @param low
+	 *            the lower 64 bits
+	 */
+	public Fingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * Returns the upper 64 bits of this fingerprint.
+	 *
+	 * @return The upper 64 bits.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * Returns the lower 64 bits of this fingerprint.
+	 *
+	 * @return The lower 64 bits.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	@Override
+	public int compareTo(Fingerprint other) {
+		int cmp = Long.compare(high, other.high);
+		if (cmp != 0) {
+			return cmp;
+		}
+		return Long.compare(low, other.low);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (low ^ (low >>> 32));
+	}
+
+	/**
+	 * Two instances of type {@link Fingerprint} are equal iff all 128 bits
+	 * are equal.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Fingerprint)) {
+			return false;
+		}
+		Fingerprint other = (Fingerprint) obj;
+		return high == other.high && low == other.low;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+}
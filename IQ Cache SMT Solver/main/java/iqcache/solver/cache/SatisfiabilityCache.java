@@ -0,0 +1,183 @@
+package iqcache.solver.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+
+/**
+ * A bounded map from expression {@link Fingerprint}s to satisfiability
+ * results. The cache is limited by an estimate of the heap memory its entries
+ * occupy, evicts in least recently used order and admits a new entry only if
+ * it has been requested more often than the entry it would evict. Request
+ * frequencies are approximated by a count-min sketch whose counters are
+ * halved periodically, so that old popularity fades out.
+ *
+ * All methods are thread-safe.
+ *
+ * @author dinh
+ */
+public class SatisfiabilityCache {
+
+	/**
+	 * Estimated heap memory of one entry: the fingerprint object (32 bytes),
+	 * the linked hash map entry (56 bytes) and its share of the hash table
+	 * (up to 16 bytes at load factor 0.75). The result is a shared
+	 * {@link Boolean} constant.
+	 */
+	public static final long ENTRY_BYTES = 32 + 56 + 16;
+
+	private static final int SKETCH_DEPTH = 4;
+	private static final int MAX_FREQUENCY = 15;
+
+	private final long maxEntries;
+	private final LinkedHashMap<Fingerprint, Boolean> entries;
+
+	private final int[] sketch;
+	private final int sketchMask;
+	private final long resetInterval;
+	private long additions = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long rejections = 0;
+
+	/**
+	 * Constructor of a SatisfiabilityCache.
+	 *
+	 * @param maxBytes
+	 *            the upper bound of the estimated memory of the cached
+	 *            entries, at least {@link #ENTRY_BYTES}
+	 */
+	public SatisfiabilityCache(long maxBytes) {
+		Preconditions.checkArgument(maxBytes >= ENTRY_BYTES,
+				"cache must hold at least one entry");
+		this.maxEntries = maxBytes / ENTRY_BYTES;
+		this.entries = new LinkedHashMap<Fingerprint, Boolean>(16, 0.75f, true);
+
+		int width = Integer.highestOneBit((int) Math.min(maxEntries,
+				1 << 24)) << 1;
+		width = Math.max(width, 16);
+		this.sketch = new int[SKETCH_DEPTH * width];
+		this.sketchMask = width - 1;
+		this.resetInterval = 10 * maxEntries;
+	}
+
+	/**
+	 * Looks up the result for a fingerprint and records the request.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of an expression
+	 * @return The cached result or <code>null</code> if there is none.
+	 */
+	public synchronized Boolean get(Fingerprint fingerprint) {
+		Preconditions.checkNotNull(fingerprint);
+		increment(fingerprint);
+		Boolean result = entries.get(fingerprint);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Offers a result to the cache. If the cache is full, the result is
+	 * admitted only if its fingerprint has been requested more often than the
+	 * least recently used entry, which is evicted in turn.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of an expression
+	 * @param satisfiable
+	 *            the satisfiability of the expression
+	 * @return <code>true</code> iff the result is in the cache afterwards.
+	 */
+	public synchronized boolean put(Fingerprint fingerprint,
+			boolean satisfiable) {
+		Preconditions.checkNotNull(fingerprint);
+		if (entries.containsKey(fingerprint)) {
+			entries.put(fingerprint, satisfiable);
+			return true;
+		}
+		if (entries.size() >= maxEntries) {
+			Iterator<Map.Entry<Fingerprint, Boolean>> it = entries.entrySet()
+					.iterator();
+			Fingerprint victim = it.next().getKey();
+			if (frequency(fingerprint) <= frequency(victim)) {
+				rejections++;
+				return false;
+			}
+			it.remove();
+			evictions++;
+		}
+		entries.put(fingerprint, satisfiable);
+		return true;
+	}
+
+	/**
+	 * Removes all entries. The statistics and the request frequencies are
+	 * kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this cache.
+	 *
+	 * @return The current statistics.
+	 */
+	public synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(hits, misses, evictions, rejections,
+				entries.size(), entries.size() * ENTRY_BYTES, maxEntries
+						* ENTRY_BYTES);
+	}
+
+	private void increment(Fingerprint fingerprint) {
+		boolean incremented = false;
+		for (int row = 0; row < SKETCH_DEPTH; row++) {
+			int index = index(fingerprint, row);
+			if (sketch[index] < MAX_FREQUENCY) {
+				sketch[index]++;
+				incremented = true;
+			}
+		}
+		if (incremented && ++additions >= resetInterval) {
+			// age all frequencies
+			for (int i = 0; i < sketch.length; i++) {
+				sketch[i] >>>= 1;
+			}
+			additions /= 2;
+		}
+	}
+
+	private int frequency(Fingerprint fingerprint) {
+		int min = MAX_FREQUENCY;
+		for (int row = 0; row < SKETCH_DEPTH; row++) {
+			min = Math.min(min, sketch[index(fingerprint, row)]);
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the counter of a fingerprint in a row of the sketch. The rows
+	 * use the four 32-bit words of the fingerprint as independent hashes.
+	 */
+	private int index(Fingerprint fingerprint, int row) {
+		long bits = row < 2 ? fingerprint.getHigh() : fingerprint.getLow();
+		int hash = (int) (bits >>> ((row & 1) * 32));
+		return row * (sketchMask + 1) + (hash & sketchMask);
+	}
+}
@@ -0,0 +1,117 @@
+package iqcache.solver.cache;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set-trie of sets of atom ids. Every set is stored as the path of its
+ * elements in ascending order; the trie answers whether it contains a subset
+ * or a superset of a given set without enumerating all stored sets.
+ *
+ * All sets passed to a SetTrie must be sorted in ascending order and free of
+ * duplicates.
+ *
+ * @author dinh
+ */
+final class SetTrie {
+
+	private final Node root = new Node();
+	private int size = 0;
+
+	/**
+	 * Adds a set to this trie.
+	 *
+	 * @param set
+	 *            the sorted atom ids
+	 */
+	void add(int[] set) {
+		Node node = root;
+		for (int element : set) {
+			Node child = node.children.get(element);
+			if (child == null) {
+				child = new Node();
+				node.children.put(element, child);
+			}
+			node = child;
+		}
+		if (!node.terminal) {
+			node.terminal = true;
+			size++;
+		}
+	}
+
+	/**
+	 * Determine if this trie contains a subset of a set.
+	 *
+	 * @param set
+	 *            the sorted atom ids
+	 * @return <code>true</code> iff a stored set is a subset of the given set.
+	 */
+	boolean containsSubsetOf(int[] set) {
+		return containsSubsetOf(root, set, 0);
+	}
+
+	/**
+	 * Determine if this trie contains a superset of a set.
+	 *
+	 * @param set
+	 *            the sorted atom ids
+	 * @return <code>true</code> iff a stored set is a superset of the given
+	 *         set.
+	 */
+	boolean containsSupersetOf(int[] set) {
+		return containsSupersetOf(root, set, 0);
+	}
+
+	/**
+	 * Returns the number of stored sets.
+	 *
+	 * @return The number of sets.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all sets.
+	 */
+	void clear() {
+		root.children.clear();
+		root.terminal = false;
+		size = 0;
+	}
+
+	private boolean containsSubsetOf(Node node, int[] set, int from) {
+		if (node.terminal) {
+			return true;
+		}
+		for (int i = from; i < set.length; i++) {
+			Node child = node.children.get(set[i]);
+			if (child != null && containsSubsetOf(child, set, i + 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean containsSupersetOf(Node node, int[] set, int from) {
+		if (from == set.length) {
+			// every node lies on the path of a stored set
+			return node.terminal || !node.children.isEmpty();
+		}
+		// children with a larger id than set[from] cannot lead to set[from]
+		for (Map.Entry<Integer, Node> entry : node.children.headMap(
+				set[from], true).entrySet()) {
+			int next = entry.getKey() == set[from] ? from + 1 : from;
+			if (containsSupersetOf(entry.getValue(), set, next)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Node {
+		private final TreeMap<Integer, Node> children = new TreeMap<Integer, Node>();
+		private boolean terminal = false;
+	}
+}
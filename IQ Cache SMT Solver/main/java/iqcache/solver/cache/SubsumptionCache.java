@@ -0,0 +1,187 @@
+package iqcache.solver.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+
+/**
+ * A cache of satisfiability results of conjunctions that exploits
+ * subsumption: a conjunction that contains all conjuncts of an unsatisfiable
+ * one is unsatisfiable, a conjunction whose conjuncts all occur in a
+ * satisfiable one is satisfiable. Conjuncts are identified by their
+ * {@link Fingerprint} and interned to atom ids; satisfiable and
+ * unsatisfiable conjunct sets are kept in two {@link SetTrie}s.
+ *
+ * The cache holds at most a fixed number of sets and is flushed entirely
+ * when it runs full.
+ *
+ * All methods are thread-safe.
+ *
+ * @author dinh
+ */
+public class SubsumptionCache {
+
+	private final int maxSets;
+
+	private final Map<Fingerprint, Integer> atoms = new HashMap<Fingerprint, Integer>();
+	private final SetTrie satisfiable = new SetTrie();
+	private final SetTrie unsatisfiable = new SetTrie();
+
+	private long subsetHits = 0;
+	private long supersetHits = 0;
+	private long misses = 0;
+	private long flushes = 0;
+
+	/**
+	 * Constructor of a SubsumptionCache.
+	 *
+	 * @param maxSets
+	 *            the number of conjunct sets after which the cache is flushed
+	 */
+	public SubsumptionCache(int maxSets) {
+		Preconditions.checkArgument(maxSets > 0,
+				"cache must hold at least one set");
+		this.maxSets = maxSets;
+	}
+
+	/**
+	 * Looks up the result for a conjunction.
+	 *
+	 * @param conjuncts
+	 *            the fingerprints of the conjuncts
+	 * @return <code>false</code> if a subset of the conjuncts is known to be
+	 *         unsatisfiable, <code>true</code> if a superset is known to be
+	 *         satisfiable, <code>null</code> otherwise.
+	 */
+	public synchronized Boolean get(Collection<Fingerprint> conjuncts) {
+		Preconditions.checkNotNull(conjuncts);
+		int[] set = toSet(conjuncts, false);
+		if (unsatisfiable.containsSubsetOf(set)) {
+			subsetHits++;
+			return Boolean.FALSE;
+		}
+		// a never seen conjunct has no satisfiable superset
+		if (set.length > 0 && atoms.keySet().containsAll(conjuncts)
+				&& satisfiable.containsSupersetOf(set)) {
+			supersetHits++;
+			return Boolean.TRUE;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Stores the result of a conjunction.
+	 *
+	 * @param conjuncts
+	 *            the fingerprints of the conjuncts
+	 * @param isSatisfiable
+	 *            the satisfiability of the conjunction
+	 */
+	public synchronized void put(Collection<Fingerprint> conjuncts,
+			boolean isSatisfiable) {
+		Preconditions.checkNotNull(conjuncts);
+		if (satisfiable.size() + unsatisfiable.size() >= maxSets) {
+			atoms.clear();
+			satisfiable.clear();
+			unsatisfiable.clear();
+			flushes++;
+		}
+		int[] set = toSet(conjuncts, true);
+		if (isSatisfiable) {
+			satisfiable.add(set);
+		} else {
+			unsatisfiable.add(set);
+		}
+	}
+
+	/**
+	 * Removes all sets.
+	 */
+	public synchronized void clear() {
+		atoms.clear();
+		satisfiable.clear();
+		unsatisfiable.clear();
+	}
+
+	/**
+	 * Returns the number of stored conjunct sets.
+	 *
+	 * @return The number of sets.
+	 */
+	public synchronized int size() {
+		return satisfiable.size() + unsatisfiable.size();
+	}
+
+	/**
+	 * Returns the number of lookups answered by an unsatisfiable subset.
+	 *
+	 * @return The number of UNSAT answers.
+	 */
+	public synchronized long getSubsetHits() {
+		return subsetHits;
+	}
+
+	/**
+	 * Returns the number of lookups answered by a satisfiable superset.
+	 *
+	 * @return The number of SAT answers.
+	 */
+	public synchronized long getSupersetHits() {
+		return supersetHits;
+	}
+
+	/**
+	 * Returns the number of lookups that could not be answered.
+	 *
+	 * @return The number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns how often the cache was flushed because it ran full.
+	 *
+	 * @return The number of flushes.
+	 */
+	public synchronized long getFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Maps conjuncts to sorted atom ids.
+	 *
+	 * @param intern
+	 *            whether unknown conjuncts get a new id or are left out
+	 * @return The sorted, distinct atom ids.
+	 */
+	private int[] toSet(Collection<Fingerprint> conjuncts, boolean intern) {
+		int[] set = new int[conjuncts.size()];
+		int n = 0;
+		for (Fingerprint conjunct : conjuncts) {
+			Integer id = atoms.get(conjunct);
+			if (id == null) {
+				if (!intern) {
+					continue;
+				}
+				id = atoms.size();
+				atoms.put(conjunct, id);
+			}
+			set[n++] = id;
+		}
+		Arrays.sort(set, 0, n);
+
+		// remove duplicate conjuncts
+		int distinct = 0;
+		for (int i = 0; i < n; i++) {
+			if (distinct == 0 || set[distinct - 1] != set[i]) {
+				set[distinct++] = set[i];
+			}
+		}
+		return Arrays.copyOf(set, distinct);
+	}
+}
@@ -0,0 +1,84 @@
+package iqcache.solver.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.node.And;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+/**
+ * A {@link SatisfiabilityChecker} that answers a conjunction from a
+ * {@link SubsumptionCache} before asking another checker, typically a
+ * {@link iqcache.solver.Solver}. A conjunction is unsatisfiable if it
+ * contains a conjunction known to be unsatisfiable, and satisfiable if it is
+ * contained in a conjunction known to be satisfiable. This pays off when
+ * conjunctions grow one conjunct at a time, e.g. through
+ * <code>EvaluationHelper.createAndExpression</code>.
+ *
+ * Nested And nodes are flattened; any other expression is a single
+ * conjunct.
+ *
+ * @author dinh
+ */
+public class SubsumptionSatisfiabilityChecker extends SatisfiabilityChecker {
+
+	private final SatisfiabilityChecker checker;
+	private final SubsumptionCache cache;
+
+	/**
+	 * Constructor of a SubsumptionSatisfiabilityChecker.
+	 *
+	 * @param checker
+	 *            the checker that decides conjunctions the cache cannot
+	 *            answer
+	 * @param cache
+	 *            the cache of conjunct sets, may be shared between checkers
+	 */
+	public SubsumptionSatisfiabilityChecker(SatisfiabilityChecker checker,
+			SubsumptionCache cache) {
+		Preconditions.checkNotNull(checker);
+		Preconditions.checkNotNull(cache);
+		this.checker = checker;
+		this.cache = cache;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		List<Fingerprint> conjuncts = new ArrayList<Fingerprint>();
+		collectConjuncts(expression, conjuncts);
+
+		Boolean cached = cache.get(conjuncts);
+		if (cached != null) {
+			return cached;
+		}
+		boolean satisfiable = checker.isSatisfiable(expression);
+		cache.put(conjuncts, satisfiable);
+		return satisfiable;
+	}
+
+	/**
+	 * Returns the cache of this checker.
+	 *
+	 * @return The cache.
+	 */
+	public SubsumptionCache getCache() {
+		return cache;
+	}
+
+	private static void collectConjuncts(Expression expression,
+			List<Fingerprint> conjuncts) {
+		if (expression instanceof And) {
+			And and = (And) expression;
+			for (int i = 0; i < and.getNumberOfSubexpressions(); i++) {
+				collectConjuncts(and.getSubexpressionAt(i), conjuncts);
+			}
+		} else {
+			conjuncts.add(ExpressionFingerprint.of(expression));
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package iqcache.solver.concurrent;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.SolverFactory;
+
+/**
+ * A {@link SatisfiabilityChecker} with a non-blocking entry point. Checks
+ * run on a fixed number of dedicated platform threads, each of which owns one
+ * {@link Solver} and thereby one native context/environment. Callers, e.g.
+ * virtual threads of the cache frontend, only wait on the returned
+ * {@link CompletableFuture} and never execute a native call themselves.
+ *
+ * Cancelling a future skips a check that has not started yet and
+ * interrupts the solver of a running one. The solvers are closed once the
+ * solver threads have stopped after {@link #shutdown()}.
+ *
+ * @author dinh
+ */
+public class AsyncSatisfiabilityChecker extends SatisfiabilityChecker {
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final SolverFactory factory;
+	private final ExecutorService executor;
+
+	/**
+	 * The solver of the current solver thread, created on its first check.
+	 */
+	private final ThreadLocal<Solver> solver = new ThreadLocal<Solver>();
+
+	/**
+	 * The solvers of all solver threads, closed on termination.
+	 */
+	private final Set<Solver> solvers = Collections
+			.newSetFromMap(new ConcurrentHashMap<Solver, Boolean>());
+
+	/**
+	 * The first failure to close a solver, reported by
+	 * {@link #awaitTermination(long, TimeUnit)}.
+	 */
+	private volatile SolverException closeFailure;
+
+	/**
+	 * Constructor of an AsyncSatisfiabilityChecker.
+	 *
+	 * @param factory
+	 *            the factory for the solvers of the solver threads
+	 * @param threads
+	 *            the number of solver threads, e.g. the number of cores
+	 */
+	public AsyncSatisfiabilityChecker(SolverFactory factory, int threads) {
+		Preconditions.checkNotNull(factory);
+		Preconditions.checkArgument(threads > 0, "need a solver thread");
+		this.factory = factory;
+
+		final String prefix = "solver-" + POOL_NUMBER.incrementAndGet() + "-";
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger number = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix
+						+ number.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				threadFactory) {
+			@Override
+			protected void terminated() {
+				// no solver thread is left to use a solver
+				closeSolvers();
+			}
+		};
+	}
+
+	/**
+	 * Schedules a satisfiability check on a solver thread.
+	 *
+	 * @param expression
+	 *            the expression to check
+	 * @return A future of the result. It completes exceptionally with a
+	 *         {@link SatisfiabilityException} if the check fails.
+	 */
+	public CompletableFuture<Boolean> isSatisfiableAsync(
+			Expression expression) {
+		Preconditions.checkNotNull(expression);
+		Check check = new Check(expression);
+		executor.execute(check);
+		return check;
+	}
+
+	/**
+	 * Blocks until a solver thread has checked the expression.
+	 */
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		CompletableFuture<Boolean> future = isSatisfiableAsync(expression);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new SatisfiabilityException(
+					"Interrupted while waiting for the solver.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SatisfiabilityException) {
+				throw (SatisfiabilityException) e.getCause();
+			}
+			throw new SatisfiabilityException("Check failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Stops the solver threads after the scheduled checks and then closes
+	 * their solvers.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits until the solver threads have stopped and their solvers are
+	 * closed.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <b>true</b> if the solvers are closed, <b>false</b> if the
+	 *         timeout passed first.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 * @throws SolverException
+	 *             if a solver could not be closed
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException, SolverException {
+		if (!executor.awaitTermination(timeout, unit)) {
+			return false;
+		}
+		if (closeFailure != null) {
+			throw closeFailure;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the solver of the current solver thread, creating it on the
+	 * first check of the thread and after a failed check.
+	 */
+	private Solver acquire() throws SatisfiabilityException {
+		Solver current = solver.get();
+		if (current == null) {
+			try {
+				current = factory.createSolver();
+			} catch (SolverException e) {
+				throw new SatisfiabilityException("Cannot create solver.", e);
+			}
+			Preconditions.checkState(current != null,
+					"solver factory returned null");
+			solver.set(current);
+			solvers.add(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Closes and forgets the solver of the current solver thread after a
+	 * failed check; the next check creates a fresh one.
+	 */
+	private void discard(Solver current, Throwable failure) {
+		solver.remove();
+		solvers.remove(current);
+		try {
+			current.close();
+		} catch (SolverException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Closes the solvers of all solver threads.
+	 */
+	private void closeSolvers() {
+		for (Solver current : solvers) {
+			try {
+				current.close();
+			} catch (SolverException e) {
+				if (closeFailure == null) {
+					closeFailure = e;
+				} else {
+					closeFailure.addSuppressed(e);
+				}
+			}
+		}
+		solvers.clear();
+	}
+
+	/**
+	 * A scheduled check that is its own future. Cancelling it before it runs
+	 * skips it; cancelling it while it runs interrupts its solver, which
+	 * stops the native search, and its solver thread.
+	 */
+	private final class Check extends CompletableFuture<Boolean> implements
+			Runnable {
+
+		private final Expression expression;
+
+		/**
+		 * The solver thread running this check, guarded by <code>this</code>.
+		 */
+		private Thread runner;
+
+		/**
+		 * The solver running this check, guarded by <code>this</code>.
+		 */
+		private Solver active;
+
+		Check(Expression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (isDone()) {
+					return;
+				}
+				runner = Thread.currentThread();
+			}
+			try {
+				Solver current = acquire();
+				synchronized (this) {
+					if (isDone()) {
+						return;
+					}
+					active = current;
+				}
+				try {
+					complete(current.isSatisfiable(expression));
+				} catch (Throwable t) {
+					// an interrupted solver is still healthy
+					if (!isCancelled()) {
+						discard(current, t);
+					}
+					throw t;
+				}
+			} catch (Throwable t) {
+				completeExceptionally(t);
+			} finally {
+				synchronized (this) {
+					runner = null;
+					active = null;
+				}
+				// do not leak an interrupt into the next check
+				Thread.interrupted();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && mayInterruptIfRunning) {
+				synchronized (this) {
+					// cancelling the future alone does not stop native work
+					if (active != null) {
+						active.interrupt();
+					}
+					if (runner != null) {
+						runner.interrupt();
+					}
+				}
+			}
+			return cancelled;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package iqcache.solver.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Or;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+/**
+ * A {@link SatisfiabilityChecker} that checks the disjuncts of a top-level
+ * disjunction concurrently on the solver threads of an
+ * {@link AsyncSatisfiabilityChecker}. A disjunction is satisfiable as soon
+ * as one disjunct is, so the first satisfiable disjunct decides and the
+ * remaining checks are cancelled.
+ *
+ * Nested Or nodes are flattened. A conjunction with disjunctive conjuncts
+ * is distributed into a disjunction, <code>a and (b or c)</code> into
+ * <code>(a and b) or (a and c)</code>, as long as the number of disjuncts
+ * stays within a limit; disjunctive conjuncts beyond the limit stay inside
+ * every disjunct. An expression with a single disjunct is checked as is.
+ *
+ * @author dinh
+ */
+public class DisjunctiveSatisfiabilityChecker extends SatisfiabilityChecker {
+
+	private final AsyncSatisfiabilityChecker checker;
+	private final int maxDisjuncts;
+
+	/**
+	 * Constructor of a DisjunctiveSatisfiabilityChecker.
+	 *
+	 * @param checker
+	 *            the checker that decides the disjuncts
+	 * @param maxDisjuncts
+	 *            the maximum number of disjuncts a conjunction is distributed
+	 *            into
+	 */
+	public DisjunctiveSatisfiabilityChecker(
+			AsyncSatisfiabilityChecker checker, int maxDisjuncts) {
+		Preconditions.checkNotNull(checker);
+		Preconditions.checkArgument(maxDisjuncts > 0, "need a disjunct");
+		this.checker = checker;
+		this.maxDisjuncts = maxDisjuncts;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		List<Expression> disjuncts = split(expression);
+		if (disjuncts.size() == 1) {
+			return checker.isSatisfiable(disjuncts.get(0));
+		}
+
+		final BlockingQueue<Integer> finished = new LinkedBlockingQueue<Integer>();
+		List<CompletableFuture<Boolean>> checks = new ArrayList<CompletableFuture<Boolean>>();
+		for (int i = 0; i < disjuncts.size(); i++) {
+			final int index = i;
+			CompletableFuture<Boolean> check = checker
+					.isSatisfiableAsync(disjuncts.get(i));
+			check.whenComplete(new BiConsumer<Boolean, Throwable>() {
+				@Override
+				public void accept(Boolean satisfiable, Throwable failure) {
+					finished.add(index);
+				}
+			});
+			checks.add(check);
+		}
+
+		Throwable failure = null;
+		try {
+			for (int answers = 0; answers < disjuncts.size(); answers++) {
+				int index = finished.take();
+				try {
+					if (checks.get(index).get()) {
+						cancel(checks);
+						return true;
+					}
+				} catch (ExecutionException e) {
+					// another disjunct may still be satisfiable
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel(checks);
+			Thread.currentThread().interrupt();
+			throw new SatisfiabilityException(
+					"Interrupted while checking disjuncts.", e);
+		}
+		if (failure != null) {
+			throw new SatisfiabilityException("Cannot check disjunct.",
+					failure);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the disjuncts of an expression.
+	 */
+	List<Expression> split(Expression expression) {
+		List<Expression> disjuncts = new ArrayList<Expression>();
+		if (expression instanceof Or) {
+			collectDisjuncts(expression, disjuncts);
+		} else if (expression instanceof And) {
+			distribute((And) expression, disjuncts);
+		} else {
+			disjuncts.add(expression);
+		}
+		return disjuncts;
+	}
+
+	/**
+	 * Distributes a conjunction over its disjunctive conjuncts, narrowest
+	 * first, while the number of disjuncts stays within the limit.
+	 */
+	private void distribute(And and, List<Expression> disjuncts) {
+		List<Expression> conjuncts = new ArrayList<Expression>();
+		List<List<Expression>> alternatives = new ArrayList<List<Expression>>();
+		for (int i = 0; i < and.getNumberOfSubexpressions(); i++) {
+			Expression conjunct = and.getSubexpressionAt(i);
+			if (conjunct instanceof Or) {
+				List<Expression> alternative = new ArrayList<Expression>();
+				collectDisjuncts(conjunct, alternative);
+				alternatives.add(alternative);
+			} else {
+				conjuncts.add(conjunct);
+			}
+		}
+
+		List<List<Expression>> products = new ArrayList<List<Expression>>();
+		products.add(conjuncts);
+		while (!alternatives.isEmpty()) {
+			int narrowest = 0;
+			for (int i = 1; i < alternatives.size(); i++) {
+				if (alternatives.get(i).size() < alternatives.get(narrowest)
+						.size()) {
+					narrowest = i;
+				}
+			}
+			List<Expression> alternative = alternatives.get(narrowest);
+			if ((long) products.size() * alternative.size() > maxDisjuncts) {
+				break;
+			}
+			alternatives.remove(narrowest);
+
+			List<List<Expression>> next = new ArrayList<List<Expression>>();
+			for (List<Expression> product : products) {
+				for (Expression disjunct : alternative) {
+					List<Expression> extended = new ArrayList<Expression>(
+							product);
+					extended.add(disjunct);
+					next.add(extended);
+				}
+			}
+			products = next;
+		}
+
+		for (List<Expression> product : products) {
+			// undistributed disjunctions stay in every disjunct
+			for (List<Expression> alternative : alternatives) {
+				product.add(new Or(alternative
+						.toArray(new Expression[alternative.size()])));
+			}
+			disjuncts.add(product.size() == 1 ? product.get(0) : new And(
+					product.toArray(new Expression[product.size()])));
+		}
+	}
+
+	private static void collectDisjuncts(Expression expression,
+			List<Expression> disjuncts) {
+		if (expression instanceof Or) {
+			Or or = (Or) expression;
+			for (int i = 0; i < or.getNumberOfSubexpressions(); i++) {
+				collectDisjuncts(or.getSubexpressionAt(i), disjuncts);
+			}
+		} else {
+			disjuncts.add(expression);
+		}
+	}
+
+	private static void cancel(List<CompletableFuture<Boolean>> checks) {
+		for (CompletableFuture<Boolean> check : checks) {
+			check.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package iqcache.solver.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the metrics of a {@link SolverPool}.
+ *
+ * @author dinh
+ */
+public final class PoolStatistics {
+
+	private final int size;
+	private final int busy;
+	private final int available;
+	private final long checks;
+	private final long timeouts;
+	private final long failures;
+	private final long replacements;
+	private final long waitNanos;
+	private final long longestWaitNanos;
+	private final long busyNanos;
+	private final long elapsedNanos;
+
+	PoolStatistics(int size, int busy, int available, long checks,
+			long timeouts, long failures, long replacements, long waitNanos,
+			long longestWaitNanos, long busyNanos, long elapsedNanos) {
+		this.size = size;
+		this.busy = busy;
+		this.available = available;
+		this.checks = checks;
+		this.timeouts = timeouts;
+		this.failures = failures;
+		this.replacements = replacements;
+		this.waitNanos = waitNanos;
+		this.longestWaitNanos = longestWaitNanos;
+		this.busyNanos = busyNanos;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the configured number of solvers.
+	 *
+	 * @return The pool size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of solvers running a check.
+	 *
+	 * @return The number of busy solvers.
+	 */
+	public int getBusy() {
+		return busy;
+	}
+
+	/**
+	 * Returns the number of solvers owned by the pool, which is less than the
+	 * size while broken solvers cannot be replaced.
+	 *
+	 * @return The number of live solvers.
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * Returns the number of finished checks.
+	 *
+	 * @return The number of checks.
+	 */
+	public long getChecks() {
+		return checks;
+	}
+
+	/**
+	 * Returns the number of checks that found no idle solver in time.
+	 *
+	 * @return The number of timeouts.
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Returns the number of failed checks and health checks.
+	 *
+	 * @return The number of failures.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the number of solvers created to replace broken ones.
+	 *
+	 * @return The number of replacements.
+	 */
+	public long getReplacements() {
+		return replacements;
+	}
+
+	/**
+	 * Returns the average time a check waited for an idle solver.
+	 *
+	 * @param unit
+	 *            the unit of the result
+	 * @return The average waiting time.
+	 */
+	public double getAverageWait(TimeUnit unit) {
+		long requests = checks + timeouts;
+		if (requests == 0) {
+			return 0;
+		}
+		return (double) waitNanos / requests / unit.toNanos(1);
+	}
+
+	/**
+	 * Returns the longest time a check waited for an idle solver.
+	 *
+	 * @param unit
+	 *            the unit of the result
+	 * @return The longest waiting time.
+	 */
+	public long getLongestWait(TimeUnit unit) {
+		return unit.convert(longestWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the fraction of the lifetime of the pool its solvers spent
+	 * checking.
+	 *
+	 * @return The utilisation between 0 and 1.
+	 */
+	public double getUtilisation() {
+		if (elapsedNanos <= 0) {
+			return 0;
+		}
+		return Math.min(1.0, (double) busyNanos / size / elapsedNanos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size=%d busy=%d available=%d checks=%d "
+				+ "timeouts=%d failures=%d replacements=%d avgWait=%.3fms "
+				+ "maxWait=%dms utilisation=%.3f", size, busy, available,
+				checks, timeouts, failures, replacements,
+				getAverageWait(TimeUnit.MILLISECONDS),
+				getLongestWait(TimeUnit.MILLISECONDS), getUtilisation());
+	}
+}
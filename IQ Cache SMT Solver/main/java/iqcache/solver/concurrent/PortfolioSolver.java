@@ -0,0 +1,353 @@
+package iqcache.solver.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+
+/**
+ * A {@link Solver} that races several backends, typically a
+ * {@link iqcache.solver.z3.Z3ResettingSolver} and a
+ * {@link iqcache.solver.mathsat.MathSatResettingSolver}, on the same
+ * expression. Every backend runs on its own thread; the first definitive
+ * answer is returned and the other backends are interrupted via
+ * {@link Solver#interrupt()}. The number of races won by each backend is
+ * recorded.
+ *
+ * Each backend is used by its own thread only, so the backends need not be
+ * thread-safe. Concurrent calls of {@link #isSatisfiable(Expression)} are
+ * queued per backend. {@link #shutdown()} closes every backend on its thread
+ * after the races it is working on.
+ *
+ * @author dinh
+ */
+public class PortfolioSolver extends Solver {
+
+	/**
+	 * The time between two interrupts of a backend that still works on a
+	 * decided race.
+	 */
+	private static final long REPEAT_MILLIS = 10;
+
+	/**
+	 * Repeats the interrupts of the losers; shared by all portfolios.
+	 */
+	private static final ScheduledExecutorService INTERRUPTER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "portfolio-interrupter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final Solver[] backends;
+	private final Slot[] slots;
+	private final ExecutorService[] executors;
+	private final AtomicLongArray wins;
+
+	/**
+	 * The first failure to close a backend, guarded by <code>this</code>.
+	 */
+	private SolverException closeFailure;
+
+	/**
+	 * Constructor of a PortfolioSolver.
+	 *
+	 * @param backends
+	 *            the solvers to race, at least one
+	 */
+	public PortfolioSolver(Solver... backends) {
+		super();
+		Preconditions.checkNotNull(backends);
+		Preconditions.checkArgument(backends.length > 0, "need a backend");
+		this.backends = backends.clone();
+		this.slots = new Slot[backends.length];
+		this.executors = new ExecutorService[backends.length];
+		this.wins = new AtomicLongArray(backends.length);
+
+		for (int i = 0; i < backends.length; i++) {
+			Preconditions.checkNotNull(backends[i]);
+			slots[i] = new Slot();
+			final String name = "portfolio-"
+					+ backends[i].getClass().getSimpleName();
+			executors[i] = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, name);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		Race race = new Race(expression);
+		for (int i = 0; i < backends.length; i++) {
+			executors[i].execute(new Entry(race, i));
+		}
+
+		SatisfiabilityException failure = null;
+		try {
+			for (int answers = 0; answers < backends.length; answers++) {
+				Outcome outcome = race.outcomes.take();
+				if (outcome.failure == null) {
+					race.decided = true;
+					wins.incrementAndGet(outcome.backend);
+					interruptOthers(race, outcome.backend);
+					return outcome.satisfiable;
+				}
+				if (failure == null) {
+					failure = outcome.failure;
+				}
+			}
+		} catch (InterruptedException e) {
+			race.decided = true;
+			interruptOthers(race, -1);
+			Thread.currentThread().interrupt();
+			throw new SatisfiabilityException(
+					"Interrupted while waiting for the backends.", e);
+		}
+		throw new SatisfiabilityException("No backend could decide formula.",
+				failure);
+	}
+
+	/**
+	 * Interrupts all backends.
+	 */
+	@Override
+	public void interrupt() {
+		for (Solver backend : backends) {
+			backend.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of races won by a backend.
+	 *
+	 * @param backend
+	 *            the index of the backend in the constructor arguments
+	 * @return The number of wins.
+	 */
+	public long getWins(int backend) {
+		Preconditions.checkArgument(backend >= 0 && backend < backends.length,
+				"no such backend");
+		return wins.get(backend);
+	}
+
+	/**
+	 * Returns the number of backends.
+	 *
+	 * @return The number of backends.
+	 */
+	public int getNumberOfBackends() {
+		return backends.length;
+	}
+
+	/**
+	 * Stops the backend threads after the running races and closes the
+	 * backends.
+	 */
+	public void shutdown() {
+		for (int i = 0; i < backends.length; i++) {
+			final Solver backend = backends[i];
+			try {
+				executors[i].execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							backend.close();
+						} catch (SolverException e) {
+							recordCloseFailure(e);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// already shut down
+			}
+			executors[i].shutdown();
+		}
+	}
+
+	/**
+	 * Waits until the backend threads have stopped and the backends are
+	 * closed.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait for each backend thread
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <b>true</b> if the backends are closed, <b>false</b> if the
+	 *         timeout passed first.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 * @throws SolverException
+	 *             if a backend could not be closed
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException, SolverException {
+		for (ExecutorService executor : executors) {
+			if (!executor.awaitTermination(timeout, unit)) {
+				return false;
+			}
+		}
+		synchronized (this) {
+			if (closeFailure != null) {
+				throw closeFailure;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected void resetSolver() throws SolverException {
+		// the backends reset themselves
+	}
+
+	@Override
+	protected void openSolver() throws SolverException {
+		// the backends open themselves
+	}
+
+	@Override
+	protected void closeSolver() throws SolverException {
+		// the backends close themselves
+	}
+
+	private synchronized void recordCloseFailure(SolverException e) {
+		if (closeFailure == null) {
+			closeFailure = e;
+		} else {
+			closeFailure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Interrupts every backend except the winner that still works on the
+	 * given race, and again every {@link #REPEAT_MILLIS} until it gives the
+	 * race up: a backend drops an interrupt that arrives before its call has
+	 * started. A backend that already moved on to a later race is left
+	 * alone.
+	 */
+	private void interruptOthers(final Race race, int winner) {
+		for (int i = 0; i < backends.length; i++) {
+			if (i == winner) {
+				continue;
+			}
+			final int loser = i;
+			synchronized (slots[loser]) {
+				if (slots[loser].race == race) {
+					backends[loser].interrupt();
+					slots[loser].repeater = INTERRUPTER.scheduleWithFixedDelay(
+							new Runnable() {
+								@Override
+								public void run() {
+									synchronized (slots[loser]) {
+										if (slots[loser].race == race) {
+											backends[loser].interrupt();
+										}
+									}
+								}
+							}, REPEAT_MILLIS, REPEAT_MILLIS,
+							TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The race a backend is currently working on and the repeated interrupt
+	 * of a lost race, guarded by the slot itself.
+	 */
+	private static final class Slot {
+		private Race race;
+		private ScheduledFuture<?> repeater;
+	}
+
+	private static final class Race {
+		private final Expression expression;
+		private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+		private volatile boolean decided = false;
+
+		Race(Expression expression) {
+			this.expression = expression;
+		}
+	}
+
+	private static final class Outcome {
+		private final int backend;
+		private final boolean satisfiable;
+		private final SatisfiabilityException failure;
+
+		Outcome(int backend, boolean satisfiable,
+				SatisfiabilityException failure) {
+			this.backend = backend;
+			this.satisfiable = satisfiable;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * The participation of one backend in a race.
+	 */
+	private final class Entry implements Runnable {
+		private final Race race;
+		private final int backend;
+
+		Entry(Race race, int backend) {
+			this.race = race;
+			this.backend = backend;
+		}
+
+		@Override
+		public void run() {
+			synchronized (slots[backend]) {
+				if (race.decided) {
+					// another backend won before this one started
+					race.outcomes.add(new Outcome(backend, false,
+							new SatisfiabilityException("Race decided.")));
+					return;
+				}
+				slots[backend].race = race;
+			}
+
+			Outcome outcome;
+			try {
+				outcome = new Outcome(backend,
+						backends[backend].isSatisfiable(race.expression), null);
+			} catch (SatisfiabilityException e) {
+				outcome = new Outcome(backend, false, e);
+			} catch (RuntimeException e) {
+				outcome = new Outcome(backend, false,
+						new SatisfiabilityException("Backend failed.", e));
+			} finally {
+				synchronized (slots[backend]) {
+					slots[backend].race = null;
+					if (slots[backend].repeater != null) {
+						slots[backend].repeater.cancel(false);
+						slots[backend].repeater = null;
+					}
+				}
+			}
+			race.outcomes.add(outcome);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package iqcache.solver.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.SolverFactory;
+import iqcache.solver.UnsupportedExpressionException;
+
+/**
+ * A thread-safe {@link SatisfiabilityChecker} that owns a fixed number of
+ * {@link Solver}s, each with its own native context/environment. Every check
+ * borrows an idle solver for its duration, so up to <code>size</code> checks
+ * run in parallel; further callers wait up to a bounded time.
+ *
+ * A solver whose check fails in the solver, not because of the formula, is
+ * considered broken, closed and replaced by a fresh one from the
+ * {@link SolverFactory}. {@link #checkHealth()} probes the idle solvers the
+ * same way.
+ *
+ * @author dinh
+ */
+public class SolverPool extends SatisfiabilityChecker {
+
+	private final SolverFactory factory;
+	private final int size;
+	private final long maxWaitNanos;
+	private final BlockingQueue<Solver> idle;
+
+	/**
+	 * Number of solvers that could not be replaced yet.
+	 */
+	private final AtomicInteger missing = new AtomicInteger();
+	private final AtomicInteger busy = new AtomicInteger();
+
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong replacements = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong longestWaitNanos = new AtomicLong();
+	private final AtomicLong busyNanos = new AtomicLong();
+
+	/**
+	 * Constructor of a SolverPool. All solvers are created eagerly.
+	 *
+	 * @param factory
+	 *            the factory for the solvers of this pool
+	 * @param size
+	 *            the number of solvers, e.g. the number of cores
+	 * @param maxWait
+	 *            the maximum time a check waits for an idle solver
+	 * @param unit
+	 *            the unit of <code>maxWait</code>
+	 * @throws SolverException
+	 *             if a solver cannot be created.
+	 */
+	public SolverPool(SolverFactory factory, int size, long maxWait,
+			TimeUnit unit) throws SolverException {
+		Preconditions.checkNotNull(factory);
+		Preconditions.checkNotNull(unit);
+		Preconditions.checkArgument(size > 0, "pool must hold a solver");
+		Preconditions.checkArgument(maxWait >= 0, "negative waiting time");
+		this.factory = factory;
+		this.size = size;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+		this.idle = new ArrayBlockingQueue<Solver>(size);
+
+		for (int i = 0; i < size; i++) {
+			idle.add(createSolver());
+		}
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		Solver solver = borrow();
+		long start = System.nanoTime();
+		boolean satisfiable;
+		try {
+			satisfiable = solver.isSatisfiable(expression);
+		} catch (SatisfiabilityException e) {
+			release(solver, start, !isSolverFailure(e), e);
+			throw e;
+		} catch (RuntimeException e) {
+			release(solver, start, !isSolverFailure(e), e);
+			throw e;
+		} catch (Error e) {
+			release(solver, start, false, e);
+			throw e;
+		}
+		release(solver, start, true, null);
+		return satisfiable;
+	}
+
+	/**
+	 * Checks every idle solver with a trivial formula and replaces the ones
+	 * that fail.
+	 *
+	 * @return The number of replaced solvers.
+	 */
+	public int checkHealth() {
+		int replaced = 0;
+		int candidates = idle.size();
+		for (int i = 0; i < candidates; i++) {
+			Solver solver = idle.poll();
+			if (solver == null) {
+				break;
+			}
+			boolean healthy;
+			try {
+				healthy = solver.isSatisfiable(new BooleanValue(true));
+			} catch (SatisfiabilityException e) {
+				healthy = false;
+			} catch (RuntimeException e) {
+				healthy = false;
+			}
+			if (healthy) {
+				idle.add(solver);
+			} else {
+				replaced++;
+				failures.incrementAndGet();
+				discard(solver);
+				try {
+					replenish();
+				} catch (SolverException e) {
+					// the next borrow tries again and reports the failure
+				}
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * Returns a snapshot of the metrics of this pool.
+	 *
+	 * @return The current statistics.
+	 */
+	public PoolStatistics getStatistics() {
+		long elapsed = System.nanoTime() - startNanos;
+		return new PoolStatistics(size, busy.get(), size - missing.get(),
+				checks.get(), timeouts.get(), failures.get(),
+				replacements.get(), waitNanos.get(), longestWaitNanos.get(),
+				busyNanos.get(), elapsed);
+	}
+
+	/**
+	 * Returns the number of solvers of this pool.
+	 *
+	 * @return The pool size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	private Solver borrow() throws SatisfiabilityException {
+		SolverException replenishFailure = null;
+		try {
+			replenish();
+		} catch (SolverException e) {
+			replenishFailure = e;
+		}
+		long start = System.nanoTime();
+		Solver solver;
+		try {
+			solver = idle.poll(maxWaitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SatisfiabilityException(
+					"Interrupted while waiting for a solver.", e);
+		}
+		long waited = System.nanoTime() - start;
+		waitNanos.addAndGet(waited);
+		updateLongestWait(waited);
+
+		if (solver == null) {
+			timeouts.incrementAndGet();
+			throw new SatisfiabilityException("No solver available within "
+					+ TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms.",
+					replenishFailure);
+		}
+		busy.incrementAndGet();
+		return solver;
+	}
+
+	/**
+	 * Returns a borrowed solver or replaces it if it is broken. A failure to
+	 * close or replace it is attached to the failure of the check.
+	 */
+	private void release(Solver solver, long start, boolean healthy,
+			Throwable failure) {
+		busyNanos.addAndGet(System.nanoTime() - start);
+		checks.incrementAndGet();
+		busy.decrementAndGet();
+		if (healthy) {
+			idle.add(solver);
+			return;
+		}
+
+		failures.incrementAndGet();
+		SolverException closeFailure = discard(solver);
+		if (closeFailure != null) {
+			failure.addSuppressed(closeFailure);
+		}
+		try {
+			replenish();
+		} catch (SolverException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Determine if a failed check leaves the solver broken. A formula that
+	 * the solver cannot express or that is malformed does not.
+	 */
+	private static boolean isSolverFailure(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause
+				.getCause()) {
+			if (cause instanceof UnsupportedExpressionException
+					|| cause instanceof UnsupportedOperationException
+					|| cause instanceof IllegalArgumentException) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes a broken solver, which releases its native context, and counts
+	 * it as missing.
+	 *
+	 * @return The failure to close the solver or <code>null</code>.
+	 */
+	private SolverException discard(Solver solver) {
+		missing.incrementAndGet();
+		try {
+			solver.close();
+			return null;
+		} catch (SolverException e) {
+			return e;
+		} catch (RuntimeException e) {
+			return new SolverException("Cannot close broken solver.", e);
+		}
+	}
+
+	/**
+	 * Creates the solvers that could not be replaced so far.
+	 * 
+	 * @throws SolverException
+	 *             if a solver cannot be created; it is tried again on the
+	 *             next call
+	 */
+	private void replenish() throws SolverException {
+		int current;
+		while ((current = missing.get()) > 0) {
+			if (!missing.compareAndSet(current, current - 1)) {
+				continue;
+			}
+			try {
+				idle.add(createSolver());
+				replacements.incrementAndGet();
+			} catch (SolverException e) {
+				// try again on the next borrow
+				missing.incrementAndGet();
+				throw e;
+			}
+		}
+	}
+
+	private Solver createSolver() throws SolverException {
+		Solver solver = factory.createSolver();
+		if (solver == null) {
+			throw new SolverException("Solver factory returned null.");
+		}
+		return solver;
+	}
+
+	private void updateLongestWait(long waited) {
+		long longest = longestWaitNanos.get();
+		while (waited > longest
+				&& !longestWaitNanos.compareAndSet(longest, waited)) {
+			longest = longestWaitNanos.get();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package iqcache.solver.difference;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A constraint graph for difference logic. Every constraint u - v <= c (or
+ * u - v < c) is an edge from v to u with weight c; the constraints are
+ * satisfiable iff the graph has no negative cycle.
+ *
+ * A cycle is negative iff its constants sum up below zero or sum up to zero
+ * with at least one strict edge. Weights are evaluated exactly: integral
+ * constants in <code>long</code> arithmetic, with a strict bound encoded as
+ * c * M - 1 and M larger than the number of edges on any simple cycle;
+ * anything else in {@link BigDecimal}.
+ *
+ * @author dinh
+ */
+final class DifferenceGraph {
+
+	private final Map<String, Integer> nodes = new HashMap<String, Integer>();
+
+	private int[] from = new int[16];
+	private int[] to = new int[16];
+	private double[] weight = new double[16];
+	private boolean[] strict = new boolean[16];
+	private int edges = 0;
+
+	/**
+	 * Adds the constraint u - v <= c (or u - v < c).
+	 *
+	 * @param u
+	 *            key of the minuend variable
+	 * @param v
+	 *            key of the subtrahend variable
+	 * @param c
+	 *            the constant bound
+	 * @param isStrict
+	 *            <code>true</code> for u - v < c
+	 */
+	void addConstraint(String u, String v, double c, boolean isStrict) {
+		if (edges == from.length) {
+			int capacity = edges * 2;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			weight = Arrays.copyOf(weight, capacity);
+			strict = Arrays.copyOf(strict, capacity);
+		}
+		from[edges] = node(v);
+		to[edges] = node(u);
+		weight[edges] = c;
+		strict[edges] = isStrict;
+		edges++;
+	}
+
+	/**
+	 * Returns the number of constraints in this graph.
+	 *
+	 * @return The number of edges.
+	 */
+	int getNumberOfConstraints() {
+		return edges;
+	}
+
+	/**
+	 * Determine if the constraints of this graph are satisfiable.
+	 *
+	 * @return <code>true</code> iff the graph has no negative cycle.
+	 */
+	boolean isConsistent() {
+		try {
+			return isConsistentLong();
+		} catch (ArithmeticException e) {
+			// fractional or huge constants: evaluate exactly in BigDecimal
+			return isConsistentDecimal();
+		}
+	}
+
+	/**
+	 * Bellman-Ford from a virtual source connected to every node, evaluated
+	 * in <code>long</code> arithmetic.
+	 *
+	 * @throws ArithmeticException
+	 *             iff a constant is not integral or a sum overflows
+	 */
+	private boolean isConsistentLong() {
+		long epsilonFactor = edges + 1L;
+		long[] w = new long[edges];
+		for (int e = 0; e < edges; e++) {
+			double c = weight[e];
+			if (c != Math.rint(c) || Math.abs(c) >= 0x1p62) {
+				throw new ArithmeticException("constant is not integral");
+			}
+			w[e] = Math.multiplyExact((long) c, epsilonFactor)
+					- (strict[e] ? 1 : 0);
+		}
+
+		// n + 1 rounds, so a graph without nodes is consistent, too
+		int n = nodes.size();
+		long[] dist = new long[n];
+		for (int round = 0; round <= n; round++) {
+			boolean changed = false;
+			for (int e = 0; e < edges; e++) {
+				long candidate = Math.addExact(dist[from[e]], w[e]);
+				if (candidate < dist[to[e]]) {
+					dist[to[e]] = candidate;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				return true;
+			}
+		}
+		// still relaxing after n + 1 rounds: negative cycle
+		return false;
+	}
+
+	/**
+	 * Bellman-Ford from a virtual source connected to every node, evaluated
+	 * exactly in {@link BigDecimal} arithmetic. Path lengths are compared as
+	 * pairs (sum of constants, number of strict edges), since a fractional sum
+	 * may be arbitrarily close to zero.
+	 */
+	private boolean isConsistentDecimal() {
+		BigDecimal[] w = new BigDecimal[edges];
+		for (int e = 0; e < edges; e++) {
+			// new BigDecimal(double) is the exact value of the double
+			w[e] = new BigDecimal(weight[e]);
+		}
+
+		int n = nodes.size();
+		BigDecimal[] dist = new BigDecimal[n];
+		long[] strictEdges = new long[n];
+		Arrays.fill(dist, BigDecimal.ZERO);
+		for (int round = 0; round <= n; round++) {
+			boolean changed = false;
+			for (int e = 0; e < edges; e++) {
+				BigDecimal candidate = dist[from[e]].add(w[e]);
+				long candidateStrict = strictEdges[from[e]]
+						+ (strict[e] ? 1 : 0);
+				int cmp = candidate.compareTo(dist[to[e]]);
+				if (cmp < 0
+						|| (cmp == 0 && candidateStrict > strictEdges[to[e]])) {
+					dist[to[e]] = candidate;
+					strictEdges[to[e]] = candidateStrict;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int node(String key) {
+		Integer index = nodes.get(key);
+		if (index == null) {
+			index = nodes.size();
+			nodes.put(key, index);
+		}
+		return index;
+	}
+}
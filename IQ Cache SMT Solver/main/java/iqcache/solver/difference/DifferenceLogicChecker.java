@@ -0,0 +1,362 @@
+package iqcache.solver.difference;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.UnsupportedExpressionException;
+
+/**
+ * A pure Java {@link SatisfiabilityChecker} for conjunctions of integer and
+ * real comparisons of the form x <= y + c, x < y + c and x = y + c (including
+ * their single-column variants). Such a conjunction is difference logic and
+ * is decided by negative cycle detection in a constraint graph.
+ *
+ * Expressions that are not conjunctive after pushing negations to the atoms
+ * (disjunctions, disequalities) as well as varchar comparisons are handed to
+ * the fallback checker. Chained behind a
+ * {@link iqcache.solver.range.RangeSetChecker} it takes over the join
+ * predicates the range checker cannot decide.
+ *
+ * @author dinh
+ */
+public class DifferenceLogicChecker extends SatisfiabilityChecker {
+
+	private static final String INT_SUFFIX = "#int";
+	private static final String REAL_SUFFIX = "#real";
+
+	/**
+	 * Key of the variable that stands for the constant zero. Column keys
+	 * always contain a dot (see {@link Solver#getVariableName(Column)}).
+	 */
+	private static final String ZERO = "0";
+
+	private final SatisfiabilityChecker fallback;
+
+	private long decided;
+	private long delegated;
+
+	/**
+	 * Constructor of a DifferenceLogicChecker.
+	 *
+	 * @param fallback
+	 *            the checker for expressions outside of difference logic,
+	 *            e.g. a native {@link Solver}
+	 */
+	public DifferenceLogicChecker(SatisfiabilityChecker fallback) {
+		Preconditions.checkNotNull(fallback);
+		this.fallback = fallback;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		DifferenceLogicVisitor visitor = new DifferenceLogicVisitor();
+
+		try {
+			expression.accept(visitor);
+		} catch (UnsupportedExpressionException e) {
+			delegated++;
+			return fallback.isSatisfiable(expression);
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot build constraint graph.",
+					e);
+		}
+		decided++;
+		return !visitor.contradiction && visitor.graph.isConsistent();
+	}
+
+	/**
+	 * Returns the number of checks answered by the constraint graph.
+	 *
+	 * @return The number of checks decided in Java.
+	 */
+	public long getDecidedCount() {
+		return decided;
+	}
+
+	/**
+	 * Returns the number of checks handed to the fallback checker.
+	 *
+	 * @return The number of delegated checks.
+	 */
+	public long getDelegatedCount() {
+		return delegated;
+	}
+
+	/**
+	 * Collects the constraints of a conjunction into a
+	 * {@link DifferenceGraph}. Negations are pushed down to the atoms by
+	 * tracking the polarity of the current subexpression.
+	 */
+	private static class DifferenceLogicVisitor implements
+			ExpressionVisitor<Void, SolverException> {
+
+		private final DifferenceGraph graph = new DifferenceGraph();
+		private final Map<String, Boolean> literals = new HashMap<String, Boolean>();
+		private boolean negated = false;
+		private boolean contradiction = false;
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedExpressionException
+		 */
+		@Override
+		public Void visit(Expression exp) throws SolverException {
+			throw new UnsupportedExpressionException("unknown expression");
+		}
+
+		@Override
+		public Void visit(And and) throws SolverException {
+			if (negated) {
+				return visitDisjunction(and);
+			}
+			return visitConjunction(and);
+		}
+
+		@Override
+		public Void visit(Or or) throws SolverException {
+			if (negated) {
+				return visitConjunction(or);
+			}
+			return visitDisjunction(or);
+		}
+
+		@Override
+		public Void visit(Not not) throws SolverException {
+			negated = !negated;
+			not.getSubexpressionAt(0).accept(this);
+			negated = !negated;
+			return null;
+		}
+
+		@Override
+		public Void visit(BooleanValue booleanValue) throws SolverException {
+			if (booleanValue.getValue() == negated) {
+				contradiction = true;
+			}
+			return null;
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedExpressionException
+		 */
+		@Override
+		public Void visit(DummyLeaf dummyLeaf) throws SolverException {
+			throw new UnsupportedExpressionException("dummy leaf");
+		}
+
+		@Override
+		public Void visit(EqualDoubleComparison exp) throws SolverException {
+			equal(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					REAL_SUFFIX, negated);
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualIntegerComparison exp) throws SolverException {
+			equal(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					INT_SUFFIX, negated);
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualVarcharComparison exp) throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public Void visit(LessDoubleComparison exp) throws SolverException {
+			less(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					REAL_SUFFIX, true);
+			return null;
+		}
+
+		@Override
+		public Void visit(LessVarcharComparison exp) throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public Void visit(LessOrEqualDoubleComparison exp)
+				throws SolverException {
+			less(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					REAL_SUFFIX, false);
+			return null;
+		}
+
+		@Override
+		public Void visit(LessOrEqualIntegerComparison exp)
+				throws SolverException {
+			less(exp.getLeft(), exp.getRight(), exp.getConstant(), INT_SUFFIX,
+					false);
+			return null;
+		}
+
+		@Override
+		public Void visit(LessOrEqualVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public Void visit(NotEqualDoubleComparison exp) throws SolverException {
+			equal(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					REAL_SUFFIX, !negated);
+			return null;
+		}
+
+		@Override
+		public Void visit(NotEqualIntegerComparison exp)
+				throws SolverException {
+			equal(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					INT_SUFFIX, !negated);
+			return null;
+		}
+
+		@Override
+		public Void visit(NotEqualVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public Void visit(BooleanLiteral booleanLiteral)
+				throws SolverException {
+			literal(booleanLiteral.getColumn(), !negated);
+			return null;
+		}
+
+		@Override
+		public Void visit(NegatedBooleanLiteral negatedBooleanLiteral)
+				throws SolverException {
+			literal(negatedBooleanLiteral.getColumn(), negated);
+			return null;
+		}
+
+		private Void visitConjunction(NodeExpression node)
+				throws SolverException {
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				node.getSubexpressionAt(i).accept(this);
+			}
+			return null;
+		}
+
+		private Void visitDisjunction(NodeExpression node)
+				throws SolverException {
+			if (node.getNumberOfSubexpressions() != 1) {
+				throw new UnsupportedExpressionException("disjunction");
+			}
+			return node.getSubexpressionAt(0).accept(this);
+		}
+
+		private void literal(Column col, boolean value) {
+			Boolean previous = literals.put(Solver.getVariableName(col),
+					value);
+			if (previous != null && previous.booleanValue() != value) {
+				contradiction = true;
+			}
+		}
+
+		/**
+		 * Adds left < right + c (or left <= right + c) in the current
+		 * polarity. A missing column stands for the constant zero; an atom
+		 * without columns is <b>true</b>, see
+		 * {@link iqcache.solver.SMTExpressionConverter}.
+		 */
+		private void less(Column left, Column right, double c, String suffix,
+				boolean strict) {
+			if (left == null && right == null) {
+				contradiction |= negated;
+				return;
+			}
+			String u = key(left, right, true, suffix);
+			String v = key(left, right, false, suffix);
+			// left op c is left - 0 op c, c op right is 0 - right op -c
+			double k = left != null ? c : -c;
+
+			if (negated) {
+				// NOT(u - v <= k) is v - u < -k, NOT(u - v < k) is v - u <= -k
+				constraint(v, u, -k, !strict, suffix);
+			} else {
+				constraint(u, v, k, strict, suffix);
+			}
+		}
+
+		/**
+		 * Adds left = right + c if equality holds in the polarity
+		 * <code>isNegated</code>, otherwise fails because a disequality is a
+		 * disjunction. An atom without columns is <b>true</b> whatever its
+		 * comparison, so it only contradicts in the current polarity.
+		 */
+		private void equal(Column left, Column right, double c, String suffix,
+				boolean isNegated) throws UnsupportedExpressionException {
+			if (left == null && right == null) {
+				// before the flip of a disequality
+				contradiction |= negated;
+				return;
+			}
+			if (isNegated) {
+				throw new UnsupportedExpressionException("disequality");
+			}
+			String u = key(left, right, true, suffix);
+			String v = key(left, right, false, suffix);
+			double k = left != null ? c : -c;
+			constraint(u, v, k, false, suffix);
+			constraint(v, u, -k, false, suffix);
+		}
+
+		/**
+		 * Returns the key of the minuend (first) or subtrahend (second)
+		 * variable of left - right.
+		 */
+		private String key(Column left, Column right, boolean first,
+				String suffix) {
+			Column col = first ? left : right;
+			if (col == null) {
+				return ZERO + suffix;
+			}
+			return Solver.getVariableName(col) + suffix;
+		}
+
+		private void constraint(String u, String v, double k, boolean strict,
+				String suffix) {
+			if (strict && INT_SUFFIX.equals(suffix)) {
+				// u - v < k is u - v <= k - 1 over the integers
+				graph.addConstraint(u, v, k - 1, false);
+			} else {
+				graph.addConstraint(u, v, k, strict);
+			}
+		}
+	}
+}
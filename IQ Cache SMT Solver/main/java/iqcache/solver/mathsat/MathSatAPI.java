@@ -2,9 +2,12 @@ package iqcache.solver.mathsat;
 
 import iqcache.common.Preconditions;
 import iqcache.query.column.Column;
+import iqcache.solver.SMTLib2Emitter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.Solver;
 import iqcache.solver.SolverAPI;
+import iqcache.solver.SolverException;
+import iqcache.solver.TermCache;
 import iqcache.solver.variable.BitvectorVariable;
 import iqcache.solver.variable.IntVariable;
 import iqcache.solver.variable.RealVariable;
@@ -18,6 +21,11 @@ public class MathSatAPI extends SolverAPI {
 
 	private long env;
 
+	/**
+	 * The variables and constants already created in the environment.
+	 */
+	private final TermCache<Long> terms;
+
 	/**
 	 * Constructor for the MathSatAPI.
 	 * 
@@ -25,19 +33,67 @@ public class MathSatAPI extends SolverAPI {
 	 *            the needed environment for the MathSatAPI
 	 */
 	public MathSatAPI(long env) {
+		this(env, new TermCache<Long>());
+	}
+
+	/**
+	 * Constructor for a MathSatAPI that shares the variables and constants of
+	 * an environment across conversions.
+	 * 
+	 * @param env
+	 *            the needed environment for the MathSatAPI
+	 * @param terms
+	 *            the cache of the terms created in the environment
+	 */
+	public MathSatAPI(long env, TermCache<Long> terms) {
+		Preconditions.checkNotNull(terms);
 		if (!mathsat.api.MSAT_ERROR_ENV(env)) {
 			this.env = env;
 		}
+		this.terms = terms;
+	}
+
+	/**
+	 * Declares a column variable of the given type once per environment.
+	 */
+	private long makeVariable(int kind, Column col, int width, long type) {
+		return makeVariable(kind, col, width, type, Solver.getVariableName(col));
+	}
+
+	private long makeVariable(int kind, Column col, int width, long type,
+			String name) {
+		Long cached = terms.get(kind, col, width);
+		if (cached != null) {
+			return cached;
+		}
+		long declaration = mathsat.api.msat_declare_function(env, name, type);
+		checkDeclaration(declaration);
+		return terms.put(kind, col, width,
+				mathsat.api.msat_make_constant(env, declaration));
+	}
+
+	/**
+	 * Creates a number once per environment.
+	 */
+	private long makeNumber(int kind, String value) {
+		Long cached = terms.get(kind, value, 0);
+		if (cached != null) {
+			return cached;
+		}
+		return terms.put(kind, value, 0,
+				mathsat.api.msat_make_number(env, value));
+	}
+
+	@Override
+	protected void retain(SMTLibExpression expr) {
+		// terms live as long as the environment
 	}
 
 	@Override
 	protected SMTLibExpression createBoolVariable(Column col) {
 		Preconditions.checkNotNull(col);
-		long boolType = mathsat.api.msat_get_bool_type(env);
-		long boolVarTemp = mathsat.api.msat_declare_function(env,
-				Solver.getVariableName(col), boolType);
-		checkDeclaration(boolVarTemp);
-		long boolVar = mathsat.api.msat_make_constant(env, boolVarTemp);
+		long boolVar = makeVariable(TermCache.BOOL_VARIABLE, col, 0,
+				mathsat.api.msat_get_bool_type(env));
 		return new SMTLibExpression(new MathSatExpression(boolVar));
 	}
 
@@ -48,36 +104,39 @@ public class MathSatAPI extends SolverAPI {
 	@Override
 	protected IntVariable createIntVariable(Column col) {
 		Preconditions.checkNotNull(col);
-		long intType = mathsat.api.msat_get_integer_type(env);
-		long intVarTemp = mathsat.api.msat_declare_function(env,
-				Solver.getVariableName(col), intType);
-		checkDeclaration(intVarTemp);
-		long intVar = mathsat.api.msat_make_constant(env, intVarTemp);
+		long intVar = makeVariable(TermCache.INT_VARIABLE, col, 0,
+				mathsat.api.msat_get_integer_type(env));
 		return new MathSatIntVariable(col, intVar);
 	}
 
+	@Override
+	protected IntVariable createRankVariable(Column col) {
+		Preconditions.checkNotNull(col);
+		long rankVar = makeVariable(TermCache.RANK_VARIABLE, col, 0,
+				mathsat.api.msat_get_integer_type(env),
+				Solver.getRankVariableName(col));
+		return new MathSatIntVariable(col, rankVar);
+	}
+
 	@Override
 	protected IntVariable createIntNum(Column col, int value) {
 		String intValue = "" + value;
-		long intVar = mathsat.api.msat_make_number(env, intValue);
+		long intVar = makeNumber(TermCache.INT_NUM, intValue);
 		return new MathSatIntVariable(col, intVar);
 	}
 
 	@Override
 	protected RealVariable createRealVariable(Column col) {
 		Preconditions.checkNotNull(col);
-		long realType = mathsat.api.msat_get_integer_type(env);
-		long realVarTemp = mathsat.api.msat_declare_function(env,
-				Solver.getVariableName(col), realType);
-		checkDeclaration(realVarTemp);
-		long realVar = mathsat.api.msat_make_constant(env, realVarTemp);
+		long realVar = makeVariable(TermCache.REAL_VARIABLE, col, 0,
+				mathsat.api.msat_get_rational_type(env));
 		return new MathSatRealVariable(col, realVar);
 	}
 
 	@Override
 	protected RealVariable createRealNum(Column col, double value) {
-		String realValue = "" + value;
-		long realVar = mathsat.api.msat_make_number(env, realValue);
+		String realValue = SMTLib2Emitter.toDecimal(value);
+		long realVar = makeNumber(TermCache.REAL_NUM, realValue);
 		return new MathSatRealVariable(col, realVar);
 	}
 
@@ -85,11 +144,8 @@ public class MathSatAPI extends SolverAPI {
 	protected BitvectorVariable createBitvectorVariable(Column col, int size) {
 		Preconditions.checkNotNull(col);
 		Preconditions.checkArgument(size > 0);
-		long bitVecType = mathsat.api.msat_get_bv_type(env, size);
-		long bitVecVarTemp = mathsat.api.msat_declare_function(env,
-				Solver.getVariableName(col), bitVecType);
-		checkDeclaration(bitVecVarTemp);
-		long bitVecVar = mathsat.api.msat_make_constant(env, bitVecVarTemp);
+		long bitVecVar = makeVariable(TermCache.BITVECTOR_VARIABLE, col,
+				size, mathsat.api.msat_get_bv_type(env, size));
 		return new MathSatBitvectorVariable(col, size, bitVecVar);
 	}
 
@@ -169,63 +225,58 @@ public class MathSatAPI extends SolverAPI {
 
 	@Override
 	protected SMTLibExpression createAND(SMTLibExpression... expr) {
-		int length = expr.length;
-		MathSatExpression[] msatExpr = new MathSatExpression[length];
-
-		for (int i = 0; i < length; i++) {
-			msatExpr[i] = expr[i].getMathSatExpression();
-		}
-
-		if (length == 2) {
-			long msatTerm = mathsat.api.msat_make_and(env,
-					msatExpr[0].getMsatExpr(), msatExpr[1].getMsatExpr());
-			checkTerm(msatTerm);
-			return new SMTLibExpression(new MathSatExpression(msatTerm));
-
-		} else {
-			long msatTerm = mathsat.api.msat_make_and(env,
-					msatExpr[0].getMsatExpr(), msatExpr[1].getMsatExpr());
-
-			checkTerm(msatTerm);
-
-			for (int i = 2; i < length; i++) {
-				msatTerm = mathsat.api.msat_make_and(env, msatTerm,
-						msatExpr[i].getMsatExpr());
-			}
-			checkTerm(msatTerm);
-			return new SMTLibExpression(new MathSatExpression(msatTerm));
+		if (expr.length == 0) {
+			return createBooleanValue(true);
 		}
+		return new SMTLibExpression(new MathSatExpression(makeBalanced(
+				toTerms(expr), true)));
 	}
 
 	@Override
 	protected SMTLibExpression createOR(SMTLibExpression... expr) {
-		int length = expr.length;
-
-		MathSatExpression[] msatExpr = new MathSatExpression[length];
-
-		for (int i = 0; i < length; i++) {
-			msatExpr[i] = expr[i].getMathSatExpression();
+		if (expr.length == 0) {
+			return createBooleanValue(false);
 		}
+		return new SMTLibExpression(new MathSatExpression(makeBalanced(
+				toTerms(expr), false)));
+	}
 
-		if (length == 2) {
-			long msatTerm = mathsat.api.msat_make_or(env,
-					msatExpr[0].getMsatExpr(), msatExpr[1].getMsatExpr());
-			checkTerm(msatTerm);
-			return new SMTLibExpression(new MathSatExpression(msatTerm));
-
-		} else {
-			long msatTerm = mathsat.api.msat_make_or(env,
-					msatExpr[0].getMsatExpr(), msatExpr[1].getMsatExpr());
-
-			checkTerm(msatTerm);
+	private static long[] toTerms(SMTLibExpression... expr) {
+		long[] terms = new long[expr.length];
+		for (int i = 0; i < expr.length; i++) {
+			terms[i] = expr[i].getMathSatExpression().getMsatExpr();
+		}
+		return terms;
+	}
 
-			for (int i = 2; i < length; i++) {
-				msatTerm = mathsat.api.msat_make_or(env, msatTerm,
-						msatExpr[i].getMsatExpr());
+	/**
+	 * Combines terms into a balanced tree of binary conjunctions or
+	 * disjunctions, so the depth of the result grows logarithmically instead
+	 * of linearly with the number of operands.
+	 * 
+	 * @param terms
+	 *            the operands, at least one; overwritten
+	 * @param and
+	 *            <code>true</code> for a conjunction
+	 * @return The combined term.
+	 */
+	private long makeBalanced(long[] terms, boolean and) {
+		int n = terms.length;
+		while (n > 1) {
+			int combined = 0;
+			for (int i = 0; i + 1 < n; i += 2) {
+				long msatTerm = and ? mathsat.api.msat_make_and(env,
+						terms[i], terms[i + 1]) : mathsat.api.msat_make_or(
+						env, terms[i], terms[i + 1]);
+				checkTerm(msatTerm);
+				terms[combined++] = msatTerm;
+			}
+			if (n % 2 == 1) {
+				terms[combined++] = terms[n - 1];
 			}
-			checkTerm(msatTerm);
-			return new SMTLibExpression(new MathSatExpression(msatTerm));
+			n = combined;
 		}
+		return terms[0];
 	}
 
 	@Override
@@ -341,17 +392,11 @@ public class MathSatAPI extends SolverAPI {
 		long v1 = msatVar1.getRealVar();
 		long v2 = msatVar2.getRealVar();
 
-		// leftVariable <= rightVariable
-		long msatTerm1 = mathsat.api.msat_make_leq(env, v1, v2);
-		checkTerm(msatTerm1);
-		// leftVariable != rightVariable
-		long msatTemp = mathsat.api.msat_make_equal(env, v1, v2);
-		checkTerm(msatTemp);
-		long msatTerm2 = mathsat.api.msat_make_not(env, msatTemp);
-		checkTerm(msatTerm2);
-
-		// combine to leftVariable < rightVariable
-		long msatTerm = mathsat.api.msat_make_and(env, msatTerm1, msatTerm2);
+		// leftVariable < rightVariable as not(rightVariable <= leftVariable),
+		// a single atom
+		long msatLeq = mathsat.api.msat_make_leq(env, v2, v1);
+		checkTerm(msatLeq);
+		long msatTerm = mathsat.api.msat_make_not(env, msatLeq);
 		checkTerm(msatTerm);
 
 		MathSatExpression msatExpr = new MathSatExpression(msatTerm);
@@ -399,17 +444,11 @@ public class MathSatAPI extends SolverAPI {
 		long msatRightExpr = mathsat.api.msat_make_plus(env,
 				msatVar2.getRealVar(), c.getRealVar());
 		checkTerm(msatRightExpr);
-		// leftVariable <= rightVariable
-		long msatTerm1 = mathsat.api.msat_make_leq(env, v1, msatRightExpr);
-		checkTerm(msatTerm1);
-		// leftVariable != rightVariable
-		long msatTemp = mathsat.api.msat_make_equal(env, v1, msatRightExpr);
-		checkTerm(msatTemp);
-		long msatTerm2 = mathsat.api.msat_make_not(env, msatTemp);
-		checkTerm(msatTerm2);
-
-		// combine to leftVariable < rightVariable
-		long msatTerm = mathsat.api.msat_make_and(env, msatTerm1, msatTerm2);
+		// leftVariable < rightVariable + c as
+		// not(rightVariable + c <= leftVariable), a single atom
+		long msatLeq = mathsat.api.msat_make_leq(env, msatRightExpr, v1);
+		checkTerm(msatLeq);
+		long msatTerm = mathsat.api.msat_make_not(env, msatLeq);
 		checkTerm(msatTerm);
 
 		MathSatExpression msatExpr = new MathSatExpression(msatTerm);
@@ -469,14 +508,19 @@ public class MathSatAPI extends SolverAPI {
 	@Override
 	protected SMTLibExpression createNotEqualc(IntVariable leftVariable,
 			IntVariable rightVariable, IntVariable c) {
-		return createNOT(createEqualc(leftVariable, leftVariable, c));
+		return createNOT(createEqualc(leftVariable, rightVariable, c));
 	}
 
 	@Override
 	protected BitvectorVariable createBitvectorString(Column col,
 			String string, int size) {
+		Long cached = terms.get(TermCache.BITVECTOR_STRING, string, size);
+		if (cached != null) {
+			return new MathSatBitvectorVariable(col, size, cached);
+		}
 		long msatBitVec = mathsat.api.msat_make_bv_number(env, string, size, 2);
 		checkTerm(msatBitVec);
+		terms.put(TermCache.BITVECTOR_STRING, string, size, msatBitVec);
 		return new MathSatBitvectorVariable(col, size, msatBitVec);
 	}
 
@@ -486,6 +530,19 @@ public class MathSatAPI extends SolverAPI {
 		return createNOT(createEqualc(leftVariable, rightVariable, c));
 	}
 
+	@Override
+	protected SMTLibExpression parseSMTLib2(String script)
+			throws SolverException {
+		// a variable declared before is redeclared with the same type
+		long msatTerm = mathsat.api.msat_from_smtlib2(env, script);
+		if (mathsat.api.MSAT_ERROR_TERM(msatTerm)) {
+			throw new SolverException(
+					"MathSAT rejected the SMT-LIB 2 script: "
+							+ mathsat.api.msat_last_error_message(env));
+		}
+		return new SMTLibExpression(new MathSatExpression(msatTerm));
+	}
+
 	@Override
 	protected String toSMTLib2(SMTLibExpression expr) {
 		long msatexpr1 = expr.getMathSatExpression().getMsatExpr();
@@ -497,18 +554,19 @@ public class MathSatAPI extends SolverAPI {
 			BitvectorVariable bVar, int bitsToExtend) {
 		MathSatBitvectorVariable bitVecVar = (MathSatBitvectorVariable) bVar;
 
-		String str = "";
 		final String ZERO = "0";
 
-		// create string with missing zeros
-		for (int i = 0; i < bitsToExtend; i++) {
-			str += ZERO;
+		// the zero bitvector of the missing width, shared with equal literals
+		Long zeroExt = terms.get(TermCache.BITVECTOR_STRING, ZERO,
+				bitsToExtend);
+		if (zeroExt == null) {
+			long zero = mathsat.api.msat_make_bv_number(env, ZERO,
+					bitsToExtend, 2);
+			checkTerm(zero);
+			zeroExt = terms.put(TermCache.BITVECTOR_STRING, ZERO,
+					bitsToExtend, zero);
 		}
 
-		long zeroExt = mathsat.api.msat_make_bv_number(env, str, str.length(),
-				2);
-		checkTerm(zeroExt);
-
 		// concat the former bitvector with the zero bitvector
 		long newVar = mathsat.api.msat_make_bv_concat(env,
 				bitVecVar.getBitvectorVar(), zeroExt);
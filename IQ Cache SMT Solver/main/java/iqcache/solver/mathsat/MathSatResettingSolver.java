@@ -1,11 +1,25 @@
 package iqcache.solver.mathsat;
 
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import mathsat.TerminationTest;
+
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.ContextRecycler;
+import iqcache.solver.Logic;
+import iqcache.solver.RecyclingPolicy;
 import iqcache.solver.SMTExpressionConverter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.SolverException;
+import iqcache.solver.TermCache;
+import iqcache.solver.rewrite.Formula;
 
 /**
  * An instance of a MathSAT 5 Resetting SMT Solver.
@@ -15,9 +29,67 @@ import iqcache.solver.SolverException;
  */
 public class MathSatResettingSolver extends MathSatSolver {
 
+	/**
+	 * Prefix of the activation literals of a batch; column variables always
+	 * contain a dot instead.
+	 */
+	private static final String ACTIVATION_PREFIX = "!activation";
+
 	private long env;
 	private long config;
 
+	/**
+	 * One environment per logic. The environment of {@link Logic#GENERAL}
+	 * is created first and holds the pinned region; the others share its
+	 * terms, so one cache serves all of them.
+	 */
+	private final Map<Logic, Long> envs = new EnumMap<Logic, Long>(
+			Logic.class);
+	private final Map<Logic, Long> configs = new EnumMap<Logic, Long>(
+			Logic.class);
+
+	/**
+	 * The variables and constants created in the environment, shared by all
+	 * conversions. Terms survive {@link mathsat.api#msat_reset_env(long)}.
+	 */
+	private final TermCache<Long> terms = new TermCache<Long>();
+
+	/**
+	 * <code>true</code> iff the pinned region is asserted at the base level
+	 * of the environment.
+	 */
+	private boolean regionAsserted = false;
+
+	/**
+	 * Set by {@link #interrupt()}, polled by the termination test of the
+	 * environment and cleared at the start of each call, so an interrupt
+	 * that arrives during the passes or the conversion stops the solving
+	 * run that follows.
+	 */
+	private volatile boolean interruptRequested = false;
+
+	/**
+	 * Decides when the environments are collected or replaced; resetting an
+	 * environment does not free its terms.
+	 */
+	private RecyclingPolicy recycling = new RecyclingPolicy();
+
+	/**
+	 * Warms the replacement environment and tears retired ones down.
+	 */
+	private final ContextRecycler<Environment> environments = new ContextRecycler<Environment>(
+			new Callable<Environment>() {
+				@Override
+				public Environment call() throws Exception {
+					return Environment.create();
+				}
+			}, new ContextRecycler.Disposer<Environment>() {
+				@Override
+				public void dispose(Environment spare) {
+					spare.destroy();
+				}
+			});
+
 	static {
 		// load the MathSAT library.
 		System.loadLibrary("mathsatj");
@@ -42,36 +114,299 @@ public class MathSatResettingSolver extends MathSatSolver {
 
 	@Override
 	protected void openSolver() throws SolverException {
-		if (!isOpen) {
-			this.config = mathsat.api.msat_create_config();
-			this.env = mathsat.api.msat_create_env(config);
+		openSolver(Logic.GENERAL);
+	}
+
+	/**
+	 * Selects the environment of a logic from the pool, creating it on
+	 * first use, and resets it.
+	 */
+	@Override
+	protected void openSolver(Logic logic) throws SolverException {
+		if (isOpen) {
+			recycle();
+		} else {
+			// the terms of a previous environment are gone
+			terms.clear();
+			destroy(envs, configs);
+			envs.clear();
+			configs.clear();
+			install(environments.take());
 			this.isOpen = true;
+		}
+
+		Long pooled = envs.get(logic);
+		if (pooled == null) {
+			long logicConfig = createConfig(logic);
+			long shared = mathsat.api.msat_create_shared_env(logicConfig,
+					envs.get(Logic.GENERAL));
+			if (mathsat.api.MSAT_ERROR_ENV(shared)) {
+				mathsat.api.msat_destroy_config(logicConfig);
+				throw new SolverException("Couldn't create environment for "
+						+ logic + ".");
+			}
+			configs.put(logic, logicConfig);
+			envs.put(logic, shared);
+			this.config = logicConfig;
+			this.env = shared;
 		} else {
+			this.config = configs.get(logic);
+			this.env = pooled;
 			this.resetSolver();
 		}
+		installTerminationTest();
 	}
 
+	/**
+	 * Interrupts the running check via the termination test of the
+	 * environment.
+	 */
+	@Override
+	public void interrupt() {
+		this.interruptRequested = true;
+	}
+
+	private void installTerminationTest() throws SolverException {
+		int installed = mathsat.api.msat_set_termination_test(env,
+				new TerminationTest() {
+					@Override
+					public int callback() {
+						return interruptRequested ? 1 : 0;
+					}
+				});
+		if (installed != 0) {
+			throw new SolverException("Couldn't set termination test.");
+		}
+	}
+
+	/**
+	 * Destroys the environments of the pool with their configurations, and
+	 * the spare environment once it is warm.
+	 */
 	@Override
 	protected void closeSolver() throws SolverException {
-		// not needed due to resetting
+		Preconditions.checkState(isOpen, "solver is not open");
+		terms.clear();
+		destroy(envs, configs);
+		envs.clear();
+		configs.clear();
+		regionAsserted = false;
+		environments.discardSpare();
+		this.isOpen = false;
 	}
 
 	@Override
 	public boolean isSatisfiable(Expression expression)
 			throws SatisfiabilityException {
 		Preconditions.checkNotNull(expression);
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
 		SMTLibExpression smtExpr = null;
 
+		// constant formulas are decided without a context
+		Expression simplified = passes.run(expression);
+		if (simplified instanceof BooleanValue) {
+			return ((BooleanValue) simplified).getValue();
+		}
+
+		// resetting drops the pinned region
+		regionAsserted = false;
+		Formula formula = Formula.of(simplified);
 		try {
-			this.openSolver();
+			this.openSolver(Logic.of(formula, dictionaryEncoding));
 		} catch (SolverException e1) {
 			throw new SatisfiabilityException("Cannot open solver.", e1);
 		}
 
-		smtExpr = createSMTLibExpression(expression, smtExpr);
+		smtExpr = createSMTLibExpression(formula, smtExpr);
+
+		return assertAndCheckFormula(smtExpr.getMathSatExpression()
+				.getMsatExpr());
+	}
+
+	/**
+	 * Checks all expressions in one environment. Every expression is asserted
+	 * once, guarded by an activation literal, and solved under the assumption
+	 * of its literal, so variables and learned clauses are shared across the
+	 * batch.
+	 */
+	@Override
+	public BitSet isSatisfiableBatch(List<Expression> expressions)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expressions);
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
+		int n = expressions.size();
+
+		// constant formulas are decided without an environment
+		BitSet result = new BitSet(n);
+		BitSet decided = new BitSet(n);
+		Expression[] simplified = new Expression[n];
+		Logic logic = Logic.PROPOSITIONAL;
+		long created = 0;
+		for (int i = 0; i < n; i++) {
+			simplified[i] = passes.run(Preconditions.checkNotNull(expressions
+					.get(i)));
+			if (simplified[i] instanceof BooleanValue) {
+				decided.set(i);
+				result.set(i, ((BooleanValue) simplified[i]).getValue());
+			} else {
+				Formula formula = Formula.of(simplified[i]);
+				logic = logic.join(Logic.of(formula, dictionaryEncoding));
+				created += formula.size();
+			}
+		}
+		if (decided.cardinality() == n) {
+			return result;
+		}
+
+		// resetting drops the pinned region
+		regionAsserted = false;
+		try {
+			this.openSolver(logic);
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot open solver.", e);
+		}
+		recycling.recordTerms(created + n);
+
+		SMTExpressionConverter converter = new SMTExpressionConverter(this,
+				env, terms);
+		converter.setDictionaryEncoding(dictionaryEncoding);
+		long boolType = mathsat.api.msat_get_bool_type(env);
+		long[] activations = new long[n];
+		for (int i = decided.nextClearBit(0); i < n; i = decided
+				.nextClearBit(i + 1)) {
+			long formula;
+			try {
+				formula = converter.convert(simplified[i])
+						.getMathSatExpression().getMsatExpr();
+			} catch (SolverException e) {
+				throw new SatisfiabilityException(
+						"Failed to make variable definition.", e);
+			}
+			long declaration = mathsat.api.msat_declare_function(env,
+					ACTIVATION_PREFIX + i, boolType);
+			if (mathsat.api.MSAT_ERROR_DECL(declaration)) {
+				throw new SatisfiabilityException(
+						"Cannot declare activation literal.");
+			}
+			activations[i] = mathsat.api.msat_make_constant(env, declaration);
+			long deactivated = mathsat.api.msat_make_not(env, activations[i]);
+			if (mathsat.api.MSAT_ERROR_TERM(activations[i])
+					|| mathsat.api.MSAT_ERROR_TERM(deactivated)) {
+				throw new SatisfiabilityException(
+						"Cannot create activation literal.");
+			}
+			// activation -> formula
+			long guarded = mathsat.api.msat_make_or(env, deactivated, formula);
+			if (mathsat.api.MSAT_ERROR_TERM(guarded)
+					|| mathsat.api.msat_assert_formula(env, guarded) != 0) {
+				throw new SatisfiabilityException("Cannot assert formula.");
+			}
+		}
+
+		for (int i = decided.nextClearBit(0); i < n; i = decided
+				.nextClearBit(i + 1)) {
+			int status = mathsat.api.msat_solve_with_assumptions(env,
+					new long[] { activations[i] });
+			if (status == mathsat.api.MSAT_SAT) {
+				result.set(i);
+			} else if (status != mathsat.api.MSAT_UNSAT) {
+				throw new SatisfiabilityException(
+						"UNSAT. Cannot validate formula.");
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void pinRegion(Expression region) throws SatisfiabilityException {
+		super.pinRegion(region);
+		assertRegion();
+	}
+
+	/**
+	 * Checks the candidate in a backtrack point on top of the pinned region,
+	 * so the terms of the region and the clauses learned about it are kept
+	 * between the checks.
+	 */
+	@Override
+	public boolean isSatisfiableInRegion(Expression candidate)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(candidate);
+		Preconditions.checkState(region != null, "no region pinned");
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
+		Expression simplified = passes.run(candidate);
+		if (simplified instanceof BooleanValue
+				&& !((BooleanValue) simplified).getValue()) {
+			return false;
+		}
+		if (!regionAsserted) {
+			assertRegion();
+		}
+
+		if (mathsat.api.msat_push_backtrack_point(env) != 0) {
+			throw new SatisfiabilityException("Cannot push backtrack point.");
+		}
+		try {
+			SMTLibExpression smtExpr = createSMTLibExpression(
+					Formula.of(simplified), null, false);
+			long formula = smtExpr.getMathSatExpression().getMsatExpr();
+			return assertAndCheckFormula(formula);
+		} finally {
+			if (mathsat.api.msat_pop_backtrack_point(env) != 0) {
+				// assert the region again on the next check
+				regionAsserted = false;
+			}
+		}
+	}
+
+	@Override
+	public void releaseRegion() throws SatisfiabilityException {
+		super.releaseRegion();
+		regionAsserted = false;
+	}
+
+	/**
+	 * Sets the policy that decides when the environments are collected or
+	 * replaced.
+	 *
+	 * @param recycling
+	 *            the policy
+	 */
+	public void setRecyclingPolicy(RecyclingPolicy recycling) {
+		Preconditions.checkNotNull(recycling);
+		this.recycling = recycling;
+	}
+
+	/**
+	 * Returns the policy that decides when the environments are collected or
+	 * replaced, e.g. to read its accounting.
+	 *
+	 * @return The policy.
+	 */
+	public RecyclingPolicy getRecyclingPolicy() {
+		return recycling;
+	}
 
+	private void assertRegion() throws SatisfiabilityException {
+		try {
+			this.openSolver();
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot open solver.", e);
+		}
+
+		SMTLibExpression smtExpr = createSMTLibExpression(Formula.of(region),
+				null, false);
 		long formula = smtExpr.getMathSatExpression().getMsatExpr();
-		return assertAndCheckFormula(formula);
+		if (mathsat.api.msat_assert_formula(env, formula) != 0) {
+			throw new SatisfiabilityException("Cannot assert region formula.");
+		}
+		regionAsserted = true;
 	}
 
 	private boolean assertAndCheckFormula(long formula)
@@ -94,14 +429,130 @@ public class MathSatResettingSolver extends MathSatSolver {
 		}
 	}
 
-	private SMTLibExpression createSMTLibExpression(Expression expression,
+	private SMTLibExpression createSMTLibExpression(Formula formula,
 			SMTLibExpression smtExpr) throws SatisfiabilityException {
+		return createSMTLibExpression(formula, smtExpr, dictionaryEncoding);
+	}
+
+	private SMTLibExpression createSMTLibExpression(Formula formula,
+			SMTLibExpression smtExpr, boolean dictionary)
+			throws SatisfiabilityException {
 		try {
-			smtExpr = expression.accept(new SMTExpressionConverter(this, env));
+			SMTExpressionConverter converter = new SMTExpressionConverter(
+					this, env, terms);
+			converter.setDictionaryEncoding(dictionary);
+			smtExpr = converter.convert(formula);
+			recycling.recordTerms(formula.size());
 		} catch (SolverException e) {
 			throw new SatisfiabilityException(
 					"Failed to make variable definition.", e);
 		}
 		return smtExpr;
 	}
+
+	/**
+	 * Applies the recycling policy. A collection first resets every
+	 * environment of the pool, so no assertion, e.g. the pinned region in the
+	 * general environment, refers to a term that is freed. It then clears the
+	 * internal caches of the shared environments and frees the terms of the
+	 * general one, which owns them, except for the cached terms. Once the
+	 * environments are due, they are swapped for the spare environment and
+	 * destroyed in the background.
+	 */
+	private void recycle() throws SolverException {
+		switch (recycling.next()) {
+		case RECYCLE:
+			final Map<Logic, Long> retiredEnvs = new EnumMap<Logic, Long>(envs);
+			final Map<Logic, Long> retiredConfigs = new EnumMap<Logic, Long>(
+					configs);
+			terms.clear();
+			envs.clear();
+			configs.clear();
+			install(environments.take());
+			recycling.recycled();
+			environments.retire(new Runnable() {
+				@Override
+				public void run() {
+					destroy(retiredEnvs, retiredConfigs);
+				}
+			});
+			break;
+		case COLLECT:
+			long[] keep = new long[terms.size()];
+			int i = 0;
+			for (long term : terms.terms()) {
+				keep[i++] = term;
+			}
+			for (long pooled : envs.values()) {
+				if (mathsat.api.msat_reset_env(pooled) != 0) {
+					throw new SolverException("Couldn't reset environment.");
+				}
+			}
+			regionAsserted = false;
+			// the shared environments before the general one
+			for (long pooled : envs.values()) {
+				if (mathsat.api.msat_gc_env(pooled, keep) != 0) {
+					throw new SolverException("Couldn't collect garbage.");
+				}
+			}
+			recycling.collected();
+			break;
+		default:
+			break;
+		}
+		if (recycling.shouldWarm()) {
+			environments.warm();
+		}
+	}
+
+	/**
+	 * Destroys the environments of a pool and their configurations. The
+	 * environment of {@link Logic#GENERAL} is the last constant of the enum,
+	 * so the shared environments are destroyed before the one whose terms
+	 * they share.
+	 */
+	private static void destroy(Map<Logic, Long> envs, Map<Logic, Long> configs) {
+		for (long pooled : envs.values()) {
+			mathsat.api.msat_destroy_env(pooled);
+		}
+		for (long pooled : configs.values()) {
+			mathsat.api.msat_destroy_config(pooled);
+		}
+	}
+
+	/**
+	 * Makes an environment the general one of the pool.
+	 */
+	private void install(Environment environment) {
+		configs.put(Logic.GENERAL, environment.config);
+		envs.put(Logic.GENERAL, environment.env);
+	}
+
+	/**
+	 * An environment of {@link Logic#GENERAL} and its configuration.
+	 */
+	private static final class Environment {
+		private final long config;
+		private final long env;
+
+		private Environment(long config, long env) {
+			this.config = config;
+			this.env = env;
+		}
+
+		static Environment create() throws SolverException {
+			long config = createConfig(Logic.GENERAL);
+			long env = mathsat.api.msat_create_env(config);
+			if (mathsat.api.MSAT_ERROR_ENV(env)) {
+				mathsat.api.msat_destroy_config(config);
+				throw new SolverException("Couldn't create environment.");
+			}
+			return new Environment(config, env);
+		}
+
+		void destroy() {
+			mathsat.api.msat_destroy_env(env);
+			mathsat.api.msat_destroy_config(config);
+		}
+	}
 }
@@ -2,11 +2,14 @@ package iqcache.solver.mathsat;
 
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Logic;
 import iqcache.solver.SMTExpressionConverter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.Solver;
 import iqcache.solver.SolverException;
+import iqcache.solver.rewrite.Formula;
 
 /**
  * An instance of a MathSAT 5 SMT Solver.
@@ -50,12 +53,46 @@ public class MathSatSolver extends Solver {
 
 	@Override
 	protected void openSolver() throws SolverException {
+		openSolver(Logic.GENERAL);
+	}
+
+	/**
+	 * Opens an environment configured for a logic.
+	 * 
+	 * @param logic
+	 *            the logic of the formula to check
+	 * @throws SolverException
+	 *             iff the environment cannot be opened
+	 */
+	protected void openSolver(Logic logic) throws SolverException {
 		Preconditions.checkState(!isOpen, "already open");
-		this.config = mathsat.api.msat_create_config();
+		this.config = createConfig(logic);
 		this.env = mathsat.api.msat_create_env(config);
 		this.isOpen = true;
 	}
 
+	/**
+	 * Creates the configuration of an environment: the default
+	 * configuration of the logic, without model generation since the
+	 * solvers only report the status.
+	 * 
+	 * @param logic
+	 *            the logic
+	 * @return The configuration.
+	 * @throws SolverException
+	 *             iff MathSAT cannot create the configuration
+	 */
+	protected static long createConfig(Logic logic) throws SolverException {
+		long config = logic == Logic.GENERAL ? mathsat.api
+				.msat_create_config() : mathsat.api
+				.msat_create_default_config(logic.getName());
+		if (mathsat.api.msat_set_option(config, "model_generation", "false") != 0) {
+			mathsat.api.msat_destroy_config(config);
+			throw new SolverException("Couldn't configure " + logic + ".");
+		}
+		return config;
+	}
+
 	@Override
 	protected void closeSolver() throws SolverException {
 		Preconditions.checkState(isOpen, "not open yet");
@@ -70,16 +107,23 @@ public class MathSatSolver extends Solver {
 		Preconditions.checkNotNull(expression);
 		SMTLibExpression smtExpr = null;
 
+		// constant formulas are decided without a context
+		Expression simplified = passes.run(expression);
+		if (simplified instanceof BooleanValue) {
+			return ((BooleanValue) simplified).getValue();
+		}
+
+		Formula formula = Formula.of(simplified);
 		try {
-			this.openSolver();
+			this.openSolver(Logic.of(formula, dictionaryEncoding));
 		} catch (SolverException e1) {
 			throw new SatisfiabilityException("Cannot open solver.", e1);
 		}
 
-		smtExpr = createSMTLibExpression(expression, smtExpr);
+		smtExpr = createSMTLibExpression(formula, smtExpr);
 
-		long formula = smtExpr.getMathSatExpression().getMsatExpr();
-		return assertAndCheckFormula(formula);
+		return assertAndCheckFormula(smtExpr.getMathSatExpression()
+				.getMsatExpr());
 	}
 
 	private boolean assertAndCheckFormula(long formula)
@@ -121,10 +165,13 @@ public class MathSatSolver extends Solver {
 		}
 	}
 
-	private SMTLibExpression createSMTLibExpression(Expression expression,
+	private SMTLibExpression createSMTLibExpression(Formula formula,
 			SMTLibExpression smtExpr) throws SatisfiabilityException {
 		try {
-			smtExpr = expression.accept(new SMTExpressionConverter(this, env));
+			SMTExpressionConverter converter = new SMTExpressionConverter(
+					this, env);
+			converter.setDictionaryEncoding(dictionaryEncoding);
+			smtExpr = converter.convert(formula);
 		} catch (SolverException e) {
 			try {
 				this.closeSolver();
@@ -0,0 +1,362 @@
+package iqcache.solver.range;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An immutable set of values of one column, stored as a sorted union of
+ * disjoint intervals. A discrete set ranges over the integers and is always
+ * normalised to closed, integral bounds; a continuous set ranges over the
+ * reals and keeps open and closed bounds.
+ *
+ * @author dinh
+ */
+final class IntervalSet {
+
+	private static final double NEGATIVE_INFINITY = Double.NEGATIVE_INFINITY;
+	private static final double POSITIVE_INFINITY = Double.POSITIVE_INFINITY;
+
+	private final boolean discrete;
+	private final double[] lower;
+	private final double[] upper;
+	private final boolean[] lowerClosed;
+	private final boolean[] upperClosed;
+
+	private IntervalSet(boolean discrete, double[] lower, double[] upper,
+			boolean[] lowerClosed, boolean[] upperClosed) {
+		this.discrete = discrete;
+		this.lower = lower;
+		this.upper = upper;
+		this.lowerClosed = lowerClosed;
+		this.upperClosed = upperClosed;
+	}
+
+	/**
+	 * Returns the set of all values.
+	 *
+	 * @param discrete
+	 *            <code>true</code> for an integer domain
+	 * @return The unrestricted set.
+	 */
+	static IntervalSet all(boolean discrete) {
+		return new IntervalSet(discrete, new double[] { NEGATIVE_INFINITY },
+				new double[] { POSITIVE_INFINITY }, new boolean[] { false },
+				new boolean[] { false });
+	}
+
+	/**
+	 * Returns the set of all values <= c (or < c).
+	 *
+	 * @param c
+	 *            the upper bound
+	 * @param closed
+	 *            <code>true</code> iff c belongs to the set
+	 * @param discrete
+	 *            <code>true</code> for an integer domain
+	 * @return The set (-inf, c] or (-inf, c).
+	 */
+	static IntervalSet atMost(double c, boolean closed, boolean discrete) {
+		return normalise(discrete, new double[] { NEGATIVE_INFINITY },
+				new double[] { c }, new boolean[] { false },
+				new boolean[] { closed }, 1);
+	}
+
+	/**
+	 * Returns the set of all values >= c (or > c).
+	 *
+	 * @param c
+	 *            the lower bound
+	 * @param closed
+	 *            <code>true</code> iff c belongs to the set
+	 * @param discrete
+	 *            <code>true</code> for an integer domain
+	 * @return The set [c, inf) or (c, inf).
+	 */
+	static IntervalSet atLeast(double c, boolean closed, boolean discrete) {
+		return normalise(discrete, new double[] { c },
+				new double[] { POSITIVE_INFINITY }, new boolean[] { closed },
+				new boolean[] { false }, 1);
+	}
+
+	/**
+	 * Returns the set containing c only.
+	 *
+	 * @param c
+	 *            the single value
+	 * @param discrete
+	 *            <code>true</code> for an integer domain
+	 * @return The set [c, c].
+	 */
+	static IntervalSet point(double c, boolean discrete) {
+		return new IntervalSet(discrete, new double[] { c },
+				new double[] { c }, new boolean[] { true },
+				new boolean[] { true });
+	}
+
+	/**
+	 * Determine if this set contains no value.
+	 *
+	 * @return <code>true</code> iff this set is empty.
+	 */
+	boolean isEmpty() {
+		return lower.length == 0;
+	}
+
+	/**
+	 * Determine if this set contains every value of its domain.
+	 *
+	 * @return <code>true</code> iff this set is unrestricted.
+	 */
+	boolean isAll() {
+		return lower.length == 1 && lower[0] == NEGATIVE_INFINITY
+				&& upper[0] == POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Determine if this set ranges over the integers.
+	 *
+	 * @return <code>true</code> for an integer domain.
+	 */
+	boolean isDiscrete() {
+		return discrete;
+	}
+
+	/**
+	 * Returns the number of disjoint intervals of this set.
+	 *
+	 * @return The number of intervals.
+	 */
+	int size() {
+		return lower.length;
+	}
+
+	/**
+	 * Intersects this set with another set of the same domain.
+	 *
+	 * @param other
+	 *            the other set
+	 * @return The intersection of both sets.
+	 */
+	IntervalSet intersect(IntervalSet other) {
+		checkDomain(other);
+		int capacity = lower.length + other.lower.length;
+		double[] lo = new double[capacity];
+		double[] hi = new double[capacity];
+		boolean[] loClosed = new boolean[capacity];
+		boolean[] hiClosed = new boolean[capacity];
+		int n = 0;
+
+		// both sides are sorted and disjoint, so a merge walk is sufficient
+		int i = 0;
+		int j = 0;
+		while (i < lower.length && j < other.lower.length) {
+			int lowerCmp = compareLower(lower[i], lowerClosed[i],
+					other.lower[j], other.lowerClosed[j]);
+			if (lowerCmp >= 0) {
+				lo[n] = lower[i];
+				loClosed[n] = lowerClosed[i];
+			} else {
+				lo[n] = other.lower[j];
+				loClosed[n] = other.lowerClosed[j];
+			}
+
+			int upperCmp = compareUpper(upper[i], upperClosed[i],
+					other.upper[j], other.upperClosed[j]);
+			if (upperCmp <= 0) {
+				hi[n] = upper[i];
+				hiClosed[n] = upperClosed[i];
+				i++;
+			} else {
+				hi[n] = other.upper[j];
+				hiClosed[n] = other.upperClosed[j];
+				j++;
+			}
+			n++;
+		}
+		return normalise(discrete, lo, hi, loClosed, hiClosed, n);
+	}
+
+	/**
+	 * Unites this set with another set of the same domain.
+	 *
+	 * @param other
+	 *            the other set
+	 * @return The union of both sets.
+	 */
+	IntervalSet union(IntervalSet other) {
+		checkDomain(other);
+		int n = lower.length + other.lower.length;
+		double[] lo = Arrays.copyOf(lower, n);
+		double[] hi = Arrays.copyOf(upper, n);
+		boolean[] loClosed = Arrays.copyOf(lowerClosed, n);
+		boolean[] hiClosed = Arrays.copyOf(upperClosed, n);
+
+		System.arraycopy(other.lower, 0, lo, lower.length, other.lower.length);
+		System.arraycopy(other.upper, 0, hi, lower.length, other.lower.length);
+		System.arraycopy(other.lowerClosed, 0, loClosed, lower.length,
+				other.lower.length);
+		System.arraycopy(other.upperClosed, 0, hiClosed, lower.length,
+				other.lower.length);
+		return normalise(discrete, lo, hi, loClosed, hiClosed, n);
+	}
+
+	/**
+	 * Returns the complement of this set within its domain.
+	 *
+	 * @return The complement of this set.
+	 */
+	IntervalSet complement() {
+		int capacity = lower.length + 1;
+		double[] lo = new double[capacity];
+		double[] hi = new double[capacity];
+		boolean[] loClosed = new boolean[capacity];
+		boolean[] hiClosed = new boolean[capacity];
+
+		double previous = NEGATIVE_INFINITY;
+		boolean previousClosed = false;
+		for (int i = 0; i < lower.length; i++) {
+			lo[i] = previous;
+			loClosed[i] = previousClosed;
+			hi[i] = lower[i];
+			hiClosed[i] = !lowerClosed[i];
+			previous = upper[i];
+			previousClosed = !upperClosed[i];
+		}
+		lo[lower.length] = previous;
+		loClosed[lower.length] = previousClosed;
+		hi[lower.length] = POSITIVE_INFINITY;
+		hiClosed[lower.length] = false;
+		return normalise(discrete, lo, hi, loClosed, hiClosed, capacity);
+	}
+
+	private void checkDomain(IntervalSet other) {
+		if (discrete != other.discrete) {
+			throw new IllegalArgumentException(
+					"cannot combine integer and real interval sets");
+		}
+	}
+
+	/**
+	 * Brings the first n intervals into canonical form: integral closed
+	 * bounds for discrete domains, no empty intervals, sorted by lower bound
+	 * and with overlapping or adjacent intervals merged.
+	 */
+	private static IntervalSet normalise(boolean discrete, double[] lo,
+			double[] hi, boolean[] loClosed, boolean[] hiClosed, int n) {
+		Integer[] order = new Integer[n];
+		int kept = 0;
+
+		for (int i = 0; i < n; i++) {
+			if (discrete) {
+				if (!loClosed[i] && !Double.isInfinite(lo[i])) {
+					lo[i] = lo[i] + 1;
+					loClosed[i] = true;
+				}
+				if (!hiClosed[i] && !Double.isInfinite(hi[i])) {
+					hi[i] = hi[i] - 1;
+					hiClosed[i] = true;
+				}
+			}
+			if (lo[i] < hi[i] || (lo[i] == hi[i] && loClosed[i] && hiClosed[i])) {
+				order[kept++] = i;
+			}
+		}
+
+		final double[] l = lo;
+		final boolean[] lc = loClosed;
+		Arrays.sort(order, 0, kept, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return compareLower(l[a], lc[a], l[b], lc[b]);
+			}
+		});
+
+		double[] newLo = new double[kept];
+		double[] newHi = new double[kept];
+		boolean[] newLoClosed = new boolean[kept];
+		boolean[] newHiClosed = new boolean[kept];
+		int m = -1;
+
+		for (int k = 0; k < kept; k++) {
+			int i = order[k];
+			if (m >= 0
+					&& touches(discrete, newHi[m], newHiClosed[m], lo[i],
+							loClosed[i])) {
+				// merge into the current interval
+				if (compareUpper(hi[i], hiClosed[i], newHi[m], newHiClosed[m]) > 0) {
+					newHi[m] = hi[i];
+					newHiClosed[m] = hiClosed[i];
+				}
+			} else {
+				m++;
+				newLo[m] = lo[i];
+				newLoClosed[m] = loClosed[i];
+				newHi[m] = hi[i];
+				newHiClosed[m] = hiClosed[i];
+			}
+		}
+
+		int size = m + 1;
+		return new IntervalSet(discrete, Arrays.copyOf(newLo, size),
+				Arrays.copyOf(newHi, size), Arrays.copyOf(newLoClosed, size),
+				Arrays.copyOf(newHiClosed, size));
+	}
+
+	/**
+	 * Determine if an interval starting at lo follows an interval ending at
+	 * hi without a gap.
+	 */
+	private static boolean touches(boolean discrete, double hi,
+			boolean hiClosed, double lo, boolean loClosed) {
+		if (lo < hi) {
+			return true;
+		} else if (lo == hi) {
+			return hiClosed || loClosed;
+		} else {
+			return discrete && lo == hi + 1;
+		}
+	}
+
+	/**
+	 * Orders lower bounds: a closed bound starts before an open bound of the
+	 * same value.
+	 */
+	private static int compareLower(double a, boolean aClosed, double b,
+			boolean bClosed) {
+		int cmp = Double.compare(a, b);
+		if (cmp != 0 || aClosed == bClosed) {
+			return cmp;
+		}
+		return aClosed ? -1 : 1;
+	}
+
+	/**
+	 * Orders upper bounds: an open bound ends before a closed bound of the
+	 * same value.
+	 */
+	private static int compareUpper(double a, boolean aClosed, double b,
+			boolean bClosed) {
+		int cmp = Double.compare(a, b);
+		if (cmp != 0 || aClosed == bClosed) {
+			return cmp;
+		}
+		return aClosed ? 1 : -1;
+	}
+
+	@Override
+	public String toString() {
+		if (isEmpty()) {
+			return "{}";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lower.length; i++) {
+			if (i > 0) {
+				sb.append(" U ");
+			}
+			sb.append(lowerClosed[i] ? '[' : '(');
+			sb.append(lower[i]).append(", ").append(upper[i]);
+			sb.append(upperClosed[i] ? ']' : ')');
+		}
+		return sb.toString();
+	}
+}
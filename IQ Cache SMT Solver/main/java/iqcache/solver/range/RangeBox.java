@@ -0,0 +1,111 @@
+package iqcache.solver.range;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable conjunction of per-column domains. Since the columns of a box
+ * are independent of each other, a box is satisfiable iff none of its
+ * {@link IntervalSet}s is empty.
+ *
+ * @author dinh
+ */
+final class RangeBox {
+
+	/**
+	 * The box without any constraint (logical <b>true</b>).
+	 */
+	static final RangeBox UNCONSTRAINED = new RangeBox(
+			Collections.<String, IntervalSet> emptyMap());
+
+	private final Map<String, IntervalSet> domains;
+
+	private RangeBox(Map<String, IntervalSet> domains) {
+		this.domains = domains;
+	}
+
+	/**
+	 * Creates a box that constrains exactly one column.
+	 *
+	 * @param key
+	 *            the key of the column
+	 * @param domain
+	 *            the domain of the column, must not be empty
+	 * @return A box with one constrained column.
+	 */
+	static RangeBox of(String key, IntervalSet domain) {
+		return new RangeBox(Collections.singletonMap(key, domain));
+	}
+
+	/**
+	 * Intersects this box with another box.
+	 *
+	 * @param other
+	 *            the other box
+	 * @return The intersection of both boxes or <code>null</code> iff the
+	 *         intersection is empty.
+	 */
+	RangeBox intersect(RangeBox other) {
+		if (domains.isEmpty()) {
+			return other;
+		} else if (other.domains.isEmpty()) {
+			return this;
+		}
+
+		Map<String, IntervalSet> result = new HashMap<String, IntervalSet>(
+				domains);
+		for (Map.Entry<String, IntervalSet> entry : other.domains.entrySet()) {
+			IntervalSet current = result.get(entry.getKey());
+			if (current == null) {
+				result.put(entry.getKey(), entry.getValue());
+			} else {
+				IntervalSet intersection = current.intersect(entry.getValue());
+				if (intersection.isEmpty()) {
+					return null;
+				}
+				result.put(entry.getKey(), intersection);
+			}
+		}
+		return new RangeBox(result);
+	}
+
+	/**
+	 * Determine if this box constrains no column at all.
+	 *
+	 * @return <code>true</code> iff this box is logical <b>true</b>.
+	 */
+	boolean isUnconstrained() {
+		return domains.isEmpty();
+	}
+
+	/**
+	 * Returns the key of the only constrained column of this box.
+	 *
+	 * @return The column key or <code>null</code> if this box does not
+	 *         constrain exactly one column.
+	 */
+	String getSingleColumn() {
+		if (domains.size() != 1) {
+			return null;
+		}
+		return domains.keySet().iterator().next();
+	}
+
+	/**
+	 * Returns the domain of a column within this box.
+	 *
+	 * @param key
+	 *            the key of the column
+	 * @return The domain of the column or <code>null</code> if the column is
+	 *         not constrained.
+	 */
+	IntervalSet getDomain(String key) {
+		return domains.get(key);
+	}
+
+	@Override
+	public String toString() {
+		return domains.toString();
+	}
+}
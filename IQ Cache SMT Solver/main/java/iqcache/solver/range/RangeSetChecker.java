@@ -0,0 +1,445 @@
+package iqcache.solver.range;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.UnsupportedExpressionException;
+
+/**
+ * A pure Java {@link SatisfiabilityChecker} for Boolean combinations of
+ * single-column atoms (a column compared against a constant). Every column
+ * domain is kept as a sorted union of intervals; And is computed as
+ * intersection, Or as union and Not as complement, so the answer is exact
+ * without opening a native solver context.
+ *
+ * Expressions this checker cannot decide exactly (two-column atoms, varchar
+ * comparisons or a disjunction that grows beyond {@link #MAX_BOXES}) are
+ * handed to the fallback checker.
+ *
+ * @author dinh
+ */
+public class RangeSetChecker extends SatisfiabilityChecker {
+
+	/**
+	 * Maximal number of boxes of a disjunction before the check is handed to
+	 * the fallback checker.
+	 */
+	public static final int MAX_BOXES = 256;
+
+	private static final String INT_SUFFIX = "#int";
+	private static final String REAL_SUFFIX = "#real";
+	private static final String BOOL_SUFFIX = "#bool";
+
+	private final SatisfiabilityChecker fallback;
+
+	private long decided;
+	private long delegated;
+
+	/**
+	 * Constructor of a RangeSetChecker.
+	 *
+	 * @param fallback
+	 *            the checker for expressions that cannot be decided by
+	 *            interval arithmetic, e.g. a native {@link Solver}
+	 */
+	public RangeSetChecker(SatisfiabilityChecker fallback) {
+		Preconditions.checkNotNull(fallback);
+		this.fallback = fallback;
+	}
+
+	@Override
+	public boolean isSatisfiable(Expression expression)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expression);
+		List<RangeBox> boxes;
+
+		try {
+			boxes = expression.accept(new RangeSetVisitor());
+		} catch (UnsupportedExpressionException e) {
+			delegated++;
+			return fallback.isSatisfiable(expression);
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot evaluate ranges.", e);
+		}
+		decided++;
+		return !boxes.isEmpty();
+	}
+
+	/**
+	 * Returns the number of checks answered by interval arithmetic.
+	 *
+	 * @return The number of checks decided in Java.
+	 */
+	public long getDecidedCount() {
+		return decided;
+	}
+
+	/**
+	 * Returns the number of checks handed to the fallback checker.
+	 *
+	 * @return The number of delegated checks.
+	 */
+	public long getDelegatedCount() {
+		return delegated;
+	}
+
+	/**
+	 * Computes the disjunction of boxes an expression denotes. Negations are
+	 * pushed down to the atoms (De Morgan) by tracking the polarity of the
+	 * current subexpression.
+	 */
+	private static class RangeSetVisitor implements
+			ExpressionVisitor<List<RangeBox>, SolverException> {
+
+		private static final List<RangeBox> TRUE = Collections
+				.singletonList(RangeBox.UNCONSTRAINED);
+		private static final List<RangeBox> FALSE = Collections.emptyList();
+
+		private boolean negated = false;
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedExpressionException
+		 */
+		@Override
+		public List<RangeBox> visit(Expression exp) throws SolverException {
+			throw new UnsupportedExpressionException("unknown expression");
+		}
+
+		@Override
+		public List<RangeBox> visit(And and) throws SolverException {
+			return negated ? disjoin(and) : conjoin(and);
+		}
+
+		@Override
+		public List<RangeBox> visit(Or or) throws SolverException {
+			return negated ? conjoin(or) : disjoin(or);
+		}
+
+		@Override
+		public List<RangeBox> visit(Not not) throws SolverException {
+			negated = !negated;
+			List<RangeBox> result = not.getSubexpressionAt(0).accept(this);
+			negated = !negated;
+			return result;
+		}
+
+		@Override
+		public List<RangeBox> visit(BooleanValue booleanValue)
+				throws SolverException {
+			return booleanValue.getValue() != negated ? TRUE : FALSE;
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedExpressionException
+		 */
+		@Override
+		public List<RangeBox> visit(DummyLeaf dummyLeaf) throws SolverException {
+			throw new UnsupportedExpressionException("dummy leaf");
+		}
+
+		@Override
+		public List<RangeBox> visit(EqualDoubleComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			}
+			return atom(col, REAL_SUFFIX,
+					IntervalSet.point(exp.getConstant(), false));
+		}
+
+		@Override
+		public List<RangeBox> visit(EqualIntegerComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			}
+			return atom(col, INT_SUFFIX,
+					IntervalSet.point(exp.getConstant(), true));
+		}
+
+		@Override
+		public List<RangeBox> visit(EqualVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public List<RangeBox> visit(LessDoubleComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			} else if (exp.getRight() == null) {
+				// left < c
+				return atom(col, REAL_SUFFIX,
+						IntervalSet.atMost(exp.getConstant(), false, false));
+			} else {
+				// c < right
+				return atom(col, REAL_SUFFIX,
+						IntervalSet.atLeast(exp.getConstant(), false, false));
+			}
+		}
+
+		@Override
+		public List<RangeBox> visit(LessVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public List<RangeBox> visit(LessOrEqualDoubleComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			} else if (exp.getRight() == null) {
+				// left <= c
+				return atom(col, REAL_SUFFIX,
+						IntervalSet.atMost(exp.getConstant(), true, false));
+			} else {
+				// c <= right
+				return atom(col, REAL_SUFFIX,
+						IntervalSet.atLeast(exp.getConstant(), true, false));
+			}
+		}
+
+		@Override
+		public List<RangeBox> visit(LessOrEqualIntegerComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			} else if (exp.getRight() == null) {
+				// left <= c
+				return atom(col, INT_SUFFIX,
+						IntervalSet.atMost(exp.getConstant(), true, true));
+			} else {
+				// c <= right
+				return atom(col, INT_SUFFIX,
+						IntervalSet.atLeast(exp.getConstant(), true, true));
+			}
+		}
+
+		@Override
+		public List<RangeBox> visit(LessOrEqualVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public List<RangeBox> visit(NotEqualDoubleComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			}
+			return atom(col, REAL_SUFFIX,
+					IntervalSet.point(exp.getConstant(), false).complement());
+		}
+
+		@Override
+		public List<RangeBox> visit(NotEqualIntegerComparison exp)
+				throws SolverException {
+			Column col = singleColumn(exp.getLeft(), exp.getRight());
+			if (col == null) {
+				return visitTrivial();
+			}
+			return atom(col, INT_SUFFIX,
+					IntervalSet.point(exp.getConstant(), true).complement());
+		}
+
+		@Override
+		public List<RangeBox> visit(NotEqualVarcharComparison exp)
+				throws SolverException {
+			throw new UnsupportedExpressionException("varchar comparison");
+		}
+
+		@Override
+		public List<RangeBox> visit(BooleanLiteral booleanLiteral)
+				throws SolverException {
+			String key = Solver.getVariableName(booleanLiteral.getColumn())
+					+ BOOL_SUFFIX;
+			return Collections.singletonList(RangeBox.of(key,
+					IntervalSet.point(negated ? 0 : 1, true)));
+		}
+
+		@Override
+		public List<RangeBox> visit(NegatedBooleanLiteral negatedBooleanLiteral)
+				throws SolverException {
+			String key = Solver.getVariableName(negatedBooleanLiteral
+					.getColumn()) + BOOL_SUFFIX;
+			return Collections.singletonList(RangeBox.of(key,
+					IntervalSet.point(negated ? 1 : 0, true)));
+		}
+
+		/**
+		 * Returns the only column of an atom.
+		 *
+		 * @return The column or <code>null</code> iff the atom has no column.
+		 * @throws UnsupportedExpressionException
+		 *             iff the atom joins two columns
+		 */
+		private Column singleColumn(Column left, Column right)
+				throws UnsupportedExpressionException {
+			if (left != null && right != null) {
+				throw new UnsupportedExpressionException("two-column atom");
+			}
+			return left != null ? left : right;
+		}
+
+		/**
+		 * An atom without columns is <b>true</b>, see
+		 * {@link iqcache.solver.SMTExpressionConverter}.
+		 */
+		private List<RangeBox> visitTrivial() {
+			return negated ? FALSE : TRUE;
+		}
+
+		private List<RangeBox> atom(Column col, String suffix,
+				IntervalSet domain) {
+			if (negated) {
+				domain = domain.complement();
+			}
+			if (domain.isEmpty()) {
+				return FALSE;
+			}
+			return Collections.singletonList(RangeBox.of(
+					Solver.getVariableName(col) + suffix, domain));
+		}
+
+		private List<RangeBox> conjoin(NodeExpression node)
+				throws SolverException {
+			List<RangeBox> result = TRUE;
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				List<RangeBox> sub = node.getSubexpressionAt(i).accept(this);
+				result = and(result, sub);
+				if (result.isEmpty()) {
+					// short-circuit: the conjunction is unsatisfiable
+					return FALSE;
+				}
+			}
+			return result;
+		}
+
+		private List<RangeBox> disjoin(NodeExpression node)
+				throws SolverException {
+			List<RangeBox> result = FALSE;
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				List<RangeBox> sub = node.getSubexpressionAt(i).accept(this);
+				result = or(result, sub);
+			}
+			return result;
+		}
+
+		private List<RangeBox> and(List<RangeBox> a, List<RangeBox> b)
+				throws UnsupportedExpressionException {
+			if (a == TRUE) {
+				return b;
+			} else if (b == TRUE) {
+				return a;
+			}
+
+			List<RangeBox> result = new ArrayList<RangeBox>();
+			for (RangeBox x : a) {
+				for (RangeBox y : b) {
+					RangeBox z = x.intersect(y);
+					if (z != null) {
+						add(result, z);
+						if (result.size() > MAX_BOXES) {
+							throw new UnsupportedExpressionException(
+									"too many boxes");
+						}
+					}
+				}
+			}
+			return result;
+		}
+
+		private List<RangeBox> or(List<RangeBox> a, List<RangeBox> b)
+				throws UnsupportedExpressionException {
+			if (a.isEmpty()) {
+				return b;
+			} else if (b.isEmpty()) {
+				return a;
+			}
+
+			List<RangeBox> result = new ArrayList<RangeBox>(a);
+			for (RangeBox box : b) {
+				add(result, box);
+				if (result.size() > MAX_BOXES) {
+					throw new UnsupportedExpressionException("too many boxes");
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Adds a box to a disjunction. Boxes over the same single column are
+		 * merged into one box, an unconstrained box absorbs all others.
+		 */
+		private void add(List<RangeBox> disjunction, RangeBox box) {
+			if (box.isUnconstrained()) {
+				disjunction.clear();
+				disjunction.add(box);
+				return;
+			}
+			if (disjunction.size() == 1
+					&& disjunction.get(0).isUnconstrained()) {
+				return;
+			}
+
+			String key = box.getSingleColumn();
+			if (key != null) {
+				for (int i = 0; i < disjunction.size(); i++) {
+					RangeBox other = disjunction.get(i);
+					if (key.equals(other.getSingleColumn())) {
+						IntervalSet union = other.getDomain(key).union(
+								box.getDomain(key));
+						if (union.isAll()) {
+							disjunction.clear();
+							disjunction.add(RangeBox.UNCONSTRAINED);
+						} else {
+							disjunction.set(i, RangeBox.of(key, union));
+						}
+						return;
+					}
+				}
+			}
+			disjunction.add(box);
+		}
+	}
+}
@@ -0,0 +1,555 @@
+package iqcache.solver.rewrite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * Removes redundant bounds from conjunctions. Of all conjuncts that bound a
+ * single column by a constant, e.g. <code>x <= 5</code>,
+ * <code>3 < x</code> or <code>x = 'a'</code>, only the tightest lower and
+ * the tightest upper bound per column are kept, so
+ * <code>x <= 5 and x <= 3</code> becomes <code>x <= 3</code>. If the
+ * bounds of a column leave no value, e.g. <code>x <= 3 and 7 <= x</code>,
+ * the conjunction is <b>false</b>.
+ *
+ * Integer, double and varchar bounds are tightened separately; varchars are
+ * ordered by {@link String#compareTo(String)} like in
+ * {@link iqcache.solver.VarcharDictionary}. The bitvector encoding of the
+ * solver (see {@link Solver#toBinaryBitVector(String, java.nio.charset.Charset)})
+ * orders the same way only if every character takes one or two bytes in
+ * UTF-8 and none is <code>'\u0000'</code>, which equals the zero padding;
+ * a bound whose literal contains another character is kept as it is and
+ * never decides a conjunction. Bounds relating two columns and
+ * inequalities (<code>!=</code>) are kept as they are. Every And node of
+ * the expression is tightened, nested And nodes are flattened into their
+ * parent, and the result is simplified again with the
+ * {@link ExpressionSimplifier} if anything changed.
+ *
+ * @author dinh
+ */
+public final class BoundTightener implements
+		ExpressionVisitor<Expression, RuntimeException> {
+
+	private static final BoundTightener INSTANCE = new BoundTightener();
+
+	private static final BooleanValue FALSE = new BooleanValue(false);
+
+	private static final int INTEGER = 0;
+	private static final int DOUBLE = 1;
+	private static final int VARCHAR = 2;
+
+	private BoundTightener() {
+	}
+
+	/**
+	 * Removes redundant bounds from the conjunctions of an expression.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return An equivalent expression, possibly a {@link BooleanValue}.
+	 */
+	public static Expression tighten(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		Expression tightened = expression.accept(INSTANCE);
+		return tightened == expression ? expression : ExpressionSimplifier
+				.simplify(tightened);
+	}
+
+	/**
+	 * not implemented
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Expression visit(Expression exp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Expression visit(And and) {
+		List<Expression> conjuncts = new ArrayList<Expression>();
+		boolean changed = collectConjuncts(and, conjuncts);
+
+		Conjunction conjunction = new Conjunction();
+		for (Expression conjunct : conjuncts) {
+			conjunct.accept(conjunction);
+		}
+		if (conjunction.isEmpty()) {
+			return FALSE;
+		}
+
+		// keep every conjunct that is not a bound or the tightest bound
+		Map<Expression, Boolean> kept = conjunction.getTightest();
+		List<Expression> tightened = new ArrayList<Expression>(
+				conjuncts.size());
+		for (Expression conjunct : conjuncts) {
+			if (!conjunction.isBound(conjunct)
+					|| kept.remove(conjunct) != null) {
+				tightened.add(conjunct);
+			}
+		}
+		if (!changed && tightened.size() == and.getNumberOfSubexpressions()) {
+			return and;
+		}
+		return tightened.size() == 1 ? tightened.get(0) : new And(
+				tightened.toArray(new Expression[tightened.size()]));
+	}
+
+	@Override
+	public Expression visit(Or or) {
+		Expression[] disjuncts = visitChildren(or);
+		return disjuncts == null ? or : new Or(disjuncts);
+	}
+
+	@Override
+	public Expression visit(Not not) {
+		Expression operand = not.getSubexpressionAt(0);
+		Expression tightened = operand.accept(this);
+		return tightened == operand ? not : new Not(tightened);
+	}
+
+	@Override
+	public Expression visit(BooleanValue booleanValue) {
+		return booleanValue;
+	}
+
+	@Override
+	public Expression visit(DummyLeaf dummyLeaf) {
+		return dummyLeaf;
+	}
+
+	@Override
+	public Expression visit(EqualDoubleComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(EqualIntegerComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(EqualVarcharComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(LessDoubleComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(LessVarcharComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(LessOrEqualDoubleComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(LessOrEqualIntegerComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(LessOrEqualVarcharComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(NotEqualDoubleComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(NotEqualIntegerComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(NotEqualVarcharComparison exp) {
+		return exp;
+	}
+
+	@Override
+	public Expression visit(BooleanLiteral booleanLiteral) {
+		return booleanLiteral;
+	}
+
+	@Override
+	public Expression visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+		return negatedBooleanLiteral;
+	}
+
+	/**
+	 * Returns the tightened children of a node or <code>null</code> if none
+	 * changed.
+	 */
+	private Expression[] visitChildren(NodeExpression node) {
+		int n = node.getNumberOfSubexpressions();
+		Expression[] children = new Expression[n];
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			Expression child = node.getSubexpressionAt(i);
+			children[i] = child.accept(this);
+			changed |= children[i] != child;
+		}
+		return changed ? children : null;
+	}
+
+	/**
+	 * Collects the tightened conjuncts of nested And nodes.
+	 *
+	 * @return <code>true</code> if a conjunct changed or was flattened.
+	 */
+	private boolean collectConjuncts(And and, List<Expression> conjuncts) {
+		boolean changed = false;
+		for (int i = 0; i < and.getNumberOfSubexpressions(); i++) {
+			Expression conjunct = and.getSubexpressionAt(i);
+			Expression tightened = conjunct.accept(this);
+			if (tightened instanceof And) {
+				// already tightened, only flatten
+				And nested = (And) tightened;
+				for (int j = 0; j < nested.getNumberOfSubexpressions(); j++) {
+					conjuncts.add(nested.getSubexpressionAt(j));
+				}
+				changed = true;
+			} else {
+				conjuncts.add(tightened);
+				changed |= tightened != conjunct;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * A bound of a column, <code>value <= column</code> or
+	 * <code>column <= value</code>, strict for <code><</code>.
+	 */
+	private static final class Bound {
+		private final Comparable<Object> value;
+		private final boolean strict;
+		private final Expression atom;
+
+		@SuppressWarnings("unchecked")
+		Bound(Object value, boolean strict, Expression atom) {
+			this.value = (Comparable<Object>) value;
+			this.strict = strict;
+			this.atom = atom;
+		}
+
+		/**
+		 * Compares the values of two bounds; at the same value a strict
+		 * lower bound is higher and a strict upper bound is lower.
+		 */
+		int compareLower(Bound other) {
+			int c = compare(value, other.value);
+			return c != 0 ? c : Boolean.compare(strict, other.strict);
+		}
+
+		int compareUpper(Bound other) {
+			int c = compare(value, other.value);
+			return c != 0 ? c : Boolean.compare(other.strict, strict);
+		}
+
+		/**
+		 * Compares two values like the solver does: real values by their
+		 * primitive order, in which <code>-0.0 == 0.0</code>, unlike
+		 * {@link Double#compareTo(Double)}.
+		 */
+		static int compare(Comparable<Object> value, Object other) {
+			Object real = value;
+			if (real instanceof Double && other instanceof Double) {
+				double x = (Double) real;
+				double y = (Double) other;
+				if (x < y) {
+					return -1;
+				} else if (x > y) {
+					return 1;
+				} else if (x == y) {
+					return 0;
+				}
+				// NaN keeps the total order of Double
+			}
+			return value.compareTo(other);
+		}
+	}
+
+	/**
+	 * The tightest bounds of a column.
+	 */
+	private static final class Range {
+		private Bound lower;
+		private Bound upper;
+
+		boolean isEmpty() {
+			if (lower == null || upper == null) {
+				return false;
+			}
+			int c = Bound.compare(lower.value, upper.value);
+			return c > 0 || c == 0 && (lower.strict || upper.strict);
+		}
+	}
+
+	/**
+	 * Collects the bounds of the conjuncts of a conjunction per column and
+	 * type.
+	 */
+	private static final class Conjunction implements
+			ExpressionVisitor<Void, RuntimeException> {
+
+		private final Map<String, Range> ranges = new HashMap<String, Range>();
+		private final Map<Expression, Boolean> bounds = new IdentityHashMap<Expression, Boolean>();
+		private boolean empty;
+
+		boolean isEmpty() {
+			return empty;
+		}
+
+		boolean isBound(Expression conjunct) {
+			return bounds.containsKey(conjunct);
+		}
+
+		/**
+		 * Returns the atoms of the tightest bounds.
+		 */
+		Map<Expression, Boolean> getTightest() {
+			Map<Expression, Boolean> tightest = new IdentityHashMap<Expression, Boolean>();
+			for (Range range : ranges.values()) {
+				if (range.lower != null) {
+					tightest.put(range.lower.atom, Boolean.TRUE);
+				}
+				if (range.upper != null) {
+					tightest.put(range.upper.atom, Boolean.TRUE);
+				}
+			}
+			return tightest;
+		}
+
+		private Range getRange(Column column, int type) {
+			String key = type + ":" + Solver.getVariableName(column);
+			Range range = ranges.get(key);
+			if (range == null) {
+				range = new Range();
+				ranges.put(key, range);
+			}
+			return range;
+		}
+
+		private void addLower(Column column, int type, Bound bound) {
+			Range range = getRange(column, type);
+			if (range.lower == null || bound.compareLower(range.lower) > 0) {
+				range.lower = bound;
+			}
+			bounds.put(bound.atom, Boolean.TRUE);
+			empty |= range.isEmpty();
+		}
+
+		private void addUpper(Column column, int type, Bound bound) {
+			Range range = getRange(column, type);
+			if (range.upper == null || bound.compareUpper(range.upper) < 0) {
+				range.upper = bound;
+			}
+			bounds.put(bound.atom, Boolean.TRUE);
+			// nothing sorts below the empty string
+			empty |= range.isEmpty() || type == VARCHAR && bound.strict
+					&& "".equals(bound.value);
+		}
+
+		/**
+		 * Adds <code>left op value</code> or <code>value op right</code>,
+		 * if exactly one side is a column.
+		 */
+		private Void add(Column left, Column right, Object value, int type,
+				boolean strict, Expression atom) {
+			if (left != null && right == null) {
+				addUpper(left, type, new Bound(value, strict, atom));
+			} else if (left == null && right != null) {
+				addLower(right, type, new Bound(value, strict, atom));
+			}
+			return null;
+		}
+
+		private Void addEqual(Column left, Column right, Object value,
+				int type, Expression atom) {
+			Column column = left == null ? right : left;
+			if ((left == null) != (right == null)) {
+				addLower(column, type, new Bound(value, false, atom));
+				addUpper(column, type, new Bound(value, false, atom));
+			}
+			return null;
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedOperationException
+		 */
+		@Override
+		public Void visit(Expression exp) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Void visit(DummyLeaf dummyLeaf) {
+			return null;
+		}
+
+		@Override
+		public Void visit(BooleanLiteral booleanLiteral) {
+			return null;
+		}
+
+		@Override
+		public Void visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+			return null;
+		}
+
+		@Override
+		public Void visit(BooleanValue booleanValue) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualDoubleComparison exp) {
+			return addEqual(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					DOUBLE, exp);
+		}
+
+		@Override
+		public Void visit(LessDoubleComparison exp) {
+			return add(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					DOUBLE, true, exp);
+		}
+
+		@Override
+		public Void visit(LessOrEqualDoubleComparison exp) {
+			return add(exp.getLeft(), exp.getRight(), exp.getConstant(),
+					DOUBLE, false, exp);
+		}
+
+		@Override
+		public Void visit(NotEqualDoubleComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualIntegerComparison exp) {
+			return addEqual(exp.getLeft(), exp.getRight(),
+					(long) exp.getConstant(), INTEGER, exp);
+		}
+
+		@Override
+		public Void visit(LessOrEqualIntegerComparison exp) {
+			return add(exp.getLeft(), exp.getRight(),
+					(long) exp.getConstant(), INTEGER, false, exp);
+		}
+
+		@Override
+		public Void visit(NotEqualIntegerComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(EqualVarcharComparison exp) {
+			String literal = exp.getLeft() == null ? exp.getLeftVarchar()
+					: exp.getRightVarchar();
+			if (!isOrdered(literal)) {
+				return null;
+			}
+			return addEqual(exp.getLeft(), exp.getRight(), literal, VARCHAR,
+					exp);
+		}
+
+		@Override
+		public Void visit(LessVarcharComparison exp) {
+			String literal = exp.getLeft() == null ? exp.getLeftVarchar()
+					: exp.getRightVarchar();
+			if (!isOrdered(literal)) {
+				return null;
+			}
+			return add(exp.getLeft(), exp.getRight(), literal, VARCHAR, true,
+					exp);
+		}
+
+		@Override
+		public Void visit(LessOrEqualVarcharComparison exp) {
+			String literal = exp.getLeft() == null ? exp.getLeftVarchar()
+					: exp.getRightVarchar();
+			if (!isOrdered(literal)) {
+				return null;
+			}
+			return add(exp.getLeft(), exp.getRight(), literal, VARCHAR, false,
+					exp);
+		}
+
+		/**
+		 * Determine if the bitvector encoding of a literal orders like
+		 * {@link String#compareTo(String)}: every character below
+		 * <code>'\u0800'</code> takes 16 bits, but <code>'\u0000'</code>
+		 * equals the padding and longer characters take more bits.
+		 */
+		private boolean isOrdered(String literal) {
+			if (literal == null) {
+				return true;
+			}
+			for (int i = 0; i < literal.length(); i++) {
+				char c = literal.charAt(i);
+				if (c == '\0' || c >= '\u0800') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Void visit(NotEqualVarcharComparison exp) {
+			return null;
+		}
+
+		@Override
+		public Void visit(And and) {
+			return null;
+		}
+
+		@Override
+		public Void visit(Or or) {
+			return null;
+		}
+
+		@Override
+		public Void visit(Not not) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package iqcache.solver.rewrite;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * Hash-conses expressions: structurally equal subexpressions are mapped to
+ * one canonical instance, so an expression tree becomes a DAG in which every
+ * distinct subexpression occurs once. Every canonical instance gets a stable
+ * id in the order it was first interned and counts how often it was
+ * interned, as a root or below a node.
+ *
+ * Unlike an {@link iqcache.solver.cache.ExpressionFingerprint}, equality is
+ * exact: the operands of And and Or keep their order, columns are compared
+ * by variable name and constants by value.
+ *
+ * @author dinh
+ */
+public final class ExpressionInterner {
+
+	private static final int TAG_AND = 1;
+	private static final int TAG_OR = 2;
+	private static final int TAG_NOT = 3;
+	private static final int TAG_BOOLEAN_VALUE = 4;
+	private static final int TAG_BOOLEAN_LITERAL = 5;
+	private static final int TAG_NEGATED_BOOLEAN_LITERAL = 6;
+	private static final int TAG_EQUAL_DOUBLE = 7;
+	private static final int TAG_NOT_EQUAL_DOUBLE = 8;
+	private static final int TAG_LESS_DOUBLE = 9;
+	private static final int TAG_LESS_OR_EQUAL_DOUBLE = 10;
+	private static final int TAG_EQUAL_INTEGER = 11;
+	private static final int TAG_NOT_EQUAL_INTEGER = 12;
+	private static final int TAG_LESS_OR_EQUAL_INTEGER = 13;
+	private static final int TAG_EQUAL_VARCHAR = 14;
+	private static final int TAG_NOT_EQUAL_VARCHAR = 15;
+	private static final int TAG_LESS_VARCHAR = 16;
+	private static final int TAG_LESS_OR_EQUAL_VARCHAR = 17;
+
+	private final Map<List<Object>, Expression> canonical = new HashMap<List<Object>, Expression>();
+	private final Map<Expression, Entry> entries = new IdentityHashMap<Expression, Entry>();
+
+	private final Interning interning = new Interning();
+
+	/**
+	 * Interns an expression and all its subexpressions.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return The canonical instance of the expression; its subexpressions
+	 *         are canonical, too.
+	 */
+	public Expression intern(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		return expression.accept(interning);
+	}
+
+	/**
+	 * Returns the id of a canonical expression.
+	 *
+	 * @param expression
+	 *            an expression returned by {@link #intern(Expression)}
+	 * @return The id, the number of expressions interned before it.
+	 */
+	public int getId(Expression expression) {
+		return getEntry(expression).id;
+	}
+
+	/**
+	 * Returns how often a canonical expression was interned.
+	 *
+	 * @param expression
+	 *            an expression returned by {@link #intern(Expression)}
+	 * @return The number of occurrences of the expression, at least 1.
+	 */
+	public int getUses(Expression expression) {
+		return getEntry(expression).uses;
+	}
+
+	/**
+	 * Determine if an expression is a canonical instance of this interner.
+	 *
+	 * @param expression
+	 *            an expression
+	 * @return <code>true</code> iff the expression was returned by
+	 *         {@link #intern(Expression)}.
+	 */
+	public boolean isInterned(Expression expression) {
+		return entries.containsKey(expression);
+	}
+
+	/**
+	 * Returns the number of distinct expressions.
+	 *
+	 * @return The number of canonical instances.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Forgets all expressions.
+	 */
+	public void clear() {
+		canonical.clear();
+		entries.clear();
+	}
+
+	private Entry getEntry(Expression expression) {
+		Entry entry = entries.get(expression);
+		Preconditions.checkArgument(entry != null, "not interned");
+		return entry;
+	}
+
+	private static String name(Column column) {
+		return column == null ? null : Solver.getVariableName(column);
+	}
+
+	/**
+	 * The id and the number of uses of a canonical instance.
+	 */
+	private static final class Entry {
+		private final int id;
+		private int uses;
+
+		Entry(int id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Interns an expression bottom-up; the key of a node consists of its
+	 * tag, its columns and constants and the ids of its canonical children.
+	 */
+	private final class Interning implements
+			ExpressionVisitor<Expression, RuntimeException> {
+
+		private Expression lookup(Expression expression, Object... key) {
+			List<Object> k = Arrays.asList(key);
+			Expression existing = canonical.get(k);
+			if (existing == null) {
+				existing = expression;
+				canonical.put(k, expression);
+				entries.put(expression, new Entry(entries.size()));
+			}
+			entries.get(existing).uses++;
+			return existing;
+		}
+
+		private Expression lookupNode(NodeExpression node, int tag) {
+			int n = node.getNumberOfSubexpressions();
+			Expression[] children = new Expression[n];
+			Object[] key = new Object[n + 1];
+			key[0] = tag;
+			boolean changed = false;
+			for (int i = 0; i < n; i++) {
+				Expression child = node.getSubexpressionAt(i);
+				children[i] = child.accept(this);
+				changed |= children[i] != child;
+				key[i + 1] = entries.get(children[i]).id;
+			}
+
+			List<Object> k = Arrays.asList(key);
+			Expression existing = canonical.get(k);
+			if (existing == null) {
+				// a new node must be built from the canonical children
+				if (changed) {
+					existing = tag == TAG_AND ? new And(children)
+							: tag == TAG_OR ? new Or(children) : new Not(
+									children[0]);
+				} else {
+					existing = node;
+				}
+				canonical.put(k, existing);
+				entries.put(existing, new Entry(entries.size()));
+			}
+			entries.get(existing).uses++;
+			return existing;
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedOperationException
+		 */
+		@Override
+		public Expression visit(Expression exp) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Expression visit(And and) {
+			return lookupNode(and, TAG_AND);
+		}
+
+		@Override
+		public Expression visit(Or or) {
+			return lookupNode(or, TAG_OR);
+		}
+
+		@Override
+		public Expression visit(Not not) {
+			return lookupNode(not, TAG_NOT);
+		}
+
+		@Override
+		public Expression visit(BooleanValue booleanValue) {
+			return lookup(booleanValue, TAG_BOOLEAN_VALUE,
+					booleanValue.getValue());
+		}
+
+		@Override
+		public Expression visit(DummyLeaf dummyLeaf) {
+			// dummy leaves carry no structure to compare
+			Entry entry = entries.get(dummyLeaf);
+			if (entry == null) {
+				entry = new Entry(entries.size());
+				entries.put(dummyLeaf, entry);
+			}
+			entry.uses++;
+			return dummyLeaf;
+		}
+
+		@Override
+		public Expression visit(BooleanLiteral booleanLiteral) {
+			return lookup(booleanLiteral, TAG_BOOLEAN_LITERAL,
+					name(booleanLiteral.getColumn()));
+		}
+
+		@Override
+		public Expression visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+			return lookup(negatedBooleanLiteral, TAG_NEGATED_BOOLEAN_LITERAL,
+					name(negatedBooleanLiteral.getColumn()));
+		}
+
+		@Override
+		public Expression visit(EqualDoubleComparison exp) {
+			return lookup(exp, TAG_EQUAL_DOUBLE, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(NotEqualDoubleComparison exp) {
+			return lookup(exp, TAG_NOT_EQUAL_DOUBLE, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(LessDoubleComparison exp) {
+			return lookup(exp, TAG_LESS_DOUBLE, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(LessOrEqualDoubleComparison exp) {
+			return lookup(exp, TAG_LESS_OR_EQUAL_DOUBLE, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(EqualIntegerComparison exp) {
+			return lookup(exp, TAG_EQUAL_INTEGER, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(NotEqualIntegerComparison exp) {
+			return lookup(exp, TAG_NOT_EQUAL_INTEGER, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(LessOrEqualIntegerComparison exp) {
+			return lookup(exp, TAG_LESS_OR_EQUAL_INTEGER, name(exp.getLeft()),
+					name(exp.getRight()), exp.getConstant());
+		}
+
+		@Override
+		public Expression visit(EqualVarcharComparison exp) {
+			return lookup(exp, TAG_EQUAL_VARCHAR, name(exp.getLeft()),
+					name(exp.getRight()), exp.getLeftVarchar(),
+					exp.getRightVarchar());
+		}
+
+		@Override
+		public Expression visit(NotEqualVarcharComparison exp) {
+			return lookup(exp, TAG_NOT_EQUAL_VARCHAR, name(exp.getLeft()),
+					name(exp.getRight()), exp.getLeftVarchar(),
+					exp.getRightVarchar());
+		}
+
+		@Override
+		public Expression visit(LessVarcharComparison exp) {
+			return lookup(exp, TAG_LESS_VARCHAR, name(exp.getLeft()),
+					name(exp.getRight()), exp.getLeftVarchar(),
+					exp.getRightVarchar());
+		}
+
+		@Override
+		public Expression visit(LessOrEqualVarcharComparison exp) {
+			return lookup(exp, TAG_LESS_OR_EQUAL_VARCHAR, name(exp.getLeft()),
+					name(exp.getRight()), exp.getLeftVarchar(),
+					exp.getRightVarchar());
+		}
+	}
+}
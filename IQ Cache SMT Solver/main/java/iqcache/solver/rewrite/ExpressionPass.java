@@ -0,0 +1,22 @@
+package iqcache.solver.rewrite;
+
+import iqcache.expression.Expression;
+
+/**
+ * A rewrite of expressions that preserves satisfiability, run by a
+ * {@link PassManager}.
+ *
+ * @author dinh
+ */
+public interface ExpressionPass {
+
+	/**
+	 * Rewrites an expression.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return An equisatisfiable expression, the expression itself if
+	 *         nothing changed.
+	 */
+	Expression apply(Expression expression);
+}
@@ -0,0 +1,254 @@
+package iqcache.solver.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * Simplifies an expression before it is converted for a solver:
+ * <ul>
+ * <li>atoms without a column are <b>true</b>, like
+ * {@link iqcache.solver.SMTExpressionConverter} encodes them,</li>
+ * <li>atoms that compare a column with itself are folded, e.g.
+ * <code>x <= x + c</code> into <code>c >= 0</code>,</li>
+ * <li>negated constants are folded and double negations removed,</li>
+ * <li>And drops <b>true</b> and is <b>false</b> as soon as a conjunct is,
+ * Or drops <b>false</b> and is <b>true</b> as soon as a disjunct is, and a
+ * node with a single operand is replaced by it.</li>
+ * </ul>
+ * If the result is a {@link BooleanValue}, the expression is decided
+ * without a solver. Unchanged subexpressions are shared with the input.
+ *
+ * @author dinh
+ */
+public final class ExpressionSimplifier implements
+		ExpressionVisitor<Expression, RuntimeException> {
+
+	private static final ExpressionSimplifier INSTANCE = new ExpressionSimplifier();
+
+	private static final BooleanValue TRUE = new BooleanValue(true);
+	private static final BooleanValue FALSE = new BooleanValue(false);
+
+	private ExpressionSimplifier() {
+	}
+
+	/**
+	 * Simplifies an expression.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return An equivalent expression, possibly a {@link BooleanValue}.
+	 */
+	public static Expression simplify(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		return expression.accept(INSTANCE);
+	}
+
+	/**
+	 * not implemented
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Expression visit(Expression exp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Expression visit(And and) {
+		int n = and.getNumberOfSubexpressions();
+		List<Expression> conjuncts = new ArrayList<Expression>(n);
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			Expression conjunct = and.getSubexpressionAt(i);
+			Expression simplified = conjunct.accept(this);
+			changed |= simplified != conjunct;
+			if (simplified instanceof BooleanValue) {
+				if (!((BooleanValue) simplified).getValue()) {
+					return FALSE;
+				}
+				// true is neutral
+				changed = true;
+			} else {
+				conjuncts.add(simplified);
+			}
+		}
+		if (conjuncts.isEmpty()) {
+			return TRUE;
+		}
+		if (conjuncts.size() == 1) {
+			return conjuncts.get(0);
+		}
+		return changed ? new And(conjuncts.toArray(new Expression[conjuncts
+				.size()])) : and;
+	}
+
+	@Override
+	public Expression visit(Or or) {
+		int n = or.getNumberOfSubexpressions();
+		List<Expression> disjuncts = new ArrayList<Expression>(n);
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			Expression disjunct = or.getSubexpressionAt(i);
+			Expression simplified = disjunct.accept(this);
+			changed |= simplified != disjunct;
+			if (simplified instanceof BooleanValue) {
+				if (((BooleanValue) simplified).getValue()) {
+					return TRUE;
+				}
+				// false is neutral
+				changed = true;
+			} else {
+				disjuncts.add(simplified);
+			}
+		}
+		if (disjuncts.isEmpty()) {
+			return FALSE;
+		}
+		if (disjuncts.size() == 1) {
+			return disjuncts.get(0);
+		}
+		return changed ? new Or(disjuncts.toArray(new Expression[disjuncts
+				.size()])) : or;
+	}
+
+	@Override
+	public Expression visit(Not not) {
+		Expression operand = not.getSubexpressionAt(0);
+		Expression simplified = operand.accept(this);
+		if (simplified instanceof BooleanValue) {
+			return ((BooleanValue) simplified).getValue() ? FALSE : TRUE;
+		}
+		if (simplified instanceof Not) {
+			return ((Not) simplified).getSubexpressionAt(0);
+		}
+		if (simplified instanceof BooleanLiteral) {
+			return new NegatedBooleanLiteral(
+					((BooleanLiteral) simplified).getColumn());
+		}
+		if (simplified instanceof NegatedBooleanLiteral) {
+			return new BooleanLiteral(
+					((NegatedBooleanLiteral) simplified).getColumn());
+		}
+		return simplified == operand ? not : new Not(simplified);
+	}
+
+	@Override
+	public Expression visit(BooleanValue booleanValue) {
+		return booleanValue;
+	}
+
+	@Override
+	public Expression visit(DummyLeaf dummyLeaf) {
+		return dummyLeaf;
+	}
+
+	@Override
+	public Expression visit(EqualDoubleComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() == 0);
+	}
+
+	@Override
+	public Expression visit(EqualIntegerComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() == 0);
+	}
+
+	@Override
+	public Expression visit(EqualVarcharComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), true);
+	}
+
+	@Override
+	public Expression visit(LessDoubleComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() > 0);
+	}
+
+	@Override
+	public Expression visit(LessVarcharComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), false);
+	}
+
+	@Override
+	public Expression visit(LessOrEqualDoubleComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() >= 0);
+	}
+
+	@Override
+	public Expression visit(LessOrEqualIntegerComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() >= 0);
+	}
+
+	@Override
+	public Expression visit(LessOrEqualVarcharComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), true);
+	}
+
+	@Override
+	public Expression visit(NotEqualDoubleComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() != 0);
+	}
+
+	@Override
+	public Expression visit(NotEqualIntegerComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), exp.getConstant() != 0);
+	}
+
+	@Override
+	public Expression visit(NotEqualVarcharComparison exp) {
+		return fold(exp, exp.getLeft(), exp.getRight(), false);
+	}
+
+	@Override
+	public Expression visit(BooleanLiteral booleanLiteral) {
+		return booleanLiteral;
+	}
+
+	@Override
+	public Expression visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+		return negatedBooleanLiteral;
+	}
+
+	/**
+	 * Folds an atom without a column into <b>true</b> and an atom that
+	 * compares a column with itself into its value.
+	 *
+	 * @param reflexive
+	 *            the value of the atom if both sides are the same column
+	 */
+	private static Expression fold(Expression atom, Column left, Column right,
+			boolean reflexive) {
+		if (left == null && right == null) {
+			return TRUE;
+		}
+		if (left != null
+				&& right != null
+				&& Solver.getVariableName(left).equals(
+						Solver.getVariableName(right))) {
+			return reflexive ? TRUE : FALSE;
+		}
+		return atom;
+	}
+}
@@ -0,0 +1,596 @@
+package iqcache.solver.rewrite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+import iqcache.solver.Solver;
+
+/**
+ * A backend-neutral formula: the DAG of an {@link Expression} stored in
+ * primitive arrays. Every node has an operator, atoms refer to interned
+ * columns and varchar literals by index, and the operands of And, Or and Not
+ * nodes are stored consecutively in one operand array.
+ *
+ * The formula is built from a hash-consed expression (see
+ * {@link ExpressionInterner}), so structurally equal subexpressions are one
+ * node. Nested And nodes are flattened into their parent And, nested Or
+ * nodes into their parent Or. Operands precede their nodes, so the root is
+ * the last node and a backend can lower the nodes in index order.
+ *
+ * An atom has the semantics of its expression: <code>left op c</code> if
+ * only the left column is set, <code>c op right</code> if only the right
+ * column is set, <code>left op right + c</code> if both are set and
+ * <b>true</b> if none is. For varchar atoms the varchar literal takes the
+ * place of the constant and there is no offset.
+ *
+ * @author dinh
+ */
+public final class Formula {
+
+	public static final int TRUE = 0;
+	public static final int FALSE = 1;
+	public static final int AND = 2;
+	public static final int OR = 3;
+	public static final int NOT = 4;
+	public static final int BOOLEAN = 5;
+	public static final int NEGATED_BOOLEAN = 6;
+	public static final int INTEGER_EQUAL = 7;
+	public static final int INTEGER_NOT_EQUAL = 8;
+	public static final int INTEGER_LESS_OR_EQUAL = 9;
+	public static final int REAL_EQUAL = 10;
+	public static final int REAL_NOT_EQUAL = 11;
+	public static final int REAL_LESS = 12;
+	public static final int REAL_LESS_OR_EQUAL = 13;
+	public static final int VARCHAR_EQUAL = 14;
+	public static final int VARCHAR_NOT_EQUAL = 15;
+	public static final int VARCHAR_LESS = 16;
+	public static final int VARCHAR_LESS_OR_EQUAL = 17;
+
+	/**
+	 * no column or literal
+	 */
+	public static final int NONE = -1;
+
+	private final int[] ops;
+	/**
+	 * the left column of an atom, the offset of the operands of a node
+	 */
+	private final int[] lefts;
+	/**
+	 * the right column of an atom, the number of operands of a node
+	 */
+	private final int[] rights;
+	private final double[] constants;
+	private final int[] literalIds;
+	private final int[] uses;
+	private final int[] operands;
+	private final Expression[] sources;
+
+	private final List<Column> columns;
+	private final List<String> literals;
+	private final long opMask;
+	private final int atomCount;
+
+	private Formula(Builder builder) {
+		int n = builder.size;
+		this.ops = Arrays.copyOf(builder.ops, n);
+		this.lefts = Arrays.copyOf(builder.lefts, n);
+		this.rights = Arrays.copyOf(builder.rights, n);
+		this.constants = Arrays.copyOf(builder.constants, n);
+		this.literalIds = Arrays.copyOf(builder.literalIds, n);
+		this.uses = Arrays.copyOf(builder.uses, n);
+		this.operands = Arrays.copyOf(builder.operands, builder.operandCount);
+		this.sources = Arrays.copyOf(builder.sources, n);
+		this.columns = builder.columns;
+		this.literals = builder.literals;
+
+		long mask = 0;
+		int atoms = 0;
+		for (int i = 0; i < n; i++) {
+			mask |= 1L << ops[i];
+			if (ops[i] >= BOOLEAN) {
+				atoms++;
+			}
+		}
+		this.opMask = mask;
+		this.atomCount = atoms;
+	}
+
+	/**
+	 * Builds the formula of an expression.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return The formula.
+	 * @throws UnsupportedOperationException
+	 *             if the expression contains a {@link DummyLeaf}
+	 */
+	public static Formula of(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		ExpressionInterner interner = new ExpressionInterner();
+		Builder builder = new Builder(interner);
+		builder.build(interner.intern(expression));
+		return new Formula(builder);
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return ops.length;
+	}
+
+	/**
+	 * Returns the root node.
+	 *
+	 * @return The index of the root, the last node.
+	 */
+	public int getRoot() {
+		return ops.length - 1;
+	}
+
+	/**
+	 * Returns the operator of a node.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return The operator, e.g. {@link #AND} or {@link #INTEGER_EQUAL}.
+	 */
+	public int getOp(int node) {
+		return ops[node];
+	}
+
+	/**
+	 * Returns the number of operands of an And, Or or Not node.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return The number of operands, 0 for atoms.
+	 */
+	public int getOperandCount(int node) {
+		return isAtom(node) ? 0 : rights[node];
+	}
+
+	/**
+	 * Returns an operand of an And, Or or Not node.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @param i
+	 *            the position of the operand
+	 * @return The index of the operand, smaller than the index of the node.
+	 */
+	public int getOperand(int node, int i) {
+		Preconditions.checkArgument(!isAtom(node), "atom has no operands");
+		Preconditions.checkArgument(i >= 0 && i < rights[node],
+				"no such operand");
+		return operands[lefts[node] + i];
+	}
+
+	/**
+	 * Returns the left column of an atom.
+	 *
+	 * @param node
+	 *            the index of the atom
+	 * @return The index of the column or {@link #NONE}.
+	 */
+	public int getLeft(int node) {
+		return isAtom(node) ? lefts[node] : NONE;
+	}
+
+	/**
+	 * Returns the right column of an atom.
+	 *
+	 * @param node
+	 *            the index of the atom
+	 * @return The index of the column or {@link #NONE}.
+	 */
+	public int getRight(int node) {
+		return isAtom(node) ? rights[node] : NONE;
+	}
+
+	/**
+	 * Returns the constant of an integer or real atom.
+	 *
+	 * @param node
+	 *            the index of the atom
+	 * @return The constant, 0 for other nodes.
+	 */
+	public double getConstant(int node) {
+		return constants[node];
+	}
+
+	/**
+	 * Returns the varchar literal of a varchar atom.
+	 *
+	 * @param node
+	 *            the index of the atom
+	 * @return The index of the literal or {@link #NONE} if the atom compares
+	 *         two columns.
+	 */
+	public int getLiteral(int node) {
+		return literalIds[node];
+	}
+
+	/**
+	 * Returns how often a node occurs in the expression the formula was
+	 * built from.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return The number of occurrences, at least 1.
+	 */
+	public int getUses(int node) {
+		return uses[node];
+	}
+
+	/**
+	 * Returns the expression a node was built from. If the formula was built
+	 * from a hash-consed expression, this is the canonical instance.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return The expression.
+	 */
+	public Expression getSource(int node) {
+		return sources[node];
+	}
+
+	/**
+	 * Returns the number of distinct columns.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Returns a column. Columns are identified by their variable name (see
+	 * {@link Solver#getVariableName(Column)}).
+	 *
+	 * @param column
+	 *            the index of the column
+	 * @return The first column of that name in the expression.
+	 */
+	public Column getColumn(int column) {
+		return columns.get(column);
+	}
+
+	/**
+	 * Returns the number of distinct varchar literals.
+	 *
+	 * @return The number of literals.
+	 */
+	public int getLiteralCount() {
+		return literals.size();
+	}
+
+	/**
+	 * Returns a varchar literal.
+	 *
+	 * @param literal
+	 *            the index of the literal
+	 * @return The literal.
+	 */
+	public String getLiteralValue(int literal) {
+		return literals.get(literal);
+	}
+
+	/**
+	 * Determine if a node is an atom.
+	 *
+	 * @param node
+	 *            the index of the node
+	 * @return <code>true</code> iff the node is neither an And, Or nor Not
+	 *         node.
+	 */
+	public boolean isAtom(int node) {
+		int op = ops[node];
+		return op != AND && op != OR && op != NOT;
+	}
+
+	/**
+	 * Determine if an operator occurs in the formula.
+	 *
+	 * @param op
+	 *            the operator
+	 * @return <code>true</code> iff a node has the operator.
+	 */
+	public boolean contains(int op) {
+		return (opMask & 1L << op) != 0;
+	}
+
+	/**
+	 * Returns the number of distinct atoms, including boolean literals and
+	 * constants.
+	 *
+	 * @return The number of atoms.
+	 */
+	public int getAtomCount() {
+		return atomCount + (contains(TRUE) ? 1 : 0)
+				+ (contains(FALSE) ? 1 : 0);
+	}
+
+	/**
+	 * Collects the nodes of a hash-consed expression. Every canonical
+	 * subexpression becomes one node.
+	 */
+	private static final class Builder implements
+			ExpressionVisitor<Integer, RuntimeException> {
+
+		private final ExpressionInterner interner;
+
+		private int size = 0;
+		private int[] ops = new int[16];
+		private int[] lefts = new int[16];
+		private int[] rights = new int[16];
+		private double[] constants = new double[16];
+		private int[] literalIds = new int[16];
+		private int[] uses = new int[16];
+		private Expression[] sources = new Expression[16];
+
+		private int operandCount = 0;
+		private int[] operands = new int[16];
+
+		private final Map<Expression, Integer> nodes = new IdentityHashMap<Expression, Integer>();
+		private final List<Column> columns = new ArrayList<Column>();
+		private final Map<String, Integer> columnIds = new HashMap<String, Integer>();
+		private final List<String> literals = new ArrayList<String>();
+		private final Map<String, Integer> literalIdMap = new HashMap<String, Integer>();
+
+		Builder(ExpressionInterner interner) {
+			this.interner = interner;
+		}
+
+		void build(Expression expression) {
+			node(expression);
+		}
+
+		private int node(Expression expression) {
+			Integer node = nodes.get(expression);
+			if (node == null) {
+				node = expression.accept(this);
+				nodes.put(expression, node);
+			}
+			return node;
+		}
+
+		private int add(Expression source, int op, int left, int right,
+				double constant, int literal) {
+			if (size == ops.length) {
+				int capacity = 2 * size;
+				ops = Arrays.copyOf(ops, capacity);
+				lefts = Arrays.copyOf(lefts, capacity);
+				rights = Arrays.copyOf(rights, capacity);
+				constants = Arrays.copyOf(constants, capacity);
+				literalIds = Arrays.copyOf(literalIds, capacity);
+				uses = Arrays.copyOf(uses, capacity);
+				sources = Arrays.copyOf(sources, capacity);
+			}
+			ops[size] = op;
+			lefts[size] = left;
+			rights[size] = right;
+			constants[size] = constant;
+			literalIds[size] = literal;
+			uses[size] = interner.getUses(source);
+			sources[size] = source;
+			return size++;
+		}
+
+		private int addNode(NodeExpression node, int op) {
+			// operands first, flattening nested nodes of the same operator
+			List<Integer> children = new ArrayList<Integer>(
+					node.getNumberOfSubexpressions());
+			collectOperands(node, op, children);
+			if (operandCount + children.size() > operands.length) {
+				operands = Arrays.copyOf(operands, Math.max(
+						2 * operands.length, operandCount + children.size()));
+			}
+			int offset = operandCount;
+			for (int child : children) {
+				operands[operandCount++] = child;
+			}
+			return add(node, op, offset, children.size(), 0, NONE);
+		}
+
+		private void collectOperands(NodeExpression node, int op,
+				List<Integer> children) {
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				Expression child = node.getSubexpressionAt(i);
+				if (op == AND && child instanceof And || op == OR
+						&& child instanceof Or) {
+					collectOperands((NodeExpression) child, op, children);
+				} else {
+					children.add(node(child));
+				}
+			}
+		}
+
+		private int column(Column column) {
+			if (column == null) {
+				return NONE;
+			}
+			String name = Solver.getVariableName(column);
+			Integer id = columnIds.get(name);
+			if (id == null) {
+				id = columns.size();
+				columns.add(column);
+				columnIds.put(name, id);
+			}
+			return id;
+		}
+
+		private int literal(String literal) {
+			if (literal == null) {
+				return NONE;
+			}
+			Integer id = literalIdMap.get(literal);
+			if (id == null) {
+				id = literals.size();
+				literals.add(literal);
+				literalIdMap.put(literal, id);
+			}
+			return id;
+		}
+
+		private int addAtom(Expression source, int op, Column left,
+				Column right, double constant) {
+			return add(source, op, column(left), column(right), constant, NONE);
+		}
+
+		private int addVarchar(Expression source, int op, Column left,
+				String leftVarchar, Column right, String rightVarchar) {
+			return add(source, op, column(left), column(right), 0,
+					literal(left == null ? leftVarchar : rightVarchar));
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedOperationException
+		 */
+		@Override
+		public Integer visit(Expression exp) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * not implemented
+		 *
+		 * @throws UnsupportedOperationException
+		 */
+		@Override
+		public Integer visit(DummyLeaf dummyLeaf) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Integer visit(And and) {
+			return addNode(and, AND);
+		}
+
+		@Override
+		public Integer visit(Or or) {
+			return addNode(or, OR);
+		}
+
+		@Override
+		public Integer visit(Not not) {
+			return addNode(not, NOT);
+		}
+
+		@Override
+		public Integer visit(BooleanValue booleanValue) {
+			return add(booleanValue, booleanValue.getValue() ? TRUE : FALSE,
+					NONE, NONE, 0, NONE);
+		}
+
+		@Override
+		public Integer visit(BooleanLiteral booleanLiteral) {
+			return add(booleanLiteral, BOOLEAN,
+					column(booleanLiteral.getColumn()), NONE, 0, NONE);
+		}
+
+		@Override
+		public Integer visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+			return add(negatedBooleanLiteral, NEGATED_BOOLEAN,
+					column(negatedBooleanLiteral.getColumn()), NONE, 0, NONE);
+		}
+
+		@Override
+		public Integer visit(EqualIntegerComparison exp) {
+			return addAtom(exp, INTEGER_EQUAL, exp.getLeft(), exp.getRight(),
+					exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(NotEqualIntegerComparison exp) {
+			return addAtom(exp, INTEGER_NOT_EQUAL, exp.getLeft(),
+					exp.getRight(), exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(LessOrEqualIntegerComparison exp) {
+			return addAtom(exp, INTEGER_LESS_OR_EQUAL, exp.getLeft(),
+					exp.getRight(), exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(EqualDoubleComparison exp) {
+			return addAtom(exp, REAL_EQUAL, exp.getLeft(), exp.getRight(),
+					exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(NotEqualDoubleComparison exp) {
+			return addAtom(exp, REAL_NOT_EQUAL, exp.getLeft(), exp.getRight(),
+					exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(LessDoubleComparison exp) {
+			return addAtom(exp, REAL_LESS, exp.getLeft(), exp.getRight(),
+					exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(LessOrEqualDoubleComparison exp) {
+			return addAtom(exp, REAL_LESS_OR_EQUAL, exp.getLeft(),
+					exp.getRight(), exp.getConstant());
+		}
+
+		@Override
+		public Integer visit(EqualVarcharComparison exp) {
+			return addVarchar(exp, VARCHAR_EQUAL, exp.getLeft(),
+					exp.getLeftVarchar(), exp.getRight(), exp.getRightVarchar());
+		}
+
+		@Override
+		public Integer visit(NotEqualVarcharComparison exp) {
+			return addVarchar(exp, VARCHAR_NOT_EQUAL, exp.getLeft(),
+					exp.getLeftVarchar(), exp.getRight(), exp.getRightVarchar());
+		}
+
+		@Override
+		public Integer visit(LessVarcharComparison exp) {
+			return addVarchar(exp, VARCHAR_LESS, exp.getLeft(),
+					exp.getLeftVarchar(), exp.getRight(), exp.getRightVarchar());
+		}
+
+		@Override
+		public Integer visit(LessOrEqualVarcharComparison exp) {
+			return addVarchar(exp, VARCHAR_LESS_OR_EQUAL, exp.getLeft(),
+					exp.getLeftVarchar(), exp.getRight(), exp.getRightVarchar());
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package iqcache.solver.rewrite;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.ExpressionVisitor;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.EqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typedouble.NotEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.leaf.typevarchar.NotEqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.column.Column;
+
+/**
+ * Rewrites an expression into negation normal form: negations are pushed
+ * through And and Or (De Morgan) and absorbed by the atoms, whose
+ * comparison is complemented. With the atom semantics of
+ * {@link iqcache.solver.SMTExpressionConverter}:
+ * <ul>
+ * <li><code>not(x = y + c)</code> becomes <code>x != y + c</code> and
+ * vice versa,</li>
+ * <li><code>not(x <= y + c)</code> becomes <code>y < x - c</code> for
+ * doubles and <code>y <= x - c - 1</code> for integers, so integer atoms
+ * stay non-strict,</li>
+ * <li><code>not(x < y + c)</code> becomes <code>y <= x - c</code>,</li>
+ * <li><code>not(s < t)</code> becomes <code>t <= s</code> for varchars and
+ * vice versa,</li>
+ * <li>a negated {@link BooleanLiteral} becomes a
+ * {@link NegatedBooleanLiteral} and vice versa.</li>
+ * </ul>
+ * Atoms without a column are <b>true</b>, so their negation is
+ * <b>false</b>. A Not node only remains above a {@link DummyLeaf} and above
+ * an integer atom whose complemented constant would overflow.
+ *
+ * @author dinh
+ */
+public final class NegationNormalizer implements
+		ExpressionVisitor<Expression, RuntimeException> {
+
+	private static final NegationNormalizer POSITIVE = new NegationNormalizer(
+			false);
+	private static final NegationNormalizer NEGATIVE = new NegationNormalizer(
+			true);
+
+	private static final BooleanValue TRUE = new BooleanValue(true);
+	private static final BooleanValue FALSE = new BooleanValue(false);
+
+	/**
+	 * <code>true</code> if the visited expression is negated
+	 */
+	private final boolean negated;
+
+	private NegationNormalizer(boolean negated) {
+		this.negated = negated;
+	}
+
+	/**
+	 * Rewrites an expression into negation normal form.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return An equivalent expression without Not nodes above atoms.
+	 */
+	public static Expression normalize(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		Expression normalized = expression.accept(POSITIVE);
+		// negated atoms without a column may have become constants
+		return normalized == expression ? expression : ExpressionSimplifier
+				.simplify(normalized);
+	}
+
+	/**
+	 * not implemented
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Expression visit(Expression exp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Expression visit(And and) {
+		Expression[] children = visitChildren(and);
+		if (negated) {
+			return new Or(children);
+		}
+		return children == null ? and : new And(children);
+	}
+
+	@Override
+	public Expression visit(Or or) {
+		Expression[] children = visitChildren(or);
+		if (negated) {
+			return new And(children);
+		}
+		return children == null ? or : new Or(children);
+	}
+
+	@Override
+	public Expression visit(Not not) {
+		return not.getSubexpressionAt(0).accept(negated ? POSITIVE : NEGATIVE);
+	}
+
+	@Override
+	public Expression visit(BooleanValue booleanValue) {
+		if (negated) {
+			return booleanValue.getValue() ? FALSE : TRUE;
+		}
+		return booleanValue;
+	}
+
+	@Override
+	public Expression visit(DummyLeaf dummyLeaf) {
+		return negated ? new Not(dummyLeaf) : dummyLeaf;
+	}
+
+	@Override
+	public Expression visit(BooleanLiteral booleanLiteral) {
+		return negated ? new NegatedBooleanLiteral(booleanLiteral.getColumn())
+				: booleanLiteral;
+	}
+
+	@Override
+	public Expression visit(NegatedBooleanLiteral negatedBooleanLiteral) {
+		return negated ? new BooleanLiteral(negatedBooleanLiteral.getColumn())
+				: negatedBooleanLiteral;
+	}
+
+	@Override
+	public Expression visit(EqualDoubleComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		if (exp.getLeft() == null && exp.getRight() == null) {
+			return FALSE;
+		}
+		return new NotEqualDoubleComparison(exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Expression visit(NotEqualDoubleComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		if (exp.getLeft() == null && exp.getRight() == null) {
+			return FALSE;
+		}
+		return new EqualDoubleComparison(exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Expression visit(LessDoubleComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		// not(l < r + c) is r <= l - c, not(l < c) is c <= l, not(c < r)
+		// is r <= c
+		double c = left != null && right != null ? -exp.getConstant() : exp
+				.getConstant();
+		return new LessOrEqualDoubleComparison(right, left, c);
+	}
+
+	@Override
+	public Expression visit(LessOrEqualDoubleComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		// not(l <= r + c) is r < l - c, not(l <= c) is c < l, not(c <= r)
+		// is r < c
+		double c = left != null && right != null ? -exp.getConstant() : exp
+				.getConstant();
+		return new LessDoubleComparison(right, left, c);
+	}
+
+	@Override
+	public Expression visit(EqualIntegerComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		if (exp.getLeft() == null && exp.getRight() == null) {
+			return FALSE;
+		}
+		return new NotEqualIntegerComparison(exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Expression visit(NotEqualIntegerComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		if (exp.getLeft() == null && exp.getRight() == null) {
+			return FALSE;
+		}
+		return new EqualIntegerComparison(exp.getLeft(), exp.getRight(),
+				exp.getConstant());
+	}
+
+	@Override
+	public Expression visit(LessOrEqualIntegerComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		// not(l <= r + c) is r <= l - c - 1, not(l <= c) is c + 1 <= l,
+		// not(c <= r) is r <= c - 1
+		long c;
+		if (left != null && right != null) {
+			c = -(long) exp.getConstant() - 1;
+		} else if (right == null) {
+			c = (long) exp.getConstant() + 1;
+		} else {
+			c = (long) exp.getConstant() - 1;
+		}
+		if (c != (int) c) {
+			return new Not(exp);
+		}
+		return new LessOrEqualIntegerComparison(right, left, (int) c);
+	}
+
+	@Override
+	public Expression visit(EqualVarcharComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		if (left == null) {
+			return new NotEqualVarcharComparison(exp.getLeftVarchar(), right);
+		}
+		if (right == null) {
+			return new NotEqualVarcharComparison(left, exp.getRightVarchar());
+		}
+		return new NotEqualVarcharComparison(left, right);
+	}
+
+	@Override
+	public Expression visit(NotEqualVarcharComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		if (left == null) {
+			return new EqualVarcharComparison(exp.getLeftVarchar(), right);
+		}
+		if (right == null) {
+			return new EqualVarcharComparison(left, exp.getRightVarchar());
+		}
+		return new EqualVarcharComparison(left, right);
+	}
+
+	@Override
+	public Expression visit(LessVarcharComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		// not(l < r) is r <= l
+		if (left == null) {
+			return new LessOrEqualVarcharComparison(right,
+					exp.getLeftVarchar());
+		}
+		if (right == null) {
+			return new LessOrEqualVarcharComparison(exp.getRightVarchar(),
+					left);
+		}
+		return new LessOrEqualVarcharComparison(right, left);
+	}
+
+	@Override
+	public Expression visit(LessOrEqualVarcharComparison exp) {
+		if (!negated) {
+			return exp;
+		}
+		Column left = exp.getLeft();
+		Column right = exp.getRight();
+		if (left == null && right == null) {
+			return FALSE;
+		}
+		// not(l <= r) is r < l
+		if (left == null) {
+			return new LessVarcharComparison(right, exp.getLeftVarchar());
+		}
+		if (right == null) {
+			return new LessVarcharComparison(exp.getRightVarchar(), left);
+		}
+		return new LessVarcharComparison(right, left);
+	}
+
+	/**
+	 * Returns the normalized children of a node, or <code>null</code> if
+	 * the node is not negated and none changed.
+	 */
+	private Expression[] visitChildren(NodeExpression node) {
+		int n = node.getNumberOfSubexpressions();
+		Expression[] children = new Expression[n];
+		boolean changed = negated;
+		for (int i = 0; i < n; i++) {
+			Expression child = node.getSubexpressionAt(i);
+			children[i] = child.accept(this);
+			changed |= children[i] != child;
+		}
+		return changed ? children : null;
+	}
+}
@@ -0,0 +1,123 @@
+package iqcache.solver.rewrite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import iqcache.common.Preconditions;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+
+/**
+ * Runs a pipeline of {@link ExpressionPass}es over an expression, in the
+ * order they were added, and lowers the result to a {@link Formula}. The
+ * passes run in Java before anything is converted to a solver, so a formula
+ * they decide never reaches native memory.
+ *
+ * @author dinh
+ */
+public final class PassManager {
+
+	/**
+	 * Simplifies an expression with the {@link ExpressionSimplifier}.
+	 */
+	public static final ExpressionPass SIMPLIFY = new ExpressionPass() {
+		@Override
+		public Expression apply(Expression expression) {
+			return ExpressionSimplifier.simplify(expression);
+		}
+	};
+
+	/**
+	 * Rewrites an expression into negation normal form with the
+	 * {@link NegationNormalizer}.
+	 */
+	public static final ExpressionPass NORMALIZE = new ExpressionPass() {
+		@Override
+		public Expression apply(Expression expression) {
+			return NegationNormalizer.normalize(expression);
+		}
+	};
+
+	/**
+	 * Removes redundant bounds with the {@link BoundTightener}.
+	 */
+	public static final ExpressionPass TIGHTEN = new ExpressionPass() {
+		@Override
+		public Expression apply(Expression expression) {
+			return BoundTightener.tighten(expression);
+		}
+	};
+
+	private final List<ExpressionPass> passes = new ArrayList<ExpressionPass>();
+
+	/**
+	 * Creates a pass manager without passes.
+	 */
+	public PassManager() {
+	}
+
+	/**
+	 * Creates the pass manager of the solvers: the expression is simplified,
+	 * normalized and its bounds are tightened.
+	 *
+	 * @return A new pass manager.
+	 */
+	public static PassManager standard() {
+		return new PassManager().add(SIMPLIFY).add(NORMALIZE).add(TIGHTEN);
+	}
+
+	/**
+	 * Appends a pass to the pipeline.
+	 *
+	 * @param pass
+	 *            the pass
+	 * @return This pass manager.
+	 */
+	public PassManager add(ExpressionPass pass) {
+		passes.add(Preconditions.checkNotNull(pass));
+		return this;
+	}
+
+	/**
+	 * Returns the passes.
+	 *
+	 * @return The passes in the order they run.
+	 */
+	public List<ExpressionPass> getPasses() {
+		return Collections.unmodifiableList(passes);
+	}
+
+	/**
+	 * Runs all passes over an expression. The pipeline stops early once
+	 * the expression is a constant.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return The rewritten expression.
+	 */
+	public Expression run(Expression expression) {
+		Preconditions.checkNotNull(expression);
+		for (ExpressionPass pass : passes) {
+			if (expression instanceof BooleanValue) {
+				break;
+			}
+			expression = Preconditions.checkNotNull(pass.apply(expression));
+		}
+		return expression;
+	}
+
+	/**
+	 * Runs all passes over an expression and lowers the result.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return The formula of the rewritten expression.
+	 * @throws UnsupportedOperationException
+	 *             if the rewritten expression contains a
+	 *             {@link iqcache.expression.leaf.DummyLeaf}
+	 */
+	public Formula compile(Expression expression) {
+		return Formula.of(run(expression));
+	}
+}
@@ -2,19 +2,28 @@ package iqcache.solver.z3;
 
 import com.microsoft.z3.BitVecExpr;
 import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.FuncDecl;
 import com.microsoft.z3.Context;
 import com.microsoft.z3.Expr;
 import com.microsoft.z3.IntExpr;
 import com.microsoft.z3.IntNum;
 import com.microsoft.z3.RatNum;
 import com.microsoft.z3.RealExpr;
+import com.microsoft.z3.Sort;
+import com.microsoft.z3.Symbol;
 import com.microsoft.z3.Z3Exception;
 
+import java.util.List;
+
 import iqcache.common.Preconditions;
 import iqcache.query.column.Column;
+import iqcache.solver.ReferenceArena;
+import iqcache.solver.SMTLib2Emitter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.Solver;
 import iqcache.solver.SolverAPI;
+import iqcache.solver.SolverException;
+import iqcache.solver.TermCache;
 import iqcache.solver.variable.BitvectorVariable;
 import iqcache.solver.variable.IntVariable;
 import iqcache.solver.variable.RealVariable;
@@ -31,6 +40,18 @@ public class Z3API extends SolverAPI {
 	 */
 	private Context ctx;
 
+	/**
+	 * The variables and constants already created in the context.
+	 */
+	private final TermCache<Expr> terms;
+
+	/**
+	 * Holds the operands of the terms created by this API until they are
+	 * released in one batch, or <code>null</code> if an operand is disposed
+	 * as soon as it is combined.
+	 */
+	private final ReferenceArena<Expr> arena;
+
 	/**
 	 * Constructor of an Z3API.
 	 * 
@@ -38,7 +59,69 @@ public class Z3API extends SolverAPI {
 	 *            the needed context for a Z3API.
 	 */
 	public Z3API(Context ctx) {
+		this(ctx, TermCache.<Expr> byIdentity());
+	}
+
+	/**
+	 * Constructor of an Z3API that shares the variables and constants of a
+	 * context across conversions.
+	 * 
+	 * @param ctx
+	 *            the needed context for a Z3API.
+	 * @param terms
+	 *            the cache of the terms created in the context
+	 */
+	public Z3API(Context ctx, TermCache<Expr> terms) {
+		Preconditions.checkNotNull(terms);
+		this.ctx = ctx;
+		this.terms = terms;
+		this.arena = null;
+	}
+
+	/**
+	 * Constructor of an Z3API that hands the operands of the terms it creates
+	 * to an arena instead of disposing them.
+	 * 
+	 * @param ctx
+	 *            the needed context for a Z3API.
+	 * @param terms
+	 *            the cache of the terms created in the context
+	 * @param arena
+	 *            the arena of the running check, see {@link #createArena()}
+	 */
+	public Z3API(Context ctx, TermCache<Expr> terms,
+			ReferenceArena<Expr> arena) {
+		Preconditions.checkNotNull(terms);
+		Preconditions.checkNotNull(arena);
 		this.ctx = ctx;
+		this.terms = terms;
+		this.arena = arena;
+	}
+
+	/**
+	 * Creates an arena that disposes the Z3 references it holds.
+	 * 
+	 * @return The arena.
+	 */
+	public static ReferenceArena<Expr> createArena() {
+		return new ReferenceArena<Expr>(new ReferenceArena.Releaser<Expr>() {
+			@Override
+			public void release(List<Expr> references) {
+				for (Expr reference : references) {
+					try {
+						reference.Dispose();
+					} catch (Z3Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void retain(SMTLibExpression expr) {
+		// pinned terms are not disposed as operands
+		terms.pin(expr.getZ3Expression().getBoolExpr());
 	}
 
 	@Override
@@ -46,7 +129,11 @@ public class Z3API extends SolverAPI {
 		Preconditions.checkNotNull(col);
 		BoolExpr boolExpr = null;
 		try {
-			boolExpr = ctx.MkBoolConst(Solver.getVariableName(col));
+			boolExpr = (BoolExpr) terms.get(TermCache.BOOL_VARIABLE, col, 0);
+			if (boolExpr == null) {
+				boolExpr = (BoolExpr) terms.put(TermCache.BOOL_VARIABLE, col,
+						0, ctx.MkBoolConst(Solver.getVariableName(col)));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -58,7 +145,27 @@ public class Z3API extends SolverAPI {
 		Preconditions.checkNotNull(col);
 		IntExpr intExpr = null;
 		try {
-			intExpr = ctx.MkIntConst(Solver.getVariableName(col));
+			intExpr = (IntExpr) terms.get(TermCache.INT_VARIABLE, col, 0);
+			if (intExpr == null) {
+				intExpr = (IntExpr) terms.put(TermCache.INT_VARIABLE, col, 0,
+						ctx.MkIntConst(Solver.getVariableName(col)));
+			}
+		} catch (Z3Exception e) {
+			e.printStackTrace();
+		}
+		return new Z3IntVariable(col, intExpr);
+	}
+
+	@Override
+	protected IntVariable createRankVariable(Column col) {
+		Preconditions.checkNotNull(col);
+		IntExpr intExpr = null;
+		try {
+			intExpr = (IntExpr) terms.get(TermCache.RANK_VARIABLE, col, 0);
+			if (intExpr == null) {
+				intExpr = (IntExpr) terms.put(TermCache.RANK_VARIABLE, col, 0,
+						ctx.MkIntConst(Solver.getRankVariableName(col)));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -70,7 +177,11 @@ public class Z3API extends SolverAPI {
 		Preconditions.checkNotNull(col);
 		RealExpr realExpr = null;
 		try {
-			realExpr = ctx.MkRealConst(Solver.getVariableName(col));
+			realExpr = (RealExpr) terms.get(TermCache.REAL_VARIABLE, col, 0);
+			if (realExpr == null) {
+				realExpr = (RealExpr) terms.put(TermCache.REAL_VARIABLE, col,
+						0, ctx.MkRealConst(Solver.getVariableName(col)));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -84,7 +195,13 @@ public class Z3API extends SolverAPI {
 		Preconditions.checkArgument(size > 0);
 		BitVecExpr bitVecExpr = null;
 		try {
-			bitVecExpr = ctx.MkBVConst(Solver.getVariableName(col), size);
+			bitVecExpr = (BitVecExpr) terms.get(
+					TermCache.BITVECTOR_VARIABLE, col, size);
+			if (bitVecExpr == null) {
+				bitVecExpr = (BitVecExpr) terms.put(
+						TermCache.BITVECTOR_VARIABLE, col, size,
+						ctx.MkBVConst(Solver.getVariableName(col), size));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -113,13 +230,13 @@ public class Z3API extends SolverAPI {
 	private void disposeExpression(Variable... var) throws Z3Exception {
 		for (Variable v : var) {
 			if (v instanceof Z3IntVariable) {
-				((Z3IntVariable) v).getIntExpr().Dispose();
+				disposeExpression(((Z3IntVariable) v).getIntExpr());
 			} else if (v instanceof Z3BoolVariable) {
-				((Z3BoolVariable) v).getBoolExpr().Dispose();
+				disposeExpression(((Z3BoolVariable) v).getBoolExpr());
 			} else if (v instanceof Z3BitvectorVariable) {
-				((Z3BitvectorVariable) v).getBitvectorExpr().Dispose();
+				disposeExpression(((Z3BitvectorVariable) v).getBitvectorExpr());
 			} else {
-				((Z3RealVariable) v).getRealExpr().Dispose();
+				disposeExpression(((Z3RealVariable) v).getRealExpr());
 			}
 		}
 	}
@@ -436,7 +553,15 @@ public class Z3API extends SolverAPI {
 
 	private void disposeExpression(Expr... boolExpr) throws Z3Exception {
 		for (Expr b : boolExpr) {
-			b.Dispose();
+			// cached terms live as long as the context
+			if (terms.isCached(b)) {
+				continue;
+			}
+			if (arena != null) {
+				arena.add(b);
+			} else {
+				b.Dispose();
+			}
 		}
 	}
 
@@ -511,7 +636,11 @@ public class Z3API extends SolverAPI {
 	protected IntVariable createIntNum(Column col, int value) {
 		IntNum intNum = null;
 		try {
-			intNum = ctx.MkInt(value);
+			intNum = (IntNum) terms.get(TermCache.INT_NUM, value, 0);
+			if (intNum == null) {
+				intNum = (IntNum) terms.put(TermCache.INT_NUM, value, 0,
+						ctx.MkInt(value));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -522,7 +651,11 @@ public class Z3API extends SolverAPI {
 	protected RealVariable createRealNum(Column col, double value) {
 		RatNum realNum = null;
 		try {
-			realNum = ctx.MkReal((long) value);
+			realNum = (RatNum) terms.get(TermCache.REAL_NUM, value, 0);
+			if (realNum == null) {
+				realNum = (RatNum) terms.put(TermCache.REAL_NUM, value, 0,
+						ctx.MkReal(SMTLib2Emitter.toDecimal(value)));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -614,7 +747,13 @@ public class Z3API extends SolverAPI {
 			 * Z3 creates a bitvector string with a given decimal number
 			 * representation of the binary bitvector
 			 */
-			bitVecExpr = ctx.MkBV(string, size);
+			bitVecExpr = (BitVecExpr) terms.get(TermCache.BITVECTOR_STRING,
+					string, size);
+			if (bitVecExpr == null) {
+				bitVecExpr = (BitVecExpr) terms.put(
+						TermCache.BITVECTOR_STRING, string, size,
+						ctx.MkBV(string, size));
+			}
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
@@ -627,6 +766,19 @@ public class Z3API extends SolverAPI {
 		return expr.getZ3Expression().getBoolExpr().toString();
 	}
 
+	@Override
+	protected SMTLibExpression parseSMTLib2(String script)
+			throws SolverException {
+		try {
+			// the declarations of the script are the constants of MkConst
+			BoolExpr boolExpr = ctx.ParseSMTLIB2String(script, new Symbol[0],
+					new Sort[0], new Symbol[0], new FuncDecl[0]);
+			return new SMTLibExpression(new Z3Expression(boolExpr));
+		} catch (Z3Exception e) {
+			throw new SolverException("Z3 rejected the SMT-LIB 2 script", e);
+		}
+	}
+
 	@Override
 	protected BitvectorVariable makeBitvectorZeroExtension(
 			BitvectorVariable bVar, int bitsToExtend) {
@@ -1,17 +1,32 @@
 package iqcache.solver.z3;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
 import com.microsoft.z3.Solver;
 import com.microsoft.z3.Status;
 import com.microsoft.z3.Z3Exception;
 
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.ContextRecycler;
+import iqcache.solver.Logic;
+import iqcache.solver.RecyclingPolicy;
+import iqcache.solver.ReferenceArena;
 import iqcache.solver.SMTExpressionConverter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.SolverException;
+import iqcache.solver.TermCache;
+import iqcache.solver.rewrite.Formula;
 
 /**
  * An instance of a Z3Resetting SMT solver.
@@ -20,8 +35,76 @@ import iqcache.solver.SolverException;
  */
 public class Z3ResettingSolver extends Z3Solver {
 
+	/**
+	 * Prefix of the activation literals of a batch; column variables always
+	 * contain a dot instead.
+	 */
+	private static final String ACTIVATION_PREFIX = "!activation";
+
 	private Solver solver;
-	private Context ctx;
+
+	/**
+	 * The current context, read by {@link #interrupt()} from other threads.
+	 * It is swapped only while holding {@link #interruptLock}, so an
+	 * interrupt never reaches a retired context that is being disposed.
+	 */
+	private volatile Context ctx;
+
+	private final Object interruptLock = new Object();
+
+	/**
+	 * One solver per logic, all in the current context; the pinned region
+	 * is asserted in the solver of {@link Logic#GENERAL}.
+	 */
+	private final Map<Logic, Solver> solvers = new EnumMap<Logic, Solver>(
+			Logic.class);
+
+	/**
+	 * The variables and constants created in the context, shared by all
+	 * conversions.
+	 */
+	private final TermCache<Expr> terms = TermCache.byIdentity();
+
+	/**
+	 * The references created by a check, released in one batch when the
+	 * check has completed.
+	 */
+	private final ReferenceArena<Expr> arena = Z3API.createArena();
+
+	/**
+	 * <code>true</code> iff the pinned region is asserted at the base level
+	 * of the solver.
+	 */
+	private boolean regionAsserted = false;
+
+	/**
+	 * Set by {@link #interrupt()}, tested right before each check and cleared
+	 * at the start of each call: Z3 drops a {@link Context#Interrupt()} that
+	 * arrives while no check runs, e.g. during the passes or the conversion.
+	 */
+	private volatile boolean interruptRequested = false;
+
+	/**
+	 * Decides when the context is replaced; resetting a solver does not free
+	 * the terms of its context.
+	 */
+	private RecyclingPolicy recycling = new RecyclingPolicy();
+
+	/**
+	 * Warms the replacement context and tears retired ones down.
+	 */
+	private final ContextRecycler<Context> contexts = new ContextRecycler<Context>(
+			new Callable<Context>() {
+				@Override
+				public Context call() throws Exception {
+					return createContext();
+				}
+			}, new ContextRecycler.Disposer<Context>() {
+				@Override
+				public void dispose(Context spare) {
+					spare.Dispose();
+				}
+			});
 
 	static {
 		// load the Z3 library.
@@ -41,29 +124,280 @@ public class Z3ResettingSolver extends Z3Solver {
 	public boolean isSatisfiable(Expression expression)
 			throws SatisfiabilityException {
 		Preconditions.checkNotNull(expression);
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
 		SMTLibExpression smtExpr = null;
 
+		// constant formulas are decided without a context
+		Expression simplified = passes.run(expression);
+		if (simplified instanceof BooleanValue) {
+			return ((BooleanValue) simplified).getValue();
+		}
+
+		// resetting drops the pinned region
+		regionAsserted = false;
+		Formula formula = Formula.of(simplified);
 		try {
-			openSolver();
+			openSolver(Logic.of(formula, dictionaryEncoding));
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot open solver.", e);
+		}
+
+		try {
+			smtExpr = createSMTLibExpression(formula, smtExpr);
+			BoolExpr boolExpr = hold(smtExpr.getZ3Expression().getBoolExpr());
+			assertFormula(boolExpr);
+			return checkFormula();
+		} finally {
+			releaseCheck();
+		}
+	}
+
+	/**
+	 * Checks all expressions in one context. Every expression is asserted
+	 * once, guarded by an activation literal, and checked under the
+	 * assumption of its literal, so variables and learned lemmas are shared
+	 * across the batch.
+	 */
+	@Override
+	public BitSet isSatisfiableBatch(List<Expression> expressions)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(expressions);
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
+		int n = expressions.size();
+
+		// constant formulas are decided without a context
+		BitSet result = new BitSet(n);
+		BitSet decided = new BitSet(n);
+		Expression[] simplified = new Expression[n];
+		Logic logic = Logic.PROPOSITIONAL;
+		long created = 0;
+		for (int i = 0; i < n; i++) {
+			simplified[i] = passes.run(Preconditions.checkNotNull(expressions
+					.get(i)));
+			if (simplified[i] instanceof BooleanValue) {
+				decided.set(i);
+				result.set(i, ((BooleanValue) simplified[i]).getValue());
+			} else {
+				Formula formula = Formula.of(simplified[i]);
+				logic = logic.join(Logic.of(formula, dictionaryEncoding));
+				created += formula.size();
+			}
+		}
+		if (decided.cardinality() == n) {
+			return result;
+		}
+
+		// resetting drops the pinned region
+		regionAsserted = false;
+		try {
+			openSolver(logic);
 		} catch (SolverException e) {
 			throw new SatisfiabilityException("Cannot open solver.", e);
 		}
+		recycling.recordTerms(created + n);
 
-		smtExpr = createSMTLibExpression(expression, smtExpr);
-		BoolExpr formula = smtExpr.getZ3Expression().getBoolExpr();
-		assertFormula(formula);
 		try {
-			formula.Dispose();
+			checkBatch(simplified, decided, result);
+		} finally {
+			releaseCheck();
+		}
+		return result;
+	}
+
+	private void checkBatch(Expression[] simplified, BitSet decided,
+			BitSet result) throws SatisfiabilityException {
+		int n = simplified.length;
+		SMTExpressionConverter converter = new SMTExpressionConverter(this,
+				ctx, terms, arena);
+		converter.setDictionaryEncoding(dictionaryEncoding);
+		BoolExpr[] activations = new BoolExpr[n];
+		for (int i = decided.nextClearBit(0); i < n; i = decided
+				.nextClearBit(i + 1)) {
+			BoolExpr formula;
+			try {
+				formula = hold(converter.convert(simplified[i])
+						.getZ3Expression().getBoolExpr());
+			} catch (SolverException e) {
+				throw new SatisfiabilityException(
+						"Cannot create variable definitions.", e);
+			}
+			try {
+				activations[i] = hold(ctx.MkBoolConst(ACTIVATION_PREFIX + i));
+				this.solver.Assert(hold(ctx.MkImplies(activations[i],
+						formula)));
+			} catch (Z3Exception e) {
+				throw new SatisfiabilityException("Cannot assert formula", e);
+			}
+		}
+
+		for (int i = decided.nextClearBit(0); i < n; i = decided
+				.nextClearBit(i + 1)) {
+			Status status;
+			try {
+				status = interruptRequested ? Status.UNKNOWN : this.solver
+						.Check(new Expr[] { activations[i] });
+			} catch (Z3Exception e) {
+				throw new SatisfiabilityException("Cannot validate formula.", e);
+			}
+			if (status == Status.SATISFIABLE) {
+				result.set(i);
+			} else if (status != Status.UNSATISFIABLE) {
+				throw new SatisfiabilityException(
+						"UNSAT. Cannot validate formula.");
+			}
+		}
+	}
+
+	@Override
+	public void pinRegion(Expression region) throws SatisfiabilityException {
+		super.pinRegion(region);
+		assertRegion();
+	}
+
+	/**
+	 * Checks the candidate in a backtracking point on top of the pinned
+	 * region, so the terms of the region and the lemmas learned about it are
+	 * kept between the checks.
+	 */
+	@Override
+	public boolean isSatisfiableInRegion(Expression candidate)
+			throws SatisfiabilityException {
+		Preconditions.checkNotNull(candidate);
+		Preconditions.checkState(region != null, "no region pinned");
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
+		Expression simplified = passes.run(candidate);
+		if (simplified instanceof BooleanValue
+				&& !((BooleanValue) simplified).getValue()) {
+			return false;
+		}
+		if (!regionAsserted) {
+			assertRegion();
+		}
+
+		try {
+			this.solver.Push();
 		} catch (Z3Exception e) {
-			e.printStackTrace();
+			throw new SatisfiabilityException("Cannot push backtrack point.", e);
+		}
+		try {
+			SMTLibExpression smtExpr = createSMTLibExpression(
+					Formula.of(simplified), null, false);
+			BoolExpr formula = hold(smtExpr.getZ3Expression().getBoolExpr());
+			assertFormula(formula);
+			return checkFormula();
+		} finally {
+			try {
+				this.solver.Pop();
+			} catch (Z3Exception e) {
+				// assert the region again on the next check
+				regionAsserted = false;
+			}
+			releaseCheck();
 		}
-		return checkFormula();
+	}
+
+	@Override
+	public void releaseRegion() throws SatisfiabilityException {
+		super.releaseRegion();
+		regionAsserted = false;
+	}
+
+	@Override
+	public ReferenceArena<Expr> getReferenceArena() {
+		return arena;
+	}
+
+	/**
+	 * Sets the policy that decides when the context is replaced.
+	 *
+	 * @param recycling
+	 *            the policy
+	 */
+	public void setRecyclingPolicy(RecyclingPolicy recycling) {
+		Preconditions.checkNotNull(recycling);
+		this.recycling = recycling;
+	}
+
+	/**
+	 * Returns the policy that decides when the context is replaced, e.g. to
+	 * read its accounting.
+	 *
+	 * @return The policy.
+	 */
+	public RecyclingPolicy getRecyclingPolicy() {
+		return recycling;
+	}
+
+	/**
+	 * Interrupts the running check via {@link Context#Interrupt()}, or the
+	 * next check of the current call if it has not started yet, e.g.
+	 * during the passes.
+	 */
+	@Override
+	public void interrupt() {
+		this.interruptRequested = true;
+		synchronized (interruptLock) {
+			if (ctx != null) {
+				try {
+					ctx.Interrupt();
+				} catch (Z3Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void assertRegion() throws SatisfiabilityException {
+		try {
+			openSolver();
+		} catch (SolverException e) {
+			throw new SatisfiabilityException("Cannot open solver.", e);
+		}
+
+		try {
+			SMTLibExpression smtExpr = createSMTLibExpression(
+					Formula.of(region), null, false);
+			assertFormula(hold(smtExpr.getZ3Expression().getBoolExpr()));
+		} finally {
+			// the solver keeps its own reference to the asserted region
+			releaseCheck();
+		}
+		regionAsserted = true;
+	}
+
+	/**
+	 * Holds a term in the arena of the check unless it is a cached term, e.g.
+	 * a boolean column.
+	 */
+	private <T extends Expr> T hold(T term) {
+		if (!terms.isCached(term)) {
+			arena.add(term);
+		}
+		return term;
+	}
+
+	/**
+	 * Releases the references of a completed check, including the shared
+	 * subterms it pinned; the next check converts them again anyway.
+	 */
+	private void releaseCheck() {
+		for (Expr term : terms.unpin()) {
+			arena.add(term);
+		}
+		arena.release();
 	}
 
 	private boolean checkFormula() throws SatisfiabilityException {
 		Status status = null;
 		try {
-			status = this.solver.Check();
+			// an interrupt that arrived before the check stops it, too
+			status = interruptRequested ? Status.UNKNOWN : this.solver.Check();
 		} catch (Z3Exception e) {
 			throw new SatisfiabilityException("Cannot validate formula.", e);
 		}
@@ -87,10 +421,20 @@ public class Z3ResettingSolver extends Z3Solver {
 		}
 	}
 
-	private SMTLibExpression createSMTLibExpression(Expression expression,
+	private SMTLibExpression createSMTLibExpression(Formula formula,
 			SMTLibExpression smtExpr) throws SatisfiabilityException {
+		return createSMTLibExpression(formula, smtExpr, dictionaryEncoding);
+	}
+
+	private SMTLibExpression createSMTLibExpression(Formula formula,
+			SMTLibExpression smtExpr, boolean dictionary)
+			throws SatisfiabilityException {
 		try {
-			smtExpr = expression.accept(new SMTExpressionConverter(this, ctx));
+			SMTExpressionConverter converter = new SMTExpressionConverter(
+					this, ctx, terms, arena);
+			converter.setDictionaryEncoding(dictionary);
+			smtExpr = converter.convert(formula);
+			recycling.recordTerms(formula.size());
 		} catch (SolverException e1) {
 			throw new SatisfiabilityException("Cannot create variable definitions.", e1);
 		}
@@ -108,23 +452,117 @@ public class Z3ResettingSolver extends Z3Solver {
 		}
 	}
 
+	/**
+	 * Disposes the context with its solvers and cached terms, and the spare
+	 * context once it is warm.
+	 */
 	@Override
 	protected void closeSolver() throws SolverException {
-		// not needed
+		Preconditions.checkState(isOpen, "solver is not open");
+		releaseCheck();
+		Context retired;
+		synchronized (interruptLock) {
+			retired = this.ctx;
+			this.ctx = null;
+		}
+		dispose(retired, new ArrayList<Solver>(solvers.values()), terms.drain());
+		solvers.clear();
+		this.solver = null;
+		regionAsserted = false;
+		contexts.discardSpare();
+		this.isOpen = false;
 	}
 
 	@Override
 	protected void openSolver() throws SolverException {
-		if (!isOpen) {
+		openSolver(Logic.GENERAL);
+	}
+
+	/**
+	 * Selects the solver of a logic from the pool of the context, creating
+	 * the context and the solver on first use, and resets it.
+	 */
+	@Override
+	protected void openSolver(Logic logic) throws SolverException {
+		if (isOpen) {
+			recycle();
+		} else {
+			// the terms and solvers of a previous context are gone
+			terms.clear();
+			solvers.clear();
+			this.ctx = contexts.take();
+			this.isOpen = true;
+		}
+
+		Solver pooled = solvers.get(logic);
+		if (pooled == null) {
 			try {
-				this.ctx = new Context();
-				this.solver = ctx.MkSolver();
-				this.isOpen = true;
+				pooled = createSolver(ctx, logic);
 			} catch (Z3Exception e) {
-				e.printStackTrace();
+				throw new SolverException("Cannot create solver for "
+						+ logic + ".", e);
 			}
+			solvers.put(logic, pooled);
+			this.solver = pooled;
 		} else {
+			this.solver = pooled;
 			this.resetSolver();
 		}
 	}
+
+	/**
+	 * Applies the recycling policy. Once the context is due, it is swapped
+	 * for the spare context and torn down in the background with its solvers
+	 * and cached terms. Z3 frees a term as soon as its last reference is
+	 * disposed, so there is no garbage to collect in place; a due collection
+	 * only restarts the count.
+	 */
+	private void recycle() throws SolverException {
+		switch (recycling.next()) {
+		case RECYCLE:
+			// references of the old context must not outlive it
+			arena.release();
+			Context fresh = contexts.take();
+			final Context retired;
+			synchronized (interruptLock) {
+				retired = this.ctx;
+				this.ctx = fresh;
+			}
+			final List<Expr> retiredTerms = terms.drain();
+			final List<Solver> retiredSolvers = new ArrayList<Solver>(
+					solvers.values());
+			solvers.clear();
+			recycling.recycled();
+			contexts.retire(new Runnable() {
+				@Override
+				public void run() {
+					dispose(retired, retiredSolvers, retiredTerms);
+				}
+			});
+			return;
+		case COLLECT:
+			recycling.collected();
+			break;
+		default:
+			break;
+		}
+		if (recycling.shouldWarm()) {
+			contexts.warm();
+		}
+	}
+
+	private static void dispose(Context ctx, List<Solver> solvers,
+			List<Expr> terms) {
+		try {
+			for (Expr term : terms) {
+				term.Dispose();
+			}
+			for (Solver solver : solvers) {
+				solver.Dispose();
+			}
+		} catch (Z3Exception e) {
+			e.printStackTrace();
+		}
+		ctx.Dispose();
+	}
 }
@@ -1,17 +1,27 @@
 package iqcache.solver.z3;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
 import com.microsoft.z3.Solver;
 import com.microsoft.z3.Status;
 import com.microsoft.z3.Z3Exception;
 
 import iqcache.common.Preconditions;
 import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Logic;
+import iqcache.solver.ReferenceArena;
 import iqcache.solver.SMTExpressionConverter;
 import iqcache.solver.SMTLibExpression;
 import iqcache.solver.SolverException;
+import iqcache.solver.TermCache;
+import iqcache.solver.rewrite.Formula;
 
 /**
  * An instance of a Z3 SMT solver.
@@ -20,8 +30,47 @@ import iqcache.solver.SolverException;
  */
 public class Z3Solver extends iqcache.solver.Solver {
 
+	/**
+	 * The configuration of every context: the solvers only report the
+	 * status, so neither models nor proofs are built.
+	 */
+	private static final Map<String, String> CONFIGURATION;
+
+	static {
+		Map<String, String> configuration = new HashMap<String, String>();
+		configuration.put("model", "false");
+		configuration.put("proof", "false");
+		CONFIGURATION = Collections.unmodifiableMap(configuration);
+	}
+
 	private Solver solver;
-	private Context ctx;
+
+	/**
+	 * The context of the running check, read by {@link #interrupt()} and
+	 * disposed only while holding {@link #interruptLock}.
+	 */
+	private volatile Context ctx;
+
+	private final Object interruptLock = new Object();
+
+	/**
+	 * Set by {@link #interrupt()}, tested right before the check and cleared
+	 * at the start of each call: Z3 drops a {@link Context#Interrupt()} that
+	 * arrives while no check runs, e.g. during the passes or the conversion.
+	 */
+	private volatile boolean interruptRequested = false;
+
+	/**
+	 * The variables and constants created in the context of a check.
+	 */
+	private final TermCache<Expr> terms = TermCache.byIdentity();
+
+	/**
+	 * The references created in the context of a check; they are released
+	 * with the variables and constants in one batch before the context is
+	 * disposed, which deletes the context only if no reference is left.
+	 */
+	private final ReferenceArena<Expr> arena = Z3API.createArena();
 
 	static {
 		// load the Z3 library.
@@ -41,29 +90,66 @@ public class Z3Solver extends iqcache.solver.Solver {
 	public boolean isSatisfiable(Expression expression)
 			throws SatisfiabilityException {
 		Preconditions.checkNotNull(expression);
+		// a new call drops an interrupt of the previous one; an interrupt
+		// that arrives from here on stops this call, even before its check
+		interruptRequested = false;
 		SMTLibExpression smtExpr = null;
 
+		// constant formulas are decided without a context
+		Expression simplified = passes.run(expression);
+		if (simplified instanceof BooleanValue) {
+			return ((BooleanValue) simplified).getValue();
+		}
+
+		Formula formula = Formula.of(simplified);
 		try {
-			openSolver();
+			openSolver(Logic.of(formula, dictionaryEncoding));
 		} catch (SolverException e) {
 			throw new SatisfiabilityException("Cannot open solver.", e);
 		}
 
-		smtExpr = createSMTLibExpression(expression, smtExpr);
-		BoolExpr formula = smtExpr.getZ3Expression().getBoolExpr();
-		assertFormula(formula);
-		try {
-			formula.Dispose();
-		} catch (Z3Exception e) {
-			e.printStackTrace();
+		smtExpr = createSMTLibExpression(formula, smtExpr);
+		BoolExpr boolExpr = smtExpr.getZ3Expression().getBoolExpr();
+		if (!terms.isCached(boolExpr)) {
+			arena.add(boolExpr);
 		}
+		assertFormula(boolExpr);
 		return checkFormula();
 	}
 
+	/**
+	 * Returns the arena of the references created by a check, e.g. to read
+	 * how many references it released.
+	 * 
+	 * @return The arena.
+	 */
+	public ReferenceArena<Expr> getReferenceArena() {
+		return arena;
+	}
+
+	/**
+	 * Interrupts the running check via {@link Context#Interrupt()}, or the
+	 * check of the current call if it has not started yet.
+	 */
+	@Override
+	public void interrupt() {
+		this.interruptRequested = true;
+		synchronized (interruptLock) {
+			if (ctx != null) {
+				try {
+					ctx.Interrupt();
+				} catch (Z3Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
 	private boolean checkFormula() throws SatisfiabilityException {
 		Status status = null;
 		try {
-			status = this.solver.Check();
+			// an interrupt that arrived before the check stops it, too
+			status = interruptRequested ? Status.UNKNOWN : this.solver.Check();
 		} catch (Z3Exception e) {
 			try {
 				closeSolver();
@@ -113,10 +199,13 @@ public class Z3Solver extends iqcache.solver.Solver {
 		}
 	}
 
-	private SMTLibExpression createSMTLibExpression(Expression expression,
+	private SMTLibExpression createSMTLibExpression(Formula formula,
 			SMTLibExpression smtExpr) throws SatisfiabilityException {
 		try {
-			smtExpr = expression.accept(new SMTExpressionConverter(this, ctx));
+			SMTExpressionConverter converter = new SMTExpressionConverter(
+					this, ctx, terms, arena);
+			converter.setDictionaryEncoding(dictionaryEncoding);
+			smtExpr = converter.convert(formula);
 		} catch (SolverException e1) {
 			try {
 				closeSolver();
@@ -143,19 +232,73 @@ public class Z3Solver extends iqcache.solver.Solver {
 	@Override
 	protected void closeSolver() throws SolverException {
 		Preconditions.checkState(isOpen, "solver is not open");
-		this.ctx.Dispose();
+		for (Expr term : terms.drain()) {
+			arena.add(term);
+		}
+		arena.release();
+		try {
+			this.solver.Dispose();
+		} catch (Z3Exception e) {
+			e.printStackTrace();
+		}
+		synchronized (interruptLock) {
+			this.ctx.Dispose();
+			this.ctx = null;
+		}
 		this.isOpen = false;
 	}
 
 	@Override
 	protected void openSolver() throws SolverException {
+		openSolver(Logic.GENERAL);
+	}
+
+	/**
+	 * Opens a context with a solver for a logic.
+	 * 
+	 * @param logic
+	 *            the logic of the formula to check
+	 * @throws SolverException
+	 *             iff the solver cannot be opened
+	 */
+	protected void openSolver(Logic logic) throws SolverException {
 		Preconditions.checkState(!isOpen, "already open");
 		try {
-			this.ctx = new Context();
-			this.solver = ctx.MkSolver();
+			this.ctx = createContext();
+			this.solver = createSolver(ctx, logic);
 			this.isOpen = true;
 		} catch (Z3Exception e) {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Creates a context that builds neither models nor proofs.
+	 * 
+	 * @return The context.
+	 * @throws Z3Exception
+	 *             iff Z3 cannot create the context
+	 */
+	protected static Context createContext() throws Z3Exception {
+		return new Context(CONFIGURATION);
+	}
+
+	/**
+	 * Creates a solver for a logic: Z3 combines the tactics and the
+	 * procedure of the logic instead of the general combination of
+	 * theories.
+	 * 
+	 * @param ctx
+	 *            the context
+	 * @param logic
+	 *            the logic
+	 * @return The solver.
+	 * @throws Z3Exception
+	 *             iff Z3 does not know the logic
+	 */
+	protected static Solver createSolver(Context ctx, Logic logic)
+			throws Z3Exception {
+		return logic == Logic.GENERAL ? ctx.MkSolver() : ctx.MkSolver(logic
+				.getName());
+	}
 }
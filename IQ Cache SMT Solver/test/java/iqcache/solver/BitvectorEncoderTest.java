@@ -0,0 +1,43 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for the string to bitvector encoding.
+ *
+ * @author dinh
+ */
+public class BitvectorEncoderTest {
+
+	@Test
+	public void testBinary() {
+		assertEquals("", Solver.toBinaryBitVector("", Solver.CHARSET));
+		assertEquals("0000000001100001",
+				Solver.toBinaryBitVector("a", Solver.CHARSET));
+		// the bytes of a multi-byte character keep 8 bits each
+		assertEquals("1100001110100100",
+				Solver.toBinaryBitVector("\u00e4", Solver.CHARSET));
+	}
+
+	@Test
+	public void testDecimal() {
+		assertEquals("0", Solver.toDecimalBitVector("", Solver.CHARSET));
+		assertEquals("97", Solver.toDecimalBitVector("a", Solver.CHARSET));
+		assertEquals("50084",
+				Solver.toDecimalBitVector("\u00e4", Solver.CHARSET));
+		// every padded byte is preceded by a zero byte
+		assertEquals("6357097",
+				Solver.toDecimalBitVector("ai", Solver.CHARSET));
+	}
+
+	@Test
+	public void testOtherCharset() {
+		Charset latin1 = Charset.forName("ISO-8859-1");
+		assertEquals("11100100", Solver.toBinaryBitVector("\u00e4", latin1));
+		assertEquals("228", Solver.toDecimalBitVector("\u00e4", latin1));
+	}
+}
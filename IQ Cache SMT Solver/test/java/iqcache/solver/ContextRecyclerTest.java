@@ -0,0 +1,134 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a ContextRecycler.
+ *
+ * @author dinh
+ */
+public class ContextRecyclerTest {
+
+	private final AtomicInteger created = new AtomicInteger();
+	private volatile boolean failing = false;
+
+	/**
+	 * Holds the factory back while it is not <code>null</code>.
+	 */
+	private volatile CountDownLatch gate = null;
+
+	private final CountDownLatch disposed = new CountDownLatch(1);
+	private final AtomicInteger spare = new AtomicInteger();
+
+	private ContextRecycler<Integer> recycler;
+
+	@Before
+	public void setUp() throws Exception {
+		recycler = new ContextRecycler<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				if (failing) {
+					throw new IllegalStateException("native failure");
+				}
+				if (gate != null) {
+					gate.await();
+				}
+				return created.incrementAndGet();
+			}
+		}, new ContextRecycler.Disposer<Integer>() {
+			@Override
+			public void dispose(Integer context) {
+				spare.set(context);
+				disposed.countDown();
+			}
+		});
+	}
+
+	@Test
+	public void testTakeWithoutSpare() throws SolverException {
+		assertFalse(recycler.hasSpare());
+		assertEquals(Integer.valueOf(1), recycler.take());
+		assertEquals(Integer.valueOf(2), recycler.take());
+	}
+
+	@Test
+	public void testWarm() throws SolverException {
+		recycler.warm();
+		recycler.warm();
+		assertTrue(recycler.hasSpare());
+		assertEquals(Integer.valueOf(1), recycler.take());
+		assertFalse(recycler.hasSpare());
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void testWarmingFails() throws SolverException {
+		failing = true;
+		recycler.warm();
+		try {
+			recycler.take();
+			fail();
+		} catch (SolverException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		failing = false;
+		assertEquals(Integer.valueOf(1), recycler.take());
+	}
+
+	@Test
+	public void testRetire() throws InterruptedException {
+		final CountDownLatch tornDown = new CountDownLatch(1);
+		recycler.retire(new Runnable() {
+			@Override
+			public void run() {
+				tornDown.countDown();
+			}
+		});
+		assertTrue(tornDown.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTakeInterrupted() throws Exception {
+		gate = new CountDownLatch(1);
+		recycler.warm();
+		Thread.currentThread().interrupt();
+		try {
+			recycler.take();
+			fail();
+		} catch (SolverException e) {
+			assertTrue(Thread.interrupted());
+		}
+
+		// the abandoned spare is torn down once it is warm
+		gate.countDown();
+		assertTrue(disposed.await(10, TimeUnit.SECONDS));
+		assertEquals(1, spare.get());
+		assertFalse(recycler.hasSpare());
+	}
+
+	@Test
+	public void testDiscardSpare() throws Exception {
+		// nothing to discard
+		recycler.discardSpare();
+
+		recycler.warm();
+		recycler.discardSpare();
+		assertFalse(recycler.hasSpare());
+		assertTrue(disposed.await(10, TimeUnit.SECONDS));
+		assertEquals(1, spare.get());
+		assertEquals(Integer.valueOf(2), recycler.take());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testRetireNull() {
+		recycler.retire(null);
+	}
+}
@@ -0,0 +1,97 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+import iqcache.solver.rewrite.Formula;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for Logic.
+ *
+ * @author dinh
+ */
+public class LogicTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(2), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testOfNull() {
+		Logic.of(null, false);
+	}
+
+	@Test
+	public void testPropositional() {
+		Formula formula = Formula.of(new BooleanLiteral(bx));
+		assertEquals(Logic.PROPOSITIONAL, Logic.of(formula, false));
+		assertEquals("QF_UF", Logic.PROPOSITIONAL.getName());
+	}
+
+	@Test
+	public void testSingleTheory() {
+		assertEquals(Logic.QF_IDL, Logic.of(Formula.of(new And(
+				new BooleanLiteral(bx), new LessOrEqualIntegerComparison(ix,
+						iy, 1))), false));
+		assertEquals(Logic.QF_RDL, Logic.of(
+				Formula.of(new LessDoubleComparison(dx, null, 1.5)), false));
+		assertEquals(Logic.QF_BV, Logic.of(
+				Formula.of(new EqualVarcharComparison(sx, "a")), false));
+		assertNull(Logic.GENERAL.getName());
+	}
+
+	@Test
+	public void testDictionaryEncoding() {
+		Formula formula = Formula.of(new Or(new EqualVarcharComparison(sx,
+				"a"), new EqualIntegerComparison(ix, null, 1)));
+		assertEquals(Logic.GENERAL, Logic.of(formula, false));
+		assertEquals(Logic.QF_IDL, Logic.of(formula, true));
+	}
+
+	@Test
+	public void testMixedTheories() {
+		Formula formula = Formula.of(new And(new LessDoubleComparison(dx, null,
+				1.5), new EqualIntegerComparison(ix, null, 1)));
+		assertEquals(Logic.GENERAL, Logic.of(formula, true));
+	}
+
+	@Test
+	public void testJoin() {
+		assertEquals(Logic.QF_IDL, Logic.PROPOSITIONAL.join(Logic.QF_IDL));
+		assertEquals(Logic.QF_IDL, Logic.QF_IDL.join(Logic.PROPOSITIONAL));
+		assertEquals(Logic.QF_RDL, Logic.QF_RDL.join(Logic.QF_RDL));
+		assertEquals(Logic.GENERAL, Logic.QF_IDL.join(Logic.QF_BV));
+		assertEquals(Logic.GENERAL, Logic.GENERAL.join(Logic.PROPOSITIONAL));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testJoinNull() {
+		Logic.PROPOSITIONAL.join(null);
+	}
+}
@@ -0,0 +1,73 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a RecyclingPolicy.
+ *
+ * @author dinh
+ */
+public class RecyclingPolicyTest {
+
+	private RecyclingPolicy policy;
+
+	@Before
+	public void setUp() throws Exception {
+		policy = new RecyclingPolicy(10, 100,
+				1000 * RecyclingPolicy.BYTES_PER_TERM);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreshold() {
+		new RecyclingPolicy(0, 100, 1000);
+	}
+
+	@Test
+	public void testCollect() {
+		policy.recordTerms(9);
+		assertEquals(RecyclingPolicy.Action.NONE, policy.next());
+		policy.recordTerms(1);
+		assertEquals(RecyclingPolicy.Action.COLLECT, policy.next());
+
+		policy.collected();
+		assertEquals(RecyclingPolicy.Action.NONE, policy.next());
+		assertEquals(1, policy.getCollections());
+		assertEquals(10, policy.getTerms());
+	}
+
+	@Test
+	public void testRecycleOnTerms() {
+		policy.recordTerms(49);
+		policy.collected();
+		assertFalse(policy.shouldWarm());
+		policy.recordTerms(1);
+		assertTrue(policy.shouldWarm());
+
+		policy.recordTerms(50);
+		assertEquals(RecyclingPolicy.Action.RECYCLE, policy.next());
+		policy.recycled();
+		assertEquals(RecyclingPolicy.Action.NONE, policy.next());
+		assertEquals(0, policy.getTerms());
+		assertEquals(1, policy.getRecycles());
+	}
+
+	@Test
+	public void testRecycleOnNativeBytes() {
+		policy.recordTerms(1);
+		assertEquals(RecyclingPolicy.BYTES_PER_TERM, policy.getNativeBytes());
+
+		// a measurement replaces the estimate
+		policy.recordNativeBytes(1000 * RecyclingPolicy.BYTES_PER_TERM);
+		assertEquals(RecyclingPolicy.Action.RECYCLE, policy.next());
+		policy.recycled();
+		assertEquals(0, policy.getNativeBytes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTerms() {
+		policy.recordTerms(-1);
+	}
+}
@@ -0,0 +1,81 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a ReferenceArena.
+ *
+ * @author dinh
+ */
+public class ReferenceArenaTest {
+
+	private final List<List<String>> batches = new ArrayList<List<String>>();
+
+	private ReferenceArena<String> arena;
+
+	@Before
+	public void setUp() throws Exception {
+		arena = new ReferenceArena<String>(
+				new ReferenceArena.Releaser<String>() {
+					@Override
+					public void release(List<String> references) {
+						batches.add(new ArrayList<String>(references));
+					}
+				});
+	}
+
+	@Test
+	public void testRelease() {
+		assertEquals("a", arena.add("a"));
+		arena.add("b");
+		assertEquals(2, arena.size());
+
+		arena.release();
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).size());
+		assertEquals(0, arena.size());
+		assertEquals(2, arena.getReleased());
+
+		arena.add("c");
+		arena.release();
+		assertEquals(3, arena.getReleased());
+		assertEquals(2, arena.getLargestBatch());
+	}
+
+	@Test
+	public void testReleaseEmpty() {
+		arena.release();
+		assertTrue(batches.isEmpty());
+		assertEquals(0, arena.getReleased());
+	}
+
+	@Test
+	public void testReleaseFails() {
+		ReferenceArena<String> failing = new ReferenceArena<String>(
+				new ReferenceArena.Releaser<String>() {
+					@Override
+					public void release(List<String> references) {
+						throw new IllegalStateException();
+					}
+				});
+		failing.add("a");
+		try {
+			failing.release();
+			fail();
+		} catch (IllegalStateException e) {
+			// references are never released twice
+			assertEquals(0, failing.size());
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testAddNull() {
+		arena.add(null);
+	}
+}
@@ -0,0 +1,132 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+import iqcache.solver.rewrite.Formula;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a SMTLib2Emitter.
+ *
+ * @author dinh
+ */
+public class SMTLib2EmitterTest {
+
+	private SMTLib2Emitter emitter;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(2), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	@Before
+	public void setUp() throws Exception {
+		emitter = new SMTLib2Emitter();
+	}
+
+	@Test
+	public void testArithmetic() {
+		assertEquals("(declare-fun |t.ix| () Int)\n"
+				+ "(declare-fun |t.iy| () Int)\n"
+				+ "(assert (<= |t.ix| (+ |t.iy| (- 3))))\n",
+				emit(new LessOrEqualIntegerComparison(ix, iy, -3)));
+		assertEquals("(declare-fun |t.ix| () Int)\n"
+				+ "(assert (not (= 5 |t.ix|)))\n",
+				emit(new NotEqualIntegerComparison(null, ix, 5)));
+		assertEquals("(declare-fun |t.dx| () Real)\n"
+				+ "(assert (< |t.dx| 1.5))\n",
+				emit(new LessDoubleComparison(dx, null, 1.5)));
+	}
+
+	@Test
+	public void testVarchar() {
+		// 'a' has 16 bits, the column 32: the literal is extended
+		assertEquals("(declare-fun |t.sx| () (_ BitVec 32))\n"
+				+ "(assert (bvult |t.sx| (concat (_ bv97 16) (_ bv0 16))))\n",
+				emit(new LessVarcharComparison(sx, "a")));
+
+		// the empty literal has no bitvector
+		assertNull(emit(new EqualVarcharComparison(sx, "")));
+	}
+
+	@Test
+	public void testSharedNodes() {
+		Expression expression = new Or(new And(new NegatedBooleanLiteral(bx),
+				new EqualIntegerComparison(ix, null, 1)), new And(
+				new NegatedBooleanLiteral(bx), new EqualIntegerComparison(ix,
+						null, 2)));
+		assertEquals("(declare-fun |t.bx| () Bool)\n"
+				+ "(declare-fun |t.ix| () Int)\n"
+				+ "(assert (let (($0 (not |t.bx|))) "
+				+ "(or (and $0 (= |t.ix| 1)) (and $0 (= |t.ix| 2)))))\n",
+				emit(expression));
+	}
+
+	@Test
+	public void testSortConflict() {
+		// a column cannot be declared twice
+		Column dix = new Column(new Identifier("t"), new Identifier("ix"), 1,
+				DoubleType.instance(), false, false);
+		assertNull(emit(new And(new EqualIntegerComparison(ix, null, 1),
+				new LessDoubleComparison(dix, null, 1))));
+	}
+
+	@Test
+	public void testBufferReuse() {
+		Expression[] atoms = new Expression[1000];
+		for (int i = 0; i < atoms.length; i++) {
+			atoms[i] = new EqualIntegerComparison(ix, null, i);
+		}
+		String script = emit(new Or(atoms));
+		int capacity = emitter.getCapacity();
+		assertTrue(capacity >= script.length());
+
+		emit(new EqualIntegerComparison(ix, null, 1));
+		assertEquals(capacity, emitter.getCapacity());
+	}
+
+	@Test
+	public void testToDecimal() {
+		assertEquals("2.0", SMTLib2Emitter.toDecimal(2));
+		assertEquals("-0.25", SMTLib2Emitter.toDecimal(-0.25));
+		assertEquals("10000000000.0", SMTLib2Emitter.toDecimal(1e10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testToDecimalNaN() {
+		SMTLib2Emitter.toDecimal(Double.NaN);
+	}
+
+	private String emit(Expression expression) {
+		return emitter.emit(Formula.of(expression));
+	}
+}
@@ -0,0 +1,130 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.satisfiability.SatisfiabilityException;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for the deadline handling of a Solver.
+ *
+ * @author dinh
+ */
+public class SolverTest {
+
+	/**
+	 * Solver that evaluates boolean values after a delay. <b>false</b> fails
+	 * the check.
+	 */
+	private static class DelayedSolver extends Solver {
+		private final long delay;
+		private final boolean interruptible;
+		private volatile boolean stop = false;
+
+		DelayedSolver(long delay, boolean interruptible) {
+			this.delay = delay;
+			this.interruptible = interruptible;
+		}
+
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			long end = System.currentTimeMillis() + delay;
+			while (System.currentTimeMillis() < end) {
+				if (stop && interruptible) {
+					stop = false;
+					throw new SatisfiabilityException("interrupted");
+				}
+				Thread.yield();
+			}
+			if (!((BooleanValue) expression).getValue()) {
+				throw new SatisfiabilityException("failed");
+			}
+			return true;
+		}
+
+		@Override
+		public void interrupt() {
+			stop = true;
+		}
+
+		void clear() {
+			stop = false;
+		}
+
+		@Override
+		protected void resetSolver() throws SolverException {
+			// nothing to reset
+		}
+
+		@Override
+		protected void openSolver() throws SolverException {
+			// nothing to open
+		}
+
+		@Override
+		protected void closeSolver() throws SolverException {
+			// nothing to close
+		}
+	}
+
+	@Test
+	public void testWithinDeadline() throws SatisfiabilityException {
+		assertEquals(SatisfiabilityResult.SATISFIABLE, new DelayedSolver(0,
+				true).isSatisfiable(new BooleanValue(true), 10,
+				TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDeadlinePassed() throws SatisfiabilityException {
+		assertEquals(SatisfiabilityResult.UNKNOWN, new DelayedSolver(60000,
+				true).isSatisfiable(new BooleanValue(true), 10,
+				TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testNotInterruptible() throws SatisfiabilityException {
+		// the late result is still valid
+		assertEquals(SatisfiabilityResult.SATISFIABLE, new DelayedSolver(100,
+				false).isSatisfiable(new BooleanValue(true), 10,
+				TimeUnit.MILLISECONDS));
+	}
+
+	@Test(expected = SatisfiabilityException.class)
+	public void testFailureWithinDeadline() throws SatisfiabilityException {
+		new DelayedSolver(0, true).isSatisfiable(new BooleanValue(false), 10,
+				TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testNoTime() throws SatisfiabilityException {
+		assertEquals(SatisfiabilityResult.UNKNOWN, new DelayedSolver(0, true)
+				.isSatisfiable(new BooleanValue(true), 0, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testInterruptBeforeCall() throws SatisfiabilityException {
+		// the solver drops the first interrupt when its call starts late
+		DelayedSolver solver = new DelayedSolver(60000, true) {
+			@Override
+			public boolean isSatisfiable(Expression expression)
+					throws SatisfiabilityException {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				// like a solver that clears stale interrupts on entry
+				clear();
+				return super.isSatisfiable(expression);
+			}
+		};
+		assertEquals(SatisfiabilityResult.UNKNOWN, solver.isSatisfiable(
+				new BooleanValue(true), 10, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,131 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a TermCache.
+ *
+ * @author dinh
+ */
+public class TermCacheTest {
+
+	private TermCache<Object> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new TermCache<Object>();
+	}
+
+	@Test
+	public void testGetAndPut() {
+		Object term = new Object();
+		assertNull(cache.get(TermCache.INT_NUM, 5, 0));
+		assertSame(term, cache.put(TermCache.INT_NUM, 5, 0, term));
+		assertSame(term, cache.get(TermCache.INT_NUM, 5, 0));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// kind and width are part of the key
+		assertNull(cache.get(TermCache.REAL_NUM, 5, 0));
+		assertNull(cache.get(TermCache.INT_NUM, 5, 8));
+	}
+
+	@Test
+	public void testIsCached() {
+		Object term = new Object();
+		cache.put(TermCache.BITVECTOR_STRING, "101", 3, term);
+		assertTrue(cache.isCached(term));
+		assertFalse(cache.isCached(new Object()));
+	}
+
+	@Test
+	public void testPin() {
+		Object term = new Object();
+		cache.pin(term);
+		assertTrue(cache.isCached(term));
+		assertEquals(0, cache.size());
+		cache.clear();
+		assertFalse(cache.isCached(term));
+	}
+
+	@Test
+	public void testUnpin() {
+		Object keyed = new Object();
+		Object pinned = new Object();
+		cache.put(TermCache.INT_NUM, 5, 0, keyed);
+		cache.pin(pinned);
+		// pinning a keyed term does not hand it out again
+		cache.pin(keyed);
+		assertEquals(1, cache.getPinned());
+
+		List<Object> unpinned = cache.unpin();
+		assertEquals(1, unpinned.size());
+		assertSame(pinned, unpinned.get(0));
+		assertFalse(cache.isCached(pinned));
+		assertTrue(cache.isCached(keyed));
+		assertEquals(0, cache.getPinned());
+		assertTrue(cache.unpin().isEmpty());
+	}
+
+	@Test
+	public void testClear() {
+		Object term = new Object();
+		cache.put(TermCache.INT_NUM, 5, 0, term);
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertFalse(cache.isCached(term));
+		assertNull(cache.get(TermCache.INT_NUM, 5, 0));
+	}
+
+	@Test
+	public void testDrain() {
+		Object keyed = new Object();
+		Object pinned = new Object();
+		cache.put(TermCache.INT_NUM, 5, 0, keyed);
+		cache.pin(pinned);
+
+		List<Object> owned = cache.drain();
+		assertEquals(2, owned.size());
+		assertTrue(owned.contains(keyed));
+		assertTrue(owned.contains(pinned));
+		assertEquals(0, cache.size());
+		assertFalse(cache.isCached(pinned));
+	}
+
+	@Test
+	public void testHandles() {
+		// MathSAT terms are handles, boxed anew on every call
+		TermCache<Long> handles = new TermCache<Long>();
+		handles.put(TermCache.INT_NUM, 5, 0, new Long(1000L));
+		handles.pin(new Long(2000L));
+		assertTrue(handles.isCached(new Long(1000L)));
+		assertTrue(handles.isCached(new Long(2000L)));
+
+		// pinning a keyed handle does not hand it out again
+		handles.pin(new Long(1000L));
+		assertEquals(1, handles.getPinned());
+		List<Long> unpinned = handles.unpin();
+		assertEquals(1, unpinned.size());
+		assertEquals(Long.valueOf(2000L), unpinned.get(0));
+		assertFalse(handles.isCached(new Long(2000L)));
+	}
+
+	@Test
+	public void testByIdentity() {
+		TermCache<String> references = TermCache.byIdentity();
+		String term = new String("x");
+		references.pin(term);
+		assertTrue(references.isCached(term));
+		assertFalse(references.isCached(new String("x")));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testPutNull() {
+		cache.put(TermCache.INT_NUM, 5, 0, null);
+	}
+}
@@ -0,0 +1,81 @@
+package iqcache.solver;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+import iqcache.solver.rewrite.Formula;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a VarcharDictionary.
+ *
+ * @author dinh
+ */
+public class VarcharDictionaryTest {
+
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	private Column sy = new Column(new Identifier("t"), new Identifier("sy"),
+			1, VarcharType.instance(20), false, false);
+
+	@Test
+	public void testRanks() {
+		VarcharDictionary dictionary = VarcharDictionary.of(new And(
+				new LessVarcharComparison(sx, "b"), new Or(
+						new EqualVarcharComparison("a", sy),
+						new EqualIntegerComparison(ix, null, 1))));
+
+		assertEquals(2, dictionary.size());
+		assertEquals(2, dictionary.getColumns().size());
+		assertFalse(dictionary.getColumns().contains(ix));
+
+		// a gap of one rank per column around every literal
+		assertEquals(0, dictionary.getLowestRank());
+		assertEquals(2, dictionary.getRank("a"));
+		assertEquals(5, dictionary.getRank("b"));
+		assertEquals(7, dictionary.getHighestRank());
+	}
+
+	@Test
+	public void testFormula() {
+		VarcharDictionary dictionary = VarcharDictionary.of(Formula.of(new And(
+				new LessVarcharComparison(sx, "b"), new Or(
+						new EqualVarcharComparison("a", sy),
+						new EqualIntegerComparison(ix, null, 1)))));
+
+		assertEquals(2, dictionary.size());
+		assertEquals(2, dictionary.getColumns().size());
+		assertEquals(2, dictionary.getRank("a"));
+		assertEquals(5, dictionary.getRank("b"));
+		assertEquals(7, dictionary.getHighestRank());
+	}
+
+	@Test
+	public void testEmptyGaps() {
+		VarcharDictionary dictionary = VarcharDictionary.of(new And(
+				new LessVarcharComparison("", sx), new LessVarcharComparison(
+						sx, "\u0000")));
+
+		assertEquals(0, dictionary.getRank(""));
+		assertEquals(1, dictionary.getRank("\u0000"));
+		assertEquals(2, dictionary.getHighestRank());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownLiteral() {
+		VarcharDictionary.of(new EqualVarcharComparison(sx, "a")).getRank("b");
+	}
+}
@@ -0,0 +1,126 @@
+package iqcache.solver.cache;
+
+import static org.junit.Assert.*;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a CachingSatisfiabilityChecker.
+ *
+ * @author dinh
+ */
+public class CachingSatisfiabilityCheckerTest {
+
+	private CachingSatisfiabilityChecker checker;
+	private int calls;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	/**
+	 * Checker that counts how often it is asked.
+	 */
+	private SatisfiabilityChecker counting = new SatisfiabilityChecker() {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			calls++;
+			return true;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		calls = 0;
+		checker = new CachingSatisfiabilityChecker(counting,
+				new SatisfiabilityCache(2 * SatisfiabilityCache.ENTRY_BYTES));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker = null;
+	}
+
+	@Test
+	public void testFingerprintIgnoresOperandOrder() {
+		Expression first = new And(new EqualIntegerComparison(ix, null, 1),
+				new LessOrEqualIntegerComparison(iy, null, 2));
+		Expression second = new And(
+				new LessOrEqualIntegerComparison(iy, null, 2),
+				new EqualIntegerComparison(null, ix, 1));
+		Expression third = new And(
+				new LessOrEqualIntegerComparison(iy, null, 3),
+				new EqualIntegerComparison(ix, null, 1));
+
+		assertEquals(ExpressionFingerprint.of(first),
+				ExpressionFingerprint.of(second));
+		assertFalse(ExpressionFingerprint.of(first).equals(
+				ExpressionFingerprint.of(third)));
+	}
+
+	@Test
+	public void testFingerprintSymmetricAtom() {
+		// x = y + 2 is y = x - 2
+		assertEquals(
+				ExpressionFingerprint.of(new EqualIntegerComparison(ix, iy, 2)),
+				ExpressionFingerprint.of(new EqualIntegerComparison(iy, ix, -2)));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiable(null);
+	}
+
+	@Test
+	public void testHit() throws SatisfiabilityException {
+		Expression expression = new EqualIntegerComparison(ix, null, 1);
+		assertTrue(checker.isSatisfiable(expression));
+		assertTrue(checker.isSatisfiable(expression));
+
+		CacheStatistics statistics = checker.getCache().getStatistics();
+		assertEquals(1, calls);
+		assertEquals(1, statistics.getHits());
+		assertEquals(1, statistics.getMisses());
+		assertEquals(SatisfiabilityCache.ENTRY_BYTES, statistics.getBytes());
+	}
+
+	@Test
+	public void testAdmission() throws SatisfiabilityException {
+		Expression first = new EqualIntegerComparison(ix, null, 1);
+		Expression second = new EqualIntegerComparison(ix, null, 2);
+		Expression third = new EqualIntegerComparison(ix, null, 3);
+		checker.isSatisfiable(first);
+		checker.isSatisfiable(first);
+		checker.isSatisfiable(second);
+
+		// requested once, less often than the eviction candidate
+		checker.isSatisfiable(third);
+		assertEquals(1, checker.getCache().getStatistics().getRejections());
+
+		// requested three times: evicts the least recently used entry
+		checker.isSatisfiable(third);
+		checker.isSatisfiable(third);
+		CacheStatistics statistics = checker.getCache().getStatistics();
+		assertEquals(1, statistics.getEvictions());
+		assertEquals(2, statistics.getEntries());
+
+		int before = calls;
+		checker.isSatisfiable(third);
+		assertEquals(before, calls);
+	}
+}
@@ -0,0 +1,114 @@
+package iqcache.solver.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a ComponentSatisfiabilityChecker.
+ *
+ * @author dinh
+ */
+public class ComponentSatisfiabilityCheckerTest {
+
+	private ComponentSatisfiabilityChecker checker;
+	private List<Expression> checked;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iz = new Column(new Identifier("t"), new Identifier("iz"),
+			1, IntegerType.instance(), false, false);
+
+	/**
+	 * Checker that records what it is asked; only <b>false</b> is
+	 * unsatisfiable.
+	 */
+	private SatisfiabilityChecker recording = new SatisfiabilityChecker() {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			checked.add(expression);
+			return !(expression instanceof BooleanValue)
+					|| ((BooleanValue) expression).getValue();
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		checked = new ArrayList<Expression>();
+		checker = new ComponentSatisfiabilityChecker(recording,
+				new SatisfiabilityCache(100 * SatisfiabilityCache.ENTRY_BYTES));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiable(null);
+	}
+
+	@Test
+	public void testComponents() throws SatisfiabilityException {
+		assertTrue(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new LessOrEqualIntegerComparison(iy, null, 2),
+				new And(new LessOrEqualIntegerComparison(ix, null, 5),
+						new EqualIntegerComparison(iz, null, 3)))));
+		assertEquals(3, checked.size());
+		assertEquals(3, checker.getComponentsChecked());
+
+		// only the changed component is checked again
+		checked.clear();
+		assertTrue(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new LessOrEqualIntegerComparison(iy, null, 2),
+				new LessOrEqualIntegerComparison(ix, null, 5),
+				new EqualIntegerComparison(iz, null, 4))));
+		assertEquals(1, checked.size());
+		assertEquals(2, checker.getComponentsCached());
+	}
+
+	@Test
+	public void testSharedColumnJoinsComponents() throws SatisfiabilityException {
+		assertTrue(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new EqualIntegerComparison(iz, null, 3),
+				new LessOrEqualIntegerComparison(ix, iz, 0))));
+		assertEquals(1, checked.size());
+	}
+
+	@Test
+	public void testUnsatisfiableComponent() throws SatisfiabilityException {
+		// the smaller, unsatisfiable component decides
+		assertFalse(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new LessOrEqualIntegerComparison(ix, null, 2),
+				new BooleanValue(false))));
+		assertEquals(1, checked.size());
+
+		checked.clear();
+		assertFalse(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				iy, null, 1), new BooleanValue(false))));
+		assertTrue(checked.isEmpty());
+	}
+}
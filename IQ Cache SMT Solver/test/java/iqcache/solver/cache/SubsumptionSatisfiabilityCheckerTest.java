@@ -0,0 +1,118 @@
+package iqcache.solver.cache;
+
+import static org.junit.Assert.*;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.range.RangeSetChecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a SubsumptionSatisfiabilityChecker.
+ *
+ * @author dinh
+ */
+public class SubsumptionSatisfiabilityCheckerTest {
+
+	private SubsumptionSatisfiabilityChecker checker;
+	private int calls;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	// x <= 5, 7 <= x, y = 1, 0 <= y
+	private Expression atMost5 = new LessOrEqualIntegerComparison(ix, null, 5);
+	private Expression atLeast7 = new LessOrEqualIntegerComparison(null, ix, 7);
+	private Expression equal1 = new EqualIntegerComparison(iy, null, 1);
+	private Expression atLeast0 = new LessOrEqualIntegerComparison(null, iy, 0);
+
+	/**
+	 * Checker that counts how often it is asked.
+	 */
+	private SatisfiabilityChecker counting = new SatisfiabilityChecker() {
+		private final SatisfiabilityChecker ranges = new RangeSetChecker(
+				new SatisfiabilityChecker() {
+					@Override
+					public boolean isSatisfiable(Expression expression)
+							throws SatisfiabilityException {
+						return true;
+					}
+				});
+
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			calls++;
+			return ranges.isSatisfiable(expression);
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		calls = 0;
+		checker = new SubsumptionSatisfiabilityChecker(counting,
+				new SubsumptionCache(100));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiable(null);
+	}
+
+	@Test
+	public void testSatisfiableSubset() throws SatisfiabilityException {
+		assertTrue(checker.isSatisfiable(new And(atMost5, equal1, atLeast0)));
+		assertTrue(checker.isSatisfiable(new And(equal1, atMost5)));
+		assertTrue(checker.isSatisfiable(atLeast0));
+		assertEquals(1, calls);
+		assertEquals(2, checker.getCache().getSupersetHits());
+	}
+
+	@Test
+	public void testUnsatisfiableSuperset() throws SatisfiabilityException {
+		assertFalse(checker.isSatisfiable(new And(atMost5, atLeast7)));
+		assertFalse(checker.isSatisfiable(new And(atLeast7, equal1, new And(
+				atMost5, atLeast0))));
+		// a never seen conjunct does not hide the unsatisfiable subset
+		assertFalse(checker.isSatisfiable(new And(atLeast7,
+				new EqualIntegerComparison(ix, null, 99), atMost5)));
+		assertEquals(1, calls);
+		assertEquals(2, checker.getCache().getSubsetHits());
+	}
+
+	@Test
+	public void testUnknownConjunctIsMiss() throws SatisfiabilityException {
+		assertTrue(checker.isSatisfiable(new And(atMost5, equal1)));
+		assertTrue(checker.isSatisfiable(new And(equal1,
+				new EqualIntegerComparison(ix, null, 99))));
+		assertEquals(2, calls);
+	}
+
+	@Test
+	public void testFlush() throws SatisfiabilityException {
+		checker = new SubsumptionSatisfiabilityChecker(counting,
+				new SubsumptionCache(1));
+		checker.isSatisfiable(atMost5);
+		checker.isSatisfiable(atLeast7);
+		assertEquals(1, checker.getCache().size());
+		assertEquals(1, checker.getCache().getFlushes());
+	}
+}
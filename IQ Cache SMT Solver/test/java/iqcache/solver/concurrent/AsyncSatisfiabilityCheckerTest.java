@@ -0,0 +1,145 @@
+package iqcache.solver.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.SolverFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for an AsyncSatisfiabilityChecker.
+ *
+ * @author dinh
+ */
+public class AsyncSatisfiabilityCheckerTest {
+
+	private AsyncSatisfiabilityChecker checker;
+
+	/**
+	 * A blocking check signals its start and waits until it is interrupted.
+	 */
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch never = new CountDownLatch(1);
+
+	private final AtomicInteger interrupted = new AtomicInteger();
+	private final AtomicInteger closed = new AtomicInteger();
+
+	/**
+	 * Solver that evaluates boolean values; <b>false</b> blocks.
+	 */
+	private class ValueSolver extends Solver {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			if (!((BooleanValue) expression).getValue()) {
+				started.countDown();
+				try {
+					never.await();
+				} catch (InterruptedException e) {
+					throw new SatisfiabilityException("interrupted", e);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void interrupt() {
+			interrupted.incrementAndGet();
+		}
+
+		@Override
+		public void close() throws SolverException {
+			closed.incrementAndGet();
+		}
+
+		@Override
+		protected void resetSolver() throws SolverException {
+			// nothing to reset
+		}
+
+		@Override
+		protected void openSolver() throws SolverException {
+			// nothing to open
+		}
+
+		@Override
+		protected void closeSolver() throws SolverException {
+			// nothing to close
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		checker = new AsyncSatisfiabilityChecker(new SolverFactory() {
+			@Override
+			public Solver createSolver() throws SolverException {
+				return new ValueSolver();
+			}
+		}, 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker.shutdown();
+		checker = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiableAsync(null);
+	}
+
+	@Test
+	public void testChaining() throws Exception {
+		CompletableFuture<Boolean> negated = checker.isSatisfiableAsync(
+				new BooleanValue(true)).thenApply(
+				new Function<Boolean, Boolean>() {
+					@Override
+					public Boolean apply(Boolean satisfiable) {
+						return !satisfiable;
+					}
+				});
+		assertFalse(negated.get(10, TimeUnit.SECONDS));
+		assertTrue(checker.isSatisfiable(new BooleanValue(true)));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		CompletableFuture<Boolean> running = checker
+				.isSatisfiableAsync(new BooleanValue(false));
+		CompletableFuture<Boolean> queued = checker
+				.isSatisfiableAsync(new BooleanValue(true));
+		started.await();
+
+		assertTrue(queued.cancel(true));
+		assertTrue(running.cancel(true));
+		assertTrue(running.isCancelled());
+		assertEquals(1, interrupted.get());
+
+		// the solver thread is free again and keeps its solver
+		assertTrue(checker.isSatisfiableAsync(new BooleanValue(true)).get(10,
+				TimeUnit.SECONDS));
+		assertEquals(0, closed.get());
+	}
+
+	@Test
+	public void testShutdownClosesSolvers() throws Exception {
+		assertTrue(checker.isSatisfiable(new BooleanValue(true)));
+		checker.shutdown();
+		assertTrue(checker.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1, closed.get());
+	}
+}
@@ -0,0 +1,117 @@
+package iqcache.solver.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.node.And;
+import iqcache.expression.node.NodeExpression;
+import iqcache.expression.node.Or;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.SolverFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a DisjunctiveSatisfiabilityChecker.
+ *
+ * @author dinh
+ */
+public class DisjunctiveSatisfiabilityCheckerTest {
+
+	private AsyncSatisfiabilityChecker async;
+	private DisjunctiveSatisfiabilityChecker checker;
+
+	/**
+	 * Solver that evaluates And/Or trees of boolean values.
+	 */
+	private static class ValueSolver extends Solver {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			return evaluate(expression);
+		}
+
+		private static boolean evaluate(Expression expression) {
+			if (expression instanceof BooleanValue) {
+				return ((BooleanValue) expression).getValue();
+			}
+			NodeExpression node = (NodeExpression) expression;
+			boolean and = node instanceof And;
+			for (int i = 0; i < node.getNumberOfSubexpressions(); i++) {
+				if (evaluate(node.getSubexpressionAt(i)) != and) {
+					return !and;
+				}
+			}
+			return and;
+		}
+
+		@Override
+		protected void resetSolver() throws SolverException {
+			// nothing to reset
+		}
+
+		@Override
+		protected void openSolver() throws SolverException {
+			// nothing to open
+		}
+
+		@Override
+		protected void closeSolver() throws SolverException {
+			// nothing to close
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		async = new AsyncSatisfiabilityChecker(new SolverFactory() {
+			@Override
+			public Solver createSolver() throws SolverException {
+				return new ValueSolver();
+			}
+		}, 2);
+		checker = new DisjunctiveSatisfiabilityChecker(async, 4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		async.shutdown();
+		checker = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiable(null);
+	}
+
+	@Test
+	public void testDisjunction() throws SatisfiabilityException {
+		assertTrue(checker.isSatisfiable(new Or(new BooleanValue(false),
+				new Or(new BooleanValue(false), new BooleanValue(true)))));
+		assertFalse(checker.isSatisfiable(new Or(new BooleanValue(false),
+				new BooleanValue(false))));
+	}
+
+	@Test
+	public void testDistribution() throws SatisfiabilityException {
+		Expression expression = new And(new BooleanValue(true), new Or(
+				new BooleanValue(false), new BooleanValue(true)), new Or(
+				new BooleanValue(true), new BooleanValue(false),
+				new BooleanValue(true)));
+
+		// 2 * 3 disjuncts exceed the limit: the wider Or stays inside
+		List<Expression> disjuncts = checker.split(expression);
+		assertEquals(2, disjuncts.size());
+		assertEquals(3, ((And) disjuncts.get(0)).getNumberOfSubexpressions());
+		assertTrue(checker.isSatisfiable(expression));
+
+		assertFalse(checker.isSatisfiable(new And(new BooleanValue(false),
+				new Or(new BooleanValue(true), new BooleanValue(true)))));
+	}
+}
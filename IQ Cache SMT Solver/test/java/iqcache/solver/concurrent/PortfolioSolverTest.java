@@ -0,0 +1,161 @@
+package iqcache.solver.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a PortfolioSolver.
+ *
+ * @author dinh
+ */
+public class PortfolioSolverTest {
+
+	private PortfolioSolver portfolio;
+	private DelayedSolver fast;
+	private DelayedSolver slow;
+
+	/**
+	 * Solver that evaluates boolean values after a delay, unless it is
+	 * interrupted.
+	 */
+	private static class DelayedSolver extends Solver {
+		private final long delay;
+		private final long startDelay;
+		private volatile boolean stop;
+		private volatile int interrupted = 0;
+		private volatile int closed = 0;
+
+		DelayedSolver(long delay) {
+			this(delay, 0);
+		}
+
+		/**
+		 * A solver whose call clears stale interrupts only after a start
+		 * delay, e.g. after preprocessing.
+		 */
+		DelayedSolver(long delay, long startDelay) {
+			this.delay = delay;
+			this.startDelay = startDelay;
+		}
+
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			try {
+				Thread.sleep(startDelay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			stop = false;
+			long end = System.currentTimeMillis() + delay;
+			while (System.currentTimeMillis() < end) {
+				if (stop) {
+					interrupted++;
+					throw new SatisfiabilityException("interrupted");
+				}
+				Thread.yield();
+			}
+			return ((BooleanValue) expression).getValue();
+		}
+
+		@Override
+		public void interrupt() {
+			stop = true;
+		}
+
+		@Override
+		public void close() throws SolverException {
+			closed++;
+		}
+
+		@Override
+		protected void resetSolver() throws SolverException {
+			// nothing to reset
+		}
+
+		@Override
+		protected void openSolver() throws SolverException {
+			// nothing to open
+		}
+
+		@Override
+		protected void closeSolver() throws SolverException {
+			// nothing to close
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		fast = new DelayedSolver(0);
+		slow = new DelayedSolver(60000);
+		portfolio = new PortfolioSolver(slow, fast);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		portfolio.shutdown();
+		portfolio = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		portfolio.isSatisfiable(null);
+	}
+
+	@Test
+	public void testFirstAnswerWins() throws Exception {
+		assertTrue(portfolio.isSatisfiable(new BooleanValue(true)));
+		assertFalse(portfolio.isSatisfiable(new BooleanValue(false)));
+		assertEquals(0, portfolio.getWins(0));
+		assertEquals(2, portfolio.getWins(1));
+
+		// the slow backend gets interrupted and is free again
+		long end = System.currentTimeMillis() + 10000;
+		while (slow.interrupted < 1 && System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		assertTrue(slow.interrupted >= 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoBackend() {
+		new PortfolioSolver();
+	}
+
+	@Test
+	public void testShutdownClosesBackends() throws Exception {
+		assertTrue(portfolio.isSatisfiable(new BooleanValue(true)));
+		portfolio.shutdown();
+		assertTrue(portfolio.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1, fast.closed);
+		assertEquals(1, slow.closed);
+	}
+
+	@Test
+	public void testLoserInterruptedBeforeItsCheck() throws Exception {
+		// the winner answers while the loser has not started its check yet
+		DelayedSolver late = new DelayedSolver(60000, 200);
+		PortfolioSolver race = new PortfolioSolver(late, new DelayedSolver(20));
+		try {
+			assertTrue(race.isSatisfiable(new BooleanValue(true)));
+			long end = System.currentTimeMillis() + 10000;
+			while (late.interrupted == 0 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, late.interrupted);
+		} finally {
+			race.shutdown();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package iqcache.solver.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.Solver;
+import iqcache.solver.SolverException;
+import iqcache.solver.SolverFactory;
+import iqcache.solver.UnsupportedExpressionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a SolverPool.
+ *
+ * @author dinh
+ */
+public class SolverPoolTest {
+
+	private SolverPool pool;
+	private int created;
+	private int closed;
+
+	/**
+	 * Solver that evaluates boolean values and breaks on <b>false</b>.
+	 */
+	private class ValueSolver extends Solver {
+		private boolean broken = false;
+
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			if (broken || !((BooleanValue) expression).getValue()) {
+				broken = true;
+				throw new SatisfiabilityException("broken");
+			}
+			return true;
+		}
+
+		@Override
+		protected void resetSolver() throws SolverException {
+			// nothing to reset
+		}
+
+		@Override
+		protected void openSolver() throws SolverException {
+			// nothing to open
+		}
+
+		@Override
+		protected void closeSolver() throws SolverException {
+			// nothing to close
+		}
+
+		@Override
+		public void close() throws SolverException {
+			closed++;
+		}
+	}
+
+	private SolverFactory factory = new SolverFactory() {
+		@Override
+		public Solver createSolver() throws SolverException {
+			created++;
+			return new ValueSolver();
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		created = 0;
+		closed = 0;
+		pool = new SolverPool(factory, 2, 1, TimeUnit.SECONDS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool = null;
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		pool.isSatisfiable(null);
+	}
+
+	@Test
+	public void testIsSatisfiable() throws SatisfiabilityException {
+		assertTrue(pool.isSatisfiable(new BooleanValue(true)));
+		assertEquals(2, created);
+		assertEquals(1, pool.getStatistics().getChecks());
+		assertEquals(0, pool.getStatistics().getBusy());
+	}
+
+	@Test
+	public void testBrokenSolverIsReplaced() throws SatisfiabilityException {
+		try {
+			pool.isSatisfiable(new BooleanValue(false));
+			fail();
+		} catch (SatisfiabilityException e) {
+			// expected
+		}
+		PoolStatistics statistics = pool.getStatistics();
+		assertEquals(1, statistics.getFailures());
+		assertEquals(1, statistics.getReplacements());
+		assertEquals(2, statistics.getAvailable());
+		assertEquals(3, created);
+		assertEquals(1, closed);
+
+		assertTrue(pool.isSatisfiable(new BooleanValue(true)));
+		assertTrue(pool.isSatisfiable(new BooleanValue(true)));
+		assertEquals(0, pool.checkHealth());
+	}
+
+	@Test
+	public void testUnsupportedFormulaKeepsSolver() throws Exception {
+		SolverPool single = new SolverPool(new SolverFactory() {
+			@Override
+			public Solver createSolver() throws SolverException {
+				created++;
+				return new ValueSolver() {
+					@Override
+					public boolean isSatisfiable(Expression expression)
+							throws SatisfiabilityException {
+						throw new SatisfiabilityException("unsupported",
+								new UnsupportedExpressionException("leaf"));
+					}
+				};
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+		created = 0;
+
+		try {
+			single.isSatisfiable(new BooleanValue(true));
+			fail();
+		} catch (SatisfiabilityException e) {
+			// expected
+		}
+		assertEquals(0, single.getStatistics().getFailures());
+		assertEquals(0, created);
+		assertEquals(0, closed);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		SolverPool single = new SolverPool(new SolverFactory() {
+			@Override
+			public Solver createSolver() throws SolverException {
+				return new ValueSolver() {
+					@Override
+					public boolean isSatisfiable(Expression expression)
+							throws SatisfiabilityException {
+						started.countDown();
+						try {
+							finish.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return true;
+					}
+				};
+			}
+		}, 1, 10, TimeUnit.MILLISECONDS);
+
+		final SolverPool blocked = single;
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				try {
+					blocked.isSatisfiable(new BooleanValue(true));
+				} catch (SatisfiabilityException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		holder.start();
+		started.await();
+
+		try {
+			single.isSatisfiable(new BooleanValue(true));
+			fail();
+		} catch (SatisfiabilityException e) {
+			assertEquals(1, single.getStatistics().getTimeouts());
+		} finally {
+			finish.countDown();
+			holder.join();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package iqcache.solver.difference;
+
+import static org.junit.Assert.*;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a DifferenceLogicChecker.
+ *
+ * @author dinh
+ */
+public class DifferenceLogicCheckerTest {
+
+	private DifferenceLogicChecker checker;
+	private Expression expression;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iz = new Column(new Identifier("t"), new Identifier("iz"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column dy = new Column(new Identifier("t"), new Identifier("dy"),
+			1, DoubleType.instance(), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	/**
+	 * Fallback that must only be reached by non-conjunctive expressions.
+	 */
+	private SatisfiabilityChecker fallback = new SatisfiabilityChecker() {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			return true;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		checker = new DifferenceLogicChecker(fallback);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker = null;
+		expression = null;
+	}
+
+	@Test
+	public void testEqualIntegerComparison() throws SatisfiabilityException {
+		expression = new And(new EqualIntegerComparison(ix, null, 21),
+				new EqualIntegerComparison(iy, null, 21),
+				new EqualIntegerComparison(ix, iy, 0));
+		assertTrue(checker.isSatisfiable(expression));
+
+		expression = new And(new EqualIntegerComparison(ix, null, 21),
+				new EqualIntegerComparison(iy, null, 21),
+				new EqualIntegerComparison(ix, iy, -1));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testIntegerCycle() throws SatisfiabilityException {
+		// x <= y - 1 AND y <= z - 1 AND z <= x + 1
+		expression = new And(new LessOrEqualIntegerComparison(ix, iy, -1),
+				new LessOrEqualIntegerComparison(iy, iz, -1),
+				new LessOrEqualIntegerComparison(iz, ix, 1));
+		assertFalse(checker.isSatisfiable(expression));
+
+		// x <= y - 1 AND y <= z - 1 AND z <= x + 2
+		expression = new And(new LessOrEqualIntegerComparison(ix, iy, -1),
+				new LessOrEqualIntegerComparison(iy, iz, -1),
+				new LessOrEqualIntegerComparison(iz, ix, 2));
+		assertTrue(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testNegatedIntegerComparison() throws SatisfiabilityException {
+		// NOT(x <= y) AND x <= y + 1
+		expression = new And(new Not(new LessOrEqualIntegerComparison(ix, iy,
+				0)), new LessOrEqualIntegerComparison(ix, iy, 1));
+		assertTrue(checker.isSatisfiable(expression));
+
+		// NOT(x <= y) AND x <= y
+		expression = new And(new Not(new LessOrEqualIntegerComparison(ix, iy,
+				0)), new LessOrEqualIntegerComparison(ix, iy, 0));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testStrictRealCycle() throws SatisfiabilityException {
+		// x < y AND y < x
+		expression = new And(new LessDoubleComparison(dx, dy, 0),
+				new LessDoubleComparison(dy, dx, 0));
+		assertFalse(checker.isSatisfiable(expression));
+
+		// x <= y + 0.1 AND y <= x - 0.1
+		expression = new And(new LessOrEqualDoubleComparison(dx, dy, 0.1),
+				new LessOrEqualDoubleComparison(dy, dx, -0.1));
+		assertTrue(checker.isSatisfiable(expression));
+
+		// x < y + 0.1 AND y < x - 0.1
+		expression = new And(new LessDoubleComparison(dx, dy, 0.1),
+				new LessDoubleComparison(dy, dx, -0.1));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testWithoutDifferenceAtoms() throws SatisfiabilityException {
+		// no node in the constraint graph
+		assertTrue(checker.isSatisfiable(new BooleanValue(true)));
+		assertTrue(checker.isSatisfiable(new BooleanLiteral(bx)));
+		assertTrue(checker.isSatisfiable(new And(new BooleanLiteral(bx),
+				new BooleanValue(true))));
+		assertTrue(checker.isSatisfiable(new LessOrEqualIntegerComparison(
+				null, null, 5)));
+		assertFalse(checker.isSatisfiable(new BooleanValue(false)));
+		assertFalse(checker.isSatisfiable(new And(new BooleanLiteral(bx),
+				new Not(new BooleanLiteral(bx)))));
+		assertEquals(6, checker.getDecidedCount());
+	}
+
+	@Test
+	public void testNotEqualWithoutColumns() throws SatisfiabilityException {
+		// an atom without columns is true, whatever its comparison
+		assertTrue(checker.isSatisfiable(new NotEqualIntegerComparison(null,
+				null, 3)));
+		assertTrue(checker.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new NotEqualIntegerComparison(null, null, 0))));
+		assertFalse(checker.isSatisfiable(new Not(
+				new NotEqualIntegerComparison(null, null, 3))));
+		assertEquals(3, checker.getDecidedCount());
+	}
+
+	@Test
+	public void testDisjunctionFallsBack() throws SatisfiabilityException {
+		expression = new Or(new EqualIntegerComparison(ix, iy, 0),
+				new EqualIntegerComparison(ix, iy, 1));
+		assertTrue(checker.isSatisfiable(expression));
+		assertEquals(0, checker.getDecidedCount());
+		assertEquals(1, checker.getDelegatedCount());
+	}
+}
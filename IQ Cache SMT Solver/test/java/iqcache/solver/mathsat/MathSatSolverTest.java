@@ -1,6 +1,11 @@
 package iqcache.solver.mathsat;
 
 import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
 import iqcache.expression.Expression;
 import iqcache.expression.leaf.typeboolean.BooleanLiteral;
 import iqcache.expression.leaf.typeboolean.BooleanValue;
@@ -28,6 +33,10 @@ import iqcache.query.column.IntegerType;
 import iqcache.query.column.VarcharType;
 import iqcache.satisfiability.SatisfiabilityChecker;
 import iqcache.satisfiability.SatisfiabilityException;
+import iqcache.solver.RecyclingPolicy;
+import iqcache.solver.rewrite.ExpressionPass;
+import iqcache.solver.SatisfiabilityResult;
+import iqcache.solver.SMTLib2Emitter;
 import iqcache.solver.mathsat.MathSatSolver;
 
 import org.junit.After;
@@ -905,4 +914,175 @@ public class MathSatSolverTest {
 		assertTrue(checker.isSatisfiable(expression));
 
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRegion() throws SatisfiabilityException {
+		MathSatResettingSolver solver = new MathSatResettingSolver();
+		// region: 0 <= x <= 10
+		solver.pinRegion(new And(new LessOrEqualIntegerComparison(null, ix,
+				0), new LessOrEqualIntegerComparison(ix, null, 10)));
+
+		assertTrue(solver.isSatisfiableInRegion(new EqualIntegerComparison(
+				ix, null, 5)));
+		assertFalse(solver.isSatisfiableInRegion(new EqualIntegerComparison(
+				ix, null, 11)));
+		// the candidate of the previous check is gone
+		assertTrue(solver.isSatisfiableInRegion(new EqualIntegerComparison(
+				ix, null, 10)));
+
+		// a plain check drops the region, which must be asserted again
+		assertTrue(solver.isSatisfiable(new EqualIntegerComparison(ix, null,
+				11)));
+		assertFalse(solver.isSatisfiableInRegion(new EqualIntegerComparison(
+				ix, null, -1)));
+
+		solver.releaseRegion();
+	}
+
+	@Test
+	public void testRecycling() throws SatisfiabilityException {
+		MathSatResettingSolver solver = new MathSatResettingSolver();
+		// tiny thresholds swap the context every few checks
+		solver.setRecyclingPolicy(new RecyclingPolicy(1, 4, Long.MAX_VALUE));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(solver.isSatisfiable(new And(new EqualIntegerComparison(
+					ix, null, i), new BooleanLiteral(bx))));
+			assertFalse(solver.isSatisfiable(new And(
+					new EqualIntegerComparison(ix, null, i),
+					new EqualIntegerComparison(ix, null, i + 1))));
+		}
+		assertTrue(solver.getRecyclingPolicy().getRecycles() > 0);
+		// every check collects the garbage of the environments
+		assertTrue(solver.getRecyclingPolicy().getCollections() > 0);
+
+		// the region is asserted again in the new context
+		solver.pinRegion(new LessOrEqualIntegerComparison(ix, null, 10));
+		assertFalse(solver.isSatisfiableInRegion(new EqualIntegerComparison(
+				ix, null, 11)));
+		solver.releaseRegion();
+	}
+
+	/**
+	 * A pass that outlives the deadline of a check.
+	 */
+	private static final ExpressionPass SLOW_PASS = new ExpressionPass() {
+		@Override
+		public Expression apply(Expression expression) {
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return expression;
+		}
+	};
+
+	@Test
+	public void testDeadlineDuringPasses() throws SatisfiabilityException {
+		MathSatResettingSolver solver = new MathSatResettingSolver() {
+			{
+				passes.add(SLOW_PASS);
+			}
+		};
+		// the deadline passes before the context is opened
+		assertEquals(SatisfiabilityResult.UNKNOWN, solver.isSatisfiable(
+				new EqualIntegerComparison(ix, null, 1), 50,
+				TimeUnit.MILLISECONDS));
+		// the next call starts without the interrupt
+		assertEquals(SatisfiabilityResult.SATISFIABLE, solver.isSatisfiable(
+				new EqualIntegerComparison(ix, null, 1), 10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		MathSatResettingSolver solver = new MathSatResettingSolver();
+		// tiny thresholds warm a spare context
+		solver.setRecyclingPolicy(new RecyclingPolicy(1, 4, Long.MAX_VALUE));
+		assertTrue(solver.isSatisfiable(new EqualIntegerComparison(ix, null, 1)));
+		assertTrue(solver.isSatisfiable(new EqualIntegerComparison(ix, null, 2)));
+		solver.close();
+		// no context is left to interrupt
+		solver.interrupt();
+		solver.close();
+
+		// a closed solver opens a fresh context
+		assertFalse(solver.isSatisfiable(new And(new EqualIntegerComparison(
+				ix, null, 1), new EqualIntegerComparison(ix, null, 2))));
+		solver.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegionNotPinned() throws SatisfiabilityException {
+		new MathSatResettingSolver().isSatisfiableInRegion(new BooleanValue(
+				true));
+	}
+
+	@Test
+	public void testBatch() throws SatisfiabilityException {
+		MathSatResettingSolver solver = new MathSatResettingSolver();
+		BitSet result = solver.isSatisfiableBatch(Arrays.<Expression> asList(
+				new EqualIntegerComparison(ix, null, 5),
+				new And(new EqualIntegerComparison(ix, null, 5),
+						new EqualIntegerComparison(ix, null, 6)),
+				new EqualIntegerComparison(ix, null, 6),
+				new BooleanValue(false)));
+
+		assertTrue(result.get(0));
+		assertFalse(result.get(1));
+		assertTrue(result.get(2));
+		assertFalse(result.get(3));
+	}
+
+	@Test
+	public void testDictionaryEncoding() throws SatisfiabilityException {
+		MathSatResettingSolver solver = new MathSatResettingSolver();
+		solver.setDictionaryEncoding(true);
+
+		// two distinct values strictly between neighbouring literals
+		assertTrue(solver.isSatisfiable(new And(new LessVarcharComparison(
+				"a", sx), new LessVarcharComparison(sx, sy),
+				new LessVarcharComparison(sy, "b"))));
+		assertFalse(solver.isSatisfiable(new And(new LessVarcharComparison(
+				sx, "a"), new LessOrEqualVarcharComparison("b", sx))));
+		assertFalse(solver.isSatisfiable(new And(new EqualVarcharComparison(
+				sx, "Hi"), new NotEqualVarcharComparison("Hi", sx))));
+		// nothing lies between a string and the same string followed by \0
+		assertFalse(solver.isSatisfiable(new And(new LessVarcharComparison(
+				"a", sx), new LessVarcharComparison(sx, "a\u0000"))));
+	}
+
+	@Test
+	public void testNestedConnectives() throws SatisfiabilityException {
+		// nested nodes are flattened, five disjuncts are combined unevenly
+		Expression bounds = new And(new And(new And(
+				new LessOrEqualIntegerComparison(ix, null, 5),
+				new LessOrEqualIntegerComparison(null, ix, 1)),
+				new LessOrEqualIntegerComparison(iy, ix, 0)),
+				new LessOrEqualIntegerComparison(null, iy, 3));
+		Expression choice = new Or(new Or(new EqualIntegerComparison(ix,
+				null, 7), new EqualIntegerComparison(iy, null, 9)), new Or(
+				new EqualIntegerComparison(ix, null, 0),
+				new EqualIntegerComparison(iy, null, 6)),
+				new EqualIntegerComparison(iy, null, 4));
+		assertTrue(checker.isSatisfiable(new And(bounds, choice)));
+		assertFalse(checker.isSatisfiable(new And(bounds, new Or(
+				new EqualIntegerComparison(ix, null, 7),
+				new EqualIntegerComparison(iy, null, 9)))));
+	}
+
+	@Test
+	public void testBulkSubmission() throws SatisfiabilityException {
+		// enough nodes to submit the formula as one SMT-LIB 2 script
+		Expression[] disjuncts = new Expression[SMTLib2Emitter.DEFAULT_THRESHOLD];
+		for (int i = 0; i < disjuncts.length; i++) {
+			disjuncts[i] = new And(new EqualIntegerComparison(ix, null, i),
+					new LessDoubleComparison(dx, null, i + 0.5),
+					new LessVarcharComparison(sx, "b"));
+		}
+		Expression bounds = new And(new LessOrEqualIntegerComparison(null, ix,
+				990), new LessDoubleComparison(null, dx, 990.25));
+		assertTrue(checker.isSatisfiable(new And(bounds, new Or(disjuncts))));
+		assertFalse(checker.isSatisfiable(new And(bounds,
+				new LessDoubleComparison(null, dx, 999.5), new Or(disjuncts))));
+	}
+}
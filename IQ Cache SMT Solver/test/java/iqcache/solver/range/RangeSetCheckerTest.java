@@ -0,0 +1,164 @@
+package iqcache.solver.range;
+
+import static org.junit.Assert.*;
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.satisfiability.SatisfiabilityChecker;
+import iqcache.satisfiability.SatisfiabilityException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a RangeSetChecker.
+ *
+ * @author dinh
+ */
+public class RangeSetCheckerTest {
+
+	private RangeSetChecker checker;
+	private Expression expression;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	/**
+	 * Fallback that must only be reached by two-column atoms.
+	 */
+	private SatisfiabilityChecker fallback = new SatisfiabilityChecker() {
+		@Override
+		public boolean isSatisfiable(Expression expression)
+				throws SatisfiabilityException {
+			return true;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception {
+		checker = new RangeSetChecker(fallback);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		checker = null;
+		expression = null;
+	}
+
+	@Test
+	public void testBooleanValues() throws SatisfiabilityException {
+		expression = new And(new BooleanValue(true), new BooleanValue(false));
+		assertFalse(checker.isSatisfiable(expression));
+		assertEquals(1, checker.getDecidedCount());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testIsSatisfiableNull() throws SatisfiabilityException {
+		checker.isSatisfiable(null);
+	}
+
+	@Test
+	public void testIntegerRange() throws SatisfiabilityException {
+		// x <= 5 AND 5 <= x
+		expression = new And(new LessOrEqualIntegerComparison(ix, null, 5),
+				new LessOrEqualIntegerComparison(null, ix, 5));
+		assertTrue(checker.isSatisfiable(expression));
+
+		// x <= 5 AND 7 <= x
+		expression = new And(new LessOrEqualIntegerComparison(ix, null, 5),
+				new LessOrEqualIntegerComparison(null, ix, 7));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testIntegerComplement() throws SatisfiabilityException {
+		// NOT(x <= 5) AND x <= 6 AND x != 6
+		expression = new And(new Not(new LessOrEqualIntegerComparison(ix,
+				null, 5)), new LessOrEqualIntegerComparison(ix, null, 6),
+				new NotEqualIntegerComparison(ix, null, 6));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testDoubleStrictBounds() throws SatisfiabilityException {
+		// d < 5 AND 5 < d
+		expression = new And(new LessDoubleComparison(dx, null, 5),
+				new LessDoubleComparison(null, dx, 5));
+		assertFalse(checker.isSatisfiable(expression));
+
+		// d <= 5 AND 5 <= d
+		expression = new And(new LessOrEqualDoubleComparison(dx, null, 5),
+				new LessOrEqualDoubleComparison(null, dx, 5));
+		assertTrue(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testDisjunctionOverTwoColumns() throws SatisfiabilityException {
+		// (x = 1 OR y = 2) AND x != 1 AND y != 2
+		expression = new And(new Or(new EqualIntegerComparison(ix, null, 1),
+				new EqualIntegerComparison(iy, null, 2)),
+				new NotEqualIntegerComparison(ix, null, 1),
+				new NotEqualIntegerComparison(iy, null, 2));
+		assertFalse(checker.isSatisfiable(expression));
+
+		// (x = 1 OR y = 2) AND x != 1
+		expression = new And(new Or(new EqualIntegerComparison(ix, null, 1),
+				new EqualIntegerComparison(iy, null, 2)),
+				new NotEqualIntegerComparison(ix, null, 1));
+		assertTrue(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testNegatedDisjunction() throws SatisfiabilityException {
+		// NOT(x <= 3 OR 4 <= x)
+		expression = new Not(new Or(
+				new LessOrEqualIntegerComparison(ix, null, 3),
+				new LessOrEqualIntegerComparison(null, ix, 4)));
+		assertFalse(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testBooleanLiterals() throws SatisfiabilityException {
+		expression = new And(new BooleanLiteral(bx), new NegatedBooleanLiteral(
+				bx));
+		assertFalse(checker.isSatisfiable(expression));
+
+		expression = new And(new BooleanLiteral(bx), new Not(
+				new NegatedBooleanLiteral(bx)));
+		assertTrue(checker.isSatisfiable(expression));
+	}
+
+	@Test
+	public void testTwoColumnAtomFallsBack() throws SatisfiabilityException {
+		expression = new And(new LessOrEqualIntegerComparison(ix, null, 5),
+				new EqualIntegerComparison(ix, iy, 0));
+		assertTrue(checker.isSatisfiable(expression));
+		assertEquals(0, checker.getDecidedCount());
+		assertEquals(1, checker.getDelegatedCount());
+	}
+}
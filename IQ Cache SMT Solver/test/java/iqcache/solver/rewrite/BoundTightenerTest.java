@@ -0,0 +1,156 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for the BoundTightener.
+ *
+ * @author dinh
+ */
+public class BoundTightenerTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testTightenNull() {
+		BoundTightener.tighten(null);
+	}
+
+	@Test
+	public void testRedundantBounds() {
+		Expression upper = new LessOrEqualIntegerComparison(ix, null, 3);
+		Expression lower = new LessOrEqualIntegerComparison(null, ix, 1);
+		Expression other = new NotEqualIntegerComparison(ix, null, 2);
+		Expression simplified = BoundTightener.tighten(new And(
+				new LessOrEqualIntegerComparison(ix, null, 5), upper, other,
+				new And(lower, new LessOrEqualIntegerComparison(null, ix, 0))));
+
+		assertTrue(simplified instanceof And);
+		And and = (And) simplified;
+		assertEquals(3, and.getNumberOfSubexpressions());
+		assertSame(upper, and.getSubexpressionAt(0));
+		assertSame(other, and.getSubexpressionAt(1));
+		assertSame(lower, and.getSubexpressionAt(2));
+	}
+
+	@Test
+	public void testDuplicateBound() {
+		Expression bound = new LessOrEqualDoubleComparison(dx, null, 1.5);
+		assertSame(bound, BoundTightener.tighten(new And(bound,
+				new LessOrEqualDoubleComparison(dx, null, 1.5))));
+	}
+
+	@Test
+	public void testEqualityBounds() {
+		Expression equal = new EqualIntegerComparison(ix, null, 4);
+		assertSame(equal, BoundTightener.tighten(new And(
+				new LessOrEqualIntegerComparison(ix, null, 7), equal,
+				new LessOrEqualIntegerComparison(null, ix, 2))));
+
+		Expression varchar = new EqualVarcharComparison(sx, "b");
+		assertSame(varchar, BoundTightener.tighten(new And(
+				new LessVarcharComparison(sx, "c"), varchar)));
+	}
+
+	@Test
+	public void testSignedZero() {
+		// x <= -0.0 and 0.0 <= x holds for x = 0
+		Expression upper = new LessOrEqualDoubleComparison(dx, null, -0.0);
+		Expression lower = new LessOrEqualDoubleComparison(null, dx, 0.0);
+		Expression tightened = BoundTightener.tighten(new And(upper, lower));
+		assertFalse(tightened instanceof BooleanValue);
+
+		// -0.0 < x < 0.0 stays empty
+		assertFalse(value(BoundTightener.tighten(new And(
+				new LessDoubleComparison(null, dx, -0.0),
+				new LessDoubleComparison(dx, null, 0.0)))));
+	}
+
+	@Test
+	public void testUnorderedVarcharLiterals() {
+		// "a" and "a\0" have the same bits, so a\0 <= x <= a holds for a
+		Expression lower = new LessOrEqualVarcharComparison("a\u0000", sx);
+		Expression upper = new LessOrEqualVarcharComparison(sx, "a");
+		Expression tightened = BoundTightener.tighten(new And(lower, upper));
+		assertFalse(tightened instanceof BooleanValue);
+
+		// a three byte character is wider than the padding assumes
+		Expression wide = new LessOrEqualVarcharComparison(sx, "\u20ac");
+		Expression narrow = new LessOrEqualVarcharComparison(sx, "z");
+		And and = (And) BoundTightener.tighten(new And(wide, narrow));
+		assertEquals(2, and.getNumberOfSubexpressions());
+	}
+
+	@Test
+	public void testEmptyRanges() {
+		// x <= 5 and x <= 3 and x >= 7
+		assertFalse(value(BoundTightener.tighten(new And(
+				new LessOrEqualIntegerComparison(ix, null, 5),
+				new LessOrEqualIntegerComparison(ix, null, 3),
+				new LessOrEqualIntegerComparison(null, ix, 7)))));
+
+		// 1 < x < 1
+		assertFalse(value(BoundTightener.tighten(new And(
+				new LessDoubleComparison(null, dx, 1),
+				new LessOrEqualDoubleComparison(dx, null, 1)))));
+
+		// 'b' <= x < 'a' and x < ''
+		assertFalse(value(BoundTightener.tighten(new And(
+				new LessOrEqualVarcharComparison("b", sx),
+				new LessVarcharComparison(sx, "a")))));
+		assertFalse(value(BoundTightener.tighten(new And(
+				new LessOrEqualIntegerComparison(iy, null, 1),
+				new LessVarcharComparison(sx, "")))));
+
+		// the contradiction decides the disjunct only
+		Expression other = new EqualIntegerComparison(iy, null, 1);
+		assertSame(other, BoundTightener.tighten(new Or(new And(
+				new EqualIntegerComparison(ix, null, 1),
+				new EqualIntegerComparison(ix, null, 2)), other)));
+	}
+
+	@Test
+	public void testUnchanged() {
+		Expression expression = new Or(new And(new LessOrEqualIntegerComparison(
+				ix, null, 5), new LessOrEqualIntegerComparison(null, ix, 1),
+				new LessOrEqualIntegerComparison(ix, iy, 0)),
+				new LessOrEqualIntegerComparison(iy, null, 1));
+		assertSame(expression, BoundTightener.tighten(expression));
+	}
+
+	private static boolean value(Expression expression) {
+		assertTrue(expression instanceof BooleanValue);
+		return ((BooleanValue) expression).getValue();
+	}
+}
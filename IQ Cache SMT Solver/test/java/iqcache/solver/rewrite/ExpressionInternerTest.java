@@ -0,0 +1,108 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Tests for an ExpressionInterner.
+ *
+ * @author dinh
+ */
+public class ExpressionInternerTest {
+
+	private ExpressionInterner interner;
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	@Before
+	public void setUp() throws Exception {
+		interner = new ExpressionInterner();
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testInternNull() {
+		interner.intern(null);
+	}
+
+	@Test
+	public void testSharedAtoms() {
+		Expression a = new EqualVarcharComparison(sx, "a");
+		Expression expression = new Or(new And(a, new EqualIntegerComparison(
+				ix, null, 1)), new And(new EqualVarcharComparison(sx, "a"),
+				new EqualIntegerComparison(ix, null, 2)));
+
+		Or or = (Or) interner.intern(expression);
+		And first = (And) or.getSubexpressionAt(0);
+		And second = (And) or.getSubexpressionAt(1);
+		assertSame(a, first.getSubexpressionAt(0));
+		assertSame(a, second.getSubexpressionAt(0));
+		assertEquals(2, interner.getUses(a));
+		assertEquals(1, interner.getUses(or));
+
+		// 3 atoms, 2 conjunctions and the disjunction
+		assertEquals(6, interner.size());
+	}
+
+	@Test
+	public void testStructuralEquality() {
+		Expression a = interner.intern(new LessOrEqualIntegerComparison(ix, iy,
+				1));
+
+		// other constant, other side, other order
+		assertNotSame(a, interner.intern(new LessOrEqualIntegerComparison(ix,
+				iy, 2)));
+		assertNotSame(a, interner.intern(new LessOrEqualIntegerComparison(iy,
+				ix, 1)));
+		Expression b = new EqualIntegerComparison(iy, null, 1);
+		assertNotSame(interner.intern(new And(a, b)),
+				interner.intern(new And(b, a)));
+
+		// the same column in another instance
+		Column ix2 = new Column(new Identifier("t"), new Identifier("ix"), 1,
+				IntegerType.instance(), false, false);
+		assertSame(a, interner.intern(new LessOrEqualIntegerComparison(ix2,
+				iy, 1)));
+	}
+
+	@Test
+	public void testStableIds() {
+		Expression a = interner.intern(new EqualIntegerComparison(ix, null, 1));
+		Expression not = interner.intern(new Not(new EqualIntegerComparison(ix,
+				null, 1)));
+		assertEquals(0, interner.getId(a));
+		assertEquals(1, interner.getId(not));
+		assertSame(a, ((Not) not).getSubexpressionAt(0));
+		assertTrue(interner.isInterned(not));
+
+		interner.clear();
+		assertEquals(0, interner.size());
+		assertFalse(interner.isInterned(a));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUsesNotInterned() {
+		interner.getUses(new EqualIntegerComparison(ix, null, 1));
+	}
+}
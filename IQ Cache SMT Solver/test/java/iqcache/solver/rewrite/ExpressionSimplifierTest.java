@@ -0,0 +1,127 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for the ExpressionSimplifier.
+ *
+ * @author dinh
+ */
+public class ExpressionSimplifierTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testSimplifyNull() {
+		ExpressionSimplifier.simplify(null);
+	}
+
+	@Test
+	public void testShortCircuit() {
+		Expression atom = new EqualIntegerComparison(ix, null, 1);
+		assertFalse(value(ExpressionSimplifier.simplify(new And(atom,
+				new BooleanValue(false)))));
+		assertTrue(value(ExpressionSimplifier.simplify(new Or(atom,
+				new BooleanValue(true)))));
+		assertTrue(value(ExpressionSimplifier.simplify(new And(
+				new BooleanValue(true), new Or(new BooleanValue(false),
+						new BooleanValue(true))))));
+	}
+
+	@Test
+	public void testNeutralElements() {
+		Expression a = new EqualIntegerComparison(ix, null, 1);
+		Expression b = new LessOrEqualIntegerComparison(iy, null, 2);
+
+		// a single operand replaces the node
+		assertSame(a, ExpressionSimplifier.simplify(new And(a,
+				new BooleanValue(true))));
+		assertSame(b, ExpressionSimplifier.simplify(new Or(
+				new BooleanValue(false), b)));
+
+		Expression simplified = ExpressionSimplifier.simplify(new And(a,
+				new BooleanValue(true), b));
+		assertTrue(simplified instanceof And);
+		assertEquals(2, ((And) simplified).getNumberOfSubexpressions());
+		assertSame(a, ((And) simplified).getSubexpressionAt(0));
+		assertSame(b, ((And) simplified).getSubexpressionAt(1));
+	}
+
+	@Test
+	public void testNot() {
+		Expression a = new EqualIntegerComparison(ix, null, 1);
+		assertTrue(value(ExpressionSimplifier.simplify(new Not(
+				new BooleanValue(false)))));
+		assertSame(a, ExpressionSimplifier.simplify(new Not(new Not(a))));
+		assertTrue(ExpressionSimplifier.simplify(new Not(new BooleanLiteral(
+				bx))) instanceof NegatedBooleanLiteral);
+		assertTrue(ExpressionSimplifier.simplify(new Not(
+				new NegatedBooleanLiteral(bx))) instanceof BooleanLiteral);
+	}
+
+	@Test
+	public void testTrivialAtoms() {
+		// x <= x + c
+		assertTrue(value(ExpressionSimplifier
+				.simplify(new LessOrEqualIntegerComparison(ix, ix, 0))));
+		assertFalse(value(ExpressionSimplifier
+				.simplify(new LessOrEqualIntegerComparison(ix, ix, -1))));
+		assertFalse(value(ExpressionSimplifier
+				.simplify(new EqualIntegerComparison(ix, ix, 1))));
+		assertFalse(value(ExpressionSimplifier
+				.simplify(new LessDoubleComparison(dx, dx, 0))));
+		assertFalse(value(ExpressionSimplifier
+				.simplify(new LessVarcharComparison(sx, sx))));
+
+		// atoms without a column are true
+		assertTrue(value(ExpressionSimplifier
+				.simplify(new EqualIntegerComparison(null, null, 1))));
+	}
+
+	@Test
+	public void testUnchanged() {
+		Expression expression = new Or(new And(new EqualIntegerComparison(ix,
+				null, 1), new LessOrEqualIntegerComparison(ix, iy, 0)),
+				new Not(new LessVarcharComparison(sx, "b")));
+		assertSame(expression, ExpressionSimplifier.simplify(expression));
+	}
+
+	private static boolean value(Expression expression) {
+		assertTrue(expression instanceof BooleanValue);
+		return ((BooleanValue) expression).getValue();
+	}
+}
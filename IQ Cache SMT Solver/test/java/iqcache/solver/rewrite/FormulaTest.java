@@ -0,0 +1,133 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.DummyLeaf;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.EqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a Formula.
+ *
+ * @author dinh
+ */
+public class FormulaTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testOfNull() {
+		Formula.of(null);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testDummyLeaf() {
+		Formula.of(new And(new BooleanLiteral(bx), new DummyLeaf()));
+	}
+
+	@Test
+	public void testAtoms() {
+		Formula formula = Formula.of(new LessOrEqualIntegerComparison(ix, iy,
+				-2));
+		assertEquals(1, formula.size());
+		assertEquals(0, formula.getRoot());
+		assertEquals(Formula.INTEGER_LESS_OR_EQUAL, formula.getOp(0));
+		assertTrue(formula.isAtom(0));
+		assertEquals(0, formula.getOperandCount(0));
+		assertSame(ix, formula.getColumn(formula.getLeft(0)));
+		assertSame(iy, formula.getColumn(formula.getRight(0)));
+		assertEquals(-2, formula.getConstant(0), 0);
+		assertEquals(Formula.NONE, formula.getLiteral(0));
+
+		formula = Formula.of(new LessDoubleComparison(null, dx, 1.5));
+		assertEquals(Formula.REAL_LESS, formula.getOp(0));
+		assertEquals(Formula.NONE, formula.getLeft(0));
+		assertSame(dx, formula.getColumn(formula.getRight(0)));
+		assertEquals(1.5, formula.getConstant(0), 0);
+
+		formula = Formula.of(new LessVarcharComparison("b", sx));
+		assertEquals(Formula.VARCHAR_LESS, formula.getOp(0));
+		assertEquals(Formula.NONE, formula.getLeft(0));
+		assertEquals("b", formula.getLiteralValue(formula.getLiteral(0)));
+	}
+
+	@Test
+	public void testSharedNodes() {
+		Expression expression = new Or(new And(new EqualVarcharComparison(sx,
+				"a"), new EqualIntegerComparison(ix, null, 1)), new And(
+				new EqualVarcharComparison(sx, "a"), new EqualIntegerComparison(
+						ix, null, 2)));
+		Formula formula = Formula.of(expression);
+
+		// 3 atoms, 2 conjunctions and the disjunction
+		assertEquals(6, formula.size());
+		assertEquals(3, formula.getAtomCount());
+		assertEquals(2, formula.getColumnCount());
+		assertEquals(1, formula.getLiteralCount());
+
+		int or = formula.getRoot();
+		assertEquals(Formula.OR, formula.getOp(or));
+		assertEquals(2, formula.getOperandCount(or));
+		int first = formula.getOperand(or, 0);
+		int second = formula.getOperand(or, 1);
+		assertEquals(formula.getOperand(first, 0),
+				formula.getOperand(second, 0));
+		assertEquals(2, formula.getUses(formula.getOperand(first, 0)));
+		assertEquals(1, formula.getUses(or));
+
+		// operands precede their nodes
+		for (int node = 0; node < formula.size(); node++) {
+			for (int i = 0; i < formula.getOperandCount(node); i++) {
+				assertTrue(formula.getOperand(node, i) < node);
+			}
+		}
+	}
+
+	@Test
+	public void testFlattening() {
+		Formula formula = Formula.of(new And(new BooleanLiteral(bx), new And(
+				new EqualIntegerComparison(ix, null, 1), new Not(new And(
+						new EqualIntegerComparison(iy, null, 1),
+						new EqualIntegerComparison(iy, null, 2))))));
+
+		int root = formula.getRoot();
+		assertEquals(3, formula.getOperandCount(root));
+		int not = formula.getOperand(root, 2);
+		assertEquals(Formula.NOT, formula.getOp(not));
+
+		// the And below the Not is kept
+		assertEquals(Formula.AND, formula.getOp(formula.getOperand(not, 0)));
+		assertTrue(formula.contains(Formula.BOOLEAN));
+		assertFalse(formula.contains(Formula.OR));
+	}
+}
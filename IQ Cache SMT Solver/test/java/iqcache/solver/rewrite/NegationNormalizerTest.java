@@ -0,0 +1,142 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanLiteral;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeboolean.NegatedBooleanLiteral;
+import iqcache.expression.leaf.typedouble.LessDoubleComparison;
+import iqcache.expression.leaf.typedouble.LessOrEqualDoubleComparison;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.NotEqualIntegerComparison;
+import iqcache.expression.leaf.typevarchar.LessOrEqualVarcharComparison;
+import iqcache.expression.leaf.typevarchar.LessVarcharComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.expression.node.Or;
+import iqcache.query.Identifier;
+import iqcache.query.column.BooleanType;
+import iqcache.query.column.Column;
+import iqcache.query.column.DoubleType;
+import iqcache.query.column.IntegerType;
+import iqcache.query.column.VarcharType;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for the NegationNormalizer.
+ *
+ * @author dinh
+ */
+public class NegationNormalizerTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	private Column iy = new Column(new Identifier("t"), new Identifier("iy"),
+			1, IntegerType.instance(), false, false);
+
+	private Column dx = new Column(new Identifier("t"), new Identifier("dx"),
+			1, DoubleType.instance(), false, false);
+
+	private Column sx = new Column(new Identifier("t"), new Identifier("sx"),
+			1, VarcharType.instance(20), false, false);
+
+	private Column bx = new Column(new Identifier("t"), new Identifier("bx"),
+			1, BooleanType.instance(), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testNormalizeNull() {
+		NegationNormalizer.normalize(null);
+	}
+
+	@Test
+	public void testIntegerAtoms() {
+		// not(x <= 5) is 6 <= x
+		LessOrEqualIntegerComparison lower = (LessOrEqualIntegerComparison) NegationNormalizer
+				.normalize(new Not(new LessOrEqualIntegerComparison(ix, null, 5)));
+		assertNull(lower.getLeft());
+		assertSame(ix, lower.getRight());
+		assertEquals(6, lower.getConstant());
+
+		// not(x <= y + 2) is y <= x - 3
+		LessOrEqualIntegerComparison difference = (LessOrEqualIntegerComparison) NegationNormalizer
+				.normalize(new Not(new LessOrEqualIntegerComparison(ix, iy, 2)));
+		assertSame(iy, difference.getLeft());
+		assertSame(ix, difference.getRight());
+		assertEquals(-3, difference.getConstant());
+
+		assertTrue(NegationNormalizer.normalize(new Not(
+				new EqualIntegerComparison(ix, null, 1))) instanceof NotEqualIntegerComparison);
+
+		// the complement of x <= MAX_VALUE has no integer constant
+		assertTrue(NegationNormalizer.normalize(new Not(
+				new LessOrEqualIntegerComparison(ix, null, Integer.MAX_VALUE))) instanceof Not);
+	}
+
+	@Test
+	public void testDoubleAtoms() {
+		// not(x <= 1.5) is 1.5 < x
+		LessDoubleComparison less = (LessDoubleComparison) NegationNormalizer
+				.normalize(new Not(new LessOrEqualDoubleComparison(dx, null,
+						1.5)));
+		assertNull(less.getLeft());
+		assertSame(dx, less.getRight());
+		assertEquals(1.5, less.getConstant(), 0);
+
+		// not(1.5 < x) is x <= 1.5
+		LessOrEqualDoubleComparison lessOrEqual = (LessOrEqualDoubleComparison) NegationNormalizer
+				.normalize(new Not(new LessDoubleComparison(null, dx, 1.5)));
+		assertSame(dx, lessOrEqual.getLeft());
+		assertNull(lessOrEqual.getRight());
+		assertEquals(1.5, lessOrEqual.getConstant(), 0);
+	}
+
+	@Test
+	public void testVarcharAtoms() {
+		// not(x < 'b') is 'b' <= x
+		LessOrEqualVarcharComparison lessOrEqual = (LessOrEqualVarcharComparison) NegationNormalizer
+				.normalize(new Not(new LessVarcharComparison(sx, "b")));
+		assertNull(lessOrEqual.getLeft());
+		assertEquals("b", lessOrEqual.getLeftVarchar());
+		assertSame(sx, lessOrEqual.getRight());
+	}
+
+	@Test
+	public void testDeMorgan() {
+		Expression normalized = NegationNormalizer.normalize(new Not(new And(
+				new BooleanLiteral(bx), new Not(new Or(
+						new EqualIntegerComparison(ix, null, 1),
+						new LessOrEqualIntegerComparison(iy, null, 2))))));
+
+		// not(b and not(x = 1 or y <= 2)) is not b or x = 1 or y <= 2
+		assertTrue(normalized instanceof Or);
+		Or or = (Or) normalized;
+		assertTrue(or.getSubexpressionAt(0) instanceof NegatedBooleanLiteral);
+		assertTrue(or.getSubexpressionAt(1) instanceof Or);
+	}
+
+	@Test
+	public void testConstants() {
+		assertFalse(value(NegationNormalizer.normalize(new Not(
+				new LessOrEqualIntegerComparison(null, null, 1)))));
+		assertTrue(value(NegationNormalizer.normalize(new Not(new And(
+				new BooleanValue(false), new BooleanLiteral(bx))))));
+	}
+
+	@Test
+	public void testUnchanged() {
+		Expression expression = new Or(new And(new EqualIntegerComparison(ix,
+				null, 1), new NegatedBooleanLiteral(bx)),
+				new LessVarcharComparison(sx, "b"));
+		assertSame(expression, NegationNormalizer.normalize(expression));
+	}
+
+	private static boolean value(Expression expression) {
+		assertTrue(expression instanceof BooleanValue);
+		return ((BooleanValue) expression).getValue();
+	}
+}
@@ -0,0 +1,85 @@
+package iqcache.solver.rewrite;
+
+import static org.junit.Assert.*;
+
+import iqcache.expression.Expression;
+import iqcache.expression.leaf.typeboolean.BooleanValue;
+import iqcache.expression.leaf.typeinteger.EqualIntegerComparison;
+import iqcache.expression.leaf.typeinteger.LessOrEqualIntegerComparison;
+import iqcache.expression.node.And;
+import iqcache.expression.node.Not;
+import iqcache.query.Identifier;
+import iqcache.query.column.Column;
+import iqcache.query.column.IntegerType;
+
+import org.junit.Test;
+
+/**
+ * JUnit Tests for a PassManager.
+ *
+ * @author dinh
+ */
+public class PassManagerTest {
+
+	// define columns
+	private Column ix = new Column(new Identifier("t"), new Identifier("ix"),
+			1, IntegerType.instance(), false, false);
+
+	@Test(expected = NullPointerException.class)
+	public void testAddNull() {
+		new PassManager().add(null);
+	}
+
+	@Test
+	public void testEmpty() {
+		Expression expression = new Not(new EqualIntegerComparison(ix, null, 1));
+		assertSame(expression, new PassManager().run(expression));
+	}
+
+	@Test
+	public void testStandard() {
+		assertEquals(3, PassManager.standard().getPasses().size());
+
+		// not(x <= 3) and x <= 5 is 4 <= x and x <= 5
+		Formula formula = PassManager.standard().compile(
+				new And(new Not(new LessOrEqualIntegerComparison(ix, null, 3)),
+						new LessOrEqualIntegerComparison(ix, null, 5)));
+		assertFalse(formula.contains(Formula.NOT));
+		assertEquals(2, formula.getAtomCount());
+
+		// x <= 3 and 7 <= x is false
+		Expression empty = PassManager.standard().run(
+				new And(new LessOrEqualIntegerComparison(ix, null, 3),
+						new LessOrEqualIntegerComparison(null, ix, 7)));
+		assertTrue(empty instanceof BooleanValue);
+		assertFalse(((BooleanValue) empty).getValue());
+	}
+
+	@Test
+	public void testOrder() {
+		final StringBuilder order = new StringBuilder();
+		PassManager passes = new PassManager().add(new ExpressionPass() {
+			@Override
+			public Expression apply(Expression expression) {
+				order.append('a');
+				return expression;
+			}
+		}).add(new ExpressionPass() {
+			@Override
+			public Expression apply(Expression expression) {
+				order.append('b');
+				return new BooleanValue(true);
+			}
+		}).add(new ExpressionPass() {
+			@Override
+			public Expression apply(Expression expression) {
+				order.append('c');
+				return expression;
+			}
+		});
+
+		// a constant ends the pipeline
+		assertTrue(passes.run(new EqualIntegerComparison(ix, null, 1)) instanceof BooleanValue);
+		assertEquals("ab", order.toString());
+	}
+}